@@ -0,0 +1,124 @@
+package com.hello.suripu.algorithm.hmm;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
+import com.hello.suripu.algorithm.core.AlgorithmException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ *  Immutable alphabet sequences of one night, one symbol per time step, stored by feature extraction model id.
+ *
+ *  This is what the multi-obs alphabet HMMs decode and learn on.  Symbols are kept as primitive ints so they
+ *  can be read model after model without unboxing, and the ids are interned since they are looked up for every
+ *  model of every output.  All sequences have the same length.
+ */
+public final class FeatureSequences {
+
+    private final ImmutableMap<String,int []> symbolsById;
+    private final int numObs;
+
+    private FeatureSequences(final ImmutableMap<String, int[]> symbolsById, final int numObs) {
+        this.symbolsById = symbolsById;
+        this.numObs = numObs;
+    }
+
+    public static FeatureSequences create(final Map<String,int []> symbolsById) {
+        return create(symbolsById, true);
+    }
+
+    static FeatureSequences create(final Map<String,int []> symbolsById, final boolean copy) {
+        final ImmutableMap.Builder<String,int []> builder = ImmutableMap.builder();
+        int numObs = -1;
+
+        for (final Map.Entry<String,int []> entry : symbolsById.entrySet()) {
+            final int [] symbols = entry.getValue();
+
+            if (numObs >= 0 && symbols.length != numObs) {
+                throw new AlgorithmException(String.format("feature sequence %s has length %d, expected %d",entry.getKey(),symbols.length,numObs));
+            }
+
+            numObs = symbols.length;
+            builder.put(entry.getKey().intern(), copy ? symbols.clone() : symbols);
+        }
+
+        return new FeatureSequences(builder.build(), Math.max(numObs, 0));
+    }
+
+    public static FeatureSequences createFromPaths(final Map<String,? extends List<Integer>> pathsById) {
+        final Map<String,int []> symbolsById = Maps.newLinkedHashMap();
+
+        for (final Map.Entry<String,? extends List<Integer>> entry : pathsById.entrySet()) {
+            symbolsById.put(entry.getKey(), Ints.toArray(entry.getValue()));
+        }
+
+        return create(symbolsById, false);
+    }
+
+    /* measurements are only 1d for now, so the first row is the sequence */
+    static FeatureSequences createFromRawMeasurements(final Map<String,double [][]> rawmeasurements) {
+        final Map<String,int []> symbolsById = Maps.newLinkedHashMap();
+
+        for (final Map.Entry<String,double [][]> entry : rawmeasurements.entrySet()) {
+            final double [] raw = entry.getValue()[0];
+            final int [] symbols = new int[raw.length];
+
+            for (int t = 0; t < raw.length; t++) {
+                symbols[t] = (int)raw[t];
+            }
+
+            symbolsById.put(entry.getKey(), symbols);
+        }
+
+        return create(symbolsById, false);
+    }
+
+    public Set<String> ids() {
+        return symbolsById.keySet();
+    }
+
+    public boolean contains(final String id) {
+        return symbolsById.containsKey(id);
+    }
+
+    public boolean isEmpty() {
+        return symbolsById.isEmpty();
+    }
+
+    public int numObs() {
+        return numObs;
+    }
+
+    public int get(final String id, final int t) {
+        final int [] symbols = symbolsById.get(id);
+
+        if (symbols == null) {
+            throw new AlgorithmException(String.format("no feature sequence for %s",id));
+        }
+
+        return symbols[t];
+    }
+
+    public int [] copyOf(final String id) {
+        final int [] symbols = symbolsById.get(id);
+
+        if (symbols == null) {
+            throw new AlgorithmException(String.format("no feature sequence for %s",id));
+        }
+
+        return symbols.clone();
+    }
+
+    public String toString(final String id) {
+        return Arrays.toString(symbolsById.get(id));
+    }
+
+    /* no copy, callers in this package must not write to it.  null if there is no sequence for this id */
+    int [] symbols(final String id) {
+        return symbolsById.get(id);
+    }
+}
@@ -1,15 +1,13 @@
 package com.hello.suripu.algorithm.hmm;
 
 import com.google.common.collect.ImmutableList;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.common.primitives.Ints;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
 import java.util.Map;
 
 /**
@@ -56,32 +54,6 @@ public class HiddenMarkovModelLogMath implements HiddenMarkovModelInterface {
 
 
 
-    static private class CostWithIndex implements Comparable<CostWithIndex>{
-        final public int idx;
-
-        public CostWithIndex(int idx, double cost) {
-            this.idx = idx;
-            this.cost = cost;
-        }
-
-        final public double cost;
-
-
-        @Override
-        public int compareTo(CostWithIndex o) {
-            if (this.cost < o.cost) {
-                return 1;
-            }
-
-            if (this.cost > o.cost) {
-                return -1;
-            }
-
-            return 0;
-        }
-    }
-
-
     private double getBIC(double pathCost,int numObs) {
         return 2.0*pathCost + this.numFreeParams*Math.log((double)numObs);
     }
@@ -92,58 +64,51 @@ public class HiddenMarkovModelLogMath implements HiddenMarkovModelInterface {
 
 
 
-    private static double [][] clone2d(final double [][] x) {
-        double [][] A = new double[x.length][0];
-        for (int j = 0; j < x.length; j++) {
-            A[j] = x[j].clone();
-        }
-
-        return A;
+    public HmmDecodedResult decode(final double[][] observations, final Integer[] possibleEndStates, final double minTransitionLikelihood) {
+        return decode(observations, possibleEndStates, minTransitionLikelihood, ViterbiWorkspace.forCurrentThread());
     }
 
-
-    public HmmDecodedResult decode(final double[][] observations, final Integer[] possibleEndStates, final double minTransitionLikelihood) {
+    /**
+     * Same as decode, with the scratch matrices taken from a caller-owned workspace
+     */
+    public HmmDecodedResult decode(final double[][] observations, final Integer[] possibleEndStates, final double minTransitionLikelihood, final ViterbiWorkspace workspace) {
 
         final int numObs = observations[0].length;
 
-        final double [] scores = new double[numStates];
+        workspace.ensureCapacity(numStates, numObs);
 
-        final double [][] phi = LogMath.getLogZeroedMatrix(numStates, numObs);
-        final int [][] vindices = new int[numStates][numObs];
+        final double [] scores = workspace.scores;
+        final double [] phi = workspace.phi;
+        final int [] vindices = workspace.vindices;
+        final double [] logA = workspace.logA;
 
-        double [][] logA = clone2d(this.A); //copy
+        Arrays.fill(scores, 0, numStates, 0.0);
 
-        //nominal A matrix
-        for (int j = 0; j < numStates; j++) {
-            for (int i = 0; i < numStates; i++) {
-                logA[j][i] = LogMath.eln(logA[j][i] + minTransitionLikelihood);
+        //nominal A matrix, logA[i * numStates + j] is the transition from i to j
+        for (int i = 0; i < numStates; i++) {
+            for (int j = 0; j < numStates; j++) {
+                logA[i * numStates + j] = LogMath.eln(this.A[i][j] + minTransitionLikelihood);
             }
         }
 
 
         final double [][] logbmap = getLogBMap(observations);
-/*
-        LOGGER.info("logbmap = ");
-        for (j = 0; j < numStates; j++) {
-            LOGGER.info("{}",logbmap[j]);
-        }
-*/
 
         //init
         {
             double maxInit = LogMath.LOGZERO;
             int maxIdx = 0;
             for (int i = 0; i < numStates; i++) {
-                phi[i][0] = LogMath.elnproduct(logbmap[i][0], LogMath.eln(initialState[i]));
+                phi[i] = LogMath.elnproduct(logbmap[i][0], LogMath.eln(initialState[i]));
 
-                if (phi[i][0] > maxInit) {
-                    maxInit = phi[i][0];
+                if (phi[i] > maxInit) {
+                    maxInit = phi[i];
                     maxIdx = i;
                 }
             }
 
             for (int i = 0; i < numStates; i++) {
-                vindices[i][0] = maxIdx;
+                vindices[i] = maxIdx;
             }
 
 
@@ -152,96 +117,57 @@ public class HiddenMarkovModelLogMath implements HiddenMarkovModelInterface {
 
         for (int t = 1; t < numObs; t++) {
 
-            final double [][] logAThisIndex = clone2d(logA);
+            final int prev = (t - 1) * numStates;
+            final int current = t * numStates;
 
             for (int j = 0; j < numStates; j++) {
 
                 final double obscost = logbmap[j][t];
 
+                int maxIdx = 0;
                 for (int i = 0; i < numStates; i++) {
-                    scores[i] = LogMath.elnproduct(logAThisIndex[i][j], obscost);
-                }
+                    scores[i] = LogMath.elnproduct(LogMath.elnproduct(logA[i * numStates + j], obscost), phi[prev + i]);
 
-                for (int i = 0; i < numStates; i++) {
-                    scores[i] = LogMath.elnproduct(scores[i], phi[i][t - 1]);
+                    //first strictly greater, so ties go to the lower state
+                    if (scores[i] > scores[maxIdx]) {
+                        maxIdx = i;
+                    }
                 }
 
-                final List<CostWithIndex> costsWithIndex = Lists.newArrayList();
-
-                for (int i = 0; i < numStates; i++) {
-                    costsWithIndex.add(new CostWithIndex(i, scores[i]));
-                }
-
-                Collections.sort(costsWithIndex);
-
-
-                //check to see if any of the other possible "from" states (i.e. i != j)
-                //are below min. duration.  If so, we must force a transition from that state
-
-                final int maxIdx = costsWithIndex.get(0).idx;
-                final double maxVal = costsWithIndex.get(0).cost;
-
-
-
-                phi[j][t] = maxVal;
-                vindices[j][t] = maxIdx;
+                phi[current + j] = scores[maxIdx];
+                vindices[current + j] = maxIdx;
 
             }
         }
 
 
-        final int [] path = new int[numObs];
-
-
         //go through each path, and find the least cost one.
         //we do this because we are really not sure about which end-state is the best
-        final double [] pathCosts = new double[possibleEndStates.length];
-
-        for (int i = 0; i < possibleEndStates.length; i++) {
-            path[numObs - 1] = possibleEndStates[i];
+        final int last = (numObs - 1) * numStates;
 
-            //#backtrack to get optimal path
-            for (int t = numObs - 2; t >= 0; t--) {
-                path[t] = vindices[path[t + 1]][t];
-            }
-
-            pathCosts[i] = phi[possibleEndStates[i]][phi[0].length - 1];
-        }
-
-        double maxScore = pathCosts[0];
+        double maxScore = phi[last + possibleEndStates[0]];
         int minIdx = 0;
 
         for (int i = 1; i < possibleEndStates.length; i++) {
-            if (pathCosts[i] > maxScore) {
+            if (phi[last + possibleEndStates[i]] > maxScore) {
                 minIdx = i;
                 maxScore = scores[i];
             }
         }
 
-        //recompute minimum path again
+        final int [] path = new int[numObs];
+
         path[numObs - 1] = possibleEndStates[minIdx];
         //#backtrack to get optimal path
         for (int t = numObs - 2; t >= 0; t--) {
-            path[t] = vindices[path[t + 1]][t];
-
-            if (t == 0) {
-                int foo = 3;
-                foo++;
-            }
+            path[t] = vindices[t * numStates + path[t + 1]];
         }
 
         final double pathCost = -maxScore;
         final double bic = this.getBIC(pathCost,numObs);
         final double aic = this.getAIC(pathCost);
 
-
-        final List<Integer> pathObjs = Lists.newArrayList();
-
-        for (int t = 0; t < path.length; t++) {
-            pathObjs.add(path[t]);
-        }
-
-        return new HmmDecodedResult(ImmutableList.copyOf(pathObjs),bic,aic,pathCost);
+        return new HmmDecodedResult(ImmutableList.copyOf(Ints.asList(path)),bic,aic,pathCost);
     }
 
     @Override
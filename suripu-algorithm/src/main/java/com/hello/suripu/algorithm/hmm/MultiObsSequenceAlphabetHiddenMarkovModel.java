@@ -1,7 +1,6 @@
 package com.hello.suripu.algorithm.hmm;
 
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.hello.suripu.algorithm.core.AlgorithmException;
@@ -10,9 +9,7 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.SortedSet;
 
@@ -174,24 +171,24 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
 
     }
 
-    private double [][] getLogBMap(final Map<String,double [][]>  rawdataMap, final Map<String,double [][]> alphabetProbsMap) throws  AlgorithmException {
+    private double [][] getLogBMap(final FeatureSequences features, final Map<String,double [][]> alphabetProbsMap) throws  AlgorithmException {
 
-        if (rawdataMap.isEmpty()) {
+        if (features.isEmpty()) {
             return new double[numStates][0];
         }
 
 
 
-        final int numObs = rawdataMap.get(rawdataMap.keySet().iterator().next())[0].length;
+        final int numObs = features.numObs();
 
         final double [][] logbmap = getZeroedMatrix(numStates, numObs);
         for (final String key : alphabetProbsMap.keySet()) {
 
             final double [][] alphabetProbs = alphabetProbsMap.get(key);
 
-            final double [][] rawdata = rawdataMap.get(key);
+            final int [] symbols = features.symbols(key);
 
-            if (rawdata == null) {
+            if (symbols == null) {
                 //TODO log this as error
                 LOGGER.warn("skipping measurement {} in logbmap",key);
                 continue;
@@ -201,7 +198,7 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
             //get logbmap
             for (int iState = 0; iState < numStates; iState++) {
                 for (int t = 0; t < numObs; t++) {
-                    final int idx = (int)rawdata[0][t];
+                    final int idx = symbols[t];
 
                     if (!(idx >= 0 && idx < alphabetProbs[0].length)) {
                         throw new AlgorithmException(String.format("in method getLogBMap, index out of bounds for %s, idx=%d, maxidx=%d",key,idx,alphabetProbs[0].length));
@@ -215,61 +212,90 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
         return logbmap;
     }
 
-    static private class CostWithIndex implements Comparable<CostWithIndex>{
-        final public int idx;
+    /**
+     * Same as getLogBMap, written into the workspace as [numObs][numStates]
+     */
+    private void fillLogBMap(final FeatureSequences features, final Map<String,double [][]> alphabetProbsMap, final ViterbiWorkspace workspace, final int numObs) throws  AlgorithmException {
+        final double [] logbmap = workspace.logbmap;
 
-        public CostWithIndex(int idx, double cost) {
-            this.idx = idx;
-            this.cost = cost;
-        }
+        Arrays.fill(logbmap, 0, numObs * numStates, 0.0);
+
+        for (final String key : alphabetProbsMap.keySet()) {
 
-        final public double cost;
+            final double [][] alphabetProbs = alphabetProbsMap.get(key);
 
+            final int [] symbols = features.symbols(key);
 
-        @Override
-        public int compareTo(CostWithIndex o) {
-            if (this.cost < o.cost) {
-                return 1;
+            if (symbols == null) {
+                //TODO log this as error
+                LOGGER.warn("skipping measurement {} in logbmap",key);
+                continue;
             }
 
-            if (this.cost > o.cost) {
-                return -1;
+            //take the log of each alphabet prob once instead of once per time step
+            final int alphabetSize = alphabetProbs[0].length;
+            final double [] logAlphabet = workspace.logAlphabet(numStates * alphabetSize);
+            for (int iState = 0; iState < numStates; iState++) {
+                for (int iAlphabet = 0; iAlphabet < alphabetSize; iAlphabet++) {
+                    logAlphabet[iState * alphabetSize + iAlphabet] = LogMath.eln(alphabetProbs[iState][iAlphabet]);
+                }
             }
 
-            return 0;
-        }
-    }
+            for (int t = 0; t < numObs; t++) {
+                final int idx = symbols[t];
 
+                if (!(idx >= 0 && idx < alphabetSize)) {
+                    throw new AlgorithmException(String.format("in method getLogBMap, index out of bounds for %s, idx=%d, maxidx=%d",key,idx,alphabetSize));
+                }
 
+                for (int iState = 0; iState < numStates; iState++) {
+                    logbmap[t * numStates + iState] = LogMath.elnproduct(logbmap[t * numStates + iState], logAlphabet[iState * alphabetSize + idx]);
+                }
+            }
+        }
+    }
 
     public Result decodeWithConstraints(final MultiObsSequence meas, final int [] possibleEndStates, final int [] minStateDurations) {
-        final Map<String, double [][]>  rawdata = meas.rawmeasurements;
-        final Map<Integer,Integer> labels = meas.labels;
-        final Multimap<Integer,Transition> forbiddenTransitions = meas.forbiddenTransitions;
+        return decodeWithConstraints(meas, possibleEndStates, minStateDurations, ViterbiWorkspace.forCurrentThread());
+    }
 
-        final int numObs = rawdata.get(rawdata.keySet().iterator().next())[0].length;
+    /**
+     * Same as decodeWithConstraints, with the scratch matrices taken from a caller-owned workspace
+     */
+    public Result decodeWithConstraints(final MultiObsSequence meas, final int [] possibleEndStates, final int [] minStateDurations, final ViterbiWorkspace workspace) {
+        final FeatureSequences features = meas.features;
+
+        final int numObs = features.numObs();
 
         final Map<String,double [][]> alphabetProbsMap = getAlphabetMatrices();
         int j,i,t;
 
-        final double [] scores = new double[numStates];
+        workspace.ensureCapacity(numStates, numObs);
+        workspace.setForbiddenTransitions(meas.forbiddenTransitions, numObs);
 
-        final double [][] phi = LogMath.getLogZeroedMatrix(numStates, numObs);
-        final int [][] vindices = new int[numStates][numObs];
+        final double [] scores = workspace.scores;
+        final int [] order = workspace.order;
+        final double [] phi = workspace.phi;
+        final int [] vindices = workspace.vindices;
+        final double [] logbmap = workspace.logbmap;
 
-        double [][] logA = clone2d(getAMatrix()); //copy
+        Arrays.fill(scores, 0, numStates, 0.0);
 
-        //nominal A matrix
-        for (j = 0; j < numStates; j++) {
-            for (i = 0; i < numStates; i++) {
-                logA[j][i] = LogMath.eln(logA[j][i]);
+        //the first time step has no predecessor, so the backtrack always starts the path in state 0
+        Arrays.fill(vindices, 0, numStates, 0);
+
+        //nominal A matrix, logA[i * numStates + j] is the transition from i to j
+        final double [][] A = getAMatrix();
+        for (i = 0; i < numStates; i++) {
+            for (j = 0; j < numStates; j++) {
+                workspace.logA[i * numStates + j] = LogMath.eln(A[i][j]);
             }
         }
 
 
-        final double [][] logbmap = getLogBMap(rawdata,alphabetProbsMap);
+        fillLogBMap(features, alphabetProbsMap, workspace, numObs);
 
-        final int [] zeta = new int[numStates]; //this is the count for how long you've been in the same state
+        final int [] zeta = workspace.zeta; //this is the count for how long you've been in the same state
         //see the paper "Long-term Activities Segmentation using Viterbi Algorithm with a k-minimum-consecutive-states Constraint"
         //by Enrique Garcia-Ceja, Ramon Brena, 2014
 
@@ -279,44 +305,36 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
 
         //init
         for (i = 0; i < numStates; i++) {
-            phi[i][0] = LogMath.elnproduct(logbmap[i][0], LogMath.eln(pi[i]));
+            phi[i] = LogMath.elnproduct(logbmap[i], LogMath.eln(pi[i]));
         }
 
         for (t = 1; t < numObs; t++) {
 
-            final double [][] logAThisIndex = getLogAWithForbiddenStates(logA, forbiddenTransitions, t);
+            final double [] logAThisIndex = workspace.getLogAThisTimeStep(numStates, t, FORBIDDEN_TRANSITION_PENALTY);
+            final int prev = (t - 1) * numStates;
+            final int current = t * numStates;
 
             for (j = 0; j < numStates; j++) {
 
-                final double obscost = logbmap[j][t];
+                final double obscost = logbmap[current + j];
 
                 for (i = 0; i < numStates; i++) {
-                    scores[i] = LogMath.elnproduct(logAThisIndex[i][j], obscost);
+                    scores[i] = LogMath.elnproduct(LogMath.elnproduct(logAThisIndex[i * numStates + j], obscost), phi[prev + i]);
                 }
 
-                for (i = 0; i < numStates; i++) {
-                    scores[i] = LogMath.elnproduct(scores[i], phi[i][t - 1]);
-                }
-
-                final List<CostWithIndex> costsWithIndex = Lists.newArrayList();
-
-                for (i = 0; i < numStates; i++) {
-                    costsWithIndex.add(new CostWithIndex(i, scores[i]));
-                }
-
-                Collections.sort(costsWithIndex);
+                workspace.sortByDescendingScore(numStates);
 
 
                 //check to see if any of the other possible "from" states (i.e. i != j)
                 //are below min. duration.  If so, we must force a transition from that state
 
-                int maxIdx = costsWithIndex.get(0).idx;
-                double maxVal = costsWithIndex.get(0).cost;
+                int maxIdx = order[0];
+                double maxVal = scores[maxIdx];
 
                 for (i = 0; i < numStates; i++) {
                     //not possible, quit
-                    final int idx = costsWithIndex.get(i).idx;
-                    final double cost = costsWithIndex.get(i).cost;
+                    final int idx = order[i];
+                    final double cost = scores[idx];
 
                     if (cost == Double.NEGATIVE_INFINITY) {
                         break;
@@ -344,45 +362,32 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
                     maxIdx = j;
                 }
 
-                phi[j][t] = maxVal;
-                vindices[j][t] = maxIdx;
+                phi[current + j] = maxVal;
+                vindices[current + j] = maxIdx;
 
             }
         }
 
 
-        final int [] path = new int[numObs];
-
-
         //go through each path, and find the least cost one.
         //we do this because we are really not sure about which end-state is the best
-        final double [] pathCosts = new double[possibleEndStates.length];
-
-        for (i = 0; i < possibleEndStates.length; i++) {
-            path[numObs - 1] = possibleEndStates[i];
+        final int last = (numObs - 1) * numStates;
 
-            //#backtrack to get optimal path
-            for (t = numObs - 2; t >= 0; t--) {
-                path[t] = vindices[path[t + 1]][t];
-            }
-
-            pathCosts[i] = phi[possibleEndStates[i]][phi[0].length - 1];
-        }
-
-        double maxScore = pathCosts[0];
+        double maxScore = phi[last + possibleEndStates[0]];
         int minIdx = 0;
         for (i = 1; i < possibleEndStates.length; i++) {
-            if (pathCosts[i] > maxScore) {
+            if (phi[last + possibleEndStates[i]] > maxScore) {
                 minIdx = i;
                 maxScore = scores[i];
             }
         }
 
-        //recompute minimum path again
+        final int [] path = new int[numObs];
+
         path[numObs - 1] = possibleEndStates[minIdx];
         //#backtrack to get optimal path
         for (t = numObs - 2; t >= 0; t--) {
-            path[t] = vindices[path[t + 1]][t];
+            path[t] = vindices[t * numStates + path[t + 1]];
         }
 
         return new Result(path,maxScore);
@@ -436,15 +441,25 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
         System.out.print("]\n");
 
     }
+    /**
+     * How reestimate computes the forward and backward variables
+     */
+    public enum ForwardBackward {
+        SCALED, //normalized alpha and beta, falls back to LOG when that would underflow
+        LOG     //log domain alpha and beta, slower
+    }
+
     public boolean reestimate(final MultiObsSequence meas, final double priorWeightAsNumberOfSamples) {
-        int iterationNumber;
-        int iSequence;
+        return reestimate(meas, priorWeightAsNumberOfSamples, ForwardBackward.SCALED);
+    }
+
+    public boolean reestimate(final MultiObsSequence meas, final double priorWeightAsNumberOfSamples, final ForwardBackward forwardBackward) {
 
-        final Map<String, double [][]>  rawdata = meas.rawmeasurements;
+        final FeatureSequences features = meas.features;
         final Map<Integer,Integer> labels = meas.labels;
         final Multimap<Integer,Transition> forbiddenTransitions = meas.forbiddenTransitions;
 
-        if (rawdata.isEmpty()) {
+        if (features.isEmpty()) {
             return false;
         }
 
@@ -453,7 +468,11 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
             return false;
         }
 
-        final int numObs = rawdata.get(rawdata.keySet().iterator().next())[0].length;
+        final int numObs = features.numObs();
+
+        if (numObs == 0) {
+            return false;
+        }
 
         //get observation models
         final Map<String,double [][]> alphabetProbsMap = getAlphabetMatrices();
@@ -461,8 +480,19 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
         //get state transition matrix
         final double [][] A = getAMatrix();
 
+        if (forwardBackward == ForwardBackward.SCALED) {
+            final ScaledForwardBackward scaled = ScaledForwardBackward.compute(A, pi, alphabetProbsMap, features, labels, forbiddenTransitions);
+
+            if (scaled.isSafe()) {
+                addExpectedCounts(scaled);
+                return true;
+            }
+
+            LOGGER.warn("scaled forward backward underflowed, using the log domain");
+        }
+
         //get log of evaluated observations
-        final double [][] logbmap = getLogBMap(rawdata,alphabetProbsMap);
+        final double [][] logbmap = getLogBMap(features,alphabetProbsMap);
 
         //compute log of forwards and backwards probs
         final AlphaBetaResult alphaBeta = getAlphaAndBeta(numObs, pi, logbmap, A, numStates,labels);
@@ -474,18 +504,17 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
 
         //go through each measurement available in the raw data
         //find the matching model, and evaluate it
-        for (final String key : rawdata.keySet()) {
+        for (final String key : features.ids()) {
 
             if (this.logAlphabetNumerator.get(key) == null) {
                 //don't log this -- we might have a model that ignores a particular measurement
                 continue;
             }
 
-            //measurements are only 1d for now
-            final double [] rawmeas = rawdata.get(key)[0];
+            final int [] symbols = features.symbols(key);
 
             final int alphabetSize = logAlphabetNumerator.get(key)[0].length;
-            final double [][] logAlphabetNumerator = getLogAlphabetNumerator(alphaBeta, rawmeas, numStates, numObs, alphabetSize);
+            final double [][] logAlphabetNumerator = getLogAlphabetNumerator(alphaBeta, symbols, numStates, numObs, alphabetSize);
 
             this.logAlphabetNumerator.put(key, LogMath.elnAddMatrix(this.logAlphabetNumerator.get(key), logAlphabetNumerator));
         }
@@ -506,6 +535,38 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
 
     }
 
+    /* same update as the log domain pass, from the expected counts of the scaled pass */
+    private void addExpectedCounts(final ScaledForwardBackward scaled) {
+        final double [][] logANumerator = new double[numStates][numStates];
+        final double [] logDenominator = new double[numStates];
+
+        for (int i = 0; i < numStates; i++) {
+            for (int j = 0; j < numStates; j++) {
+                logANumerator[i][j] = LogMath.eln(scaled.transitionCounts[i * numStates + j]);
+            }
+
+            logDenominator[i] = LogMath.eln(scaled.stateCounts[i]);
+        }
+
+        for (final Map.Entry<String,double []> entry : scaled.symbolCounts.entrySet()) {
+            final String key = entry.getKey();
+            final double [] counts = entry.getValue();
+            final int alphabetSize = counts.length / numStates;
+
+            final double [][] logAlphabetNumerator = new double[numStates][alphabetSize];
+            for (int iState = 0; iState < numStates; iState++) {
+                for (int iAlphabet = 0; iAlphabet < alphabetSize; iAlphabet++) {
+                    logAlphabetNumerator[iState][iAlphabet] = LogMath.eln(counts[iState * alphabetSize + iAlphabet]);
+                }
+            }
+
+            this.logAlphabetNumerator.put(key, LogMath.elnAddMatrix(this.logAlphabetNumerator.get(key), logAlphabetNumerator));
+        }
+
+        this.logANumerator = LogMath.elnAddMatrix(this.logANumerator, logANumerator);
+        this.logDenominator = LogMath.elnAddVector(this.logDenominator, logDenominator);
+    }
+
     
     private static class AlphaBetaResult {
 
@@ -685,12 +746,19 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
             }
         }
 
+        //only time steps with forbidden transitions get their own copy of logA
+        final Map<Integer,double [][]> logAWithForbiddenStates = Maps.newHashMap();
+        for (final Integer forbiddenTime : forbiddenTransitions.keySet()) {
+            logAWithForbiddenStates.put(forbiddenTime, getLogAWithForbiddenStates(logA, forbiddenTransitions, forbiddenTime));
+        }
+
         for (i = 0; i < numStates; i++) {
             for (j = 0; j < numStates; j++) {
                 double numer = LogMath.LOGZERO;
 
                 for (t = 0; t < numObs - 1; t++) {
-                    double [][] logAThisTimeStep = getLogAWithForbiddenStates(logA,forbiddenTransitions,t);
+                    final double [][] logAForbidden = logAWithForbiddenStates.get(t);
+                    final double [][] logAThisTimeStep = (logAForbidden == null) ? logA : logAForbidden;
 
                     final double tempval1 = LogMath.elnproduct(logalpha[i][t], logAThisTimeStep[i][j]);
                     final double tempval2 = LogMath.elnproduct(logbmap[j][t + 1], logbeta[j][t + 1]);
@@ -721,7 +789,7 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
 
     }
 
-    static double [][] getLogAlphabetNumerator(final AlphaBetaResult alphabeta, final double [] rawdata, final int numStates, final int numObs, final int alphabetSize ) {
+    static double [][] getLogAlphabetNumerator(final AlphaBetaResult alphabeta, final int [] symbols, final int numStates, final int numObs, final int alphabetSize ) {
 
         int iState,iAlphabet,t;
 
@@ -733,7 +801,7 @@ public class MultiObsSequenceAlphabetHiddenMarkovModel {
         for (iState = 0; iState < numStates; iState++) {
 
             for (t = 0; t < numObs; t++) {
-                final int idx = (int)rawdata[t];
+                final int idx = symbols[t];
 
                 assert(idx >= 0 && idx < alphabetSize);
 
@@ -0,0 +1,325 @@
+package com.hello.suripu.algorithm.hmm;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.hello.suripu.algorithm.core.AlgorithmException;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ *  Forward/backward pass of MultiObsSequenceAlphabetHiddenMarkovModel.reestimate in the scaled (non-log) domain.
+ *
+ *  alpha is normalized to sum to one at every time step and beta is scaled by the same normalizers (Rabiner, V.A),
+ *  so the expected counts are plain sums of products, with no log or exp inside the loops over time.
+ *  Emission probabilities are looked up per alphabet symbol, and every time step of them is divided by its max,
+ *  which cancels out in the normalizers.
+ *
+ *  Labels and forbidden transitions are applied exactly like the log domain pass, and the expected counts are the
+ *  same quantities it computes: exp(logalpha + logbeta - likelihood) summed over time.
+ *
+ *  All matrices are flat and row-major, [numObs][numStates] or [numStates][numStates].
+ *  If a normalizer is zero or not finite, e.g. labels no path can satisfy, isSafe() is false and the log domain
+ *  pass has to be used instead.
+ */
+final class ScaledForwardBackward {
+
+    final int numStates;
+    final int numObs;
+
+    //expected number of times in each state, [numStates]
+    final double [] stateCounts;
+
+    //expected number of transitions, [numStates][numStates]
+    final double [] transitionCounts;
+
+    //expected number of times in each state while observing each symbol, [numStates][alphabetSize] by measurement
+    final Map<String,double []> symbolCounts = Maps.newHashMap();
+
+    private boolean safe = true;
+
+    private ScaledForwardBackward(final int numStates, final int numObs) {
+        this.numStates = numStates;
+        this.numObs = numObs;
+        this.stateCounts = new double[numStates];
+        this.transitionCounts = new double[numStates * numStates];
+    }
+
+    boolean isSafe() {
+        return safe;
+    }
+
+    static ScaledForwardBackward compute(final double [][] A, final double [] pi,
+                                         final Map<String,double [][]> alphabetProbsMap,
+                                         final FeatureSequences features,
+                                         final Map<Integer,Integer> labels,
+                                         final Multimap<Integer,Transition> forbiddenTransitions) {
+
+        final int numStates = A.length;
+        final int numObs = features.numObs();
+        final ScaledForwardBackward result = new ScaledForwardBackward(numStates, numObs);
+
+        final double [] a = new double[numStates * numStates];
+        for (int i = 0; i < numStates; i++) {
+            System.arraycopy(A[i], 0, a, i * numStates, numStates);
+        }
+
+        final double [] b = getScaledEmissions(alphabetProbsMap, features, numStates, numObs);
+        if (b == null) {
+            result.safe = false;
+            return result;
+        }
+
+        final int [] labelByTime = getLabelsByTime(labels, numObs);
+
+        final double [] alpha = new double[numObs * numStates];
+        final double [] beta = new double[numObs * numStates];
+        final double [] scale = new double[numObs];
+
+        // w[(t + 1) * numStates + j] = b_j(t + 1) * beta_j(t + 1) / scale(t + 1), shared by beta and the transition counts
+        final double [] w = new double[numObs * numStates];
+
+        //forward, the first time step is never labeled (same as the log domain pass)
+        for (int j = 0; j < numStates; j++) {
+            alpha[j] = pi[j] * b[j];
+        }
+
+        if (!normalize(alpha, 0, numStates, scale, 0)) {
+            result.safe = false;
+            return result;
+        }
+
+        for (int t = 1; t < numObs; t++) {
+            final int prev = (t - 1) * numStates;
+            final int current = t * numStates;
+
+            for (int i = 0; i < numStates; i++) {
+                final double alphaPrev = alpha[prev + i];
+
+                if (alphaPrev == 0.0) {
+                    continue;
+                }
+
+                final int row = i * numStates;
+                for (int j = 0; j < numStates; j++) {
+                    alpha[current + j] += alphaPrev * a[row + j];
+                }
+            }
+
+            for (int j = 0; j < numStates; j++) {
+                alpha[current + j] *= b[current + j];
+            }
+
+            applyLabel(alpha, current, numStates, labelByTime[t]);
+
+            if (!normalize(alpha, current, numStates, scale, t)) {
+                result.safe = false;
+                return result;
+            }
+        }
+
+        //backward, the last time step is never labeled
+        final int last = (numObs - 1) * numStates;
+        Arrays.fill(beta, last, last + numStates, 1.0);
+
+        for (int t = numObs - 2; t >= 0; t--) {
+            final int next = (t + 1) * numStates;
+            final int current = t * numStates;
+
+            for (int j = 0; j < numStates; j++) {
+                w[next + j] = b[next + j] * beta[next + j] / scale[t + 1];
+            }
+
+            for (int i = 0; i < numStates; i++) {
+                final int row = i * numStates;
+                double sum = 0.0;
+                for (int j = 0; j < numStates; j++) {
+                    sum += a[row + j] * w[next + j];
+                }
+                beta[current + i] = sum;
+            }
+
+            applyLabel(beta, current, numStates, labelByTime[t]);
+        }
+
+        //state and symbol counts
+        for (final String key : alphabetProbsMap.keySet()) {
+            final int [] symbols = features.symbols(key);
+
+            if (symbols != null) {
+                result.symbolCounts.put(key, new double[numStates * alphabetProbsMap.get(key)[0].length]);
+            }
+        }
+
+        for (int t = 0; t < numObs; t++) {
+            final int current = t * numStates;
+
+            for (int i = 0; i < numStates; i++) {
+                result.stateCounts[i] += alpha[current + i] * beta[current + i];
+            }
+        }
+
+        for (final Map.Entry<String,double []> entry : result.symbolCounts.entrySet()) {
+            final int [] symbols = features.symbols(entry.getKey());
+            final double [] counts = entry.getValue();
+            final int alphabetSize = counts.length / numStates;
+
+            for (int t = 0; t < numObs; t++) {
+                final int current = t * numStates;
+                final int symbol = symbols[t];
+
+                for (int i = 0; i < numStates; i++) {
+                    counts[i * alphabetSize + symbol] += alpha[current + i] * beta[current + i];
+                }
+            }
+        }
+
+        //transition counts, A is factored out of the sum over time
+        final double [] transitionSums = result.transitionCounts;
+        final boolean [] forbidden = new boolean[numStates * numStates];
+
+        for (int t = 0; t < numObs - 1; t++) {
+            final int current = t * numStates;
+            final int next = (t + 1) * numStates;
+
+            final Collection<Transition> forbiddenAtThisTime = forbiddenTransitions.isEmpty() ? null : forbiddenTransitions.get(t);
+            final boolean hasForbidden = forbiddenAtThisTime != null && !forbiddenAtThisTime.isEmpty();
+
+            if (hasForbidden) {
+                Arrays.fill(forbidden, false);
+                for (final Transition transition : forbiddenAtThisTime) {
+                    forbidden[transition.fromState * numStates + transition.toState] = true;
+                }
+            }
+
+            for (int i = 0; i < numStates; i++) {
+                final double alphaThis = alpha[current + i];
+
+                if (alphaThis == 0.0) {
+                    continue;
+                }
+
+                final int row = i * numStates;
+                for (int j = 0; j < numStates; j++) {
+                    if (hasForbidden && forbidden[row + j]) {
+                        continue;
+                    }
+
+                    transitionSums[row + j] += alphaThis * w[next + j];
+                }
+            }
+        }
+
+        for (int idx = 0; idx < numStates * numStates; idx++) {
+            transitionSums[idx] *= a[idx];
+        }
+
+        return result;
+    }
+
+    /**
+     * @return emission probabilities [numObs][numStates], each time step divided by its max, or null if they underflow
+     */
+    private static double [] getScaledEmissions(final Map<String,double [][]> alphabetProbsMap, final FeatureSequences features,
+                                                final int numStates, final int numObs) {
+        final double [] b = new double[numObs * numStates];
+        Arrays.fill(b, 1.0);
+
+        for (final Map.Entry<String,double [][]> entry : alphabetProbsMap.entrySet()) {
+            final double [][] alphabetProbs = entry.getValue();
+            final int [] symbols = features.symbols(entry.getKey());
+
+            if (symbols == null) {
+                continue;
+            }
+
+            //symbol major, so each time step reads one contiguous row
+            final int alphabetSize = alphabetProbs[0].length;
+            final double [] probsBySymbol = new double[alphabetSize * numStates];
+            for (int iState = 0; iState < numStates; iState++) {
+                for (int iAlphabet = 0; iAlphabet < alphabetSize; iAlphabet++) {
+                    probsBySymbol[iAlphabet * numStates + iState] = alphabetProbs[iState][iAlphabet];
+                }
+            }
+
+            for (int t = 0; t < numObs; t++) {
+                final int idx = symbols[t];
+
+                if (!(idx >= 0 && idx < alphabetSize)) {
+                    throw new AlgorithmException(String.format("in method getLogBMap, index out of bounds for %s, idx=%d, maxidx=%d",entry.getKey(),idx,alphabetSize));
+                }
+
+                final int row = idx * numStates;
+                final int current = t * numStates;
+                for (int iState = 0; iState < numStates; iState++) {
+                    b[current + iState] *= probsBySymbol[row + iState];
+                }
+            }
+        }
+
+        for (int t = 0; t < numObs; t++) {
+            final int current = t * numStates;
+
+            double max = 0.0;
+            for (int iState = 0; iState < numStates; iState++) {
+                max = Math.max(max, b[current + iState]);
+            }
+
+            if (!(max >= Double.MIN_NORMAL)) {
+                return null;
+            }
+
+            for (int iState = 0; iState < numStates; iState++) {
+                b[current + iState] /= max;
+            }
+        }
+
+        return b;
+    }
+
+    private static int [] getLabelsByTime(final Map<Integer,Integer> labels, final int numObs) {
+        final int [] labelByTime = new int[numObs];
+        Arrays.fill(labelByTime, -1);
+
+        for (final Map.Entry<Integer,Integer> entry : labels.entrySet()) {
+            final int t = entry.getKey();
+
+            if (t >= 0 && t < numObs) {
+                labelByTime[t] = entry.getValue();
+            }
+        }
+
+        return labelByTime;
+    }
+
+    private static void applyLabel(final double [] x, final int offset, final int numStates, final int label) {
+        if (label < 0) {
+            return;
+        }
+
+        for (int j = 0; j < numStates; j++) {
+            if (j != label) {
+                x[offset + j] = 0.0;
+            }
+        }
+    }
+
+    private static boolean normalize(final double [] x, final int offset, final int numStates, final double [] scale, final int t) {
+        double sum = 0.0;
+        for (int j = 0; j < numStates; j++) {
+            sum += x[offset + j];
+        }
+
+        if (!(sum >= Double.MIN_NORMAL) || Double.isInfinite(sum)) {
+            return false;
+        }
+
+        for (int j = 0; j < numStates; j++) {
+            x[offset + j] /= sum;
+        }
+
+        scale[t] = sum;
+        return true;
+    }
+}
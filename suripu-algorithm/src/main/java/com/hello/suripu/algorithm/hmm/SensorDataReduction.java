@@ -1,8 +1,8 @@
 package com.hello.suripu.algorithm.hmm;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.primitives.Ints;
 import com.hello.suripu.algorithm.core.AlgorithmException;
 import com.hello.suripu.algorithm.hmm.HiddenMarkovModel;
 import com.hello.suripu.algorithm.hmm.HiddenMarkovModelInterface;
@@ -24,7 +24,7 @@ public class SensorDataReduction {
 
 
 
-    public Map<String,ImmutableList<Integer>> getPathsFromSensorData(final double [][] sensorData) {
+    public FeatureSequences getPathsFromSensorData(final double [][] sensorData) {
 
         final Map<String,List<List<Double>>> inferredProbabiltiesByOutputName = Maps.newHashMap();
 
@@ -33,7 +33,7 @@ public class SensorDataReduction {
         }
 
         final int N = sensorData[0].length;
-        final Map<String,ImmutableList<Integer>> pathsByModelId = Maps.newHashMap();
+        final Map<String,int []> pathsByModelId = Maps.newHashMap();
 
         //FORCE END-STATE of "0", in the future we will probably allow the model to specify the allowable end-states
 
@@ -47,10 +47,10 @@ public class SensorDataReduction {
 
             final HmmDecodedResult hmmDecodedResult = entry.getValue().decode(sensorData, possibleEndStates, MIN_LIKELIHOOD_FOR_TRANSITIONS);
 
-            pathsByModelId.put(entry.getKey(),hmmDecodedResult.bestPath);
+            pathsByModelId.put(entry.getKey(), Ints.toArray(hmmDecodedResult.bestPath));
         }
 
-        return pathsByModelId;
+        return FeatureSequences.create(pathsByModelId, false);
     }
 
 }
@@ -0,0 +1,154 @@
+package com.hello.suripu.algorithm.hmm;
+
+import com.google.common.collect.Multimap;
+
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ *  Scratch buffers for viterbi decoding, so decoding a batch of models does not allocate per call or per time step.
+ *
+ *  All matrices are flat and row-major: phi, vindices and logbmap are [numObs][numStates], logA is [numStates][numStates].
+ *  Buffers only grow, a workspace sized for the longest night is reused for every shorter one.
+ *
+ *  A workspace is not thread safe. Either own one per thread or use forCurrentThread().
+ */
+public class ViterbiWorkspace {
+
+    private static final ThreadLocal<ViterbiWorkspace> WORKSPACES = new ThreadLocal<ViterbiWorkspace>() {
+        @Override
+        protected ViterbiWorkspace initialValue() {
+            return new ViterbiWorkspace();
+        }
+    };
+
+    double [] phi = new double[0];
+    int [] vindices = new int[0];
+    double [] logbmap = new double[0];
+
+    double [] logA = new double[0];
+    double [] logAThisTimeStep = new double[0];
+
+    double [] scores = new double[0];
+    int [] order = new int[0];
+    int [] zeta = new int[0];
+
+    double [] logAlphabet = new double[0];
+
+    //forbidden transitions bucketed by time step, those at time t are [forbiddenOffsets[t], forbiddenOffsets[t + 1])
+    int [] forbiddenOffsets = new int[0];
+    int [] forbiddenFrom = new int[0];
+    int [] forbiddenTo = new int[0];
+
+    public static ViterbiWorkspace forCurrentThread() {
+        return WORKSPACES.get();
+    }
+
+    void ensureCapacity(final int numStates, final int numObs) {
+        final int matrixSize = numStates * numObs;
+
+        if (phi.length < matrixSize) {
+            phi = new double[matrixSize];
+            vindices = new int[matrixSize];
+            logbmap = new double[matrixSize];
+        }
+
+        if (logA.length < numStates * numStates) {
+            logA = new double[numStates * numStates];
+            logAThisTimeStep = new double[numStates * numStates];
+        }
+
+        if (scores.length < numStates) {
+            scores = new double[numStates];
+            order = new int[numStates];
+            zeta = new int[numStates];
+        }
+    }
+
+    double [] logAlphabet(final int size) {
+        if (logAlphabet.length < size) {
+            logAlphabet = new double[size];
+        }
+
+        return logAlphabet;
+    }
+
+    /**
+     * Buckets the forbidden transitions by time step, transitions outside of [1, numObs) can never apply and are dropped
+     */
+    void setForbiddenTransitions(final Multimap<Integer,Transition> forbiddenTransitions, final int numObs) {
+        if (forbiddenOffsets.length < numObs + 1) {
+            forbiddenOffsets = new int[numObs + 1];
+        }
+
+        Arrays.fill(forbiddenOffsets, 0, numObs + 1, 0);
+
+        int count = 0;
+        for (final Map.Entry<Integer, Transition> entry : forbiddenTransitions.entries()) {
+            final int t = entry.getKey();
+            if (t >= 1 && t < numObs) {
+                forbiddenOffsets[t + 1]++;
+                count++;
+            }
+        }
+
+        for (int t = 0; t < numObs; t++) {
+            forbiddenOffsets[t + 1] += forbiddenOffsets[t];
+        }
+
+        if (forbiddenFrom.length < count) {
+            forbiddenFrom = new int[count];
+            forbiddenTo = new int[count];
+        }
+
+        //fill using the offsets as cursors, then shift them back
+        for (final Map.Entry<Integer, Transition> entry : forbiddenTransitions.entries()) {
+            final int t = entry.getKey();
+            if (t >= 1 && t < numObs) {
+                final int k = forbiddenOffsets[t]++;
+                forbiddenFrom[k] = entry.getValue().fromState;
+                forbiddenTo[k] = entry.getValue().toState;
+            }
+        }
+
+        for (int t = numObs; t > 0; t--) {
+            forbiddenOffsets[t] = forbiddenOffsets[t - 1];
+        }
+        forbiddenOffsets[0] = 0;
+    }
+
+    /**
+     * @return the log transition matrix for time step t, logA unless there are forbidden transitions at t
+     */
+    double [] getLogAThisTimeStep(final int numStates, final int t, final double penalty) {
+        final int begin = forbiddenOffsets[t];
+        final int end = forbiddenOffsets[t + 1];
+
+        if (begin == end) {
+            return logA;
+        }
+
+        System.arraycopy(logA, 0, logAThisTimeStep, 0, numStates * numStates);
+
+        for (int k = begin; k < end; k++) {
+            logAThisTimeStep[forbiddenFrom[k] * numStates + forbiddenTo[k]] = penalty;
+        }
+
+        return logAThisTimeStep;
+    }
+
+    /**
+     * Fills order[0, numStates) with the state indices sorted by descending score.
+     * Stable, so equal scores keep the lower state first.
+     */
+    void sortByDescendingScore(final int numStates) {
+        for (int i = 0; i < numStates; i++) {
+            int k = i;
+            while (k > 0 && scores[order[k - 1]] < scores[i]) {
+                order[k] = order[k - 1];
+                k--;
+            }
+            order[k] = i;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.hello.suripu.algorithm.hmm;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.hello.suripu.algorithm.core.AlgorithmException;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class FeatureSequencesTest {
+
+    @Test
+    public void testCreateFromPaths() {
+        final Map<String,List<Integer>> paths = Maps.newHashMap();
+        paths.put("motion", ImmutableList.of(0, 1, 2, 1));
+        paths.put("light", ImmutableList.of(3, 3, 0, 0));
+
+        final FeatureSequences features = FeatureSequences.createFromPaths(paths);
+
+        TestCase.assertEquals(4, features.numObs());
+        TestCase.assertTrue(features.contains("motion"));
+        TestCase.assertFalse(features.contains("sound"));
+        TestCase.assertEquals(2, features.get("motion", 2));
+        TestCase.assertTrue(Arrays.equals(new int[]{3, 3, 0, 0}, features.copyOf("light")));
+    }
+
+    @Test
+    public void testIsImmutable() {
+        final int [] symbols = {0, 1, 0};
+        final Map<String,int []> symbolsById = Maps.newHashMap();
+        symbolsById.put("motion", symbols);
+
+        final FeatureSequences features = FeatureSequences.create(symbolsById);
+
+        symbols[1] = 5;
+        features.copyOf("motion")[2] = 5;
+
+        TestCase.assertTrue(Arrays.equals(new int[]{0, 1, 0}, features.copyOf("motion")));
+    }
+
+    @Test
+    public void testSameSequencesAsRawMeasurements() {
+        final Map<String,double [][]> rawmeasurements = Maps.newHashMap();
+        rawmeasurements.put("motion", new double[][]{{0, 1, 1, 0}});
+
+        final MultiObsSequence meas = new MultiObsSequence(rawmeasurements, Maps.<Integer, Integer>newHashMap(), null);
+
+        TestCase.assertEquals(4, meas.features.numObs());
+        TestCase.assertTrue(Arrays.equals(new int[]{0, 1, 1, 0}, meas.features.copyOf("motion")));
+    }
+
+    @Test(expected = AlgorithmException.class)
+    public void testRejectsSequencesOfDifferentLengths() {
+        final Map<String,int []> symbolsById = Maps.newHashMap();
+        symbolsById.put("motion", new int[]{0, 1, 0});
+        symbolsById.put("light", new int[]{0, 1});
+
+        FeatureSequences.create(symbolsById);
+    }
+}
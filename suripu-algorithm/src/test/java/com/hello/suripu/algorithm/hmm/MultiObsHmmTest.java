@@ -6,6 +6,7 @@ import com.google.common.collect.Multimap;
 import junit.framework.TestCase;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.Map;
 
 /**
@@ -106,4 +107,58 @@ public class MultiObsHmmTest {
 
     }
 
+    private static MultiObsSequence getAlternatingSequence(final int numObs, final boolean forbidZeroToOne) {
+        final double [][] raw = new double[1][numObs];
+        for (int t = 0; t < numObs; t++) {
+            raw[0][t] = (t / 20) % 2;
+        }
+
+        final Map<String, double[][]> rawmeasurements = Maps.newHashMap();
+        rawmeasurements.put("foo1", raw);
+
+        final Multimap<Integer,Transition> forbiddenTransitions = ArrayListMultimap.create();
+        if (forbidZeroToOne) {
+            for (int t = 1; t < numObs; t++) {
+                forbiddenTransitions.put(t, new Transition(0, 1));
+            }
+        }
+
+        return new MultiObsSequence(rawmeasurements, Maps.<Integer, Integer>newHashMap(), forbiddenTransitions);
+    }
+
+    @Test
+    public void testDecodeWithReusedWorkspace() {
+        final double [][] logNumerator1 = LogMath.eln(new double[][]{{0.9,0.1},{0.1,0.9},{0.5,0.5}});
+        final double [][] logA = LogMath.eln(new double[][]{{0.9,0.05,0.05},{0.05,0.9,0.05},{0.05,0.05,0.9}});
+        final double [] logDenominator = {0.0,0.0,0.0};
+        final double [] pi = {0.5,0.5,0.0};
+
+        final Map<String,double [][]> logNumerators = Maps.newHashMap();
+        logNumerators.put("foo1", logNumerator1);
+
+        final MultiObsSequenceAlphabetHiddenMarkovModel hmm = new MultiObsSequenceAlphabetHiddenMarkovModel(logNumerators,logA,logDenominator,pi);
+
+        final int [] endStates = {0,1};
+        final int [] minDurations = {5,5,5};
+
+        final ViterbiWorkspace workspace = new ViterbiWorkspace();
+        final MultiObsSequence longSequence = getAlternatingSequence(200, false);
+        final MultiObsSequence shortSequence = getAlternatingSequence(90, true);
+
+        final MultiObsSequenceAlphabetHiddenMarkovModel.Result longResult = hmm.decodeWithConstraints(longSequence, endStates, minDurations, workspace);
+        final MultiObsSequenceAlphabetHiddenMarkovModel.Result shortResult = hmm.decodeWithConstraints(shortSequence, endStates, minDurations, workspace);
+        final MultiObsSequenceAlphabetHiddenMarkovModel.Result shortResultFresh = hmm.decodeWithConstraints(shortSequence, endStates, minDurations, new ViterbiWorkspace());
+
+        TestCase.assertEquals(200, longResult.path.length);
+        TestCase.assertEquals(1, longResult.path[25]);
+        TestCase.assertEquals(0, longResult.path[45]);
+
+        TestCase.assertTrue(Arrays.equals(shortResultFresh.path, shortResult.path));
+        TestCase.assertEquals(shortResultFresh.pathScore, shortResult.pathScore, 0.0);
+
+        for (int t = 1; t < shortResult.path.length; t++) {
+            TestCase.assertFalse(shortResult.path[t - 1] == 0 && shortResult.path[t] == 1);
+        }
+    }
+
 }
@@ -0,0 +1,159 @@
+package com.hello.suripu.algorithm.hmm;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import junit.framework.TestCase;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+public class ScaledForwardBackwardTest {
+
+    private static final double TOLERANCE = 1e-8;
+    private static final int NUM_STATES = 4;
+    private static final int NUM_OBS = 288;
+
+    private static double [][] randomLogMatrix(final Random random, final int m, final int n, final boolean withZeros) {
+        final double [][] x = new double[m][n];
+        for (int j = 0; j < m; j++) {
+            for (int i = 0; i < n; i++) {
+                x[j][i] = (withZeros && i > j + 1) ? 0.0 : 0.05 + random.nextDouble();
+            }
+        }
+
+        return LogMath.eln(x);
+    }
+
+    private static MultiObsSequenceAlphabetHiddenMarkovModel randomModel(final long seed) {
+        final Random random = new Random(seed);
+
+        final Map<String,double [][]> logNumerators = Maps.newHashMap();
+        logNumerators.put("motion", randomLogMatrix(random, NUM_STATES, 6, false));
+        logNumerators.put("light", randomLogMatrix(random, NUM_STATES, 3, false));
+        logNumerators.put("sound", randomLogMatrix(random, NUM_STATES, 4, false));
+
+        //no skipping ahead more than one state
+        final double [][] logA = randomLogMatrix(random, NUM_STATES, NUM_STATES, true);
+
+        final double [] logDenominator = new double[NUM_STATES];
+        final double [] pi = {1.0, 0.0, 0.0, 0.0};
+
+        return new MultiObsSequenceAlphabetHiddenMarkovModel(logNumerators, logA, logDenominator, pi);
+    }
+
+    private static MultiObsSequence randomSequence(final long seed, final boolean withForbiddenTransitions) {
+        final Random random = new Random(seed);
+
+        final Map<String,int []> symbolsById = Maps.newHashMap();
+        symbolsById.put("motion", randomSymbols(random, 6));
+        symbolsById.put("light", randomSymbols(random, 3));
+        symbolsById.put("sound", randomSymbols(random, 4));
+        symbolsById.put("ignored", randomSymbols(random, 10));
+
+        final Map<Integer,Integer> labels = Maps.newHashMap();
+        for (int t = 0; t < 20; t++) {
+            labels.put(t, 0);
+        }
+        for (int t = 120; t < 160; t++) {
+            labels.put(t, 2);
+        }
+
+        final Multimap<Integer,Transition> forbiddenTransitions = ArrayListMultimap.create();
+        if (withForbiddenTransitions) {
+            for (int t = 30; t < NUM_OBS; t += 7) {
+                forbiddenTransitions.put(t, new Transition(1, 2));
+                forbiddenTransitions.put(t, new Transition(2, 3));
+            }
+        }
+
+        return new MultiObsSequence(FeatureSequences.create(symbolsById), labels, forbiddenTransitions);
+    }
+
+    private static int [] randomSymbols(final Random random, final int alphabetSize) {
+        final int [] symbols = new int[NUM_OBS];
+        for (int t = 0; t < NUM_OBS; t++) {
+            symbols[t] = random.nextInt(alphabetSize);
+        }
+
+        return symbols;
+    }
+
+    private static void assertClose(final double [] expected, final double [] actual) {
+        TestCase.assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] == LogMath.LOGZERO) {
+                TestCase.assertEquals(LogMath.LOGZERO, actual[i], 0.0);
+                continue;
+            }
+
+            TestCase.assertEquals(expected[i], actual[i], TOLERANCE * Math.max(1.0, Math.abs(expected[i])));
+        }
+    }
+
+    private static void assertSameModel(final MultiObsSequenceAlphabetHiddenMarkovModel expected, final MultiObsSequenceAlphabetHiddenMarkovModel actual) {
+        assertClose(expected.getLogDenominator(), actual.getLogDenominator());
+
+        for (int i = 0; i < NUM_STATES; i++) {
+            assertClose(expected.getLogANumerator()[i], actual.getLogANumerator()[i]);
+        }
+
+        TestCase.assertEquals(expected.getLogAlphabetNumerator().keySet(), actual.getLogAlphabetNumerator().keySet());
+        for (final String key : expected.getLogAlphabetNumerator().keySet()) {
+            for (int i = 0; i < NUM_STATES; i++) {
+                assertClose(expected.getLogAlphabetNumerator().get(key)[i], actual.getLogAlphabetNumerator().get(key)[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testScaledMatchesLogDomain() {
+        for (long seed = 0; seed < 10; seed++) {
+            final MultiObsSequence meas = randomSequence(seed, false);
+
+            final MultiObsSequenceAlphabetHiddenMarkovModel logDomain = randomModel(seed);
+            final MultiObsSequenceAlphabetHiddenMarkovModel scaled = randomModel(seed);
+
+            //make sure this is not comparing the log domain fallback with itself
+            TestCase.assertTrue(ScaledForwardBackward.compute(scaled.getAMatrix(), scaled.getPi(), scaled.getAlphabetMatrices(),
+                    meas.features, meas.labels, meas.forbiddenTransitions).isSafe());
+
+            TestCase.assertTrue(logDomain.reestimate(meas, 1.0, MultiObsSequenceAlphabetHiddenMarkovModel.ForwardBackward.LOG));
+            TestCase.assertTrue(scaled.reestimate(meas, 1.0, MultiObsSequenceAlphabetHiddenMarkovModel.ForwardBackward.SCALED));
+
+            assertSameModel(logDomain, scaled);
+        }
+    }
+
+    @Test
+    public void testScaledMatchesLogDomainWithForbiddenTransitions() {
+        final MultiObsSequence meas = randomSequence(42L, true);
+
+        final MultiObsSequenceAlphabetHiddenMarkovModel logDomain = randomModel(42L);
+        final MultiObsSequenceAlphabetHiddenMarkovModel scaled = randomModel(42L);
+
+        //a few rounds, so the model drifts away from the random start
+        for (int i = 0; i < 3; i++) {
+            logDomain.reestimate(meas, 1.0, MultiObsSequenceAlphabetHiddenMarkovModel.ForwardBackward.LOG);
+            scaled.reestimate(meas, 1.0, MultiObsSequenceAlphabetHiddenMarkovModel.ForwardBackward.SCALED);
+        }
+
+        assertSameModel(logDomain, scaled);
+    }
+
+    @Test
+    public void testUnreachableLabelIsNotSafe() {
+        final MultiObsSequenceAlphabetHiddenMarkovModel hmm = randomModel(1L);
+        final MultiObsSequence meas = randomSequence(1L, false);
+
+        //pi only allows state 0, and state 0 can not reach state 3 in one step
+        meas.labels.clear();
+        meas.labels.put(1, 3);
+
+        final ScaledForwardBackward scaled = ScaledForwardBackward.compute(hmm.getAMatrix(), hmm.getPi(), hmm.getAlphabetMatrices(),
+                meas.features, meas.labels, meas.forbiddenTransitions);
+
+        TestCase.assertFalse(scaled.isSafe());
+    }
+}
@@ -0,0 +1,45 @@
+package com.hello.suripu.benchmarks;
+
+import com.google.common.base.Optional;
+import com.hello.suripu.core.db.util.Bucketing;
+import com.hello.suripu.core.models.AllSensorSampleMap;
+import com.hello.suripu.core.models.Calibration;
+import com.hello.suripu.core.models.Device;
+import com.hello.suripu.core.models.DeviceData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calibration and bucketing of a day of sense rows, as done for every timeline and room conditions query.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BucketingBenchmark {
+
+    private List<DeviceData> deviceData;
+
+    @Setup
+    public void setUp() {
+        deviceData = FixtureNight.load().deviceData();
+    }
+
+    @Benchmark
+    public AllSensorSampleMap populateMapAll() {
+        return Bucketing.populateMapAll(deviceData, Optional.<Device.Color>absent(), Optional.<Calibration>absent(), false);
+    }
+}
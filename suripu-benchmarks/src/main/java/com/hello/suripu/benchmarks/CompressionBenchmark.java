@@ -0,0 +1,53 @@
+package com.hello.suripu.benchmarks;
+
+import com.hello.suripu.core.db.util.Compression;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a serialized timeline, the payload TimelineDAODynamoDB compresses before caching it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final String TIMELINE_RESOURCE = "fixtures/timeline/timeline-with-statistics.json";
+
+    @Param({"NONE", "GZIP", "BZIP2", "SNAPPY", "LZ4"})
+    public Compression.CompressionType compressionType;
+
+    private byte [] raw;
+    private byte [] compressed;
+
+    @Setup
+    public void setUp() throws IOException {
+        raw = FixtureNight.resourceAsBytes(TIMELINE_RESOURCE);
+        compressed = Compression.compress(raw, compressionType);
+    }
+
+    @Benchmark
+    public byte [] compress() throws IOException {
+        return Compression.compress(raw, compressionType);
+    }
+
+    @Benchmark
+    public byte [] decompress() throws IOException {
+        return Compression.decompress(compressed, compressionType);
+    }
+}
@@ -0,0 +1,185 @@
+package com.hello.suripu.benchmarks;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.io.Resources;
+import com.hello.suripu.core.algorithmintegration.NeuralNetAlgorithm;
+import com.hello.suripu.core.algorithmintegration.NeuralNetAlgorithmOutput;
+import com.hello.suripu.core.algorithmintegration.OneDaysSensorData;
+import com.hello.suripu.core.algorithmintegration.OneDaysTrackerMotion;
+import com.hello.suripu.core.models.AllSensorSampleList;
+import com.hello.suripu.core.models.DeviceData;
+import com.hello.suripu.core.models.Sample;
+import com.hello.suripu.core.models.Sensor;
+import com.hello.suripu.core.models.TimelineFeedback;
+import com.hello.suripu.core.models.TrackerMotion;
+import com.hello.suripu.core.models.UserBioInfo;
+import com.hello.suripu.core.util.CSVLoader;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Night of 2016-05-20 for account 1751, recorded in suripu-core's test fixtures (see NeuralNetFourEventAlgTest).
+ */
+public class FixtureNight {
+
+    public static final DateTime DATE = DateTime.parse("2016-05-20").withZone(DateTimeZone.UTC);
+    public static final int TIMEZONE_OFFSET_MILLIS = -25200000;
+    public static final long ACCOUNT_ID = 1751L;
+
+    private static final String TRACKER_MOTION_RESOURCE = "fixtures/tracker_motion/nn_raw_tracker_motion.csv";
+    private static final String LIGHT_RESOURCE = "fixtures/algorithm/nn_raw_light.csv";
+    private static final String PEAK_DISTURBANCE_RESOURCE = "fixtures/algorithm/nn_raw_peak_disturbance.csv";
+    private static final String NUM_DISTURBANCES_RESOURCE = "fixtures/algorithm/nn_raw_noise_disturbance.csv";
+    private static final String WAVE_COUNT_RESOURCE = "fixtures/algorithm/nn_raw_wave_count.csv";
+    private static final String FOUR_EVENT_OUTPUT_RESOURCE = "fixtures/neuralNet/neuralNetFourEventOutput.csv";
+
+    private static final Ordering<TrackerMotion> BY_TIMESTAMP = new Ordering<TrackerMotion>() {
+        @Override
+        public int compare(final TrackerMotion left, final TrackerMotion right) {
+            return Long.compare(left.timestamp, right.timestamp);
+        }
+    };
+
+    public final ImmutableList<TrackerMotion> trackerMotions;
+    public final List<Sample> light;
+    public final List<Sample> peakDisturbance;
+    public final List<Sample> numDisturbances;
+    public final List<Sample> waveCount;
+
+    private FixtureNight(final ImmutableList<TrackerMotion> trackerMotions, final List<Sample> light, final List<Sample> peakDisturbance,
+                         final List<Sample> numDisturbances, final List<Sample> waveCount) {
+        this.trackerMotions = trackerMotions;
+        this.light = light;
+        this.peakDisturbance = peakDisturbance;
+        this.numDisturbances = numDisturbances;
+        this.waveCount = waveCount;
+    }
+
+    public static FixtureNight load() {
+        return new FixtureNight(
+                BY_TIMESTAMP.immutableSortedCopy(CSVLoader.loadTrackerMotionFromCSV(TRACKER_MOTION_RESOURCE)),
+                CSVLoader.loadSensorDataFromCSV(LIGHT_RESOURCE),
+                CSVLoader.loadSensorDataFromCSV(PEAK_DISTURBANCE_RESOURCE),
+                CSVLoader.loadSensorDataFromCSV(NUM_DISTURBANCES_RESOURCE),
+                CSVLoader.loadSensorDataFromCSV(WAVE_COUNT_RESOURCE));
+    }
+
+    public DateTime startTimeLocalUTC() {
+        return DATE.withHourOfDay(20);
+    }
+
+    public DateTime endTimeLocalUTC() {
+        return DATE.plusDays(1).withHourOfDay(12);
+    }
+
+    public AllSensorSampleList allSensorSampleList() {
+        final AllSensorSampleList allSensorSampleList = new AllSensorSampleList();
+        allSensorSampleList.add(Sensor.LIGHT, light);
+        allSensorSampleList.add(Sensor.SOUND_PEAK_DISTURBANCE, peakDisturbance);
+        allSensorSampleList.add(Sensor.SOUND_NUM_DISTURBANCES, numDisturbances);
+        allSensorSampleList.add(Sensor.WAVE_COUNT, waveCount);
+        return allSensorSampleList;
+    }
+
+    public OneDaysSensorData oneDaysSensorData() {
+        final UserBioInfo userBioInfo = new UserBioInfo(0.322130898021 * 90, 0, 1, 0, 0);
+        return new OneDaysSensorData(allSensorSampleList(),
+                new OneDaysTrackerMotion(trackerMotions), new OneDaysTrackerMotion(ImmutableList.<TrackerMotion>of()),
+                ImmutableList.<TimelineFeedback>of(),
+                DATE, startTimeLocalUTC(), endTimeLocalUTC(), DATE.plusDays(1).withHourOfDay(13),
+                TIMEZONE_OFFSET_MILLIS, userBioInfo);
+    }
+
+    /**
+     * Per-minute features the sleep net is fed, indexed by NeuralNetAlgorithm.SensorIndices
+     */
+    public double [][] neuralNetInput() {
+        try {
+            return new NeuralNetInputExtractor().extract(oneDaysSensorData());
+        } catch (Exception e) {
+            throw new IllegalStateException("could not bin fixture night", e);
+        }
+    }
+
+    /**
+     * Recorded output of the four event net for this night, [9][1201]
+     */
+    public static double [][] fourEventNetOutput() {
+        final String [] lines = resourceAsString(FOUR_EVENT_OUTPUT_RESOURCE).split("\\n");
+        final int numStates = 9;
+        final double [][] output = new double[numStates][lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            final String [] columns = lines[i].split(",");
+            for (int j = 0; j < numStates; j++) {
+                output[j][i] = Float.parseFloat(columns[j + 1].trim());
+            }
+        }
+        return output;
+    }
+
+    /**
+     * One row per minute, the way DeviceDataDAODynamoDB reads them back. Only light, sound and waves were recorded
+     * for this night, the other sensors get constant values.
+     */
+    public List<DeviceData> deviceData() {
+        final List<DeviceData> deviceData = Lists.newArrayListWithCapacity(light.size());
+        for (int i = 0; i < light.size(); i++) {
+            final Sample sample = light.get(i);
+            deviceData.add(new DeviceData.Builder()
+                    .withAccountId(ACCOUNT_ID)
+                    .withDeviceId(1L)
+                    .withExternalDeviceId("sense")
+                    .withDateTimeUTC(new DateTime(sample.dateTime, DateTimeZone.UTC))
+                    .withOffsetMillis(sample.offsetMillis)
+                    .withFirmwareVersion(1)
+                    .withAmbientLight((int) sample.value)
+                    .withAmbientTemperature(2150)
+                    .withAmbientHumidity(4200)
+                    .withAmbientAirQualityRaw(120)
+                    .withAmbientDustMax(0)
+                    .withAmbientDustMin(0)
+                    .withAmbientDustVariance(0)
+                    .withWaveCount((int) waveCount.get(i).value)
+                    .withHoldCount(0)
+                    .withAudioNumDisturbances((int) numDisturbances.get(i).value)
+                    .withAlreadyCalibratedAudioPeakDisturbancesDB((int) peakDisturbance.get(i).value)
+                    .withAlreadyCalibratedAudioPeakBackgroundDB(0)
+                    .withAlreadyCalibratedPeakEnergyDB(0)
+                    .build());
+        }
+        return deviceData;
+    }
+
+    public static String resourceAsString(final String resource) {
+        try {
+            return Resources.toString(Resources.getResource(resource), Charsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read " + resource, e);
+        }
+    }
+
+    public static byte [] resourceAsBytes(final String resource) {
+        try {
+            return Resources.toByteArray(Resources.getResource(resource));
+        } catch (IOException e) {
+            throw new IllegalStateException("could not read " + resource, e);
+        }
+    }
+
+    private static class NeuralNetInputExtractor extends NeuralNetAlgorithm {
+        NeuralNetInputExtractor() {
+            super((netId, sensorData) -> Optional.<NeuralNetAlgorithmOutput>absent());
+        }
+
+        double [][] extract(final OneDaysSensorData oneDaysSensorData) throws Exception {
+            return getSensorData(oneDaysSensorData);
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.hello.suripu.benchmarks;
+
+import com.hello.suripu.algorithm.hmm.HiddenMarkovModelFactory;
+import com.hello.suripu.algorithm.hmm.HiddenMarkovModelInterface;
+import com.hello.suripu.algorithm.hmm.HmmDecodedResult;
+import com.hello.suripu.algorithm.hmm.HmmPdfInterface;
+import com.hello.suripu.algorithm.hmm.PoissonPdf;
+import com.hello.suripu.core.algorithmintegration.NeuralNetAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Viterbi decode of the fixture night's per-minute motion durations with OnBedBounding's on-bed model.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class HiddenMarkovModelLogMathBenchmark {
+
+    private static final double MIN_HMM_PDF_EVAL = 1e-320;
+
+    private HiddenMarkovModelInterface hmm;
+    private double [][] observations;
+    private Integer [] possibleEndStates;
+
+    @Setup
+    public void setUp() {
+        final HmmPdfInterface [] motionModels = {new PoissonPdf(0.01, 0), new PoissonPdf(0.1, 0), new PoissonPdf(1.0, 0), new PoissonPdf(5.0, 0)};
+        final HmmPdfInterface [] obsModels = {motionModels[0], motionModels[2], motionModels[3], motionModels[2], motionModels[1], motionModels[0]};
+
+        final double [][] A = new double[obsModels.length][obsModels.length];
+        A[0][0] = 0.98; A[0][1] = 0.01; A[0][2] = 0.01;
+        A[1][0] = 0.99; A[1][1] = 0.01;
+        A[2][2] = 0.59; A[2][3] = 0.20; A[2][4] = 0.20; A[2][5] = 0.01;
+        A[3][3] = 0.80; A[3][4] = 0.20;
+        A[4][2] = 0.01; A[4][3] = 0.01; A[4][4] = 0.98;
+        A[5][5] = 1.0;
+
+        final double [] pi = new double[obsModels.length];
+        pi[0] = 9.0;
+        pi[1] = 0.1;
+
+        hmm = HiddenMarkovModelFactory.create(HiddenMarkovModelFactory.HmmType.LOGMATH, obsModels.length, A, pi, obsModels, 0);
+
+        final double [][] x = FixtureNight.load().neuralNetInput();
+        observations = new double[][]{x[NeuralNetAlgorithm.SensorIndices.MY_MOTION_DURATION.index()]};
+        possibleEndStates = new Integer[]{obsModels.length - 1};
+    }
+
+    @Benchmark
+    public HmmDecodedResult decode() {
+        return hmm.decode(observations, possibleEndStates, MIN_HMM_PDF_EVAL);
+    }
+}
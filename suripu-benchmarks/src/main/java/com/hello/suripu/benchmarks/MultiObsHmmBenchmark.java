@@ -0,0 +1,116 @@
+package com.hello.suripu.benchmarks;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.hello.suripu.algorithm.hmm.FeatureSequences;
+import com.hello.suripu.algorithm.hmm.MultiObsSequence;
+import com.hello.suripu.algorithm.hmm.MultiObsSequenceAlphabetHiddenMarkovModel;
+import com.hello.suripu.algorithm.hmm.Transition;
+import com.hello.suripu.core.algorithmintegration.LabelMaker;
+import com.hello.suripu.core.algorithmintegration.OnlineHmmSensorDataBinning;
+import com.hello.suripu.core.algorithmintegration.TransitionRestriction;
+import com.hello.suripu.core.models.Event;
+import com.hello.suripu.core.models.OnlineHmmData;
+import com.hello.suripu.core.models.OnlineHmmModelParams;
+import com.hello.suripu.core.models.OnlineHmmPriors;
+import com.hello.suripu.core.models.TimelineFeedback;
+import com.hello.suripu.core.models.TrackerMotion;
+import com.hello.suripu.core.util.DeserializedFeatureExtractionWithParams;
+import com.hello.suripu.core.util.FeatureExtractionModelData;
+import org.apache.commons.codec.binary.Base64;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Online HMM on the fixture night: the feature extraction layer turns the binned night into alphabet sequences,
+ * the seed sleep model decodes them and is re-estimated against feedback, like OnlineHmm does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class MultiObsHmmBenchmark {
+
+    private static final String FEATURE_EXTRACTION_RESOURCE = "fixtures/algorithm/featureextractionlayer.bin";
+    private static final String SEED_MODEL_RESOURCE = "fixtures/algorithm/normal3.model";
+    private static final double PRIORS_WEIGHT_AS_NUMBER_OF_UPDATES = 5.0;
+
+    @Param({"SCALED", "LOG"})
+    public MultiObsSequenceAlphabetHiddenMarkovModel.ForwardBackward forwardBackward;
+
+    private OnlineHmmModelParams params;
+    private MultiObsSequence decodeSequence;
+    private MultiObsSequence labeledSequence;
+
+    @Setup
+    public void setUp() {
+        final FixtureNight night = FixtureNight.load();
+
+        final FeatureExtractionModelData featureExtractionModelData = new FeatureExtractionModelData(Optional.<UUID>absent());
+        featureExtractionModelData.deserialize(Base64.decodeBase64(FixtureNight.resourceAsBytes(FEATURE_EXTRACTION_RESOURCE)));
+        final DeserializedFeatureExtractionWithParams featureExtraction = featureExtractionModelData.getDeserializedData();
+
+        final long startTimeUtc = night.startTimeLocalUTC().minusMillis(FixtureNight.TIMEZONE_OFFSET_MILLIS).getMillis();
+        final long endTimeUtc = night.endTimeLocalUTC().minusMillis(FixtureNight.TIMEZONE_OFFSET_MILLIS).getMillis();
+
+        final OnlineHmmSensorDataBinning.BinnedData binnedData = OnlineHmmSensorDataBinning.getBinnedSensorData(
+                night.allSensorSampleList(), night.trackerMotions, ImmutableList.<TrackerMotion>of(),
+                featureExtraction.params, startTimeUtc, endTimeUtc, FixtureNight.TIMEZONE_OFFSET_MILLIS).get();
+
+        final FeatureSequences features = featureExtraction.sensorDataReduction.getPathsFromSensorData(binnedData.data);
+
+        final OnlineHmmPriors seedModel = OnlineHmmPriors.createFromProtoBuf(FixtureNight.resourceAsBytes(SEED_MODEL_RESOURCE)).get();
+        params = seedModel.modelsByOutputId.get(OnlineHmmData.OUTPUT_MODEL_SLEEP).values().iterator().next();
+
+        final Multimap<Integer, Transition> forbiddenTransitions = ArrayListMultimap.create();
+        for (final TransitionRestriction restriction : params.transitionRestrictions) {
+            forbiddenTransitions.putAll(restriction.getRestrictions(features));
+        }
+        decodeSequence = MultiObsSequence.createModelPathsToMultiObsSequence(features, forbiddenTransitions, Optional.<Map<Integer, Integer>>absent());
+
+        final String dateOfNight = FixtureNight.DATE.toString("yyyy-MM-dd");
+        final ImmutableList<TimelineFeedback> feedback = ImmutableList.of(
+                TimelineFeedback.createMarkedCorrect(dateOfNight, "22:30", Event.Type.SLEEP, FixtureNight.ACCOUNT_ID),
+                TimelineFeedback.createMarkedCorrect(dateOfNight, "06:45", Event.Type.WAKE_UP, FixtureNight.ACCOUNT_ID));
+        final Map<String, Map<Integer, Integer>> labels = new LabelMaker(Optional.<UUID>absent())
+                .getLabelsFromEvents(FixtureNight.TIMEZONE_OFFSET_MILLIS, binnedData.t0, endTimeUtc, binnedData.numMinutesInWindow, feedback);
+        labeledSequence = MultiObsSequence.createModelPathsToMultiObsSequence(features, ArrayListMultimap.<Integer, Transition>create(),
+                Optional.of(labels.get(OnlineHmmData.OUTPUT_MODEL_SLEEP)));
+    }
+
+    private MultiObsSequenceAlphabetHiddenMarkovModel newModel() {
+        // re-estimation replaces entries of the alphabet map, every invocation gets its own copy of it
+        return new MultiObsSequenceAlphabetHiddenMarkovModel(Maps.newHashMap(params.logAlphabetNumerators),
+                params.logTransitionMatrixNumerator, params.logDenominator, params.pi);
+    }
+
+    @Benchmark
+    public MultiObsSequenceAlphabetHiddenMarkovModel.Result decodeWithConstraints() {
+        return newModel().decodeWithConstraints(decodeSequence, params.endStates, params.minStateDurations);
+    }
+
+    @Benchmark
+    public MultiObsSequenceAlphabetHiddenMarkovModel reestimate() {
+        final MultiObsSequenceAlphabetHiddenMarkovModel hmm = newModel();
+        hmm.reestimate(labeledSequence, PRIORS_WEIGHT_AS_NUMBER_OF_UPDATES, forwardBackward);
+        return hmm;
+    }
+}
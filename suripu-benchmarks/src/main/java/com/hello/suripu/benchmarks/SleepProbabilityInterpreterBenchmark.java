@@ -0,0 +1,57 @@
+package com.hello.suripu.benchmarks;
+
+import com.google.common.base.Optional;
+import com.hello.suripu.algorithm.interpretation.EventIndices;
+import com.hello.suripu.algorithm.interpretation.SleepProbabilityInterpreterWithSearch;
+import com.hello.suripu.core.algorithmintegration.NeuralNetAlgorithm;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Event search over the fixture night.
+ * Sleep probabilities come from the recorded four event net output, where states 3 and 4 are asleep.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SleepProbabilityInterpreterBenchmark {
+
+    private double [] sleepProbabilities;
+    private double [] myMotionDurations;
+    private double [] myPillMagnitude;
+
+    @Setup
+    public void setUp() {
+        final double [][] x = FixtureNight.load().neuralNetInput();
+        myMotionDurations = x[NeuralNetAlgorithm.SensorIndices.MY_MOTION_DURATION.index()];
+        myPillMagnitude = x[NeuralNetAlgorithm.SensorIndices.MY_MOTION_MAX_AMPLITUDE.index()];
+
+        final double [][] netOutput = FixtureNight.fourEventNetOutput();
+        final int numMinutes = Math.min(myMotionDurations.length, netOutput[0].length);
+        sleepProbabilities = new double[numMinutes];
+        for (int t = 0; t < numMinutes; t++) {
+            sleepProbabilities[t] = netOutput[3][t] + netOutput[4][t];
+        }
+        myMotionDurations = Arrays.copyOf(myMotionDurations, numMinutes);
+        myPillMagnitude = Arrays.copyOf(myPillMagnitude, numMinutes);
+    }
+
+    @Benchmark
+    public Optional<EventIndices> getEventIndices() {
+        return SleepProbabilityInterpreterWithSearch.getEventIndices(sleepProbabilities, myMotionDurations, myPillMagnitude);
+    }
+}
@@ -0,0 +1,78 @@
+package com.hello.suripu.benchmarks;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.hello.suripu.core.models.Event;
+import com.hello.suripu.core.models.Events.MotionEvent;
+import com.hello.suripu.core.models.SleepPeriod;
+import com.hello.suripu.core.models.SleepSegment;
+import com.hello.suripu.core.models.SleepStats;
+import com.hello.suripu.core.models.TimeZoneHistory;
+import com.hello.suripu.core.models.TrackerMotion;
+import com.hello.suripu.core.translations.English;
+import com.hello.suripu.core.util.TimeZoneOffsetMap;
+import com.hello.suripu.core.util.TimelineRefactored;
+import com.hello.suripu.core.util.TimelineUtils;
+import org.joda.time.DateTimeConstants;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sleep stats of the fixture night, segments are built the same way as in TimelineUtilsTest.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class TimelineUtilsBenchmark {
+
+    private static final int LIGHT_SLEEP_THRESHOLD = 70;
+
+    private List<TrackerMotion> trackerMotions;
+    private List<SleepSegment> sleepSegments;
+
+    @Setup
+    public void setUp() {
+        final TimelineUtils timelineUtils = new TimelineUtils();
+        trackerMotions = FixtureNight.load().trackerMotions;
+
+        final long sleepTime = trackerMotions.get(0).timestamp + DateTimeConstants.MILLIS_PER_HOUR;
+        final long wakeTime = trackerMotions.get(trackerMotions.size() - 1).timestamp - DateTimeConstants.MILLIS_PER_HOUR / 2;
+        final Optional<Event> sleep = Optional.of(Event.createFromType(Event.Type.SLEEP, sleepTime, sleepTime, FixtureNight.TIMEZONE_OFFSET_MILLIS,
+                Optional.of(English.IN_BED_MESSAGE), Optional.<SleepSegment.SoundInfo>absent(), Optional.<Integer>absent()));
+        final Optional<Event> wake = Optional.of(Event.createFromType(Event.Type.WAKE_UP, wakeTime, wakeTime, FixtureNight.TIMEZONE_OFFSET_MILLIS,
+                Optional.of(English.OUT_OF_BED_MESSAGE), Optional.<SleepSegment.SoundInfo>absent(), Optional.<Integer>absent()));
+
+        final TimeZoneOffsetMap timeZoneOffsetMap = TimeZoneOffsetMap.createFromTimezoneHistoryList(ImmutableList.of(
+                new TimeZoneHistory(trackerMotions.get(0).timestamp, FixtureNight.TIMEZONE_OFFSET_MILLIS, "America/Los_Angeles")));
+
+        final List<MotionEvent> motionEvents = timelineUtils.generateMotionEvents(trackerMotions, SleepPeriod.Period.NIGHT);
+        final Map<Long, Event> timelineEvents = TimelineRefactored.populateTimeline(motionEvents, timeZoneOffsetMap);
+        timelineEvents.put(sleep.get().getStartTimestamp(), sleep.get());
+        timelineEvents.put(wake.get().getStartTimestamp(), wake.get());
+
+        final List<Event> smoothedEvents = timelineUtils.smoothEvents(TimelineRefactored.mergeEvents(timelineEvents));
+        final List<Event> cleanedUpEvents = timelineUtils.removeMotionEventsOutsideBedPeriod(smoothedEvents, sleep, wake);
+        final List<Event> greyEvents = timelineUtils.greyNullEventsOutsideBedPeriod(cleanedUpEvents, sleep, wake);
+        sleepSegments = timelineUtils.eventsToSegments(timelineUtils.removeEventBeforeSignificant(greyEvents));
+    }
+
+    @Benchmark
+    public SleepStats computeStats() {
+        return TimelineUtils.computeStats(sleepSegments, trackerMotions, LIGHT_SLEEP_THRESHOLD, true, true);
+    }
+}
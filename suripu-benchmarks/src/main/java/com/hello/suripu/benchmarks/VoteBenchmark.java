@@ -0,0 +1,69 @@
+package com.hello.suripu.benchmarks;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.hello.suripu.algorithm.core.AmplitudeData;
+import com.hello.suripu.algorithm.core.Segment;
+import com.hello.suripu.algorithm.sleep.SleepEvents;
+import com.hello.suripu.algorithm.sleep.Vote;
+import org.joda.time.DateTime;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Voting algorithm on the 2015-03-23 night VoteTest runs on.
+ * Vote clusters the motion in its constructor, so every invocation builds a new one like VotingAlgorithm does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class VoteBenchmark {
+
+    private static final String MOTION_RESOURCE = "fixtures/jp_motion_2015_03_23_raw.csv";
+    private static final String SOUND_RESOURCE = "fixtures/jp_sound_2015_03_23_raw.csv";
+
+    private List<AmplitudeData> motion;
+    private List<AmplitudeData> kickOffCounts;
+    private List<AmplitudeData> sound;
+
+    /**
+     * columns are timestamp, amplitude, offset and kickoff count, the header is skipped
+     */
+    private static List<AmplitudeData> loadColumn(final String resource, final int valueColumn) {
+        final String [] lines = FixtureNight.resourceAsString(resource).split("\\n");
+        final List<AmplitudeData> data = Lists.newArrayListWithCapacity(lines.length);
+        for (int i = 1; i < lines.length; i++) {
+            final String [] columns = lines[i].split(",");
+            data.add(new AmplitudeData(Long.valueOf(columns[0]), Double.valueOf(columns[valueColumn]), Integer.valueOf(columns[2])));
+        }
+        return ImmutableList.copyOf(data);
+    }
+
+    @Setup
+    public void setUp() {
+        motion = loadColumn(MOTION_RESOURCE, 1);
+        kickOffCounts = loadColumn(MOTION_RESOURCE, 3);
+        sound = loadColumn(SOUND_RESOURCE, 1);
+    }
+
+    @Benchmark
+    public SleepEvents<Segment> getResult() {
+        final Vote vote = new Vote(motion, kickOffCounts, sound, Lists.<DateTime>newArrayList(), Optional.<DateTime>absent());
+        return vote.getResult(false);
+    }
+}
@@ -0,0 +1,12 @@
+package com.hello.suripu.core.algorithmintegration;
+
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Neural net endpoint that can have several evaluations in flight,
+ * e.g. when recomputing many nights at once.
+ */
+public interface AsyncNeuralNetEndpoint extends NeuralNetEndpoint {
+    ListenableFuture<Optional<NeuralNetAlgorithmOutput>> getNetOutputAsync(final String netId, final double [][] sensorData);
+}
@@ -2,6 +2,7 @@ package com.hello.suripu.core.algorithmintegration;
 
 import com.google.common.collect.Multimap;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
@@ -12,8 +13,16 @@ public class EvaluationResult {
     public final Multimap<String,MultiEvalHmmDecodedResult> modelEvaluations;
     public final Map<String,MultiEvalHmmDecodedResult> predictions;
 
+    //output id -> model id -> time spent decoding that model, in microseconds
+    public final Map<String,Map<String,Long>> decodeMicrosByOutputId;
+
     public EvaluationResult(Multimap<String, MultiEvalHmmDecodedResult> modelEvaluations, Map<String, MultiEvalHmmDecodedResult> predictions) {
+        this(modelEvaluations, predictions, Collections.<String,Map<String,Long>>emptyMap());
+    }
+
+    public EvaluationResult(Multimap<String, MultiEvalHmmDecodedResult> modelEvaluations, Map<String, MultiEvalHmmDecodedResult> predictions, Map<String, Map<String, Long>> decodeMicrosByOutputId) {
         this.modelEvaluations = modelEvaluations;
         this.predictions = predictions;
+        this.decodeMicrosByOutputId = decodeMicrosByOutputId;
     }
-}
\ No newline at end of file
+}
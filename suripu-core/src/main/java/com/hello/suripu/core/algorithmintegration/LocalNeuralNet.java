@@ -0,0 +1,384 @@
+package com.hello.suripu.core.algorithmintegration;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Lists;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Recurrent net evaluated in-process.
+ *
+ * A net is described by a json configuration and a buffer of little endian float32 params:
+ *
+ * {"input_size": 15, "layers": [
+ *     {"type": "lstm", "units": 32, "activation": "tanh", "recurrent_activation": "hard_sigmoid", "reverse": false},
+ *     {"type": "dense", "units": 9, "activation": "softmax"}]}
+ *
+ * params hold every layer's weights in layer order, all matrices row-major:
+ *   dense: W [units x input], b [units]
+ *   lstm:  W [4 * units x input], U [4 * units x units], b [4 * units], gates in input, forget, cell, output order.
+ *          A reverse lstm runs from the last time step to the first.
+ *
+ * Input and output matrices are [feature][time], like the evaluation service.
+ * A net exported to this format is only used once LocalNeuralNetEndpoint has checked it against recorded service outputs.
+ * Intermediate values live in per-thread buffers that are reused from one evaluation to the next.
+ */
+public class LocalNeuralNet {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String id;
+    private final int inputSize;
+    private final Layer [] layers;
+    private final int maxWidth;
+    private final int maxScratchSize;
+
+    private final ThreadLocal<Workspace> workspaces = new ThreadLocal<Workspace>() {
+        @Override
+        protected Workspace initialValue() {
+            return new Workspace();
+        }
+    };
+
+    private LocalNeuralNet(final String id, final int inputSize, final Layer [] layers) {
+        this.id = id;
+        this.inputSize = inputSize;
+        this.layers = layers;
+
+        int maxWidth = inputSize;
+        int maxScratchSize = 0;
+        for (final Layer layer : layers) {
+            maxWidth = Math.max(maxWidth, layer.outputSize());
+            maxScratchSize = Math.max(maxScratchSize, layer.scratchSize());
+        }
+        this.maxWidth = maxWidth;
+        this.maxScratchSize = maxScratchSize;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the configuration is invalid or does not match the number of params
+     */
+    public static LocalNeuralNet create(final String id, final String configuration, final byte [] params) {
+        final JsonNode root;
+        try {
+            root = MAPPER.readTree(configuration);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("invalid configuration for net " + id, e);
+        }
+
+        final FloatBuffer weights = ByteBuffer.wrap(params).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        final int inputSize = root.path("input_size").asInt();
+        if (inputSize <= 0 || !root.path("layers").isArray() || root.path("layers").size() == 0) {
+            throw new IllegalArgumentException("net " + id + " needs a positive input_size and at least one layer");
+        }
+
+        final List<Layer> layers = Lists.newArrayList();
+        int layerInputSize = inputSize;
+        for (final JsonNode layerConfig : root.path("layers")) {
+            final String type = layerConfig.path("type").asText();
+            final int units = layerConfig.path("units").asInt();
+            if (units <= 0) {
+                throw new IllegalArgumentException("layer units must be positive for net " + id);
+            }
+            final Activation activation = Activation.fromName(layerConfig.path("activation").asText("linear"));
+
+            if (type.equals("dense")) {
+                layers.add(new Dense(layerInputSize, units, activation,
+                        readWeights(weights, units * layerInputSize, id), readWeights(weights, units, id)));
+            } else if (type.equals("lstm")) {
+                final Activation recurrentActivation = Activation.fromName(layerConfig.path("recurrent_activation").asText("hard_sigmoid"));
+                layers.add(new Lstm(layerInputSize, units, activation, recurrentActivation, layerConfig.path("reverse").asBoolean(false),
+                        readWeights(weights, 4 * units * layerInputSize, id), readWeights(weights, 4 * units * units, id), readWeights(weights, 4 * units, id)));
+            } else {
+                throw new IllegalArgumentException("unknown layer type " + type + " for net " + id);
+            }
+            layerInputSize = units;
+        }
+
+        if (weights.hasRemaining() || params.length % 4 != 0) {
+            throw new IllegalArgumentException("too many params for net " + id);
+        }
+
+        return new LocalNeuralNet(id, inputSize, layers.toArray(new Layer[layers.size()]));
+    }
+
+    private static float [] readWeights(final FloatBuffer buffer, final int size, final String id) {
+        if (buffer.remaining() < size) {
+            throw new IllegalArgumentException("not enough params for net " + id);
+        }
+        final float [] weights = new float[size];
+        buffer.get(weights);
+        return weights;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int inputSize() {
+        return inputSize;
+    }
+
+    public int outputSize() {
+        return layers[layers.length - 1].outputSize();
+    }
+
+    /**
+     * @param x [inputSize][T]
+     * @return [outputSize][T]
+     */
+    public double [][] evaluate(final double [][] x) {
+        if (x.length != inputSize) {
+            throw new IllegalArgumentException("expected " + inputSize + " input rows, got " + x.length);
+        }
+        final int numTimeSteps = x[0].length;
+        final Workspace workspace = workspaces.get();
+        workspace.ensureCapacity(maxWidth * numTimeSteps, maxScratchSize);
+
+        // time-major copy of the input
+        double [] in = workspace.a;
+        double [] out = workspace.b;
+        for (int i = 0; i < inputSize; i++) {
+            for (int t = 0; t < numTimeSteps; t++) {
+                in[t * inputSize + i] = x[i][t];
+            }
+        }
+
+        for (final Layer layer : layers) {
+            layer.forward(in, out, numTimeSteps, workspace.scratch);
+            final double [] previous = in;
+            in = out;
+            out = previous;
+        }
+
+        final int outputSize = outputSize();
+        final double [][] output = new double[outputSize][numTimeSteps];
+        for (int t = 0; t < numTimeSteps; t++) {
+            for (int j = 0; j < outputSize; j++) {
+                output[j][t] = in[t * outputSize + j];
+            }
+        }
+        return output;
+    }
+
+    private static class Workspace {
+        double [] a = new double[0];
+        double [] b = new double[0];
+        double [] scratch = new double[0];
+
+        void ensureCapacity(final int valuesSize, final int scratchSize) {
+            if (a.length < valuesSize) {
+                a = new double[valuesSize];
+                b = new double[valuesSize];
+            }
+            if (scratch.length < scratchSize) {
+                scratch = new double[scratchSize];
+            }
+        }
+    }
+
+    enum Activation {
+        LINEAR, RELU, TANH, SIGMOID, HARD_SIGMOID, SOFTMAX;
+
+        static Activation fromName(final String name) {
+            switch (name) {
+                case "linear":
+                    return LINEAR;
+                case "relu":
+                    return RELU;
+                case "tanh":
+                    return TANH;
+                case "sigmoid":
+                    return SIGMOID;
+                case "hard_sigmoid":
+                    return HARD_SIGMOID;
+                case "softmax":
+                    return SOFTMAX;
+                default:
+                    throw new IllegalArgumentException("unknown activation " + name);
+            }
+        }
+
+        /**
+         * Applies the activation in place to values[offset, offset + size)
+         */
+        void apply(final double [] values, final int offset, final int size) {
+            switch (this) {
+                case LINEAR:
+                    return;
+                case SOFTMAX:
+                    double max = Double.NEGATIVE_INFINITY;
+                    for (int i = offset; i < offset + size; i++) {
+                        max = Math.max(max, values[i]);
+                    }
+                    double sum = 0.0;
+                    for (int i = offset; i < offset + size; i++) {
+                        values[i] = Math.exp(values[i] - max);
+                        sum += values[i];
+                    }
+                    for (int i = offset; i < offset + size; i++) {
+                        values[i] /= sum;
+                    }
+                    return;
+                default:
+                    for (int i = offset; i < offset + size; i++) {
+                        values[i] = apply(values[i]);
+                    }
+            }
+        }
+
+        double apply(final double value) {
+            switch (this) {
+                case RELU:
+                    return value > 0.0 ? value : 0.0;
+                case TANH:
+                    return Math.tanh(value);
+                case SIGMOID:
+                    return 1.0 / (1.0 + Math.exp(-value));
+                case HARD_SIGMOID:
+                    return Math.max(0.0, Math.min(1.0, 0.2 * value + 0.5));
+                case SOFTMAX:
+                    throw new IllegalStateException("softmax applies to a whole vector");
+                default:
+                    return value;
+            }
+        }
+    }
+
+    interface Layer {
+        int outputSize();
+
+        int scratchSize();
+
+        /**
+         * @param in time-major [T][inputSize]
+         * @param out time-major [T][outputSize]
+         */
+        void forward(final double [] in, final double [] out, final int numTimeSteps, final double [] scratch);
+    }
+
+    static class Dense implements Layer {
+        private final int inputSize;
+        private final int units;
+        private final Activation activation;
+        private final float [] w;
+        private final float [] b;
+
+        Dense(final int inputSize, final int units, final Activation activation, final float [] w, final float [] b) {
+            this.inputSize = inputSize;
+            this.units = units;
+            this.activation = activation;
+            this.w = w;
+            this.b = b;
+        }
+
+        @Override
+        public int outputSize() {
+            return units;
+        }
+
+        @Override
+        public int scratchSize() {
+            return 0;
+        }
+
+        @Override
+        public void forward(final double [] in, final double [] out, final int numTimeSteps, final double [] scratch) {
+            for (int t = 0; t < numTimeSteps; t++) {
+                final int inOffset = t * inputSize;
+                final int outOffset = t * units;
+                for (int j = 0; j < units; j++) {
+                    double value = b[j];
+                    final int row = j * inputSize;
+                    for (int i = 0; i < inputSize; i++) {
+                        value += w[row + i] * in[inOffset + i];
+                    }
+                    out[outOffset + j] = value;
+                }
+                activation.apply(out, outOffset, units);
+            }
+        }
+    }
+
+    static class Lstm implements Layer {
+        private final int inputSize;
+        private final int units;
+        private final Activation activation;
+        private final Activation recurrentActivation;
+        private final boolean reverse;
+        private final float [] w;
+        private final float [] u;
+        private final float [] b;
+
+        Lstm(final int inputSize, final int units, final Activation activation, final Activation recurrentActivation, final boolean reverse,
+             final float [] w, final float [] u, final float [] b) {
+            if (activation == Activation.SOFTMAX || recurrentActivation == Activation.SOFTMAX) {
+                throw new IllegalArgumentException("softmax is not supported in lstm layers");
+            }
+            this.inputSize = inputSize;
+            this.units = units;
+            this.activation = activation;
+            this.recurrentActivation = recurrentActivation;
+            this.reverse = reverse;
+            this.w = w;
+            this.u = u;
+            this.b = b;
+        }
+
+        @Override
+        public int outputSize() {
+            return units;
+        }
+
+        @Override
+        public int scratchSize() {
+            // z [4 * units], c [units]
+            return 5 * units;
+        }
+
+        @Override
+        public void forward(final double [] in, final double [] out, final int numTimeSteps, final double [] scratch) {
+            final int cOffset = 4 * units;
+            Arrays.fill(scratch, cOffset, cOffset + units, 0.0);
+
+            int previousOutOffset = -1;
+            for (int step = 0; step < numTimeSteps; step++) {
+                final int t = reverse ? numTimeSteps - 1 - step : step;
+                final int inOffset = t * inputSize;
+                final int outOffset = t * units;
+
+                for (int k = 0; k < 4 * units; k++) {
+                    double value = b[k];
+                    final int wRow = k * inputSize;
+                    for (int i = 0; i < inputSize; i++) {
+                        value += w[wRow + i] * in[inOffset + i];
+                    }
+                    if (previousOutOffset >= 0) {
+                        final int uRow = k * units;
+                        for (int h = 0; h < units; h++) {
+                            value += u[uRow + h] * out[previousOutOffset + h];
+                        }
+                    }
+                    scratch[k] = value;
+                }
+
+                for (int h = 0; h < units; h++) {
+                    final double inputGate = recurrentActivation.apply(scratch[h]);
+                    final double forgetGate = recurrentActivation.apply(scratch[units + h]);
+                    final double candidate = activation.apply(scratch[2 * units + h]);
+                    final double outputGate = recurrentActivation.apply(scratch[3 * units + h]);
+                    final double cell = forgetGate * scratch[cOffset + h] + inputGate * candidate;
+                    scratch[cOffset + h] = cell;
+                    out[outOffset + h] = outputGate * activation.apply(cell);
+                }
+                previousOutOffset = outOffset;
+            }
+        }
+    }
+}
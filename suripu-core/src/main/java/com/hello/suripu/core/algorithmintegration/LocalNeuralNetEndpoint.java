@@ -0,0 +1,181 @@
+package com.hello.suripu.core.algorithmintegration;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.hello.suripu.api.datascience.NeuralNetMessages;
+import com.hello.suripu.api.datascience.NeuralNetProtos;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Evaluates serialized nets in-process instead of calling the evaluation service.
+ * See LocalNeuralNet for the expected configuration and params of each NeuralNetMessage.
+ *
+ * A net is only evaluated in-process once it reproduces every output recorded from the evaluation service for it,
+ * and its input_type matches its input size. Every other net goes to the remote endpoint.
+ */
+public class LocalNeuralNetEndpoint implements NeuralNetEndpoint {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(LocalNeuralNetEndpoint.class);
+
+    private final Map<String, LocalNeuralNet> nets;
+    private final NeuralNetEndpoint remoteEndpoint;
+
+    private LocalNeuralNetEndpoint(final Map<String, LocalNeuralNet> nets, final NeuralNetEndpoint remoteEndpoint) {
+        this.nets = nets;
+        this.remoteEndpoint = remoteEndpoint;
+    }
+
+    /**
+     * Input and output of one call to the evaluation service
+     */
+    public static class Recording {
+        public final String netId;
+        public final double [][] input;
+        public final double [][] output;
+
+        public Recording(final String netId, final double [][] input, final double [][] output) {
+            this.netId = netId;
+            this.input = input;
+            this.output = output;
+        }
+
+        public static Recording create(final NeuralNetMessages.NeuralNetInput input, final NeuralNetMessages.NeuralNetOutput output) {
+            return new Recording(input.getNetId(), toMatrix(input.getMatList()), toMatrix(output.getMatList()));
+        }
+
+        private static double [][] toMatrix(final List<NeuralNetMessages.DataVector> vectors) {
+            final double [][] matrix = new double[vectors.size()][];
+            for (int i = 0; i < vectors.size(); i++) {
+                final List<Double> values = vectors.get(i).getVecList();
+                matrix[i] = new double[values.size()];
+                for (int t = 0; t < values.size(); t++) {
+                    matrix[i][t] = values.get(t);
+                }
+            }
+            return matrix;
+        }
+    }
+
+    /**
+     * Nets that fail to load, have no recordings, or do not match their recordings within tolerance are logged
+     * and left to remoteEndpoint
+     */
+    public static LocalNeuralNetEndpoint create(final Iterable<NeuralNetProtos.NeuralNetMessage> messages,
+                                                final Iterable<Recording> recordings,
+                                                final double tolerance,
+                                                final NeuralNetEndpoint remoteEndpoint) {
+        final ListMultimap<String, Recording> recordingsByNet = ArrayListMultimap.create();
+        for (final Recording recording : recordings) {
+            recordingsByNet.put(recording.netId, recording);
+        }
+
+        final ImmutableMap.Builder<String, LocalNeuralNet> nets = ImmutableMap.builder();
+        for (final NeuralNetProtos.NeuralNetMessage message : messages) {
+            final LocalNeuralNet net;
+            try {
+                net = LocalNeuralNet.create(message.getId(), message.getConfiguration(), message.getParams().toByteArray());
+            } catch (IllegalArgumentException e) {
+                LOGGER.error("error=invalid-neuralnet net_id={} message=\"{}\"", message.getId(), e.getMessage());
+                continue;
+            }
+
+            final Optional<Integer> inputRows = inputRows(message.getInputType());
+            if (!inputRows.isPresent() || inputRows.get() != net.inputSize()) {
+                LOGGER.error("error=wrong-neuralnet-input-type net_id={} input_type={} input_size={}", message.getId(), message.getInputType(), net.inputSize());
+                continue;
+            }
+
+            final List<Recording> netRecordings = recordingsByNet.get(message.getId());
+            if (netRecordings.isEmpty()) {
+                LOGGER.warn("warning=neuralnet-not-verified net_id={} reason=no_recordings", message.getId());
+                continue;
+            }
+
+            final Optional<Double> maxDifference = maxDifference(net, netRecordings);
+            if (!maxDifference.isPresent() || maxDifference.get() > tolerance) {
+                LOGGER.error("error=neuralnet-parity-failed net_id={} num_recordings={} max_difference={} tolerance={}",
+                        message.getId(), netRecordings.size(), maxDifference.orNull(), tolerance);
+                continue;
+            }
+
+            nets.put(message.getId(), net);
+            LOGGER.info("action=loaded_neuralnet net_id={} num_recordings={} max_difference={}", message.getId(), netRecordings.size(), maxDifference.get());
+        }
+        return new LocalNeuralNetEndpoint(nets.build(), remoteEndpoint);
+    }
+
+    /**
+     * Rows of the input matrix for each input type, absent if the input type is not supported
+     */
+    static Optional<Integer> inputRows(final NeuralNetProtos.NeuralNetMessage.InputType inputType) {
+        switch (inputType) {
+            case DIFFLIGHT:
+                return Optional.of(NeuralNetAlgorithm.SensorIndices.MAX_NUM_INDICES);
+            default:
+                return Optional.absent();
+        }
+    }
+
+    /**
+     * Largest absolute difference between the net's outputs and the recorded ones, absent if a shape differs
+     */
+    private static Optional<Double> maxDifference(final LocalNeuralNet net, final List<Recording> recordings) {
+        double maxDifference = 0.0;
+        for (final Recording recording : recordings) {
+            if (recording.input.length != net.inputSize()) {
+                return Optional.absent();
+            }
+
+            final double [][] output = net.evaluate(recording.input);
+            if (output.length != recording.output.length) {
+                return Optional.absent();
+            }
+            for (int i = 0; i < output.length; i++) {
+                if (output[i].length != recording.output[i].length) {
+                    return Optional.absent();
+                }
+                for (int t = 0; t < output[i].length; t++) {
+                    maxDifference = Math.max(maxDifference, Math.abs(output[i][t] - recording.output[i][t]));
+                }
+            }
+        }
+        return Optional.of(maxDifference);
+    }
+
+    /**
+     * true if netId is evaluated in-process
+     */
+    public boolean hasNet(final String netId) {
+        return nets.containsKey(netId);
+    }
+
+    @Override
+    public Optional<NeuralNetAlgorithmOutput> getNetOutput(final String netId, final double [][] sensorData) {
+
+        final LocalNeuralNet net = nets.get(netId);
+        if (net == null) {
+            return remoteEndpoint.getNetOutput(netId, sensorData);
+        }
+
+        if (sensorData == null || sensorData.length == 0) {
+            return Optional.absent();
+        }
+
+        if (sensorData.length != net.inputSize()) {
+            LOGGER.error("error=wrong-input-dimensions net_id={} expected={} dims={}", netId, net.inputSize(), sensorData.length);
+            return Optional.absent();
+        }
+
+        final long startTime = System.currentTimeMillis();
+        final double [][] output = net.evaluate(sensorData);
+        LOGGER.debug("action=evaluated_neuralnet duration={} net_id={}", System.currentTimeMillis() - startTime, netId);
+
+        return Optional.of(new NeuralNetAlgorithmOutput(output));
+    }
+}
@@ -2,15 +2,14 @@ package com.hello.suripu.core.algorithmintegration;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
+import com.hello.suripu.algorithm.hmm.FeatureSequences;
 import com.hello.suripu.algorithm.hmm.Transition;
 import com.hello.suripu.api.datascience.OnlineHmmProtos;
 
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 /**
@@ -72,28 +71,26 @@ public class MotionTransitionRestriction implements TransitionRestriction {
     }
 
 
-    boolean isMotion(final Integer feature) {
+    boolean isMotion(final int feature) {
         return !nonMotionStates.contains(feature);
     }
 
     @Override
-    public Multimap<Integer, Transition> getRestrictions(final Map<String, ImmutableList<Integer>> features) {
+    public Multimap<Integer, Transition> getRestrictions(final FeatureSequences features) {
 
         final Multimap<Integer, Transition> forbiddenTransitionsByTimeIndex = ArrayListMultimap.create();
 
 
-        final ImmutableList<Integer> motionFeatures =  features.get(motionModelId);
-
-        if (motionFeatures == null) {
+        if (!features.contains(motionModelId)) {
             //TODO log this as an error
             return forbiddenTransitionsByTimeIndex;
 
         }
 
-        for (int t = 0; t < motionFeatures.size() - 1; t++) {
+        for (int t = 0; t < features.numObs() - 1; t++) {
 
             //if not two consecutive motion indicies, then FORBIDDEN!!!!!
-            if ( !(isMotion(motionFeatures.get(t)) /* && isMotion(motionFeatures.get(t+1)) */ ) ) {
+            if ( !(isMotion(features.get(motionModelId, t)) /* && isMotion(features.get(motionModelId, t+1)) */ ) ) {
 
                 for (final Transition forbidden : forbiddenTransitions) {
                     forbiddenTransitionsByTimeIndex.put(t,forbidden);
@@ -2,6 +2,7 @@ package com.hello.suripu.core.algorithmintegration;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.hello.suripu.algorithm.hmm.FeatureSequences;
 import com.hello.suripu.algorithm.sleep.SleepEvents;
 import com.hello.suripu.core.algorithmintegration.OnlineHmmSensorDataBinning.*;
 import com.google.common.base.Optional;
@@ -32,6 +33,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by benjo on 8/20/15.
@@ -66,13 +68,22 @@ public class OnlineHmm {
     final FeatureExtractionModelsDAO featureExtractionModelsDAO;
     final OnlineHmmModelsDAO userModelDAO;
     final Optional<UUID> uuid;
+    final Optional<ForkJoinPool> evaluationPool;
 
 
     public OnlineHmm(DefaultModelEnsembleDAO defaultModelEnsembleDAO, final FeatureExtractionModelsDAO featureExtractionModelsDAO, final OnlineHmmModelsDAO userModelDAO, final Optional<UUID> uuid) {
+        this(defaultModelEnsembleDAO, featureExtractionModelsDAO, userModelDAO, uuid, Optional.<ForkJoinPool>absent());
+    }
+
+    /**
+     * @param evaluationPool if present, the model ensemble is decoded in parallel on this pool
+     */
+    public OnlineHmm(DefaultModelEnsembleDAO defaultModelEnsembleDAO, final FeatureExtractionModelsDAO featureExtractionModelsDAO, final OnlineHmmModelsDAO userModelDAO, final Optional<UUID> uuid, final Optional<ForkJoinPool> evaluationPool) {
         this.defaultModelEnsembleDAO = defaultModelEnsembleDAO;
         this.featureExtractionModelsDAO = featureExtractionModelsDAO;
         this.userModelDAO = userModelDAO;
         this.uuid = uuid;
+        this.evaluationPool = evaluationPool;
         this.LOGGER = new LoggerWithSessionId(STATIC_LOGGER,uuid);
     }
 
@@ -459,14 +470,14 @@ public class OnlineHmm {
         final BinnedData binnedData = binnedDataOptional.get();
 
         /*  RUN THE FEATURE EXTRACTION LAYER */
-        final Map<String,ImmutableList<Integer>> pathsByModelId = featureExtractionModels.sensorDataReduction.getPathsFromSensorData(binnedData.data);
+        final FeatureSequences pathsByModelId = featureExtractionModels.sensorDataReduction.getPathsFromSensorData(binnedData.data);
 
-        for (final Map.Entry<String,ImmutableList<Integer>> entry : pathsByModelId.entrySet()) {
-            LOGGER.info("path {} = {}",entry.getKey(),entry.getValue());
+        for (final String modelId : pathsByModelId.ids()) {
+            LOGGER.info("path {} = {}",modelId,pathsByModelId.toString(modelId));
         }
 
         /*  EVALUATE AND FIND THE BEST MODELS */
-        final OnlineHmmModelEvaluator evaluator = new OnlineHmmModelEvaluator(uuid);
+        final OnlineHmmModelEvaluator evaluator = new OnlineHmmModelEvaluator(uuid, evaluationPool);
 
         final EvaluationResult evaluationResult = evaluator.evaluate(defaultEnsemble,modelPriors,pathsByModelId);
 
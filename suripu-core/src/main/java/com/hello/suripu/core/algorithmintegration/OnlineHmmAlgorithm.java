@@ -6,6 +6,7 @@ import com.hello.suripu.algorithm.sleep.SleepEvents;
 import com.hello.suripu.core.db.DefaultModelEnsembleDAO;
 import com.hello.suripu.core.db.FeatureExtractionModelsDAO;
 import com.hello.suripu.core.db.OnlineHmmModelsDAO;
+import com.hello.suripu.core.flipper.FeatureFlipper;
 import com.hello.suripu.core.logging.LoggerWithSessionId;
 import com.hello.suripu.core.models.Event;
 import com.hello.suripu.core.models.Sensor;
@@ -22,6 +23,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 /**
  * Created by benjo on 1/20/16.
@@ -30,6 +33,23 @@ public class OnlineHmmAlgorithm implements TimelineAlgorithm {
 
     private static final Logger STATIC_LOGGER = LoggerFactory.getLogger(OnlineHmmAlgorithm.class);
 
+    private static final int MAX_EVALUATION_THREADS = 4;
+
+    /**
+     * Pool for ONLINE_HMM_PARALLEL_EVALUATION, kept off the common pool that parallel streams share.
+     * Created on first use.
+     */
+    private static class EvaluationPool {
+        static final ForkJoinPool INSTANCE = new ForkJoinPool(
+                Math.min(MAX_EVALUATION_THREADS, Runtime.getRuntime().availableProcessors()),
+                pool -> {
+                    final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                    thread.setName("online-hmm-evaluation-" + thread.getPoolIndex());
+                    return thread;
+                },
+                null, false);
+    }
+
     final TimelineUtils timelineUtils;
     final TimelineSafeguards timelineSafeguards;
     final Optional<UUID> uuid;
@@ -57,7 +77,11 @@ public class OnlineHmmAlgorithm implements TimelineAlgorithm {
 
         try {
 
-            final OnlineHmm onlineHmm = new OnlineHmm(defaultModelEnsembleDAO, featureExtractionModelsDAO, priorsDAO, uuid);
+            final Optional<ForkJoinPool> evaluationPool = features.contains(FeatureFlipper.ONLINE_HMM_PARALLEL_EVALUATION)
+                    ? Optional.of(EvaluationPool.INSTANCE)
+                    : Optional.<ForkJoinPool>absent();
+
+            final OnlineHmm onlineHmm = new OnlineHmm(defaultModelEnsembleDAO, featureExtractionModelsDAO, priorsDAO, uuid, evaluationPool);
 
 
             final SleepEvents<Optional<Event>> events = onlineHmm.predictAndUpdateWithLabels(
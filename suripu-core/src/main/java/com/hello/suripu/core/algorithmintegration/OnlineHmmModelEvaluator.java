@@ -2,19 +2,19 @@ package com.hello.suripu.core.algorithmintegration;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
+import com.hello.suripu.algorithm.hmm.FeatureSequences;
 import com.hello.suripu.algorithm.hmm.MultiObsSequence;
 import com.hello.suripu.algorithm.hmm.MultiObsSequenceAlphabetHiddenMarkovModel;
 import com.hello.suripu.algorithm.hmm.Transition;
+import com.hello.suripu.algorithm.hmm.ViterbiWorkspace;
 import com.hello.suripu.core.logging.LoggerWithSessionId;
 import com.hello.suripu.core.models.OnlineHmmData;
 import com.hello.suripu.core.models.OnlineHmmModelParams;
 import com.hello.suripu.core.models.OnlineHmmPriors;
 import com.hello.suripu.core.util.OnlineHmmMeasurementParameters;
-import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -22,6 +22,8 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Created by benjo on 8/20/15.
@@ -43,69 +45,144 @@ public class OnlineHmmModelEvaluator {
     private final Logger LOGGER;
     final Optional<UUID> uuid;
 
+    private final Optional<ForkJoinPool> pool;
+
     public OnlineHmmModelEvaluator(final Optional<UUID> uuid) {
+        this(uuid, Optional.<ForkJoinPool>absent());
+    }
+
+    /**
+     * @param pool if present, every model of every output is decoded as its own task on this pool.
+     *             Results are still voted on in model order, so predictions match the serial evaluation.
+     */
+    public OnlineHmmModelEvaluator(final Optional<UUID> uuid, final Optional<ForkJoinPool> pool) {
         this.uuid = uuid;
         this.LOGGER = new LoggerWithSessionId(STATIC_LOGGER,uuid);
+        this.pool = pool;
+    }
+
+    private static class ModelDecode {
+        final String modelId;
+        final Optional<MultiEvalHmmDecodedResult> result;
+        final long elapsedMicros;
 
+        ModelDecode(final String modelId, final Optional<MultiEvalHmmDecodedResult> result, final long elapsedMicros) {
+            this.modelId = modelId;
+            this.result = result;
+            this.elapsedMicros = elapsedMicros;
+        }
     }
 
+    private ModelDecode decodeModel(final OnlineHmmModelParams params, final FeatureSequences features) {
+        final long startNanos = System.nanoTime();
 
-    /* EVALUATES ALL THE MODELS AND PICKS THE BEST  */
-    public EvaluationResult evaluate(final OnlineHmmPriors defaultEnsemble, final OnlineHmmPriors userPrior, final Map<String, ImmutableList<Integer>> features) {
+        try {
+            //get the transition restrictions, which is on a per-model basis
+            final Multimap<Integer, Transition> forbiddenTransitions = ArrayListMultimap.create();
 
-        //merge models, since we are going to evaluate all of them
-        final OnlineHmmPriors allModels = OnlineHmmPriors.createEmpty();
-        allModels.mergeFrom(defaultEnsemble);
-        allModels.mergeFrom(userPrior);
+            for (TransitionRestriction restriction : params.transitionRestrictions) {
+                forbiddenTransitions.putAll(restriction.getRestrictions(features));
+            }
 
+            //get the measurement sequence with restrictions and labels (the labels will be empty here)
+            final MultiObsSequence meas = MultiObsSequence.createModelPathsToMultiObsSequence(features, forbiddenTransitions, Optional.<Map<Integer, Integer>>absent());
 
-        //results for predictions
-        final Map<String,MultiEvalHmmDecodedResult> predictions = Maps.newHashMap();
+            final MultiObsSequenceAlphabetHiddenMarkovModel hmm = new MultiObsSequenceAlphabetHiddenMarkovModel(params.logAlphabetNumerators,params.logTransitionMatrixNumerator,params.logDenominator,params.pi);
 
-        final Multimap<String,MultiEvalHmmDecodedResult> modelEvaluations = ArrayListMultimap.create();
+            final MultiObsSequenceAlphabetHiddenMarkovModel.Result decodeResult = hmm.decodeWithConstraints(meas, params.endStates, params.minStateDurations, ViterbiWorkspace.forCurrentThread());
+
+            final MultiEvalHmmDecodedResult result = new MultiEvalHmmDecodedResult(decodeResult.path,decodeResult.pathScore,params.id);
+
+            return new ModelDecode(params.id, Optional.of(result), (System.nanoTime() - startNanos) / 1000L);
+
+        }
+        catch (Exception e) {
+            LOGGER.error("failed to evaluate model {}",params.id);
+            LOGGER.error(e.getMessage());
+        }
+
+        return new ModelDecode(params.id, Optional.<MultiEvalHmmDecodedResult>absent(), (System.nanoTime() - startNanos) / 1000L);
+    }
+
+    /* DECODES EVERY MODEL, KEEPING THE ITERATION ORDER OF THE OUTPUTS AND OF THE MODELS WITHIN EACH OUTPUT */
+    private Map<String,List<ModelDecode>> decodeAll(final OnlineHmmPriors allModels, final FeatureSequences features) {
+        final Map<String,List<ModelDecode>> decodesByOutput = Maps.newLinkedHashMap();
+
+        if (!pool.isPresent()) {
+            for (final Map.Entry<String,Map<String,OnlineHmmModelParams>> entryByOutput : allModels.modelsByOutputId.entrySet()) {
+                final List<ModelDecode> decodes = Lists.newArrayList();
+                for (final OnlineHmmModelParams params : entryByOutput.getValue().values()) {
+                    decodes.add(decodeModel(params, features));
+                }
+                decodesByOutput.put(entryByOutput.getKey(), decodes);
+            }
+
+            return decodesByOutput;
+        }
 
-        //EVALUATE EACH MODEL, VOTING ONCE PER OUTPUT ID
+        //fork every decode first, then join them in order
+        final Map<String,List<ForkJoinTask<ModelDecode>>> tasksByOutput = Maps.newLinkedHashMap();
         for (final Map.Entry<String,Map<String,OnlineHmmModelParams>> entryByOutput : allModels.modelsByOutputId.entrySet()) {
+            final List<ForkJoinTask<ModelDecode>> tasks = Lists.newArrayList();
+            for (final OnlineHmmModelParams params : entryByOutput.getValue().values()) {
+                tasks.add(pool.get().submit(() -> decodeModel(params, features)));
+            }
+            tasksByOutput.put(entryByOutput.getKey(), tasks);
+        }
 
-            //list of results
-            final List<MultiEvalHmmDecodedResult> resultsForThisId = Lists.newArrayList();
+        for (final Map.Entry<String,List<ForkJoinTask<ModelDecode>>> entryByOutput : tasksByOutput.entrySet()) {
+            final List<ModelDecode> decodes = Lists.newArrayList();
+            for (final ForkJoinTask<ModelDecode> task : entryByOutput.getValue()) {
+                decodes.add(task.join());
+            }
+            decodesByOutput.put(entryByOutput.getKey(), decodes);
+        }
+
+        return decodesByOutput;
+    }
 
-            final DateTime startTime = DateTime.now();
 
-            //evaluate for each model, saving results in list
-            for (final Map.Entry<String,OnlineHmmModelParams> entryByModelForThisOutput : entryByOutput.getValue().entrySet()) {
+    /* EVALUATES ALL THE MODELS AND PICKS THE BEST  */
+    public EvaluationResult evaluate(final OnlineHmmPriors defaultEnsemble, final OnlineHmmPriors userPrior, final FeatureSequences features) {
 
-                final OnlineHmmModelParams params = entryByModelForThisOutput.getValue();
+        //merge models, since we are going to evaluate all of them
+        final OnlineHmmPriors allModels = OnlineHmmPriors.createEmpty();
+        allModels.mergeFrom(defaultEnsemble);
+        allModels.mergeFrom(userPrior);
 
-                try {
-                    //get the transition restrictions, which is on a per-model basis
-                    final Multimap<Integer, Transition> forbiddenTransitions = ArrayListMultimap.create();
 
-                    for (TransitionRestriction restriction : params.transitionRestrictions) {
-                        forbiddenTransitions.putAll(restriction.getRestrictions(features));
-                    }
+        //results for predictions
+        final Map<String,MultiEvalHmmDecodedResult> predictions = Maps.newHashMap();
 
-                    //get the measurement sequence with restrictions and labels (the labels will be empty here)
-                    final MultiObsSequence meas = MultiObsSequence.createModelPathsToMultiObsSequence(features, forbiddenTransitions, Optional.<Map<Integer, Integer>>absent());
+        final Multimap<String,MultiEvalHmmDecodedResult> modelEvaluations = ArrayListMultimap.create();
 
-                    final MultiObsSequenceAlphabetHiddenMarkovModel hmm = new MultiObsSequenceAlphabetHiddenMarkovModel(params.logAlphabetNumerators,params.logTransitionMatrixNumerator,params.logDenominator,params.pi);
+        final Map<String,Map<String,Long>> decodeMicrosByOutputId = Maps.newHashMap();
 
-                    final MultiObsSequenceAlphabetHiddenMarkovModel.Result decodeResult = hmm.decodeWithConstraints(meas, params.endStates, params.minStateDurations);
+        final long startNanos = System.nanoTime();
+        final Map<String,List<ModelDecode>> decodesByOutput = decodeAll(allModels, features);
+        LOGGER.debug("decoded all models in {}ms, parallel={}", (System.nanoTime() - startNanos) / 1000000L, pool.isPresent());
 
-                    final MultiEvalHmmDecodedResult result = new MultiEvalHmmDecodedResult(decodeResult.path,decodeResult.pathScore,params.id);
+        //VOTING ONCE PER OUTPUT ID
+        for (final Map.Entry<String,List<ModelDecode>> entryByOutput : decodesByOutput.entrySet()) {
 
-                    resultsForThisId.add(result);
+            //list of results
+            final List<MultiEvalHmmDecodedResult> resultsForThisId = Lists.newArrayList();
+            final Map<String,Long> decodeMicrosByModelId = Maps.newHashMap();
 
+            long decodeMicrosSum = 0;
+            for (final ModelDecode decode : entryByOutput.getValue()) {
+                if (decode.result.isPresent()) {
+                    resultsForThisId.add(decode.result.get());
                 }
-                catch (Exception e) {
-                    LOGGER.error("failed to evaluate model {}",params.id);
-                    LOGGER.error(e.getMessage());
-                }
+
+                LOGGER.debug("decoded model {} for {}. {}us elapsed.", decode.modelId, entryByOutput.getKey(), decode.elapsedMicros);
+                decodeMicrosByModelId.put(decode.modelId, decode.elapsedMicros);
+                decodeMicrosSum += decode.elapsedMicros;
             }
 
-            final DateTime endTime = DateTime.now();
-            final long elapsedMillis = endTime.minus(startTime.getMillis()).getMillis();
-            LOGGER.info("done evaluating {}. {}ms elapsed.",entryByOutput.getKey(),elapsedMillis);
+            decodeMicrosByOutputId.put(entryByOutput.getKey(), decodeMicrosByModelId);
+            //summed over models, decodes may have overlapped on the pool
+            LOGGER.info("done evaluating {}. {}ms decoding in total.",entryByOutput.getKey(),decodeMicrosSum / 1000L);
 
 
             //TRIM silly model results
@@ -151,7 +228,7 @@ public class OnlineHmmModelEvaluator {
             modelEvaluations.putAll(entryByOutput.getKey(),resultsForThisId);
         }
 
-        return new EvaluationResult(modelEvaluations,predictions);
+        return new EvaluationResult(modelEvaluations,predictions,decodeMicrosByOutputId);
     }
 
 
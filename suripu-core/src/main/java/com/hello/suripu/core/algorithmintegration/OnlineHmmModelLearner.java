@@ -2,11 +2,11 @@ package com.hello.suripu.core.algorithmintegration;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Sets;
 import com.hello.suripu.algorithm.core.AlgorithmException;
+import com.hello.suripu.algorithm.hmm.FeatureSequences;
 import com.hello.suripu.algorithm.hmm.MultiObsSequence;
 import com.hello.suripu.algorithm.hmm.MultiObsSequenceAlphabetHiddenMarkovModel;
 import com.hello.suripu.algorithm.hmm.Transition;
@@ -196,7 +196,7 @@ public class OnlineHmmModelLearner {
      * labelsByOutputId - the labels stored by output ID
      * currentTime - current server time in UTC
      * */
-    public Map<String,OnlineHmmModelParams> reestimateForMyModel(final OnlineHmmPriors priors,final Map<String,ImmutableList<Integer>> features, final Map<String,Map<Integer,Integer>> labelsByOutputId,long currentTime) {
+    public Map<String,OnlineHmmModelParams> reestimateForMyModel(final OnlineHmmPriors priors,final FeatureSequences features, final Map<String,Map<Integer,Integer>> labelsByOutputId,long currentTime) {
         final Map<String,OnlineHmmModelParams> learnedModelParams = Maps.newHashMap();
 
         for (final Map.Entry<String,Map<String,OnlineHmmModelParams>> entry : priors.modelsByOutputId.entrySet()) {
@@ -250,7 +250,7 @@ public class OnlineHmmModelLearner {
     }
 
 
-    public OnlineHmmScratchPad reestimate(final EvaluationResult evalResult,final OnlineHmmPriors priors,final Map<String,ImmutableList<Integer>> features, final Map<String,Map<Integer,Integer>> labelsByOutputId,long currentTime) {
+    public OnlineHmmScratchPad reestimate(final EvaluationResult evalResult,final OnlineHmmPriors priors,final FeatureSequences features, final Map<String,Map<Integer,Integer>> labelsByOutputId,long currentTime) {
 
         Map<String, OnlineHmmModelParams> learnedModelParams = Maps.newHashMap();
 
@@ -1,11 +1,9 @@
 package com.hello.suripu.core.algorithmintegration;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
+import com.hello.suripu.algorithm.hmm.FeatureSequences;
 import com.hello.suripu.algorithm.hmm.Transition;
 
-import java.util.Map;
-
 /**
  * Created by benjo on 8/25/15.
  *
@@ -15,5 +13,5 @@ import java.util.Map;
  * the output result is forbidden transitions by time index
  */
 public interface TransitionRestriction {
-    Multimap<Integer,Transition> getRestrictions(final Map<String,ImmutableList<Integer>> features);
+    Multimap<Integer,Transition> getRestrictions(final FeatureSequences features);
 }
@@ -3,6 +3,7 @@ package com.hello.suripu.core.db;
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.codahale.metrics.MetricRegistry;
 
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -34,6 +35,7 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by jyfan on 7/1/16.
@@ -158,6 +160,13 @@ public class AggStatsDAODynamoDB extends TimeSeriesDAODynamoDB<AggStats> {
         this.version = version;
     }
 
+    public AggStatsDAODynamoDB(final AmazonDynamoDB dynamoDBClient, final String tablePrefix, final String version, final ExecutorService queryExecutor,
+                               final MetricRegistry metricRegistry) {
+        super(dynamoDBClient, tablePrefix, Optional.of(queryExecutor), metricRegistry);
+        this.tableName = tablePrefix + "_" + version;
+        this.version = version;
+    }
+
     //region Override abstract methods
     @Override
     protected Logger logger() {return LOGGER; }
@@ -2,6 +2,7 @@ package com.hello.suripu.core.db;
 
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -14,6 +15,7 @@ import com.hello.suripu.core.db.dynamo.expressions.Expression;
 import com.hello.suripu.core.db.responses.Response;
 import com.hello.suripu.core.db.util.Bucketing;
 import com.hello.suripu.core.db.util.DynamoDBItemAggregator;
+import com.hello.suripu.core.db.util.StreamingDynamoDBItemAggregator;
 import com.hello.suripu.core.firmware.HardwareVersion;
 import com.hello.suripu.core.models.AllSensorSampleList;
 import com.hello.suripu.core.models.AllSensorSampleMap;
@@ -22,6 +24,7 @@ import com.hello.suripu.core.models.Device;
 import com.hello.suripu.core.models.DeviceData;
 import com.hello.suripu.core.models.DeviceId;
 import com.hello.suripu.core.models.Sample;
+import com.hello.suripu.core.models.SampleSeries;
 import com.hello.suripu.core.models.Sensor;
 import com.hello.suripu.core.sense.data.ExtraSensorData;
 import com.hello.suripu.core.sense.data.SenseOneFiveExtraData;
@@ -29,6 +32,7 @@ import com.hello.suripu.core.util.DateTimeUtil;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeConstants;
 import org.joda.time.DateTimeZone;
+import org.joda.time.chrono.ISOChronology;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.slf4j.Logger;
@@ -43,6 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.regex.Pattern;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by jakepiccolo on 10/9/15.
@@ -171,6 +176,11 @@ public class DeviceDataDAODynamoDB extends TimeSeriesDAODynamoDB<DeviceData> imp
         super(dynamoDBClient, tablePrefix);
     }
 
+    public DeviceDataDAODynamoDB(final AmazonDynamoDB dynamoDBClient, final String tablePrefix, final ExecutorService queryExecutor,
+                                 final MetricRegistry metricRegistry) {
+        super(dynamoDBClient, tablePrefix, Optional.of(queryExecutor), metricRegistry);
+    }
+
 
     //region Override abstract methods
     @Override
@@ -310,11 +320,6 @@ public class DeviceDataDAODynamoDB extends TimeSeriesDAODynamoDB<DeviceData> imp
     //endregion
 
 
-    private DateTime getFloorOfDateTime(final DateTime dateTime, final Integer toMinutes) {
-        final int minute = dateTime.getMinuteOfHour();
-        return dateTime.withMinuteOfHour(minute - (minute % toMinutes));
-    }
-
     private DateTime timestampFromDDBItem(final Map<String, AttributeValue> item) {
         final String dateString = DeviceDataAttribute.RANGE_KEY.get(item).getS().substring(0, DATE_TIME_STRING_TEMPLATE.length());
         return DateTime.parse(dateString + ":00Z", DATE_TIME_READ_FORMATTER).withZone(DateTimeZone.UTC);
@@ -326,90 +331,161 @@ public class DeviceDataDAODynamoDB extends TimeSeriesDAODynamoDB<DeviceData> imp
 
 
     //region Aggregation
-    private DeviceData aggregateDynamoDBItemsToDeviceData(final List<Map<String, AttributeValue>> items, final DeviceData template) {
-        final DynamoDBItemAggregator aggregator = new DynamoDBItemAggregator(items);
+    private static final List<String> AGGREGATED_ATTRIBUTE_NAMES = ImmutableList.of(
+            DeviceDataAttribute.AMBIENT_TEMP.name,
+            DeviceDataAttribute.AMBIENT_LIGHT.name,
+            DeviceDataAttribute.AMBIENT_LIGHT_VARIANCE.name,
+            DeviceDataAttribute.AMBIENT_HUMIDITY.name,
+            DeviceDataAttribute.WAVE_COUNT.name,
+            DeviceDataAttribute.HOLD_COUNT.name,
+            DeviceDataAttribute.AUDIO_NUM_DISTURBANCES.name,
+            DeviceDataAttribute.AUDIO_PEAK_BACKGROUND_DB.name,
+            DeviceDataAttribute.AUDIO_PEAK_ENERGY_DB.name,
+            DeviceDataAttribute.AUDIO_PEAK_DISTURBANCES_DB.name,
+            DeviceDataAttribute.AMBIENT_AIR_QUALITY_RAW.name,
+            DeviceDataAttribute.PRESSURE.name,
+            DeviceDataAttribute.TVOC.name,
+            DeviceDataAttribute.CO2.name,
+            DeviceDataAttribute.IR.name,
+            DeviceDataAttribute.CLEAR.name,
+            DeviceDataAttribute.LUX_COUNT.name,
+            DeviceDataAttribute.UV_COUNT.name);
+
+    // indices into AGGREGATED_ATTRIBUTE_NAMES
+    private static final int AGG_TEMP = 0;
+    private static final int AGG_LIGHT = 1;
+    private static final int AGG_LIGHT_VARIANCE = 2;
+    private static final int AGG_HUMIDITY = 3;
+    private static final int AGG_WAVE_COUNT = 4;
+    private static final int AGG_HOLD_COUNT = 5;
+    private static final int AGG_AUDIO_NUM_DISTURBANCES = 6;
+    private static final int AGG_AUDIO_PEAK_BACKGROUND_DB = 7;
+    private static final int AGG_AUDIO_PEAK_ENERGY_DB = 8;
+    private static final int AGG_AUDIO_PEAK_DISTURBANCES_DB = 9;
+    private static final int AGG_AIR_QUALITY_RAW = 10;
+    private static final int AGG_PRESSURE = 11;
+    private static final int AGG_TVOC = 12;
+    private static final int AGG_CO2 = 13;
+    private static final int AGG_IR = 14;
+    private static final int AGG_CLEAR = 15;
+    private static final int AGG_LUX_COUNT = 16;
+    private static final int AGG_UV_COUNT = 17;
+
+    private static int parseDigits(final String s, final int start, final int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Start of the slot (in UTC millis) the item falls in, without going through a DateTimeFormatter.
+     * Range key starts with "yyyy-MM-dd HH:mm", slots are aligned on the minute of the hour.
+     */
+    private static long slotStartMillisFromDDBItem(final Map<String, AttributeValue> item, final int slotDuration) {
+        final String rangeKey = DeviceDataAttribute.RANGE_KEY.get(item).getS();
+        final int minute = parseDigits(rangeKey, 14, 16);
+        final long millis = ISOChronology.getInstanceUTC().getDateTimeMillis(
+                parseDigits(rangeKey, 0, 4), parseDigits(rangeKey, 5, 7), parseDigits(rangeKey, 8, 10),
+                parseDigits(rangeKey, 11, 13), minute, 0, 0);
+        return millis - (minute % slotDuration) * (long) DateTimeConstants.MILLIS_PER_MINUTE;
+    }
 
+    private DeviceData aggregatedDeviceData(final StreamingDynamoDBItemAggregator aggregator, final DeviceData template) {
+        final HardwareVersion hardwareVersion = template.hardwareVersion();
         final DeviceData.Builder builder = new DeviceData.Builder()
                 .withAccountId(template.accountId)
                 .withExternalDeviceId(template.externalDeviceId)
                 .withDateTimeUTC(template.dateTimeUTC)
                 .withOffsetMillis(template.offsetMillis)
-                .withHardwareVersion(template.hardwareVersion());
+                .withHardwareVersion(hardwareVersion);
 
-        if(HardwareVersion.SENSE_ONE_FIVE.equals(template.hardwareVersion())) {
+        if(HardwareVersion.SENSE_ONE_FIVE.equals(hardwareVersion)) {
             final SenseOneFiveExtraData extra = SenseOneFiveExtraData.create(
-                    (int) aggregator.roundedMean(DeviceDataAttribute.PRESSURE.name),
-                    (int) aggregator.roundedMean(DeviceDataAttribute.TVOC.name),
-                    (int) aggregator.roundedMean(DeviceDataAttribute.CO2.name),
+                    (int) aggregator.roundedMean(AGG_PRESSURE),
+                    (int) aggregator.roundedMean(AGG_TVOC),
+                    (int) aggregator.roundedMean(AGG_CO2),
                     "",
-                    (int) aggregator.roundedMean(DeviceDataAttribute.IR.name),
-                    (int) aggregator.roundedMean(DeviceDataAttribute.CLEAR.name),
-                    (int) aggregator.roundedMean(DeviceDataAttribute.LUX_COUNT.name),
-                    (int) aggregator.max(DeviceDataAttribute.UV_COUNT.name)
+                    (int) aggregator.roundedMean(AGG_IR),
+                    (int) aggregator.roundedMean(AGG_CLEAR),
+                    (int) aggregator.roundedMean(AGG_LUX_COUNT),
+                    (int) aggregator.max(AGG_UV_COUNT)
             );
             builder.withExtraSensorData(extra);
         }
         return builder
-                .withAmbientTemperature((int) aggregator.min(DeviceDataAttribute.AMBIENT_TEMP.name))
-                .calibrateAmbientLight((int) aggregator.roundedMean(DeviceDataAttribute.AMBIENT_LIGHT.name))
-                .withAmbientLightVariance((int) aggregator.roundedMean(DeviceDataAttribute.AMBIENT_LIGHT_VARIANCE.name))
-                .withAmbientHumidity((int) aggregator.roundedMean(DeviceDataAttribute.AMBIENT_HUMIDITY.name))
-                .withWaveCount((int) aggregator.sum(DeviceDataAttribute.WAVE_COUNT.name))
-                .withHoldCount((int) aggregator.sum(DeviceDataAttribute.HOLD_COUNT.name))
-                .withAudioNumDisturbances((int) aggregator.max(DeviceDataAttribute.AUDIO_NUM_DISTURBANCES.name))
-                .withAudioPeakBackgroundDB((int) aggregator.max(DeviceDataAttribute.AUDIO_PEAK_BACKGROUND_DB.name))
-                .withAudioPeakEnergyDB((int) aggregator.max(DeviceDataAttribute.AUDIO_PEAK_ENERGY_DB.name))
-                .withAudioPeakDisturbancesDB((int) aggregator.max(DeviceDataAttribute.AUDIO_PEAK_DISTURBANCES_DB.name))
-                .withAmbientAirQualityRaw((int) aggregator.roundedMean(DeviceDataAttribute.AMBIENT_AIR_QUALITY_RAW.name))
+                .withAmbientTemperature((int) aggregator.min(AGG_TEMP))
+                .calibrateAmbientLight((int) aggregator.roundedMean(AGG_LIGHT))
+                .withAmbientLightVariance((int) aggregator.roundedMean(AGG_LIGHT_VARIANCE))
+                .withAmbientHumidity((int) aggregator.roundedMean(AGG_HUMIDITY))
+                .withWaveCount((int) aggregator.sum(AGG_WAVE_COUNT))
+                .withHoldCount((int) aggregator.sum(AGG_HOLD_COUNT))
+                .withAudioNumDisturbances((int) aggregator.max(AGG_AUDIO_NUM_DISTURBANCES))
+                .withAudioPeakBackgroundDB((int) aggregator.max(AGG_AUDIO_PEAK_BACKGROUND_DB))
+                .withAudioPeakEnergyDB((int) aggregator.max(AGG_AUDIO_PEAK_ENERGY_DB))
+                .withAudioPeakDisturbancesDB((int) aggregator.max(AGG_AUDIO_PEAK_DISTURBANCES_DB))
+                .withAmbientAirQualityRaw((int) aggregator.roundedMean(AGG_AIR_QUALITY_RAW))
                 .build();
     }
 
     List<DeviceData> aggregateDynamoDBItemsToDeviceData(final List<Map<String, AttributeValue>> items, final Integer slotDuration) {
-        final List<DeviceData> resultList = Lists.newArrayListWithExpectedSize(items.size() / slotDuration);
-        if (items.isEmpty()) {
-            return resultList;
-        }
-
-        List<Map<String, AttributeValue>> currentWorkingList = Lists.newArrayListWithExpectedSize(slotDuration);
-        final Map<String, AttributeValue> firstItem = items.get(0);
-
-        final DeviceData.Builder templateBuilder = new DeviceData.Builder()
-                .withAccountId(Long.valueOf(firstItem.get(DeviceDataAttribute.ACCOUNT_ID.name).getN()))
-                .withExternalDeviceId(externalDeviceIdFromDDBItem(firstItem));
-
-        // Sense 1.5
-        final HardwareVersion version = firstItem.containsKey(DeviceDataAttribute.HW_VERSION.name)
-                ? HardwareVersion.fromInt(Integer.parseInt(firstItem.get(DeviceDataAttribute.HW_VERSION.name).getN()))
-                : HardwareVersion.SENSE_ONE;
+        return aggregateDynamoDBItemsToDeviceData(items, Optional.<String>absent(), slotDuration);
+    }
 
-        templateBuilder.withHardwareVersion(version);
+    /**
+     * Aggregate sorted minute items into one DeviceData per slot, in a single pass over items.
+     * Items are consumed as they are iterated: there is no intermediate working list and each value is parsed once.
+     * @param items minute items sorted by range key
+     * @param externalDeviceId if present, items belonging to other devices are skipped
+     * @param slotDuration slot duration in minutes
+     */
+    List<DeviceData> aggregateDynamoDBItemsToDeviceData(final Iterable<Map<String, AttributeValue>> items,
+                                                        final Optional<String> externalDeviceId,
+                                                        final Integer slotDuration) {
+        final List<DeviceData> resultList = Lists.newArrayList();
+        final StreamingDynamoDBItemAggregator aggregator = new StreamingDynamoDBItemAggregator(AGGREGATED_ATTRIBUTE_NAMES);
 
-        DateTime currSlotTime = getFloorOfDateTime(timestampFromDDBItem(firstItem), slotDuration);
+        DeviceData.Builder templateBuilder = null;
+        long currSlotStartMillis = 0L;
 
         for (final Map<String, AttributeValue> item: items) {
-            final DateTime itemDateTime = getFloorOfDateTime(timestampFromDDBItem(item), slotDuration);
-            if (currSlotTime.equals(itemDateTime)) {
-                // Within the window of our current working set.
-                currentWorkingList.add(item);
-            } else if (itemDateTime.isAfter(currSlotTime)) {
+            if (externalDeviceId.isPresent() && !externalDeviceIdFromDDBItem(item).equals(externalDeviceId.get())) {
+                continue;
+            }
+
+            final long itemSlotStartMillis = slotStartMillisFromDDBItem(item, slotDuration);
+
+            if (templateBuilder == null) {
+                // First item sets up account, device and hardware version for every slot
+                // Sense 1.5
+                final HardwareVersion version = item.containsKey(DeviceDataAttribute.HW_VERSION.name)
+                        ? HardwareVersion.fromInt(Integer.parseInt(item.get(DeviceDataAttribute.HW_VERSION.name).getN()))
+                        : HardwareVersion.SENSE_ONE;
+                templateBuilder = new DeviceData.Builder()
+                        .withAccountId(Long.valueOf(item.get(DeviceDataAttribute.ACCOUNT_ID.name).getN()))
+                        .withExternalDeviceId(externalDeviceIdFromDDBItem(item))
+                        .withHardwareVersion(version);
+                currSlotStartMillis = itemSlotStartMillis;
+                templateBuilder.withOffsetMillis(DeviceDataAttribute.OFFSET_MILLIS.getInteger(item));
+            } else if (itemSlotStartMillis > currSlotStartMillis) {
                 // Outside the window, aggregate working set to single value.
-                templateBuilder.withDateTimeUTC(currSlotTime);
-                templateBuilder.withOffsetMillis(DeviceDataAttribute.OFFSET_MILLIS.getInteger(currentWorkingList.get(0)));
-                resultList.add(aggregateDynamoDBItemsToDeviceData(currentWorkingList, templateBuilder.build()));
-
-                // Create new working sets
-                currentWorkingList = Lists.newArrayListWithExpectedSize(slotDuration);
-                currentWorkingList.add(item);
-            } else {
+                templateBuilder.withDateTimeUTC(new DateTime(currSlotStartMillis, DateTimeZone.UTC));
+                resultList.add(aggregatedDeviceData(aggregator, templateBuilder.build()));
+                aggregator.reset();
+                currSlotStartMillis = itemSlotStartMillis;
+                templateBuilder.withOffsetMillis(DeviceDataAttribute.OFFSET_MILLIS.getInteger(item));
+            } else if (itemSlotStartMillis < currSlotStartMillis) {
                 // Unsorted list
                 throw new IllegalArgumentException("Input DeviceDatas must be sorted.");
             }
-            currSlotTime = itemDateTime;
+            aggregator.add(item);
         }
 
-        templateBuilder.withDateTimeUTC(currSlotTime);
-        templateBuilder.withOffsetMillis(DeviceDataAttribute.OFFSET_MILLIS.getInteger(currentWorkingList.get(0)));
-        resultList.add(aggregateDynamoDBItemsToDeviceData(currentWorkingList, templateBuilder.build()));
+        if (templateBuilder != null) {
+            templateBuilder.withDateTimeUTC(new DateTime(currSlotStartMillis, DateTimeZone.UTC));
+            resultList.add(aggregatedDeviceData(aggregator, templateBuilder.build()));
+        }
         return resultList;
     }
     //endregion
@@ -439,14 +515,7 @@ public class DeviceDataDAODynamoDB extends TimeSeriesDAODynamoDB<DeviceData> imp
                 Expressions.between(DeviceDataAttribute.RANGE_KEY, getRangeKey(start, externalDeviceId), getRangeKey(endExclusive, externalDeviceId)));
 
         final Response<List<Map<String, AttributeValue>>> results = queryTables(getTableNames(start, endExclusive), keyConditionExpression, targetAttributes);
-        final List<Map<String, AttributeValue>> filteredResults = Lists.newLinkedList();
-        for (final Map<String, AttributeValue> item : results.data) {
-            if (externalDeviceIdFromDDBItem(item).equals(externalDeviceId)) {
-                filteredResults.add(item);
-            }
-        }
-
-        final List<DeviceData> aggregated = aggregateDynamoDBItemsToDeviceData(filteredResults, slotDuration);
+        final List<DeviceData> aggregated = aggregateDynamoDBItemsToDeviceData(results.data, Optional.of(externalDeviceId), slotDuration);
 
         return Response.into(ImmutableList.copyOf(aggregated), results);
     }
@@ -519,24 +588,19 @@ public class DeviceDataDAODynamoDB extends TimeSeriesDAODynamoDB<DeviceData> imp
         final long absoluteIntervalMS = queryEndTimestampInUTC - queryStartTimestampInUTC;
         final int numberOfBuckets= (int) ((absoluteIntervalMS / DateTimeConstants.MILLIS_PER_MINUTE) / slotDurationInMinutes + 1);
 
-        final Map<Long, Sample> map = Bucketing.generateEmptyMap(numberOfBuckets, nowRounded, slotDurationInMinutes, missingDataDefaultValue);
-
-        LOGGER.trace("Map size = {}", map.size());
+        final Optional<SampleSeries> optionalPopulatedSeries = Bucketing.populateSeries(rows, sensor, color, calibrationOptional, useAudioPeakEnergy);
 
-        final Optional<Map<Long, Sample>> optionalPopulatedMap = Bucketing.populateMap(rows, sensor, color, calibrationOptional, useAudioPeakEnergy);
-
-        if(!optionalPopulatedMap.isPresent()) {
+        if(!optionalPopulatedSeries.isPresent()) {
             LOGGER.debug("Map not populated, returning empty list of samples.");
             return Collections.EMPTY_LIST;
         }
 
-        // Override map with values from DB
-        final Map<Long, Sample> merged = Bucketing.mergeResults(map, optionalPopulatedMap.get());
+        // Fill empty buckets around values from DB
+        final SampleSeries merged = Bucketing.fillEmptyBuckets(optionalPopulatedSeries.get(), numberOfBuckets, nowRounded, slotDurationInMinutes, missingDataDefaultValue, currentOffsetMillis);
 
         LOGGER.trace("New map size = {}", merged.size());
 
-        final List<Sample> sortedList = Bucketing.sortResults(merged, currentOffsetMillis);
-        return sortedList;
+        return merged.toSamples();
 
     }
 
@@ -592,29 +656,21 @@ public class DeviceDataDAODynamoDB extends TimeSeriesDAODynamoDB<DeviceData> imp
         final int numberOfBuckets= (int) ((absoluteIntervalMS / DateTimeConstants.MILLIS_PER_MINUTE) / slotDurationInMinutes + 1);
 
 
-        final AllSensorSampleMap mergedMaps = new AllSensorSampleMap();
-
         for (final Sensor sensor : Sensor.values()) {
             LOGGER.trace("Processing sensor {}", sensor.toString());
 
-            final Map<Long, Sample> sensorMap = allSensorSampleMap.get(sensor);
+            final SampleSeries sensorSeries = allSensorSampleMap.getSeries(sensor);
 
-            if (sensorMap.isEmpty()) {
+            if (sensorSeries.isEmpty()) {
                 continue;
             }
 
-            final Map<Long, Sample> map = Bucketing.generateEmptyMap(numberOfBuckets, nowRounded, slotDurationInMinutes, missingDataDefaultValue);
-            LOGGER.trace("Map size = {}", map.size());
-
-            // Override map with values from DB
-            mergedMaps.setSampleMap(sensor, Bucketing.mergeResults(map, sensorMap));
-
-            if (!mergedMaps.get(sensor).isEmpty()) {
-                LOGGER.trace("New map size = {}", mergedMaps.get(sensor).size());
-                final List<Sample> sortedList = Bucketing.sortResults(mergedMaps.get(sensor), currentOffsetMillis);
-
-                sensorDataResults.add(sensor, sortedList);
+            // Fill empty buckets around values from DB
+            final SampleSeries merged = Bucketing.fillEmptyBuckets(sensorSeries, numberOfBuckets, nowRounded, slotDurationInMinutes, missingDataDefaultValue, currentOffsetMillis);
 
+            if (!merged.isEmpty()) {
+                LOGGER.trace("New map size = {}", merged.size());
+                sensorDataResults.add(sensor, merged);
             }
         }
 
@@ -1,5 +1,6 @@
 package com.hello.suripu.core.db;
 
+import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
@@ -21,8 +22,10 @@ import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
+import com.hello.suripu.core.db.dynamo.BatchWritePipeline;
 import com.hello.suripu.core.models.Insights.InsightCard;
 import com.hello.suripu.core.models.MultiDensityImage;
 import com.hello.suripu.core.util.DateTimeUtil;
@@ -101,12 +104,7 @@ public class InsightsDAODynamoDB {
     }
 
     public void insertListOfInsights(final List<InsightCard> insightCards) {
-        final List<WriteRequest> insights = new ArrayList<>();
-        for (InsightCard insightCard : insightCards) {
-            final HashMap<String, AttributeValue> item = this.createItem(insightCard, true);
-            final PutRequest putRequest = new PutRequest().withItem(item);
-            insights.add(new WriteRequest().withPutRequest(putRequest));
-        }
+        final List<WriteRequest> insights = toWriteRequests(insightCards);
 
         // batch-write
         final Map<String, List<WriteRequest>> requestItems = new HashMap<>();
@@ -126,6 +124,32 @@ public class InsightsDAODynamoDB {
         }
     }
 
+    /**
+     * Writes through a shared pipeline: only unprocessed items are sent again, with the pipeline's rate backoff,
+     * and each item is given up on after the pipeline's maxAttemptsPerItem calls.
+     * @throws AmazonClientException if some insights could not be written
+     */
+    public void insertListOfInsights(final List<InsightCard> insightCards, final BatchWritePipeline pipeline) {
+        final List<WriteRequest> insights = toWriteRequests(insightCards);
+
+        final BatchWritePipeline.Result result = pipeline.write(ImmutableMap.of(this.tableName, insights));
+        if (result.remainingCount() > 0) {
+            LOGGER.error("error=batch-write-insights-failed num_insights={} not_written={} first_account_id={}",
+                    insightCards.size(), result.remainingCount(), insightCards.get(0).accountId);
+            throw new AmazonClientException(String.format("Failed to write %d of %d insights", result.remainingCount(), insightCards.size()));
+        }
+    }
+
+    private List<WriteRequest> toWriteRequests(final List<InsightCard> insightCards) {
+        final List<WriteRequest> insights = new ArrayList<>();
+        for (InsightCard insightCard : insightCards) {
+            final HashMap<String, AttributeValue> item = this.createItem(insightCard, true);
+            final PutRequest putRequest = new PutRequest().withItem(item);
+            insights.add(new WriteRequest().withPutRequest(putRequest));
+        }
+        return insights;
+    }
+
     public ImmutableList<InsightCard> getInsightsByDate(final Long accountId, final DateTime date, final Boolean chronological, final int limit) {
 
         final Condition selectByAccountId = new Condition()
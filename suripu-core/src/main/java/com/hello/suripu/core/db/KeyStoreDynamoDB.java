@@ -21,9 +21,17 @@ import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
 import com.amazonaws.services.dynamodbv2.model.PutItemResult;
 import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
 import com.google.common.base.Optional;
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.hello.suripu.core.firmware.HardwareVersion;
 import com.hello.suripu.core.models.DeviceKeyStoreRecord;
 import com.hello.suripu.core.util.DateTimeUtil;
@@ -35,11 +43,14 @@ import org.joda.time.format.DateTimeFormat;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class KeyStoreDynamoDB implements KeyStore {
 
@@ -58,15 +69,101 @@ public class KeyStoreDynamoDB implements KeyStore {
 
     public final static byte[] DEFAULT_AES_KEY = "1234567891234567".getBytes(); // change this and you die
 
+    private final static long MAX_CACHED_DEVICES = 200000L;
+    private final static int MAX_BATCH_GET_SIZE = 100;
+    private final static int MAX_BATCH_GET_ATTEMPTS = 3;
+
+    // keys are usually provisioned after a device's first upload attempt, so a miss is only trusted for this long
+    private final static long NEGATIVE_CACHE_EXPIRE_AFTER_IN_SECONDS = 60L;
+
+    private final Optional<LoadingCache<String, CachedItem>> cache;
+    private final Ticker ticker;
+    private final long negativeExpireAfterNanos;
+
+    /**
+     * Item as last read from the table, absent if the table had no item for that device
+     */
+    private static class CachedItem {
+        final Optional<Map<String, AttributeValue>> item;
+        final long loadedAtNanos;
+
+        CachedItem(final Optional<Map<String, AttributeValue>> item, final long loadedAtNanos) {
+            this.item = item;
+            this.loadedAtNanos = loadedAtNanos;
+        }
+
+        boolean hasKey() {
+            return item.isPresent() && item.get().containsKey(AES_KEY_ATTRIBUTE_NAME);
+        }
+    }
+
+    /**
+     * @param cacheExpireAfterInSeconds how long a key is cached for, null or 0 to always read from DynamoDB.
+     *                                  Devices without a key are cached for at most NEGATIVE_CACHE_EXPIRE_AFTER_IN_SECONDS.
+     */
     public KeyStoreDynamoDB(
             final AmazonDynamoDB dynamoDBClient,
             final String keyStoreTableName,
             final byte[] defaultAESKey,
             final Integer cacheExpireAfterInSeconds) {
+        this(dynamoDBClient, keyStoreTableName, cacheExpireAfterInSeconds, Ticker.systemTicker());
+    }
+
+    KeyStoreDynamoDB(
+            final AmazonDynamoDB dynamoDBClient,
+            final String keyStoreTableName,
+            final Integer cacheExpireAfterInSeconds,
+            final Ticker ticker) {
         this.dynamoDBClient = dynamoDBClient;
         this.keyStoreTableName = keyStoreTableName;
+        this.ticker = ticker;
+
+        if (cacheExpireAfterInSeconds == null || cacheExpireAfterInSeconds <= 0) {
+            this.cache = Optional.absent();
+            this.negativeExpireAfterNanos = 0L;
+            return;
+        }
+
+        this.negativeExpireAfterNanos = TimeUnit.SECONDS.toNanos(Math.min(cacheExpireAfterInSeconds, NEGATIVE_CACHE_EXPIRE_AFTER_IN_SECONDS));
+
+        // loads for the same device are coalesced by the cache, concurrent callers wait on the same request
+        final CacheLoader<String, CachedItem> loader = new CacheLoader<String, CachedItem>() {
+            @Override
+            public CachedItem load(final String deviceId) {
+                return new CachedItem(getItemRemotely(deviceId), ticker.read());
+            }
+
+            @Override
+            public Map<String, CachedItem> loadAll(final Iterable<? extends String> deviceIds) {
+                final Set<String> ids = Sets.newHashSet(deviceIds);
+                final Map<String, Map<String, AttributeValue>> items = getItemsRemotely(ids);
+                final long now = ticker.read();
+
+                final Map<String, CachedItem> cachedItems = Maps.newHashMapWithExpectedSize(ids.size());
+                for (final String deviceId : ids) {
+                    cachedItems.put(deviceId, new CachedItem(Optional.fromNullable(items.get(deviceId)), now));
+                }
+                return cachedItems;
+            }
+        };
+
+        this.cache = Optional.of(CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHED_DEVICES)
+                .expireAfterWrite(cacheExpireAfterInSeconds, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build(loader));
     }
 
+    /**
+     * Hits, misses and load times of the key cache, all zero if caching is disabled
+     */
+    public CacheStats cacheStats() {
+        if (!cache.isPresent()) {
+            return new CacheStats(0L, 0L, 0L, 0L, 0L, 0L);
+        }
+        return cache.get().stats();
+    }
 
     private String dateToString(final DateTime createdAt) {
         return createdAt.toString(DateTimeFormat.forPattern(DateTimeUtil.DYNAMO_DB_DATETIME_FORMAT));
@@ -74,17 +171,17 @@ public class KeyStoreDynamoDB implements KeyStore {
 
     @Override
     public Optional<byte[]> get(final String deviceId) {
-        return getRemotely(deviceId, false);
+        return getKey(deviceId, false);
     }
 
     @Override
     public Optional<byte[]> getStrict(final String deviceId) {
-        return getRemotely(deviceId, true);
+        return getKey(deviceId, true);
     }
 
     @Override
     public Optional<DeviceKeyStoreRecord> getKeyStoreRecord(final String deviceId) {
-        return getRecordRemotely(deviceId);
+        return getRecord(deviceId);
     }
 
     @Override
@@ -99,6 +196,7 @@ public class KeyStoreDynamoDB implements KeyStore {
 
         final PutItemResult putItemResult = dynamoDBClient.putItem(putItemRequest);
         // TODO: Log consumed capacity
+        invalidate(deviceId);
     }
 
     @Override
@@ -120,6 +218,7 @@ public class KeyStoreDynamoDB implements KeyStore {
                 .withItem(attributes);
 
         final PutItemResult putItemResult = dynamoDBClient.putItem(putItemRequest);
+        invalidate(deviceId);
     }
 
     @Override
@@ -140,6 +239,7 @@ public class KeyStoreDynamoDB implements KeyStore {
                         .build());
         try {
             final PutItemResult putItemResult = dynamoDBClient.putItem(putItemRequest);
+            invalidate(deviceId);
             return true;
         } catch (ConditionalCheckFailedException e) {
             return false;
@@ -179,39 +279,20 @@ public class KeyStoreDynamoDB implements KeyStore {
      */
     @Override
     public Map<String, DeviceKeyStoreRecord> getKeyStoreRecordBatch(final Set<String> deviceIds) {
-
-        final BatchGetItemRequest batchGetItemRequest = new BatchGetItemRequest();
-        final List<Map<String, AttributeValue>> itemKeys = Lists.newArrayList();
-
-        for (final String deviceId : deviceIds) {
-            final Map<String, AttributeValue> attributeValueMap = Maps.newHashMap();
-            attributeValueMap.put(DEVICE_ID_ATTRIBUTE_NAME, new AttributeValue().withS(deviceId));
-            itemKeys.add(attributeValueMap);
-        }
-
-        final KeysAndAttributes key = new KeysAndAttributes().withKeys(itemKeys).withAttributesToGet(DEVICE_ID_ATTRIBUTE_NAME, AES_KEY_ATTRIBUTE_NAME, METADATA, CREATED_AT_ATTRIBUTE_NAME, HARDWARE_VERSION_ATTRIBUTE_NAME);
-        final Map<String, KeysAndAttributes> requestItems = Maps.newHashMap();
-        requestItems.put(keyStoreTableName, key);
-
-        batchGetItemRequest.withRequestItems(requestItems);
-
         try {
-            final BatchGetItemResult batchGetItemResult = dynamoDBClient.batchGetItem(batchGetItemRequest);
+            final Map<String, Map<String, AttributeValue>> items = getItems(deviceIds);
             final Map<String, DeviceKeyStoreRecord> results = Maps.newHashMap();
 
-            for (final String item : batchGetItemResult.getResponses().keySet()) {
-                final List<Map<String, AttributeValue>> responses = batchGetItemResult.getResponses().get(item);
-                for (final Map<String, AttributeValue> response : responses) {
-                    final String deviceId = response.get(DEVICE_ID_ATTRIBUTE_NAME).getS();
-
-                    final String aesKey = response.containsKey(AES_KEY_ATTRIBUTE_NAME) ? response.get(AES_KEY_ATTRIBUTE_NAME).getS() : "";
-                    final String metadata = response.containsKey(METADATA) ? response.get(METADATA).getS() : "";
-                    final String createdAt = response.containsKey(CREATED_AT_ATTRIBUTE_NAME) ? response.get(CREATED_AT_ATTRIBUTE_NAME).getS() : "";
-                    final HardwareVersion hw = response.containsKey(HARDWARE_VERSION_ATTRIBUTE_NAME) ?
-                            HardwareVersion.fromInt(Integer.parseInt(response.get(HARDWARE_VERSION_ATTRIBUTE_NAME).getN()))
-                            : HardwareVersion.SENSE_ONE;
-                    results.put(deviceId, DeviceKeyStoreRecord.forSense(deviceId, aesKey, metadata, createdAt, hw));
-                }
+            for (final Map.Entry<String, Map<String, AttributeValue>> entry : items.entrySet()) {
+                final Map<String, AttributeValue> response = entry.getValue();
+
+                final String aesKey = response.containsKey(AES_KEY_ATTRIBUTE_NAME) ? response.get(AES_KEY_ATTRIBUTE_NAME).getS() : "";
+                final String metadata = response.containsKey(METADATA) ? response.get(METADATA).getS() : "";
+                final String createdAt = response.containsKey(CREATED_AT_ATTRIBUTE_NAME) ? response.get(CREATED_AT_ATTRIBUTE_NAME).getS() : "";
+                final HardwareVersion hw = response.containsKey(HARDWARE_VERSION_ATTRIBUTE_NAME) ?
+                        HardwareVersion.fromInt(Integer.parseInt(response.get(HARDWARE_VERSION_ATTRIBUTE_NAME).getN()))
+                        : HardwareVersion.SENSE_ONE;
+                results.put(entry.getKey(), DeviceKeyStoreRecord.forSense(entry.getKey(), aesKey, metadata, createdAt, hw));
             }
             return results;
         } catch (AmazonServiceException ase){
@@ -235,12 +316,80 @@ public class KeyStoreDynamoDB implements KeyStore {
         return decodeKey(hexEncodedKey);
     }
 
-    private Optional<byte[]> getRemotely(final String deviceId, final Boolean strict) {
+    private Optional<byte[]> getKey(final String deviceId, final Boolean strict) {
         if(DEFAULT_FACTORY_DEVICE_ID.equals(deviceId) && strict) {
             LOGGER.warn("Device not properly provisioned, got {} as a deviceId", deviceId);
                 return Optional.absent();
         }
 
+        return fromItem(getItem(deviceId).orNull(), deviceId, strict);
+
+    }
+
+    private void invalidate(final String deviceId) {
+        if (cache.isPresent()) {
+            cache.get().invalidate(deviceId);
+        }
+    }
+
+    private boolean isStaleMiss(final CachedItem cachedItem) {
+        return !cachedItem.hasKey() && ticker.read() - cachedItem.loadedAtNanos > negativeExpireAfterNanos;
+    }
+
+    private Optional<Map<String, AttributeValue>> getItem(final String deviceId) {
+        if (!cache.isPresent()) {
+            return getItemRemotely(deviceId);
+        }
+
+        try {
+            final CachedItem cachedItem = cache.get().getUnchecked(deviceId);
+            if (!isStaleMiss(cachedItem)) {
+                return cachedItem.item;
+            }
+
+            // only the caller that removes the stale miss reloads it, the others wait on that load
+            cache.get().asMap().remove(deviceId, cachedItem);
+            return cache.get().getUnchecked(deviceId).item;
+        } catch (UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    /**
+     * @return items by device id, devices without an item are left out
+     */
+    private Map<String, Map<String, AttributeValue>> getItems(final Set<String> deviceIds) {
+        if (!cache.isPresent()) {
+            return getItemsRemotely(deviceIds);
+        }
+
+        try {
+            final Map<String, CachedItem> cachedItems = Maps.newHashMap(cache.get().getAll(deviceIds));
+
+            final Set<String> staleMisses = Sets.newHashSet();
+            for (final Map.Entry<String, CachedItem> entry : cachedItems.entrySet()) {
+                if (isStaleMiss(entry.getValue()) && cache.get().asMap().remove(entry.getKey(), entry.getValue())) {
+                    staleMisses.add(entry.getKey());
+                }
+            }
+
+            if (!staleMisses.isEmpty()) {
+                cachedItems.putAll(cache.get().getAll(staleMisses));
+            }
+
+            final Map<String, Map<String, AttributeValue>> items = Maps.newHashMap();
+            for (final Map.Entry<String, CachedItem> entry : cachedItems.entrySet()) {
+                if (entry.getValue().item.isPresent()) {
+                    items.put(entry.getKey(), entry.getValue().item.get());
+                }
+            }
+            return items;
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            throw Throwables.propagate(e.getCause());
+        }
+    }
+
+    private Optional<Map<String, AttributeValue>> getItemRemotely(final String deviceId) {
         final HashMap<String, AttributeValue> key = new HashMap<String, AttributeValue>();
         key.put(DEVICE_ID_ATTRIBUTE_NAME, new AttributeValue().withS(deviceId));
         final GetItemRequest getItemRequest = new GetItemRequest()
@@ -249,8 +398,56 @@ public class KeyStoreDynamoDB implements KeyStore {
 
         final GetItemResult getItemResult = dynamoDBClient.getItem(getItemRequest);
 
-        return fromItem(getItemResult.getItem(), deviceId, strict);
+        return Optional.fromNullable(getItemResult.getItem());
+    }
+
+    /**
+     * Reads up to MAX_BATCH_GET_SIZE devices per request, retrying unprocessed keys
+     * @return items by device id, devices without an item are left out
+     */
+    private Map<String, Map<String, AttributeValue>> getItemsRemotely(final Collection<String> deviceIds) {
+        final Map<String, Map<String, AttributeValue>> items = Maps.newHashMap();
+        final List<String> ids = Lists.newArrayList(deviceIds);
+
+        for (final List<String> idsInBatch : Lists.partition(ids, MAX_BATCH_GET_SIZE)) {
+            final List<Map<String, AttributeValue>> itemKeys = Lists.newArrayList();
+
+            for (final String deviceId : idsInBatch) {
+                final Map<String, AttributeValue> attributeValueMap = Maps.newHashMap();
+                attributeValueMap.put(DEVICE_ID_ATTRIBUTE_NAME, new AttributeValue().withS(deviceId));
+                itemKeys.add(attributeValueMap);
+            }
+
+            KeysAndAttributes keys = new KeysAndAttributes().withKeys(itemKeys).withAttributesToGet(DEVICE_ID_ATTRIBUTE_NAME, AES_KEY_ATTRIBUTE_NAME, METADATA, CREATED_AT_ATTRIBUTE_NAME, HARDWARE_VERSION_ATTRIBUTE_NAME);
+
+            for (int attempt = 0; attempt < MAX_BATCH_GET_ATTEMPTS && keys != null; attempt++) {
+                final Map<String, KeysAndAttributes> requestItems = Maps.newHashMap();
+                requestItems.put(keyStoreTableName, keys);
+
+                final BatchGetItemResult batchGetItemResult = dynamoDBClient.batchGetItem(new BatchGetItemRequest().withRequestItems(requestItems));
+
+                for (final List<Map<String, AttributeValue>> responses : batchGetItemResult.getResponses().values()) {
+                    for (final Map<String, AttributeValue> response : responses) {
+                        items.put(response.get(DEVICE_ID_ATTRIBUTE_NAME).getS(), response);
+                    }
+                }
+
+                keys = batchGetItemResult.getUnprocessedKeys() == null ? null : batchGetItemResult.getUnprocessedKeys().get(keyStoreTableName);
+            }
+
+            // still throttled after retrying, fall back to reading them one by one
+            if (keys != null) {
+                for (final Map<String, AttributeValue> unprocessedKey : keys.getKeys()) {
+                    final String deviceId = unprocessedKey.get(DEVICE_ID_ATTRIBUTE_NAME).getS();
+                    final Optional<Map<String, AttributeValue>> item = getItemRemotely(deviceId);
+                    if (item.isPresent()) {
+                        items.put(deviceId, item.get());
+                    }
+                }
+            }
+        }
 
+        return items;
     }
 
     public static CreateTableResult createTable(final String tableName, final AmazonDynamoDBClient dynamoDBClient){
@@ -273,29 +470,24 @@ public class KeyStoreDynamoDB implements KeyStore {
         return result;
     }
 
-    private Optional<DeviceKeyStoreRecord> getRecordRemotely(final String deviceId) {
+    private Optional<DeviceKeyStoreRecord> getRecord(final String deviceId) {
         if(DEFAULT_FACTORY_DEVICE_ID.equals(deviceId)) {
             LOGGER.warn("Device not properly provisioned, got {} as a deviceId", deviceId);
             return Optional.absent();
         }
 
-        final HashMap<String, AttributeValue> key = new HashMap<String, AttributeValue>();
-        key.put(DEVICE_ID_ATTRIBUTE_NAME, new AttributeValue().withS(deviceId));
-        final GetItemRequest getItemRequest = new GetItemRequest()
-                .withTableName(keyStoreTableName)
-                .withKey(key);
-
-        final GetItemResult getItemResult = dynamoDBClient.getItem(getItemRequest);
+        final Optional<Map<String, AttributeValue>> itemOptional = getItem(deviceId);
 
-        if(getItemResult.getItem() == null || !getItemResult.getItem().containsKey(AES_KEY_ATTRIBUTE_NAME)) {
+        if(!itemOptional.isPresent() || !itemOptional.get().containsKey(AES_KEY_ATTRIBUTE_NAME)) {
             LOGGER.warn("Did not find anything for device_id = {}", deviceId);
             return Optional.absent();
         }
 
-        final String aesKey = getItemResult.getItem().get(AES_KEY_ATTRIBUTE_NAME).getS();
-        final String metadata = getItemResult.getItem().containsKey(METADATA) ? getItemResult.getItem().get(METADATA).getS() : "n/a";
-        final String createdAt = getItemResult.getItem().containsKey(CREATED_AT_ATTRIBUTE_NAME) ? getItemResult.getItem().get(CREATED_AT_ATTRIBUTE_NAME).getS() : "";
-        final HardwareVersion hardwareVersion = HardwareVersion.fromInt(getItemResult.getItem().containsKey(HARDWARE_VERSION_ATTRIBUTE_NAME) ? Integer.parseInt(getItemResult.getItem().get(HARDWARE_VERSION_ATTRIBUTE_NAME).getN()) : 1);
+        final Map<String, AttributeValue> item = itemOptional.get();
+        final String aesKey = item.get(AES_KEY_ATTRIBUTE_NAME).getS();
+        final String metadata = item.containsKey(METADATA) ? item.get(METADATA).getS() : "n/a";
+        final String createdAt = item.containsKey(CREATED_AT_ATTRIBUTE_NAME) ? item.get(CREATED_AT_ATTRIBUTE_NAME).getS() : "";
+        final HardwareVersion hardwareVersion = HardwareVersion.fromInt(item.containsKey(HARDWARE_VERSION_ATTRIBUTE_NAME) ? Integer.parseInt(item.get(HARDWARE_VERSION_ATTRIBUTE_NAME).getN()) : 1);
         return Optional.of(DeviceKeyStoreRecord.forSense(deviceId, aesKey, metadata, createdAt, hardwareVersion));
     }
 
@@ -7,6 +7,7 @@ import com.amazonaws.services.dynamodbv2.model.InternalServerErrorException;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -30,6 +31,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by jarredheinrich on 2/7/17.
@@ -134,6 +136,11 @@ public class MainEventTimesDynamoDB extends TimeSeriesDAODynamoDB<MainEventTimes
         super(client, tablePrefix);
     }
 
+    public MainEventTimesDynamoDB(final AmazonDynamoDB client, final String tablePrefix, final ExecutorService queryExecutor,
+                                  final MetricRegistry metricRegistry) {
+        super(client, tablePrefix, Optional.of(queryExecutor), metricRegistry);
+    }
+
     //region TimeSeriesDAODynamoDB
     @Override
     protected Logger logger() {
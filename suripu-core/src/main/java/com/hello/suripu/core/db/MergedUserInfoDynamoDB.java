@@ -1,7 +1,11 @@
 package com.hello.suripu.core.db;
 
 import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.protobuf.InvalidProtocolBufferException;
 
 import com.amazonaws.AmazonServiceException;
@@ -54,6 +58,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by pangwu on 9/25/14.
@@ -64,6 +69,7 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
     private final AmazonDynamoDB dynamoDBClient;
     private final String tableName;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Optional<Cache<String, VersionedUserInfos>> cache;
 
     public static final String MORPHEUS_ID_ATTRIBUTE_NAME = "device_id";
     public static final String ACCOUNT_ID_ATTRIBUTE_NAME = "account_id";
@@ -89,9 +95,68 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
     private static int MAX_CALL_COUNT = 3;
     public static final int MAX_ALARM_COUNT = 7;
 
+    private static final int CACHE_EXPIRE_AFTER_ACCESS_IN_MINUTES = 10;
+
+    /**
+     * Parsed rows of one sense, along with the updated_at of every row (parsed or not) they were read at.
+     */
+    private static class VersionedUserInfos {
+        final Map<Long, Long> updatedAtByAccountId;
+        final Map<Long, UserInfo> userInfoByAccountId;
+        final List<UserInfo> userInfos;
+
+        private VersionedUserInfos(final Map<Long, Long> updatedAtByAccountId, final List<UserInfo> userInfos) {
+            this.updatedAtByAccountId = ImmutableMap.copyOf(updatedAtByAccountId);
+            this.userInfos = ImmutableList.copyOf(userInfos);
+
+            final Map<Long, UserInfo> userInfoByAccountId = new HashMap<>();
+            for(final UserInfo userInfo : userInfos) {
+                userInfoByAccountId.put(userInfo.accountId, userInfo);
+            }
+            this.userInfoByAccountId = userInfoByAccountId;
+        }
+    }
+
     public MergedUserInfoDynamoDB(final AmazonDynamoDB dynamoDBClient, final String tableName){
+        this(dynamoDBClient, tableName, null);
+    }
+
+    /**
+     * With maxCachedSenses > 0, getInfo(senseId) keeps the parsed rows of each sense in memory.
+     * A cached sense still costs a query projecting only account_id and updated_at, rows are only fetched and parsed again
+     * when one of them changed. Writes going through this instance drop the sense right away.
+     * The projection saves transfer and parsing, not read capacity: DynamoDB charges the probe for the full rows.
+     */
+    public MergedUserInfoDynamoDB(final AmazonDynamoDB dynamoDBClient, final String tableName, final Integer maxCachedSenses){
         this.dynamoDBClient = dynamoDBClient;
         this.tableName = tableName;
+
+        if(maxCachedSenses == null || maxCachedSenses <= 0) {
+            this.cache = Optional.absent();
+            return;
+        }
+
+        this.cache = Optional.of(CacheBuilder.newBuilder()
+                .maximumSize(maxCachedSenses)
+                .expireAfterAccess(CACHE_EXPIRE_AFTER_ACCESS_IN_MINUTES, TimeUnit.MINUTES)
+                .recordStats()
+                .<String, VersionedUserInfos>build());
+    }
+
+    /**
+     * Hits count every cached sense found, including the ones the updated_at check then found stale.
+     */
+    public CacheStats cacheStats() {
+        if(!cache.isPresent()) {
+            return new CacheStats(0L, 0L, 0L, 0L, 0L, 0L);
+        }
+        return cache.get().stats();
+    }
+
+    private void invalidate(final String deviceId) {
+        if(cache.isPresent()) {
+            cache.get().invalidate(deviceId);
+        }
     }
 
     @Override
@@ -232,6 +297,7 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
         }
 
         final UpdateItemRequest request = generateUpdateRequest(deviceId, accountId, items);
+        invalidate(deviceId);
         final UpdateItemResult result = this.dynamoDBClient.updateItem(request);
         return true;
     }
@@ -240,6 +306,7 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
     public boolean deletePillColor(final String senseId, final long accountId, final String pillId){
         final Map<String, AttributeValueUpdate> items = generatePillColorDeleteItem();
         final UpdateItemRequest request = generateUpdateRequest(senseId, accountId, items);
+        invalidate(senseId);
         final UpdateItemResult result = this.dynamoDBClient.updateItem(request);
         return true;
     }
@@ -290,6 +357,7 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
         }
 
         final UpdateItemRequest request = generateUpdateRequest(deviceId, accountId, items);
+        invalidate(deviceId);
         final UpdateItemResult result = this.dynamoDBClient.updateItem(request);
         return true;
     }
@@ -313,6 +381,7 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
                 .withValue(new AttributeValue().withN(String.valueOf(lastUpdatedAt))));
 
         request.withExpected(expected);
+        invalidate(deviceId);
         try {
             final UpdateItemResult result = this.dynamoDBClient.updateItem(request);
         }catch (ConditionalCheckFailedException conditionalCheckFailedException){
@@ -335,6 +404,7 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
         }
 
         final UpdateItemRequest request = generateUpdateRequest(deviceId, accountId, items);
+        invalidate(deviceId);
         final UpdateItemResult result = this.dynamoDBClient.updateItem(request);
         return true;
     }
@@ -347,11 +417,42 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
         }
 
         final UpdateItemRequest request = generateUpdateRequest(deviceId, accountId, items);
+        invalidate(deviceId);
         final UpdateItemResult result = this.dynamoDBClient.updateItem(request);
 
         return true;
     }
 
+    /**
+     * Same as setRingTime, but only if the stored ring time is still currentRingTime.
+     * @return false if the ring time was changed in the meantime, e.g. already updated by another worker
+     */
+    public boolean setRingTimeIfUnchanged(final String deviceId, final long accountId, final RingTime currentRingTime, final RingTime ringTime){
+        final Map<String, AttributeValueUpdate> items = generateRingTimeUpdateItem(ringTime);
+        if(items.isEmpty()){
+            return false;
+        }
+
+        final UpdateItemRequest request = generateUpdateRequest(deviceId, accountId, items);
+        final HashMap<String, ExpectedAttributeValue> expected = new HashMap<>();
+        expected.put(EXPECTED_RING_TIME_ATTRIBUTE_NAME, new ExpectedAttributeValue()
+                .withComparisonOperator(ComparisonOperator.EQ)
+                .withValue(new AttributeValue().withN(String.valueOf(currentRingTime.expectedRingTimeUTC))));
+        expected.put(ACTUAL_RING_TIME_ATTRIBUTE_NAME, new ExpectedAttributeValue()
+                .withComparisonOperator(ComparisonOperator.EQ)
+                .withValue(new AttributeValue().withN(String.valueOf(currentRingTime.actualRingTimeUTC))));
+
+        request.withExpected(expected);
+        invalidate(deviceId);
+        try {
+            this.dynamoDBClient.updateItem(request);
+        }catch (ConditionalCheckFailedException conditionalCheckFailedException){
+            LOGGER.info("action=skip-set-ring-time reason=ring-time-changed device_id={} account_id={}", deviceId, accountId);
+            return false;
+        }
+        return true;
+    }
+
     @Override
     public Optional<UserInfo> getInfo(final String deviceId, final long accountId){
         final List<UserInfo> userInfos = getInfo(deviceId);
@@ -386,6 +487,7 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
                     .withExpected(deleteConditions)
                     .withReturnValues(ReturnValue.ALL_OLD);
 
+            invalidate(deviceId);
             final DeleteItemResult result = this.dynamoDBClient.deleteItem(deleteItemRequest);
 
             return attributeValuesToUserInfo(result.getAttributes());
@@ -398,12 +500,62 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
 
     @Override
     public List<UserInfo> getInfo(final String deviceId){
+        if(!cache.isPresent()) {
+            return queryInfo(deviceId, Optional.<VersionedUserInfos>absent()).userInfos;
+        }
+
+        final VersionedUserInfos cached = cache.get().getIfPresent(deviceId);
+        if(cached != null && cached.updatedAtByAccountId.equals(queryUpdatedAt(deviceId))) {
+            return cached.userInfos;
+        }
+
+        final VersionedUserInfos versionedUserInfos = queryInfo(deviceId, Optional.fromNullable(cached));
+        cache.get().put(deviceId, versionedUserInfos);
+        return versionedUserInfos.userInfos;
+    }
+
+    private Map<String, Condition> selectByDeviceId(final String deviceId) {
         final Map<String, Condition> queryConditions = new HashMap<String, Condition>();
         final Condition selectByDeviceId  = new Condition()
                 .withComparisonOperator(ComparisonOperator.EQ)
                 .withAttributeValueList(new AttributeValue().withS(deviceId));
         queryConditions.put(MORPHEUS_ID_ATTRIBUTE_NAME, selectByDeviceId);
+        return queryConditions;
+    }
+
+    private static long updatedAt(final Map<String, AttributeValue> item) {
+        if(!item.containsKey(UPDATED_AT_ATTRIBUTE_NAME)) {
+            return -1L;
+        }
+        return Long.valueOf(item.get(UPDATED_AT_ATTRIBUTE_NAME).getN());
+    }
+
+    /**
+     * Version of every row of the sense. Consumes as much read capacity as queryInfo, only the response is smaller
+     */
+    private Map<Long, Long> queryUpdatedAt(final String deviceId) {
+        final QueryRequest queryRequest = new QueryRequest(this.tableName)
+                .withKeyConditions(selectByDeviceId(deviceId))
+                .withAttributesToGet(ACCOUNT_ID_ATTRIBUTE_NAME, UPDATED_AT_ATTRIBUTE_NAME);
 
+        final QueryResult queryResult = this.dynamoDBClient.query(queryRequest);
+        if(queryResult.getItems() == null) {
+            return Collections.emptyMap();
+        }
+
+        final Map<Long, Long> updatedAtByAccountId = new HashMap<>();
+        for(final Map<String, AttributeValue> item : queryResult.getItems()) {
+            if(item.containsKey(ACCOUNT_ID_ATTRIBUTE_NAME)) {
+                updatedAtByAccountId.put(Long.valueOf(item.get(ACCOUNT_ID_ATTRIBUTE_NAME).getN()), updatedAt(item));
+            }
+        }
+        return updatedAtByAccountId;
+    }
+
+    /**
+     * Rows whose updated_at did not move since previous was read are not parsed again
+     */
+    private VersionedUserInfos queryInfo(final String deviceId, final Optional<VersionedUserInfos> previous){
         final HashSet<String> targetAttributes = new HashSet<String>();
         Collections.addAll(targetAttributes,
                 MORPHEUS_ID_ATTRIBUTE_NAME, ACCOUNT_ID_ATTRIBUTE_NAME,
@@ -414,22 +566,23 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
                 UPDATED_AT_ATTRIBUTE_NAME);
 
         final QueryRequest queryRequest = new QueryRequest(this.tableName)
-                .withKeyConditions(queryConditions)
+                .withKeyConditions(selectByDeviceId(deviceId))
                 .withAttributesToGet(targetAttributes);
 
         final QueryResult queryResult = this.dynamoDBClient.query(queryRequest);
         if(queryResult.getItems() == null){
-            return Collections.EMPTY_LIST;
-        }
-
-        if(queryResult.getItems().size() == 0){
-            return Collections.EMPTY_LIST;
+            return new VersionedUserInfos(Collections.<Long, Long>emptyMap(), Collections.<UserInfo>emptyList());
         }
 
         final List<Map<String, AttributeValue>> items = queryResult.getItems();
         final List<UserInfo> userInfos = new ArrayList<UserInfo>();
+        final Map<Long, Long> updatedAtByAccountId = new HashMap<>();
 
         for (final Map<String, AttributeValue> item:items) {
+            if(item.containsKey(ACCOUNT_ID_ATTRIBUTE_NAME)) {
+                updatedAtByAccountId.put(Long.valueOf(item.get(ACCOUNT_ID_ATTRIBUTE_NAME).getN()), updatedAt(item));
+            }
+
             final HashSet<String> requiredAttributes = new HashSet<String>();
             Collections.addAll(requiredAttributes,
                     MORPHEUS_ID_ATTRIBUTE_NAME, ACCOUNT_ID_ATTRIBUTE_NAME, TIMEZONE_ID_ATTRIBUTE_NAME, UPDATED_AT_ATTRIBUTE_NAME);
@@ -438,6 +591,14 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
                 continue;
             }
 
+            if(previous.isPresent()) {
+                final UserInfo previousUserInfo = previous.get().userInfoByAccountId.get(Long.valueOf(item.get(ACCOUNT_ID_ATTRIBUTE_NAME).getN()));
+                if(previousUserInfo != null && previousUserInfo.lastUpdatedAt == updatedAt(item)) {
+                    userInfos.add(previousUserInfo);
+                    continue;
+                }
+            }
+
             final Optional<UserInfo> alarmInfoOptional = attributeValuesToUserInfo(item);
             if(!alarmInfoOptional.isPresent()){
                 LOGGER.error("Get alarm info for device id {} failed.", deviceId);
@@ -446,7 +607,7 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
             userInfos.add(alarmInfoOptional.get());
         }
 
-        return ImmutableList.copyOf(userInfos);
+        return new VersionedUserInfos(updatedAtByAccountId, userInfos);
     }
 
 
@@ -482,7 +643,7 @@ public class MergedUserInfoDynamoDB implements MergedUserInfoDAO {
         final String alarmListJSON = item.get(ALARM_TEMPLATES_ATTRIBUTE_NAME).getS();
         try {
             final List<Alarm> alarmList = this.objectMapper.readValue(alarmListJSON, new TypeReference<List<Alarm>>(){});
-            return alarmList;
+            return Collections.unmodifiableList(alarmList);
         } catch (IOException e) {
             LOGGER.error("Deserialize JSON for alarm list failed, device {}, account id {}.", deviceId, accountId);
         }
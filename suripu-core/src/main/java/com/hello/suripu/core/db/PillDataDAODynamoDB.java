@@ -16,6 +16,7 @@ import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
 import com.amazonaws.services.dynamodbv2.model.TableDescription;
+import com.codahale.metrics.MetricRegistry;
 import com.hello.suripu.core.db.dynamo.Attribute;
 import com.hello.suripu.core.db.dynamo.Expressions;
 import com.hello.suripu.core.db.dynamo.expressions.Expression;
@@ -34,6 +35,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by kingshy on 11/10/15.
@@ -57,6 +59,11 @@ public class PillDataDAODynamoDB extends TimeSeriesDAODynamoDB<TrackerMotion> im
         super(dynamoDBClient, tablePrefix);
     }
 
+    public PillDataDAODynamoDB(final AmazonDynamoDB dynamoDBClient, final String tablePrefix, final ExecutorService queryExecutor,
+                               final MetricRegistry metricRegistry) {
+        super(dynamoDBClient, tablePrefix, Optional.of(queryExecutor), metricRegistry);
+    }
+
     public enum PillDataAttribute implements Attribute {
         ACCOUNT_ID ("aid", "N"),
         TS_PILL_ID ("ts|pil", "S"),
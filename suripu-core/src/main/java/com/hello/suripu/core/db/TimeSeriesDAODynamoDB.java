@@ -3,9 +3,11 @@ package com.hello.suripu.core.db;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Joiner;
 import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import com.amazonaws.AmazonClientException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
@@ -24,7 +26,10 @@ import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.ResourceNotFoundException;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.hello.suripu.core.db.dynamo.Attribute;
+import com.hello.suripu.core.db.dynamo.BatchWritePipeline;
 import com.hello.suripu.core.db.dynamo.Expressions;
 import com.hello.suripu.core.db.dynamo.expressions.Expression;
 import com.hello.suripu.core.db.responses.Response;
@@ -36,6 +41,12 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Created by jakepiccolo on 11/18/15.
@@ -48,10 +59,38 @@ public abstract class TimeSeriesDAODynamoDB<T> {
 
     protected final AmazonDynamoDB dynamoDBClient;
     protected final String tablePrefix;
+    private final Optional<ExecutorService> queryExecutor;
+    private final Timer shardQueryTimer;
 
     public TimeSeriesDAODynamoDB(final AmazonDynamoDB dynamoDBClient, final String tablePrefix) {
+        // nothing reports this registry
+        this(dynamoDBClient, tablePrefix, Optional.<ExecutorService>absent(), new MetricRegistry());
+    }
+
+    /**
+     * @param queryExecutor when present, queryTables() queries all shard tables concurrently on this executor
+     *                      instead of one after another.
+     * @param metricRegistry registry of the "{class}.shard-query" timer, timing every shard table query
+     */
+    public TimeSeriesDAODynamoDB(final AmazonDynamoDB dynamoDBClient, final String tablePrefix,
+                                 final Optional<ExecutorService> queryExecutor, final MetricRegistry metricRegistry) {
         this.dynamoDBClient = dynamoDBClient;
         this.tablePrefix = tablePrefix;
+        this.queryExecutor = queryExecutor;
+        this.shardQueryTimer = metricRegistry.timer(MetricRegistry.name(getClass(), "shard-query"));
+    }
+
+    /**
+     * Bounded executor suitable for concurrent shard queries.
+     * When all threads are busy and the queue is full, the query runs on the calling thread.
+     * @param maxThreads max number of shard queries in flight
+     * @param maxQueueSize max number of shard queries waiting for a thread
+     */
+    public static ExecutorService newQueryExecutor(final int maxThreads, final int maxQueueSize) {
+        return new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueueSize),
+                new ThreadFactoryBuilder().setNameFormat("ddb-timeseries-query-%d").setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
     }
 
 
@@ -240,6 +279,21 @@ public abstract class TimeSeriesDAODynamoDB<T> {
         return successfulInsertions;
     }
 
+    /**
+     * Inserts list of objects through a shared pipeline, which keeps several BatchWriteItem calls in flight
+     * and re-queues unprocessed items instead of backing off.
+     * @param modelList
+     * @param pipeline
+     * @return The number of items that were successfully inserted
+     */
+    public int batchInsertAllPartitions(final List<T> modelList, final BatchWritePipeline pipeline) {
+        final BatchWritePipeline.Result result = pipeline.write(toWriteRequestItems(modelList));
+        if (!result.remaining.isEmpty()) {
+            logger().warn("Failed to batch write {} items to Dynamo.", result.remainingCount());
+        }
+        return result.written;
+    }
+
     private int countWriteRequestItems(final Map<String, List<WriteRequest>> requestItems) {
         int total = 0;
         for (final List<WriteRequest> writeRequests : requestItems.values()) {
@@ -392,17 +446,13 @@ public abstract class TimeSeriesDAODynamoDB<T> {
                                                                       final Expression keyConditionExpression,
                                                                       final Collection<? extends Attribute> attributes)
     {
-        final List<Map<String, AttributeValue>> results = Lists.newArrayList();
         final String keyCondition = keyConditionExpression.expressionString();
+        final Map<String, AttributeValue> attributeValues = keyConditionExpression.expressionAttributeValues();
+        final List<Supplier<Response<List<Map<String, AttributeValue>>>>> tableQueries = Lists.newArrayList();
         for (final String table: tableNames) {
-            final Response<List<Map<String, AttributeValue>>> response = query(table, keyCondition, attributes, Optional.<String>absent(), keyConditionExpression.expressionAttributeValues());
-            if (response.status == Response.Status.SUCCESS) {
-                results.addAll(response.data);
-            } else {
-                return Response.into(results, response);
-            }
+            tableQueries.add(() -> timedQuery(table, keyCondition, attributes, Optional.<String>absent(), attributeValues));
         }
-        return Response.success(results);
+        return queryTables(tableQueries);
     }
 
     private ImmutableMap<String,AttributeValue> getAllAttributeValues(final Expression keyConditionExpression,
@@ -419,13 +469,31 @@ public abstract class TimeSeriesDAODynamoDB<T> {
                                                                       final Expression filterExpression,
                                                                       final Collection<? extends Attribute> attributes)
     {
-        final List<Map<String, AttributeValue>> results = Lists.newArrayList();
         final String keyCondition = keyConditionExpression.expressionString();
         final String filterCondition = filterExpression.expressionString();
         final Map<String,AttributeValue> attributeValues = getAllAttributeValues(keyConditionExpression, filterExpression);
+        final List<Supplier<Response<List<Map<String, AttributeValue>>>>> tableQueries = Lists.newArrayList();
         for (final String table: tableNames) {
-            final Response<List<Map<String, AttributeValue>>> response = query(
-                    table, keyCondition, attributes, Optional.of(filterCondition), attributeValues);
+            tableQueries.add(() -> timedQuery(table, keyCondition, attributes, Optional.of(filterCondition), attributeValues));
+        }
+        return queryTables(tableQueries);
+    }
+
+    /**
+     * Run one query per shard table and concatenate the results in table order.
+     * Tables are chronological and each table's items come back sorted by range key, so the merged list is in range key order.
+     *
+     * Results are the same whether the tables are queried serially or concurrently: stop at the first table that
+     * did not return SUCCESS and report its status along with the results of the tables before it.
+     */
+    private Response<List<Map<String, AttributeValue>>> queryTables(final List<Supplier<Response<List<Map<String, AttributeValue>>>>> tableQueries) {
+        if (queryExecutor.isPresent() && tableQueries.size() > 1) {
+            return queryTablesConcurrently(queryExecutor.get(), tableQueries);
+        }
+
+        final List<Map<String, AttributeValue>> results = Lists.newArrayList();
+        for (final Supplier<Response<List<Map<String, AttributeValue>>>> tableQuery : tableQueries) {
+            final Response<List<Map<String, AttributeValue>>> response = tableQuery.get();
             if (response.status == Response.Status.SUCCESS) {
                 results.addAll(response.data);
             } else {
@@ -434,6 +502,55 @@ public abstract class TimeSeriesDAODynamoDB<T> {
         }
         return Response.success(results);
     }
+
+    private Response<List<Map<String, AttributeValue>>> queryTablesConcurrently(final ExecutorService executor,
+                                                                               final List<Supplier<Response<List<Map<String, AttributeValue>>>>> tableQueries)
+    {
+        final List<Future<Response<List<Map<String, AttributeValue>>>>> futures = Lists.newArrayListWithCapacity(tableQueries.size());
+        for (final Supplier<Response<List<Map<String, AttributeValue>>>> tableQuery : tableQueries) {
+            futures.add(executor.submit(tableQuery::get));
+        }
+
+        final List<Map<String, AttributeValue>> results = Lists.newArrayList();
+        try {
+            for (final Future<Response<List<Map<String, AttributeValue>>>> future : futures) {
+                final Response<List<Map<String, AttributeValue>>> response = future.get();
+                if (response.status == Response.Status.SUCCESS) {
+                    results.addAll(response.data);
+                } else {
+                    return Response.into(results, response);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger().error("error=interrupted method=queryTablesConcurrently");
+            return Response.failure(results, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            return Response.failure(results, e);
+        } finally {
+            for (final Future<Response<List<Map<String, AttributeValue>>>> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return Response.success(results);
+    }
+
+    private Response<List<Map<String, AttributeValue>>> timedQuery(final String tableName,
+                                                                   final String keyConditionExpression,
+                                                                   final Collection<? extends Attribute> targetAttributes,
+                                                                   final Optional<String> filterExpression,
+                                                                   final Map<String, AttributeValue> filterAttributeValues)
+    {
+        final Timer.Context context = shardQueryTimer.time();
+        try {
+            return query(tableName, keyConditionExpression, targetAttributes, filterExpression, filterAttributeValues);
+        } finally {
+            context.stop();
+        }
+    }
     //endregion
 
 
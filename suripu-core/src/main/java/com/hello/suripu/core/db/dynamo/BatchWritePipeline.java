@@ -0,0 +1,416 @@
+package com.hello.suripu.core.db.dynamo;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes {tableName => writeRequests} maps with up to maxInFlight BatchWriteItem calls running at the same time.
+ *
+ * Every batch targets a single table, tables take turns so one large shard does not starve the others.
+ * UnprocessedItems go back at the end of their table's queue and are sent with a later batch instead of
+ * sleeping on the calling thread. An item is given up on after maxAttemptsPerItem calls.
+ *
+ * Each table has its own token bucket (items per second). A throttled batch halves its table's rate,
+ * a fully processed batch raises it by a fixed step, within [minItemsPerSecond, maxItemsPerSecond].
+ * Buckets are kept for the lifetime of the pipeline, so a pipeline should be shared by all writers of the same tables.
+ *
+ * Counters are exposed through stats().
+ */
+public class BatchWritePipeline {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(BatchWritePipeline.class);
+
+    public final static int MAX_BATCH_ITEMS = 25;
+
+    private final static double DECREASE_FACTOR = 0.5;
+
+    public static class Result {
+        public final int written;
+        public final Map<String, List<WriteRequest>> remaining;  // given up on after maxAttemptsPerItem calls or a client error
+
+        private Result(final int written, final Map<String, List<WriteRequest>> remaining) {
+            this.written = written;
+            this.remaining = remaining;
+        }
+
+        public int remainingCount() {
+            int count = 0;
+            for (final List<WriteRequest> requests : remaining.values()) {
+                count += requests.size();
+            }
+            return count;
+        }
+    }
+
+    public static class Stats {
+        public final long submitted;
+        public final long written;
+        public final long unprocessed;  // items returned as UnprocessedItems or part of a throttled batch, re-queued or not
+        public final long failed;
+        public final long batches;
+        public final long throttledBatches;
+        public final int inFlight;
+
+        private Stats(final long submitted, final long written, final long unprocessed, final long failed,
+                      final long batches, final long throttledBatches, final int inFlight) {
+            this.submitted = submitted;
+            this.written = written;
+            this.unprocessed = unprocessed;
+            this.failed = failed;
+            this.batches = batches;
+            this.throttledBatches = throttledBatches;
+            this.inFlight = inFlight;
+        }
+    }
+
+    private static class PendingWrite {
+        final WriteRequest request;
+        int attempts = 0;
+
+        PendingWrite(final WriteRequest request) {
+            this.request = request;
+        }
+    }
+
+    private static class Batch {
+        final String tableName;
+        final List<PendingWrite> writes;
+
+        Batch(final String tableName, final List<PendingWrite> writes) {
+            this.tableName = tableName;
+            this.writes = writes;
+        }
+    }
+
+    private static class BatchOutcome {
+        final Batch batch;
+        final List<WriteRequest> unprocessed;
+        final boolean throttled;
+        final AmazonClientException error;
+
+        BatchOutcome(final Batch batch, final List<WriteRequest> unprocessed, final boolean throttled, final AmazonClientException error) {
+            this.batch = batch;
+            this.unprocessed = unprocessed;
+            this.throttled = throttled;
+            this.error = error;
+        }
+    }
+
+    /**
+     * Token bucket whose rate goes down multiplicatively on throttling and up additively otherwise.
+     */
+    private static class AdaptiveRate {
+        private final RateLimiter rateLimiter;
+        private final double min;
+        private final double max;
+        private final double step;
+
+        AdaptiveRate(final double initial, final double min, final double max) {
+            this.rateLimiter = RateLimiter.create(initial);
+            this.min = min;
+            this.max = max;
+            this.step = Math.max(1.0, max / 20.0);
+        }
+
+        void acquire(final int items) {
+            rateLimiter.acquire(items);
+        }
+
+        synchronized void throttled() {
+            rateLimiter.setRate(Math.max(min, rateLimiter.getRate() * DECREASE_FACTOR));
+        }
+
+        synchronized void succeeded() {
+            final double current = rateLimiter.getRate();
+            if (current < max) {
+                rateLimiter.setRate(Math.min(max, current + step));
+            }
+        }
+
+        double rate() {
+            return rateLimiter.getRate();
+        }
+    }
+
+    private final AmazonDynamoDB dynamoDBClient;
+    private final ExecutorService executor;
+    private final int maxInFlight;
+    private final int maxAttemptsPerItem;
+    private final double initialItemsPerSecond;
+    private final double minItemsPerSecond;
+    private final double maxItemsPerSecond;
+
+    private final ConcurrentMap<String, AdaptiveRate> tableRates = Maps.newConcurrentMap();
+
+    private final AtomicLong submitted = new AtomicLong(0L);
+    private final AtomicLong written = new AtomicLong(0L);
+    private final AtomicLong unprocessed = new AtomicLong(0L);
+    private final AtomicLong failed = new AtomicLong(0L);
+    private final AtomicLong batches = new AtomicLong(0L);
+    private final AtomicLong throttledBatches = new AtomicLong(0L);
+    private final AtomicLong inFlight = new AtomicLong(0L);
+
+    /**
+     * @param executor runs the BatchWriteItem calls, needs at least maxInFlight threads to actually keep them all in flight
+     * @param maxInFlight BatchWriteItem calls in flight per write() call
+     * @param maxAttemptsPerItem calls an item is part of before it is given up on
+     * @param initialItemsPerSecond starting rate of each table's bucket
+     * @param minItemsPerSecond floor of a table's rate after throttling
+     * @param maxItemsPerSecond ceiling of a table's rate
+     */
+    public BatchWritePipeline(final AmazonDynamoDB dynamoDBClient, final ExecutorService executor,
+                              final int maxInFlight, final int maxAttemptsPerItem,
+                              final double initialItemsPerSecond, final double minItemsPerSecond, final double maxItemsPerSecond) {
+        this.dynamoDBClient = dynamoDBClient;
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.maxAttemptsPerItem = maxAttemptsPerItem;
+        this.initialItemsPerSecond = initialItemsPerSecond;
+        this.minItemsPerSecond = minItemsPerSecond;
+        this.maxItemsPerSecond = maxItemsPerSecond;
+    }
+
+    /**
+     * Writes all items, blocking until each one is either written or given up on.
+     * @param requestItems - map of {tableName => writeRequests}, must not contain two requests for the same key in one table
+     */
+    public Result write(final Map<String, List<WriteRequest>> requestItems) {
+        final Map<String, ArrayDeque<PendingWrite>> pending = Maps.newLinkedHashMap();
+        int total = 0;
+        for (final Map.Entry<String, List<WriteRequest>> entry : requestItems.entrySet()) {
+            final ArrayDeque<PendingWrite> queue = new ArrayDeque<>(entry.getValue().size());
+            for (final WriteRequest request : entry.getValue()) {
+                queue.add(new PendingWrite(request));
+            }
+            if (!queue.isEmpty()) {
+                pending.put(entry.getKey(), queue);
+                total += queue.size();
+            }
+        }
+        submitted.addAndGet(total);
+
+        final long startTime = System.nanoTime();
+        final CompletionService<BatchOutcome> completionService = new ExecutorCompletionService<>(executor);
+        final Map<String, List<WriteRequest>> remaining = Maps.newHashMap();
+        final Set<Batch> running = Sets.newIdentityHashSet();
+        int writtenItems = 0;
+
+        try {
+            while (!pending.isEmpty() || !running.isEmpty()) {
+                while (running.size() < maxInFlight && !pending.isEmpty()) {
+                    final Batch batch = nextBatch(pending);
+                    rate(batch.tableName).acquire(batch.writes.size());
+                    completionService.submit(() -> send(batch));
+                    running.add(batch);
+                }
+
+                final BatchOutcome outcome = completionService.take().get();
+                running.remove(outcome.batch);
+                writtenItems += handle(outcome, pending, remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("error=interrupted method=write in_flight={}", running.size());
+            // the outcome of the batches in flight is unknown, report them as not written
+            for (final Batch batch : running) {
+                pending.computeIfAbsent(batch.tableName, tableName -> new ArrayDeque<>()).addAll(batch.writes);
+            }
+            giveUp(pending, remaining);
+        } catch (ExecutionException e) {
+            // send() catches client errors, anything else is a bug
+            throw new RuntimeException(e.getCause());
+        }
+
+        final long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+        LOGGER.debug("method=write items={} written={} remaining={} latency_ms={} items_per_second={}",
+                total, writtenItems, total - writtenItems, elapsedMillis,
+                (elapsedMillis > 0) ? (writtenItems * 1000L) / elapsedMillis : writtenItems);
+        return new Result(writtenItems, remaining);
+    }
+
+    public Stats stats() {
+        return new Stats(submitted.get(), written.get(), unprocessed.get(), failed.get(),
+                batches.get(), throttledBatches.get(), (int) inFlight.get());
+    }
+
+    /**
+     * Current items per second of each table's bucket
+     */
+    public Map<String, Double> tableRates() {
+        final ImmutableMap.Builder<String, Double> builder = ImmutableMap.builder();
+        for (final Map.Entry<String, AdaptiveRate> entry : tableRates.entrySet()) {
+            builder.put(entry.getKey(), entry.getValue().rate());
+        }
+        return builder.build();
+    }
+
+    private AdaptiveRate rate(final String tableName) {
+        final AdaptiveRate existing = tableRates.get(tableName);
+        if (existing != null) {
+            return existing;
+        }
+        final AdaptiveRate created = new AdaptiveRate(initialItemsPerSecond, minItemsPerSecond, maxItemsPerSecond);
+        final AdaptiveRate raced = tableRates.putIfAbsent(tableName, created);
+        return (raced == null) ? created : raced;
+    }
+
+    /**
+     * Takes up to MAX_BATCH_ITEMS writes from the first table and moves that table to the back of the line.
+     */
+    private static Batch nextBatch(final Map<String, ArrayDeque<PendingWrite>> pending) {
+        final Iterator<Map.Entry<String, ArrayDeque<PendingWrite>>> iterator = pending.entrySet().iterator();
+        final Map.Entry<String, ArrayDeque<PendingWrite>> first = iterator.next();
+        final String tableName = first.getKey();
+        final ArrayDeque<PendingWrite> queue = first.getValue();
+        iterator.remove();
+
+        final List<PendingWrite> writes = Lists.newArrayListWithCapacity(Math.min(MAX_BATCH_ITEMS, queue.size()));
+        while (writes.size() < MAX_BATCH_ITEMS && !queue.isEmpty()) {
+            writes.add(queue.poll());
+        }
+        if (!queue.isEmpty()) {
+            pending.put(tableName, queue);
+        }
+        return new Batch(tableName, writes);
+    }
+
+    private BatchOutcome send(final Batch batch) {
+        inFlight.incrementAndGet();
+        batches.incrementAndGet();
+        final List<WriteRequest> requests = Lists.newArrayListWithCapacity(batch.writes.size());
+        for (final PendingWrite write : batch.writes) {
+            write.attempts++;
+            requests.add(write.request);
+        }
+
+        try {
+            final BatchWriteItemResult result = dynamoDBClient.batchWriteItem(
+                    new BatchWriteItemRequest().withRequestItems(ImmutableMap.of(batch.tableName, requests)));
+            final List<WriteRequest> unprocessedItems = result.getUnprocessedItems().get(batch.tableName);
+            if (unprocessedItems == null || unprocessedItems.isEmpty()) {
+                return new BatchOutcome(batch, Collections.<WriteRequest>emptyList(), false, null);
+            }
+            return new BatchOutcome(batch, unprocessedItems, true, null);
+        } catch (ProvisionedThroughputExceededException e) {
+            return new BatchOutcome(batch, requests, true, null);
+        } catch (AmazonClientException e) {
+            return new BatchOutcome(batch, requests, false, e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of items of the batch that were written
+     */
+    private int handle(final BatchOutcome outcome,
+                       final Map<String, ArrayDeque<PendingWrite>> pending,
+                       final Map<String, List<WriteRequest>> remaining) {
+        final Batch batch = outcome.batch;
+        final AdaptiveRate tableRate = rate(batch.tableName);
+
+        if (outcome.error != null) {
+            LOGGER.error("error=AmazonClientException method=write table={} items={} exception={}",
+                    batch.tableName, batch.writes.size(), outcome.error.getMessage());
+            failed.addAndGet(batch.writes.size());
+            addRemaining(remaining, batch.tableName, outcome.unprocessed);
+            return 0;
+        }
+
+        if (!outcome.throttled) {
+            tableRate.succeeded();
+            written.addAndGet(batch.writes.size());
+            return batch.writes.size();
+        }
+
+        tableRate.throttled();
+        throttledBatches.incrementAndGet();
+        unprocessed.addAndGet(outcome.unprocessed.size());
+        LOGGER.warn("action=throttled method=write table={} unprocessed={} items_per_second={}",
+                batch.tableName, outcome.unprocessed.size(), tableRate.rate());
+
+        // UnprocessedItems are deserialized copies, match them back to the pending writes by equality
+        final Map<WriteRequest, PendingWrite> byRequest = Maps.newHashMapWithExpectedSize(batch.writes.size());
+        for (final PendingWrite write : batch.writes) {
+            byRequest.put(write.request, write);
+        }
+
+        int notWritten = 0;
+        for (final WriteRequest request : outcome.unprocessed) {
+            final PendingWrite write = byRequest.get(request);
+            if (write == null) {
+                // can not tell which write it is, so it can not be retried, but it was not written either
+                LOGGER.error("error=unmatched-unprocessed-item method=write table={}", batch.tableName);
+                notWritten++;
+                failed.incrementAndGet();
+                addRemaining(remaining, batch.tableName, Lists.newArrayList(request));
+                continue;
+            }
+            notWritten++;
+            if (write.attempts >= maxAttemptsPerItem) {
+                failed.incrementAndGet();
+                addRemaining(remaining, batch.tableName, Lists.newArrayList(request));
+                continue;
+            }
+            ArrayDeque<PendingWrite> queue = pending.get(batch.tableName);
+            if (queue == null) {
+                queue = new ArrayDeque<>();
+                pending.put(batch.tableName, queue);
+            }
+            queue.add(write);
+        }
+
+        final int writtenItems = batch.writes.size() - notWritten;
+        written.addAndGet(writtenItems);
+        return writtenItems;
+    }
+
+    private void giveUp(final Map<String, ArrayDeque<PendingWrite>> pending, final Map<String, List<WriteRequest>> remaining) {
+        for (final Map.Entry<String, ArrayDeque<PendingWrite>> entry : pending.entrySet()) {
+            final List<WriteRequest> requests = Lists.newArrayListWithCapacity(entry.getValue().size());
+            for (final PendingWrite write : entry.getValue()) {
+                requests.add(write.request);
+            }
+            failed.addAndGet(requests.size());
+            addRemaining(remaining, entry.getKey(), requests);
+        }
+        pending.clear();
+    }
+
+    private static void addRemaining(final Map<String, List<WriteRequest>> remaining, final String tableName, final List<WriteRequest> requests) {
+        if (requests.isEmpty()) {
+            return;
+        }
+        List<WriteRequest> list = remaining.get(tableName);
+        if (list == null) {
+            list = Lists.newArrayList();
+            remaining.put(tableName, list);
+        }
+        list.addAll(requests);
+    }
+}
@@ -30,13 +30,20 @@ import java.util.Map;
 public class Util {
     private final static Logger LOGGER = LoggerFactory.getLogger(Util.class);
 
-    private static void backoff(final String tableName, int numberOfAttempts) {
+    /**
+     * Sleeps 2^numberOfAttempts * 50ms before retrying a throttled request.
+     * @return false if the thread was interrupted, with its interrupt flag restored so the caller can stop retrying
+     */
+    public static boolean backoff(final String tableName, int numberOfAttempts) {
         try {
             long sleepMillis = (long) Math.pow(2, numberOfAttempts) * 50;
             LOGGER.warn("reason=dynamodb-throttling sleep-millis={} table={}", sleepMillis, tableName);
             Thread.sleep(sleepMillis);
+            return true;
         } catch (InterruptedException e) {
             LOGGER.error("error=interrupted-exception table={} exception={}", tableName, e);
+            Thread.currentThread().interrupt();
+            return false;
         }
     }
 
@@ -51,9 +58,7 @@ public class Util {
             } catch (ResourceNotFoundException rnfe) {
                 return Response.failure(Optional.<Map<String,AttributeValue>>absent(), rnfe);
             } catch (ProvisionedThroughputExceededException ptee) {
-                if (numAttempts < 5) {
-                    backoff(tableName, numAttempts);
-                } else {
+                if (numAttempts >= 5 || !backoff(tableName, numAttempts)) {
                     LOGGER.error("error=ProvisionedThroughputExceededException tries={} status=aborted table={}",
                             numAttempts, tableName);
                     return Response.failure(Optional.<Map<String,AttributeValue>>absent(), ptee);
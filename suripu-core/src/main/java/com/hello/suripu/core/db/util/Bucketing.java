@@ -10,6 +10,7 @@ import com.hello.suripu.core.models.Calibration;
 import com.hello.suripu.core.models.Device;
 import com.hello.suripu.core.models.DeviceData;
 import com.hello.suripu.core.models.Sample;
+import com.hello.suripu.core.models.SampleSeries;
 import com.hello.suripu.core.models.Sensor;
 import org.jetbrains.annotations.NotNull;
 import org.joda.time.DateTime;
@@ -65,6 +66,22 @@ public class Bucketing {
     public static Optional<Map<Long, Sample>> populateMap(final List<DeviceData> deviceDataList, final Sensor sensorName,
                                                           final Optional<Device.Color> optionalColor, final Optional<Calibration> calibrationOptional,
                                                           final Boolean useAudioPeakEnergy) {
+        final Optional<SampleSeries> series = populateSeries(deviceDataList, sensorName, optionalColor, calibrationOptional, useAudioPeakEnergy);
+        if (!series.isPresent()) {
+            return Optional.absent();
+        }
+        return Optional.of(series.get().toMap());
+    }
+
+    /**
+     * Columnar version of populateMap: one sample per DeviceData, in deviceDataList order
+     * @param deviceDataList
+     * @param sensorName
+     * @return
+     */
+    public static Optional<SampleSeries> populateSeries(final List<DeviceData> deviceDataList, final Sensor sensorName,
+                                                        final Optional<Device.Color> optionalColor, final Optional<Calibration> calibrationOptional,
+                                                        final Boolean useAudioPeakEnergy) {
 
         if(deviceDataList == null) {
             LOGGER.error("deviceDataList is null for sensor {}", sensorName);
@@ -77,11 +94,11 @@ public class Bucketing {
 
         final Device.Color color = optionalColor.or(Device.DEFAULT_COLOR);
 
-        final Map<Long, Sample> map = new HashMap<>();
+        final SampleSeries.Builder builder = new SampleSeries.Builder(deviceDataList.size());
 
         for(final DeviceData deviceData: deviceDataList) {
 
-            final Long newKey = deviceData.dateTimeUTC.getMillis();
+            final long newKey = deviceData.dateTimeUTC.getMillis();
 
             // TODO: refactor this
             final CalibratedDeviceData calibratedDeviceData = new CalibratedDeviceData(deviceData, color, calibrationOptional);
@@ -112,10 +129,14 @@ public class Bucketing {
                 return Optional.absent();
             }
 
-            map.put(newKey, new Sample(newKey, sensorValue, deviceData.offsetMillis));
+            if (deviceData.offsetMillis == null) {
+                builder.addWithoutOffset(newKey, sensorValue);
+            } else {
+                builder.add(newKey, sensorValue, deviceData.offsetMillis);
+            }
         }
 
-        return Optional.of(map);
+        return Optional.of(builder.build());
     }
 
     public static AllSensorSampleMap populateMapAll(@NotNull final List<DeviceData> deviceDataList, final Optional<Device.Color> optionalColor,
@@ -131,7 +152,7 @@ public class Bucketing {
 
         for(final DeviceData deviceData: deviceDataList) {
 
-            final Long newKey = deviceData.dateTimeUTC.getMillis();
+            final long newKey = deviceData.dateTimeUTC.getMillis();
 
             final CalibratedDeviceData calibratedDeviceData = new CalibratedDeviceData(deviceData, color, calibrationOptional);
             final float lightValue = calibratedDeviceData.lux();
@@ -190,6 +211,21 @@ public class Bucketing {
         return map;
     }
 
+    /**
+     * Columnar equivalent of generateEmptyMap + mergeResults + sortResults.
+     * @param data samples from populateSeries or AllSensorSampleMap
+     * @param numberOfBuckets
+     * @param startDate latest bucket, buckets go back in time from here
+     * @param slotDurationInMinutes
+     * @param missingSampleDefaultValue
+     * @param currentOffsetMillis
+     * @return sorted series with every bucket present and offsets filled in
+     */
+    public static SampleSeries fillEmptyBuckets(final SampleSeries data, final int numberOfBuckets, final DateTime startDate,
+                                                final int slotDurationInMinutes, final int missingSampleDefaultValue, final Integer currentOffsetMillis) {
+        return SampleSeries.withEmptySlots(data, numberOfBuckets, startDate.getMillis(), slotDurationInMinutes, missingSampleDefaultValue, currentOffsetMillis);
+    }
+
     /**
      * Merge both result sets and returns an immutable copy
      * @param generated
@@ -1,13 +1,17 @@
 package com.hello.suripu.core.db.util;
 
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
 import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.xerial.snappy.Snappy;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
@@ -25,7 +29,9 @@ public class Compression {
         UNKNOWN(0),
         NONE(1),
         GZIP(2),
-        BZIP2(3);
+        BZIP2(3),
+        SNAPPY(4),
+        LZ4(5);
 
         private int value;
         private CompressionType(int value){
@@ -40,6 +46,10 @@ public class Compression {
                     return GZIP;
                 case 3:
                     return BZIP2;
+                case 4:
+                    return SNAPPY;
+                case 5:
+                    return LZ4;
                 default:
                     return UNKNOWN;
             }
@@ -50,8 +60,21 @@ public class Compression {
         }
     };
 
+    // LZ4 blocks do not know their uncompressed size, it is written in front of them
+    private static final int LZ4_LENGTH_HEADER_SIZE = 4;
+
 
     public static byte[] compress(final byte[] rawData, final CompressionType type) throws IOException {
+        switch (type){
+            case SNAPPY:
+                return Snappy.compress(rawData);
+            case LZ4:
+                return lz4Compress(rawData);
+            default:
+                // stream based, below
+                break;
+        }
+
         final ByteArrayOutputStream byteStream = new ByteArrayOutputStream(rawData.length);
         OutputStream zipStream = null;
 
@@ -94,6 +117,15 @@ public class Compression {
 
 
     public static byte[] decompress(final byte[] compressed, final CompressionType type) throws IOException {
+        switch (type){
+            case SNAPPY:
+                return Snappy.uncompress(compressed);
+            case LZ4:
+                return lz4Decompress(compressed);
+            default:
+                // stream based, below
+                break;
+        }
 
         final ByteArrayInputStream byteStream = new ByteArrayInputStream(compressed);
         InputStream unzipStream = null;
@@ -143,6 +175,38 @@ public class Compression {
     }
 
 
+    private static byte[] lz4Compress(final byte[] uncompressed) {
+        final byte[] compressed = LZ4Factory.fastestInstance().fastCompressor().compress(uncompressed);
+        return ByteBuffer.allocate(LZ4_LENGTH_HEADER_SIZE + compressed.length)
+                .putInt(uncompressed.length)
+                .put(compressed)
+                .array();
+    }
+
+    private static byte[] lz4Decompress(final byte[] compressed) throws IOException {
+        if(compressed.length < LZ4_LENGTH_HEADER_SIZE){
+            throw new IOException("LZ4 block too short");
+        }
+
+        final int length = ByteBuffer.wrap(compressed).getInt();
+        if(length < 0){
+            throw new IOException("Invalid LZ4 block length");
+        }
+
+        final byte[] uncompressed = new byte[length];
+        try {
+            final int decompressedLength = LZ4Factory.fastestInstance().safeDecompressor()
+                    .decompress(compressed, LZ4_LENGTH_HEADER_SIZE, compressed.length - LZ4_LENGTH_HEADER_SIZE, uncompressed, 0);
+            if(decompressedLength != length){
+                throw new IOException("Truncated LZ4 block");
+            }
+        } catch (LZ4Exception ex){
+            throw new IOException(ex);
+        }
+        return uncompressed;
+    }
+
+
     public static byte[] bzip2Compress(final byte[] uncompressed) throws IOException {
         return compress(uncompressed, CompressionType.BZIP2);
     }
@@ -0,0 +1,124 @@
+package com.hello.suripu.core.db.util;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Single-pass counterpart of {@link DynamoDBItemAggregator}.
+ *
+ * Items are added one at a time and each tracked attribute is parsed exactly once into primitive
+ * sum/min/max accumulators, so there is no need to hold on to a working list of items.
+ * Call reset() to reuse the same instance for the next bucket.
+ *
+ * Attributes are referred to by their index in the list of keys passed to the constructor.
+ */
+public class StreamingDynamoDBItemAggregator {
+
+    private final String[] keys;
+    private final double defaultValue;
+
+    private final double[] sums;
+    private final double[] mins;
+    private final double[] maxs;
+    private int count;
+
+    public StreamingDynamoDBItemAggregator(final List<String> keys) {
+        this(keys, 0.0);
+    }
+
+    public StreamingDynamoDBItemAggregator(final List<String> keys, final double defaultValue) {
+        this.keys = keys.toArray(new String[keys.size()]);
+        this.defaultValue = defaultValue;
+        this.sums = new double[this.keys.length];
+        this.mins = new double[this.keys.length];
+        this.maxs = new double[this.keys.length];
+        reset();
+    }
+
+    /**
+     * Clear all accumulators.
+     */
+    public void reset() {
+        Arrays.fill(sums, 0.0);
+        Arrays.fill(mins, Double.POSITIVE_INFINITY);
+        Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+        count = 0;
+    }
+
+    /**
+     * Accumulate every tracked attribute of item. Missing attributes count as defaultValue.
+     * @param item
+     */
+    public void add(final Map<String, AttributeValue> item) {
+        for (int i = 0; i < keys.length; i++) {
+            final double value = toDouble(item.get(keys[i]));
+            sums[i] += value;
+            if (value < mins[i]) {
+                mins[i] = value;
+            }
+            if (value > maxs[i]) {
+                maxs[i] = value;
+            }
+        }
+        count++;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    private double toDouble(final AttributeValue attributeValue) {
+        if (attributeValue == null) {
+            return defaultValue;
+        }
+        return Double.parseDouble(attributeValue.getN());
+    }
+
+    public double sum(final int keyIndex) {
+        return sums[keyIndex];
+    }
+
+    /**
+     * Get the mean for key, or defaultValue if no items were added.
+     */
+    public double mean(final int keyIndex) {
+        if (isEmpty()) {
+            return defaultValue;
+        }
+        return sums[keyIndex] / count;
+    }
+
+    /**
+     * Get the mean for key, rounded to the nearest long.
+     */
+    public long roundedMean(final int keyIndex) {
+        return Math.round(mean(keyIndex));
+    }
+
+    /**
+     * Get the maximum value for key, or defaultValue if no items were added.
+     */
+    public double max(final int keyIndex) {
+        if (isEmpty()) {
+            return defaultValue;
+        }
+        return maxs[keyIndex];
+    }
+
+    /**
+     * Get the minimum value for key, or defaultValue if no items were added.
+     */
+    public double min(final int keyIndex) {
+        if (isEmpty()) {
+            return defaultValue;
+        }
+        return mins[keyIndex];
+    }
+}
@@ -73,6 +73,7 @@ public class FeatureFlipper {
     public final static String OFFICE_ONLY_OVERRIDE = "office_only_override";
     public final static String ONLINE_HMM_ALGORITHM = "online_hmm_algorithm";
     public final static String ONLINE_HMM_LEARNING = "online_hmm_learning";
+    public final static String ONLINE_HMM_PARALLEL_EVALUATION = "online_hmm_parallel_evaluation";
     public final static String OTA_RELEASE = "release";
     public final static String OUTLIER_FILTER = "outlier_filter";
 
@@ -130,6 +131,7 @@ public class FeatureFlipper {
     public final static String TIMELINE_SLEEP_PERIOD = "timeline_sleep_period";
     public final static String TIMELINE_V2_AVAILABLE = "timeline_v2_available";
     public final static String TIMELINE_LOCKDOWN = "timeline_lockdown";
+    public final static String TIMELINE_PARALLEL_SLEEP_PERIODS = "timeline_parallel_sleep_periods";
     public final static String TIMELINE_PROCESSOR_V3_ENABLED = "timeline_processor_v3_enabled";
 
     public final static String VIEW_SENSORS_UNAVAILABLE = "view_sensors_unavailable";
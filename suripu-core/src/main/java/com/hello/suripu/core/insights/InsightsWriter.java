@@ -0,0 +1,11 @@
+package com.hello.suripu.core.insights;
+
+import com.hello.suripu.core.models.Insights.InsightCard;
+
+/**
+ * Where InsightProcessor saves a generated card and the last seen time of its category.
+ * By default both are written right away, a fleet-wide run can buffer them and write in batches.
+ */
+public interface InsightsWriter {
+    void write(final InsightCard insightCard, final InsightsLastSeen insightLastSeen);
+}
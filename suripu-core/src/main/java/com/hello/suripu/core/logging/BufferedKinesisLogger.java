@@ -0,0 +1,404 @@
+package com.hello.suripu.core.logging;
+
+import com.amazonaws.services.kinesis.AmazonKinesisAsyncClient;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * DataLogger that never calls Kinesis from the caller's thread.
+ *
+ * Records go into a bounded lock-free buffer, a single background thread packs them into PutRecords calls
+ * (at most 500 records / 5 MB each) and retries the failed entries of a call together, with jittered exponential backoff.
+ *
+ * Since nothing is sent when put returns:
+ *  - put and putWithSequenceNumber return an empty sequence number, ordering hints are not supported
+ *  - putRecords reports a record as successful once it is buffered
+ * Use KinesisLogger when the caller needs the acknowledgement.
+ *
+ * What happens when the buffer is full depends on the OverflowPolicy, records are only ever dropped by it
+ * or after maxAttempts failed PutRecords calls. Both are counted in stats().
+ */
+public class BufferedKinesisLogger implements DataLogger {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(BufferedKinesisLogger.class);
+
+    public final static String NO_SEQUENCE_NUMBER = "";
+
+    final static int MAX_BATCH_RECORDS = 500;
+    final static int MAX_BATCH_BYTES = 5 * 1024 * 1024;
+    final static int MAX_RECORD_BYTES = 1024 * 1024;  // data + partition key
+
+    private final static long BASE_BACKOFF_MILLIS = 50L;
+    private final static long MAX_BACKOFF_MILLIS = 5000L;
+
+    public enum OverflowPolicy {
+        DROP_NEWEST,  // the record being logged is dropped
+        DROP_OLDEST,  // the oldest buffered record makes room for it
+        BLOCK         // the caller waits up to maxBlockMillis for room, then the record is dropped
+    }
+
+    private static class Record {
+        final String partitionKey;
+        final byte[] payload;
+        final long enqueuedAtNanos;
+        final int size;
+
+        Record(final String partitionKey, final byte[] payload, final long enqueuedAtNanos) {
+            this.partitionKey = partitionKey;
+            this.payload = payload;
+            this.enqueuedAtNanos = enqueuedAtNanos;
+            this.size = payload.length + partitionKey.getBytes(StandardCharsets.UTF_8).length;
+        }
+    }
+
+    public static class Stats {
+        public final int bufferDepth;
+        public final long enqueued;
+        public final long sent;
+        public final long dropped;
+        public final long failed;
+        public final long retried;
+        public final long batches;
+        public final long lastBatchLatencyMillis;  // enqueue of the oldest record of the last batch to its acknowledgement
+
+        private Stats(final int bufferDepth, final long enqueued, final long sent, final long dropped, final long failed,
+                      final long retried, final long batches, final long lastBatchLatencyMillis) {
+            this.bufferDepth = bufferDepth;
+            this.enqueued = enqueued;
+            this.sent = sent;
+            this.dropped = dropped;
+            this.failed = failed;
+            this.retried = retried;
+            this.batches = batches;
+            this.lastBatchLatencyMillis = lastBatchLatencyMillis;
+        }
+    }
+
+    private final AmazonKinesisAsyncClient kinesisClient;
+    private final String streamName;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final long maxBlockMillis;
+    private final long lingerMillis;
+    private final int maxAttempts;
+
+    private final ConcurrentLinkedQueue<Record> buffer = new ConcurrentLinkedQueue<>();
+    private final Semaphore freeSlots;
+
+    private final AtomicLong enqueued = new AtomicLong(0L);
+    private final AtomicLong sent = new AtomicLong(0L);
+    private final AtomicLong dropped = new AtomicLong(0L);
+    private final AtomicLong failed = new AtomicLong(0L);
+    private final AtomicLong retried = new AtomicLong(0L);
+    private final AtomicLong batches = new AtomicLong(0L);
+    private final AtomicLong lastBatchLatencyMillis = new AtomicLong(0L);
+
+    // polled by flushOnce() but too large for its batch, it keeps its slot and starts the next batch
+    private volatile Record carriedOver = null;
+
+    private final ExecutorService flusher;
+    private volatile Thread flusherThread;
+    private volatile boolean running = false;
+
+    public BufferedKinesisLogger(final AmazonKinesisAsyncClient kinesisClient, final String streamName,
+                                 final int capacity, final OverflowPolicy overflowPolicy) {
+        this(kinesisClient, streamName, capacity, overflowPolicy, 50L, 200L, 5);
+    }
+
+    /**
+     * @param maxBlockMillis how long BLOCK waits for room in the buffer
+     * @param lingerMillis how long the flusher waits for a batch to fill up
+     * @param maxAttempts PutRecords calls per record before it is given up on
+     */
+    public BufferedKinesisLogger(final AmazonKinesisAsyncClient kinesisClient, final String streamName,
+                                 final int capacity, final OverflowPolicy overflowPolicy,
+                                 final long maxBlockMillis, final long lingerMillis, final int maxAttempts) {
+        this.kinesisClient = kinesisClient;
+        this.streamName = streamName;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.maxBlockMillis = maxBlockMillis;
+        this.lingerMillis = lingerMillis;
+        this.maxAttempts = maxAttempts;
+        this.freeSlots = new Semaphore(capacity);
+        this.flusher = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("kinesis-logger-" + streamName + "-%d").build());
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        flusher.submit(new Runnable() {
+            @Override
+            public void run() {
+                flusherThread = Thread.currentThread();
+                while (running) {
+                    final int sentRecords = flushOnce();
+                    if (sentRecords < MAX_BATCH_RECORDS && carriedOver == null && running) {
+                        LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(lingerMillis));
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Stops the flusher and sends what is still buffered, giving up after timeout.
+     */
+    public synchronized void stop(final long timeout, final TimeUnit unit) throws InterruptedException {
+        running = false;
+        final Thread thread = flusherThread;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        flusher.shutdown();
+        flusher.awaitTermination(timeout, unit);
+
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (hasBufferedRecords() && System.nanoTime() < deadline) {
+            flushOnce();
+        }
+
+        if (hasBufferedRecords()) {
+            LOGGER.warn("warning=kinesis-logger-stopped-with-records stream={} count={}", streamName,
+                    buffer.size() + (carriedOver == null ? 0 : 1));
+        }
+    }
+
+    private boolean hasBufferedRecords() {
+        return !buffer.isEmpty() || carriedOver != null;
+    }
+
+    public Stats stats() {
+        return new Stats(capacity - freeSlots.availablePermits(),
+                enqueued.get(), sent.get(), dropped.get(), failed.get(), retried.get(), batches.get(), lastBatchLatencyMillis.get());
+    }
+
+    @Override
+    public void putAsync(final String deviceId, final byte[] payload) {
+        offer(deviceId, payload);
+    }
+
+    @Override
+    public String put(final String deviceId, final byte[] payload) {
+        offer(deviceId, payload);
+        return NO_SEQUENCE_NUMBER;
+    }
+
+    @Override
+    public String putWithSequenceNumber(final String deviceId, final byte[] payload, final String sequenceNumber) {
+        offer(deviceId, payload);
+        return NO_SEQUENCE_NUMBER;
+    }
+
+    @Override
+    public KinesisBatchPutResult putRecords(final List<DataLoggerBatchPayload> payloadBatch) {
+        int numSuccesses = 0;
+        final List<Boolean> putSuccesses = Lists.newArrayListWithCapacity(payloadBatch.size());
+        for (final DataLoggerBatchPayload payload : payloadBatch) {
+            final boolean buffered = offer(payload.deviceId, payload.payload);
+            putSuccesses.add(buffered);
+            if (buffered) {
+                numSuccesses++;
+            }
+        }
+        return new KinesisBatchPutResult(numSuccesses, payloadBatch.size(), putSuccesses);
+    }
+
+    /**
+     * @return false if the record was dropped
+     */
+    boolean offer(final String partitionKey, final byte[] payload) {
+        final Record record = new Record(partitionKey, payload, System.nanoTime());
+        if (record.size > MAX_RECORD_BYTES) {
+            LOGGER.error("error=kinesis-record-too-large stream={} partition_key={} size={}", streamName, partitionKey, record.size);
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        if (!acquireSlot()) {
+            dropped.incrementAndGet();
+            return false;
+        }
+
+        buffer.offer(record);
+        enqueued.incrementAndGet();
+
+        // a full batch is waiting, no need to linger
+        if (capacity - freeSlots.availablePermits() >= MAX_BATCH_RECORDS) {
+            final Thread thread = flusherThread;
+            if (thread != null) {
+                LockSupport.unpark(thread);
+            }
+        }
+        return true;
+    }
+
+    private boolean acquireSlot() {
+        if (freeSlots.tryAcquire()) {
+            return true;
+        }
+
+        switch (overflowPolicy) {
+            case DROP_OLDEST:
+                // take over the slot of the oldest record, unless the flusher got to it first and freed its slot
+                if (buffer.poll() != null) {
+                    dropped.incrementAndGet();
+                    return true;
+                }
+                return freeSlots.tryAcquire();
+            case BLOCK:
+                try {
+                    return freeSlots.tryAcquire(maxBlockMillis, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Sends one batch from the buffer, retrying its failed entries.
+     * @return number of records sent
+     */
+    int flushOnce() {
+        final List<Record> batch = Lists.newArrayList();
+        int batchBytes = 0;
+
+        final Record previous = carriedOver;
+        if (previous != null) {
+            carriedOver = null;
+            batch.add(previous);
+            batchBytes += previous.size;
+        }
+
+        while (batch.size() < MAX_BATCH_RECORDS) {
+            // DROP_OLDEST producers poll the head too, so only the record actually polled is size checked
+            final Record record = buffer.poll();
+            if (record == null) {
+                break;
+            }
+            if (batchBytes + record.size > MAX_BATCH_BYTES) {
+                carriedOver = record;
+                break;
+            }
+            batch.add(record);
+            batchBytes += record.size;
+        }
+
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        freeSlots.release(batch.size());
+        send(batch);
+        return batch.size();
+    }
+
+    private void send(final List<Record> batch) {
+        List<Record> pending = batch;
+
+        for (int attempt = 0; attempt < maxAttempts && !pending.isEmpty(); attempt++) {
+            if (attempt > 0) {
+                retried.addAndGet(pending.size());
+                backoff(attempt);
+            }
+            pending = sendOnce(pending);
+        }
+
+        if (!pending.isEmpty()) {
+            LOGGER.error("error=kinesis-put-records-gave-up stream={} count={}", streamName, pending.size());
+            failed.addAndGet(pending.size());
+        }
+
+        batches.incrementAndGet();
+        lastBatchLatencyMillis.set(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - batch.get(0).enqueuedAtNanos));
+    }
+
+    /**
+     * @return the records that need to be sent again
+     */
+    private List<Record> sendOnce(final List<Record> records) {
+        final List<PutRecordsRequestEntry> entries = Lists.newArrayListWithCapacity(records.size());
+        for (final Record record : records) {
+            entries.add(new PutRecordsRequestEntry()
+                    .withPartitionKey(record.partitionKey)
+                    .withData(ByteBuffer.wrap(record.payload)));
+        }
+
+        final PutRecordsResult result;
+        try {
+            result = kinesisClient.putRecords(new PutRecordsRequest().withStreamName(streamName).withRecords(entries));
+        } catch (Exception e) {
+            LOGGER.error("error=kinesis-put-records stream={} count={} err_msg={}", streamName, records.size(), e.getMessage());
+            return records;
+        }
+
+        if (result == null || result.getRecords() == null) {
+            return records;
+        }
+
+        if (result.getFailedRecordCount() == null || result.getFailedRecordCount() == 0) {
+            sent.addAndGet(records.size());
+            return Lists.newArrayList();
+        }
+
+        final List<Record> failedRecords = Lists.newArrayList();
+        final List<PutRecordsResultEntry> resultEntries = result.getRecords();
+        for (int i = 0; i < records.size(); i++) {
+            if (i >= resultEntries.size() || resultEntries.get(i).getErrorCode() != null) {
+                failedRecords.add(records.get(i));
+            }
+        }
+
+        sent.addAndGet(records.size() - failedRecords.size());
+        LOGGER.warn("warning=kinesis-put-records-partial-failure stream={} failed={} error_code={}",
+                streamName, failedRecords.size(), firstErrorCode(resultEntries));
+        return failedRecords;
+    }
+
+    private static String firstErrorCode(final List<PutRecordsResultEntry> resultEntries) {
+        for (final PutRecordsResultEntry entry : resultEntries) {
+            if (entry.getErrorCode() != null) {
+                return entry.getErrorCode();
+            }
+        }
+        return "";
+    }
+
+    /**
+     * Full jitter: uniform in [0, min(max, base * 2^attempt)]
+     */
+    private void backoff(final int attempt) {
+        final long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempt, 16));
+        final long sleepMillis = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(sleepMillis);
+        } catch (InterruptedException e) {
+            LOGGER.error("error=kinesis-backoff-interrupted stream={}", streamName);
+            Thread.currentThread().interrupt();
+        }
+    }
+}
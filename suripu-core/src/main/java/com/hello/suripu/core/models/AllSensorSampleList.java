@@ -27,6 +27,10 @@ public class AllSensorSampleList {
         sensorMap.get(sensor).addAll(values);
     }
 
+    public void add(final Sensor sensor, final SampleSeries values) {
+        sensorMap.get(sensor).addAll(values.toSamples());
+    }
+
     public void update(final Sensor sensor, final List<Sample> values) {
         final List<Sample> samples = sensorMap.get(sensor);
         samples.clear();
@@ -6,21 +6,22 @@ import java.util.Map;
 
 public class AllSensorSampleMap {
 
-    private final Map<Sensor, Map<Long, Sample>> sensorMap;
-    
+    // Samples are stored column-wise per sensor, get() builds a map view on demand
+    private final Map<Sensor, SampleSeries.Builder> sensorMap;
+
     public AllSensorSampleMap() {
-        sensorMap = Maps.newHashMap();
+        sensorMap = Maps.newEnumMap(Sensor.class);
         for (final Sensor sensor: Sensor.values()) {
-            sensorMap.put(sensor, Maps.<Long, Sample>newHashMap());
+            sensorMap.put(sensor, new SampleSeries.Builder());
         }
     }
 
-    private void put(final Sensor sensor, final Long dateTime, final int offsetMillis, final int value) {
-        sensorMap.get(sensor).put(dateTime, new Sample(dateTime, value, offsetMillis));
+    private void put(final Sensor sensor, final long dateTime, final int offsetMillis, final int value) {
+        sensorMap.get(sensor).add(dateTime, value, offsetMillis);
     }
 
-    private void put(final Sensor sensor, final Long dateTime, final int offsetMillis, final float value) {
-        sensorMap.get(sensor).put(dateTime, new Sample(dateTime, value, offsetMillis));
+    private void put(final Sensor sensor, final long dateTime, final int offsetMillis, final float value) {
+        sensorMap.get(sensor).add(dateTime, value, offsetMillis);
     }
 
     public void addSample(final Long dateTime, final int offsetMillis,
@@ -66,20 +67,34 @@ public class AllSensorSampleMap {
 
     public void setSampleMap(final Sensor sensor, final Map<Long, Sample> sampleMap) {
         if (this.sensorMap.containsKey(sensor)) {
-            this.sensorMap.get(sensor).putAll(sampleMap);
+            this.sensorMap.get(sensor).addAll(sampleMap);
         }
     }
 
+    /**
+     * Samples for sensor, keyed by timestamp. This is a copy, prefer getSeries on hot paths.
+     */
     public Map<Long, Sample> get(final Sensor sensor) {
         if (sensorMap.containsKey(sensor)) {
-            return sensorMap.get(sensor);
+            return sensorMap.get(sensor).build().toMap();
         }
 
         return Maps.newHashMap();
     }
 
+    /**
+     * Samples for sensor in insertion order
+     */
+    public SampleSeries getSeries(final Sensor sensor) {
+        if (sensorMap.containsKey(sensor)) {
+            return sensorMap.get(sensor).build();
+        }
+
+        return SampleSeries.empty();
+    }
+
     public Boolean isEmpty() {
-        for (final Map<Long, Sample> samples : sensorMap.values()) {
+        for (final SampleSeries.Builder samples : sensorMap.values()) {
             if (!samples.isEmpty()) {
                 return false;
             }
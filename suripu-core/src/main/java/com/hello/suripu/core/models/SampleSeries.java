@@ -0,0 +1,247 @@
+package com.hello.suripu.core.models;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar time series of samples for a single sensor.
+ *
+ * Timestamps, values and offsets are kept in parallel primitive arrays instead of one Sample object per slot,
+ * Sample objects are only created when converting to the List<Sample> used by the JSON APIs.
+ */
+public class SampleSeries {
+
+    // Offsets are nullable in Sample, this marks a slot without an offset (e.g. a generated empty slot)
+    static final int MISSING_OFFSET = Integer.MIN_VALUE;
+
+    private final long[] timestamps;
+    private final float[] values;
+    private final int[] offsetMillis;
+    private final int size;
+
+    private SampleSeries(final long[] timestamps, final float[] values, final int[] offsetMillis, final int size) {
+        this.timestamps = timestamps;
+        this.values = values;
+        this.offsetMillis = offsetMillis;
+        this.size = size;
+    }
+
+    public static SampleSeries empty() {
+        return new SampleSeries(new long[0], new float[0], new int[0], 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long timestamp(final int index) {
+        return timestamps[index];
+    }
+
+    public float value(final int index) {
+        return values[index];
+    }
+
+    public boolean hasOffsetMillis(final int index) {
+        return offsetMillis[index] != MISSING_OFFSET;
+    }
+
+    public int offsetMillis(final int index) {
+        return offsetMillis[index];
+    }
+
+    private Integer offsetMillisOrNull(final int index) {
+        return hasOffsetMillis(index) ? offsetMillis[index] : null;
+    }
+
+    /**
+     * @return samples in series order
+     */
+    public List<Sample> toSamples() {
+        final List<Sample> samples = Lists.newArrayListWithCapacity(size);
+        for (int i = 0; i < size; i++) {
+            samples.add(new Sample(timestamps[i], values[i], offsetMillisOrNull(i)));
+        }
+        return samples;
+    }
+
+    /**
+     * @return samples keyed by timestamp, later samples override earlier ones with the same timestamp
+     */
+    public Map<Long, Sample> toMap() {
+        final Map<Long, Sample> map = Maps.newHashMapWithExpectedSize(size);
+        for (int i = 0; i < size; i++) {
+            map.put(timestamps[i], new Sample(timestamps[i], values[i], offsetMillisOrNull(i)));
+        }
+        return map;
+    }
+
+    /**
+     * Merge data onto a regular grid of numberOfSlots empty slots ending at lastSlotMillis.
+     *
+     * Same result as merging a generated empty map with a map of the data and sorting it:
+     * data overrides empty slots with the same timestamp, data outside the grid is kept,
+     * the output is sorted by timestamp and missing offsets are filled with the previous offset
+     * (or currentOffsetMillis for leading slots).
+     *
+     * @param data samples, usually already sorted by timestamp
+     * @param numberOfSlots number of empty slots to generate
+     * @param lastSlotMillis timestamp of the latest slot
+     * @param slotDurationInMinutes slot spacing
+     * @param missingSampleDefaultValue value of empty slots
+     * @param currentOffsetMillis offset used when no previous offset is known
+     */
+    public static SampleSeries withEmptySlots(final SampleSeries data,
+                                              final int numberOfSlots,
+                                              final long lastSlotMillis,
+                                              final int slotDurationInMinutes,
+                                              final int missingSampleDefaultValue,
+                                              final int currentOffsetMillis) {
+        final int[] dataOrder = data.sortedOrder();
+        final int gridSize = Math.max(numberOfSlots, 0);
+        final long slotMillis = slotDurationInMinutes * 60000L;
+        final long firstSlotMillis = lastSlotMillis - (gridSize - 1) * slotMillis;
+
+        final Builder builder = new Builder(gridSize + dataOrder.length);
+        int gridIndex = 0;
+        int dataIndex = 0;
+        while (gridIndex < gridSize || dataIndex < dataOrder.length) {
+            final long gridTimestamp = (gridIndex < gridSize) ? firstSlotMillis + gridIndex * slotMillis : Long.MAX_VALUE;
+            if (dataIndex < dataOrder.length && data.timestamps[dataOrder[dataIndex]] <= gridTimestamp) {
+                // last sample wins when several share a timestamp
+                final long dataTimestamp = data.timestamps[dataOrder[dataIndex]];
+                while (dataIndex + 1 < dataOrder.length && data.timestamps[dataOrder[dataIndex + 1]] == dataTimestamp) {
+                    dataIndex++;
+                }
+                final int i = dataOrder[dataIndex];
+                builder.addRaw(dataTimestamp, data.values[i], data.offsetMillis[i]);
+                dataIndex++;
+                if (dataTimestamp == gridTimestamp) {
+                    gridIndex++;
+                }
+            } else {
+                builder.addRaw(gridTimestamp, missingSampleDefaultValue, MISSING_OFFSET);
+                gridIndex++;
+            }
+        }
+
+        final SampleSeries merged = builder.build();
+        int lastOffsetMillis = -1;
+        for (int i = 0; i < merged.size; i++) {
+            if (merged.offsetMillis[i] == MISSING_OFFSET) {
+                merged.offsetMillis[i] = (lastOffsetMillis == -1) ? currentOffsetMillis : lastOffsetMillis;
+            }
+            lastOffsetMillis = merged.offsetMillis[i];
+        }
+        return merged;
+    }
+
+    /**
+     * Indices of this series in timestamp order, stable for equal timestamps.
+     */
+    private int[] sortedOrder() {
+        final int[] order = new int[size];
+        boolean sorted = true;
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+            if (i > 0 && timestamps[i] < timestamps[i - 1]) {
+                sorted = false;
+            }
+        }
+        if (sorted) {
+            return order;
+        }
+
+        final Integer[] boxed = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            boxed[i] = i;
+        }
+        Arrays.sort(boxed, (a, b) -> Long.compare(timestamps[a], timestamps[b]));
+        for (int i = 0; i < size; i++) {
+            order[i] = boxed[i];
+        }
+        return order;
+    }
+
+    /**
+     * Append-only builder backed by growable primitive arrays.
+     */
+    public static class Builder {
+        private long[] timestamps;
+        private float[] values;
+        private int[] offsetMillis;
+        private int size;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(final int expectedSize) {
+            final int capacity = Math.max(expectedSize, 1);
+            this.timestamps = new long[capacity];
+            this.values = new float[capacity];
+            this.offsetMillis = new int[capacity];
+            this.size = 0;
+        }
+
+        public Builder add(final long timestamp, final float value, final int offsetMillis) {
+            return addRaw(timestamp, value, offsetMillis);
+        }
+
+        /**
+         * Same as a Sample with a null offset, the offset gets filled in by withEmptySlots
+         */
+        public Builder addWithoutOffset(final long timestamp, final float value) {
+            return addRaw(timestamp, value, MISSING_OFFSET);
+        }
+
+        public Builder addAll(final Map<Long, Sample> samples) {
+            for (final Sample sample : samples.values()) {
+                if (sample.offsetMillis == null) {
+                    addWithoutOffset(sample.dateTime, sample.value);
+                } else {
+                    add(sample.dateTime, sample.value, sample.offsetMillis);
+                }
+            }
+            return this;
+        }
+
+        private Builder addRaw(final long timestamp, final float value, final int offsetMillis) {
+            if (size == timestamps.length) {
+                final int capacity = size * 2;
+                timestamps = Arrays.copyOf(timestamps, capacity);
+                values = Arrays.copyOf(values, capacity);
+                this.offsetMillis = Arrays.copyOf(this.offsetMillis, capacity);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            this.offsetMillis[size] = offsetMillis;
+            size++;
+            return this;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public boolean isEmpty() {
+            return size == 0;
+        }
+
+        public SampleSeries build() {
+            if (size == timestamps.length) {
+                // arrays are full: any later add() grows into new arrays, so they can be shared
+                return new SampleSeries(timestamps, values, offsetMillis, size);
+            }
+            return new SampleSeries(Arrays.copyOf(timestamps, size), Arrays.copyOf(values, size), Arrays.copyOf(offsetMillis, size), size);
+        }
+    }
+}
@@ -88,10 +88,6 @@ public class Timeline {
                                   @JsonProperty("insights")  final List<Insight> insights,
                                   @JsonProperty("statistics") final SleepStats sleepStats,
                                   @JsonProperty("locked_down") final boolean lockedDown) {
-        final List<Period> periodList = Lists.newArrayList();
-        for (final SleepPeriod.Period sleepPeriod : sleepPeriods){
-            periodList.add(Period.fromString(sleepPeriod.shortName()));
-        }
         final SleepStats timelineSleepStats;
         if (sleepStats.isFromNull()){
             timelineSleepStats = null;
@@ -102,7 +98,6 @@ public class Timeline {
                 timelineSleepStats, lockedDown);
     }
 
-    @JsonCreator
     public static Timeline create(@JsonProperty("score") final Integer score,
                                   @JsonProperty("message") final String message,
                                   @JsonProperty("date") final String date,
@@ -8,11 +8,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.UUID;
+import java.util.regex.Pattern;
 
 public class AccessTokenUtils {
 
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AccessTokenUtils.class);
+    private static final Pattern UUID_WITHOUT_HYPHENS = Pattern.compile("([0-9a-fA-F]{8})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]{8})");
 
     /**
      * Token format for client is {appId}.{uuidWithoutHyphens}
@@ -20,7 +22,6 @@ public class AccessTokenUtils {
      * @return
      */
     public static Optional<UUID> cleanUUID(final String dirtyToken) {
-        // TODO: make sure this is efficient enough
         final int dotIndex = dirtyToken.indexOf('.');
         if(dotIndex == -1) {
             LOGGER.error("AccessToken is missing a (.) character: {}", dirtyToken);
@@ -29,7 +30,7 @@ public class AccessTokenUtils {
 
         final String uuidWithoutAppId = dirtyToken.substring(dotIndex + 1);
 
-        final String uuidWithHyphens =  uuidWithoutAppId.replaceFirst("([0-9a-fA-F]{8})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]{4})([0-9a-fA-F]{8})", "$1-$2-$3-$4-$5" );
+        final String uuidWithHyphens =  UUID_WITHOUT_HYPHENS.matcher(uuidWithoutAppId).replaceFirst("$1-$2-$3-$4-$5");
         try {
             return Optional.of(UUID.fromString(uuidWithHyphens));
         } catch (IllegalArgumentException e) {
@@ -3,9 +3,10 @@ package com.hello.suripu.core.oauth.stores;
 import com.google.common.base.Optional;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Sets;
-import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import com.hello.suripu.core.db.AccessTokenDAO;
 import com.hello.suripu.core.oauth.AccessToken;
@@ -25,6 +26,8 @@ import org.slf4j.LoggerFactory;
 
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -37,22 +40,28 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
     private final Long expirationTimeInSeconds;
 
     private static final Long DEFAULT_EXPIRATION_TIME_IN_SECONDS = 86400L * 365; // 365 days
+    private static final Long DEFAULT_TOKEN_CACHE_EXPIRE_AFTER_IN_SECONDS = 60L;
+    private static final Long APPLICATION_CACHE_REFRESH_AFTER_IN_SECONDS = 300L;
+    private static final Long MAX_CACHED_TOKENS = 100000L;
     private static final Logger LOGGER = LoggerFactory.getLogger(PersistentAccessTokenStore.class);
 
-    final LoadingCache<ClientCredentials, Optional<AccessToken>> cache;
+    // applications are reloaded in the background, requests keep using the previous value meanwhile
+    private static final ExecutorService APPLICATION_REFRESH_EXECUTOR = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setDaemon(true).setNameFormat("application-cache-refresh-%d").build());
 
-    // This is called by the cache when it doesn't contain the key
-    final CacheLoader loader = new CacheLoader<ClientCredentials, Optional<AccessToken>>() {
-        public Optional<AccessToken> load(final ClientCredentials clientCredentials) throws MissingRequiredScopeException {
-            LOGGER.debug("{} not in cache, fetching from DB", clientCredentials.tokenOrCode);
-            return fromDB(clientCredentials);
-        }
-    };
+    final LoadingCache<UUID, Optional<AccessToken>> tokenCache;
+    final LoadingCache<Long, Optional<Application>> applicationCache;
 
     public PersistentAccessTokenStore(final AccessTokenDAO accessTokenDAO, final ApplicationStore<Application, ApplicationRegistration> applicationStore) {
         this(accessTokenDAO, applicationStore, DEFAULT_EXPIRATION_TIME_IN_SECONDS);
     }
 
+    public PersistentAccessTokenStore(
+            final AccessTokenDAO accessTokenDAO,
+            final ApplicationStore<Application, ApplicationRegistration> applicationStore,
+            final Long expirationTimeInSeconds) {
+        this(accessTokenDAO, applicationStore, expirationTimeInSeconds, DEFAULT_TOKEN_CACHE_EXPIRE_AFTER_IN_SECONDS);
+    }
 
     /**
      * Default constructor for PersistentAccessTokenStore
@@ -60,19 +69,46 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
      * @param accessTokenDAO where we store or retrieve access tokens from
      * @param applicationStore
      * @param expirationTimeInSeconds
+     * @param tokenCacheExpireAfterInSeconds how long a token read from accessTokenDAO is trusted for
      */
     public PersistentAccessTokenStore(
             final AccessTokenDAO accessTokenDAO,
             final ApplicationStore<Application, ApplicationRegistration> applicationStore,
-            final Long expirationTimeInSeconds) {
+            final Long expirationTimeInSeconds,
+            final Long tokenCacheExpireAfterInSeconds) {
         this.accessTokenDAO = accessTokenDAO;
         this.applicationStore = applicationStore;
         this.expirationTimeInSeconds = expirationTimeInSeconds;
 
-        // TODO: get expiration from Config
-        this.cache = CacheBuilder.newBuilder()
-                .expireAfterWrite(60, TimeUnit.SECONDS)
-                .build(loader);
+        this.tokenCache = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CACHED_TOKENS)
+                .expireAfterWrite(tokenCacheExpireAfterInSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build(new CacheLoader<UUID, Optional<AccessToken>>() {
+                    @Override
+                    public Optional<AccessToken> load(final UUID tokenUUID) {
+                        LOGGER.debug("{} not in cache, fetching from DB", tokenUUID);
+                        return accessTokenDAO.getByAccessToken(tokenUUID);
+                    }
+                });
+
+        this.applicationCache = CacheBuilder.newBuilder()
+                .refreshAfterWrite(APPLICATION_CACHE_REFRESH_AFTER_IN_SECONDS, TimeUnit.SECONDS)
+                .recordStats()
+                .build(CacheLoader.asyncReloading(new CacheLoader<Long, Optional<Application>>() {
+                    @Override
+                    public Optional<Application> load(final Long applicationId) {
+                        return applicationStore.getApplicationById(applicationId);
+                    }
+                }, APPLICATION_REFRESH_EXECUTOR));
+    }
+
+    public CacheStats tokenCacheStats() {
+        return tokenCache.stats();
+    }
+
+    public CacheStats applicationCacheStats() {
+        return applicationCache.stats();
     }
 
     /**
@@ -99,16 +135,6 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
         return accessToken;
     }
 
-    private Optional<AccessToken> getToken(final ClientCredentials credentials) throws MissingRequiredScopeException {
-        try {
-            return cache.getUnchecked(credentials);
-        } catch (UncheckedExecutionException e) {
-            if (e.getCause().getClass() == MissingRequiredScopeException.class) {
-                throw new MissingRequiredScopeException();
-            }
-            throw e;
-        }
-    }
 
     /**
      * Converts the token to a proper UUID and attempts to retrieve the client details based on the token string
@@ -117,7 +143,7 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
      */
     @Override
     public Optional<AccessToken> getTokenByClientCredentials(final ClientCredentials credentials, final DateTime now) throws MissingRequiredScopeException {
-        final Optional<AccessToken> token = getToken(credentials);
+        final Optional<AccessToken> token = fromCache(credentials);
 
         if(!token.isPresent()) {
             return Optional.absent();
@@ -152,6 +178,7 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
     @Override
     public void disable(final AccessToken accessToken) {
         accessTokenDAO.disable(accessToken.token);
+        tokenCache.invalidate(accessToken.token);
     }
 
     @Override
@@ -161,6 +188,10 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
             LOGGER.error("error=invalid_refresh_token token={}", dirtyToken);
         }
         accessTokenDAO.disableByRefreshToken(optionalToken.get());
+
+        // the cache is keyed by access token, so look for the one issued with this refresh token
+        final UUID refreshToken = optionalToken.get();
+        tokenCache.asMap().values().removeIf(token -> token.isPresent() && refreshToken.equals(token.get().refreshToken));
     }
 
 
@@ -210,7 +241,7 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
         return valid;
     }
 
-    private Optional<AccessToken> fromDB(final ClientCredentials credentials) throws MissingRequiredScopeException {
+    private Optional<AccessToken> fromCache(final ClientCredentials credentials) throws MissingRequiredScopeException {
         final Optional<UUID> optionalTokenUUID = AccessTokenUtils.cleanUUID(credentials.tokenOrCode);
         if(!optionalTokenUUID.isPresent()) {
             LOGGER.warn("Invalid format for token {}", credentials.tokenOrCode);
@@ -218,7 +249,7 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
         }
 
         final UUID tokenUUID = optionalTokenUUID.get();
-        final Optional<AccessToken> accessTokenOptional = accessTokenDAO.getByAccessToken(tokenUUID);
+        final Optional<AccessToken> accessTokenOptional = tokenCache.getUnchecked(tokenUUID);
 
         if(!accessTokenOptional.isPresent()) {
             LOGGER.warn("{} was not found in accessTokenDAO.getByAccessToken() (UUID)", tokenUUID);
@@ -239,7 +270,7 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
             return Optional.absent();
         }
 
-        final Optional<Application> applicationOptional = applicationStore.getApplicationById(accessToken.appId);
+        final Optional<Application> applicationOptional = applicationCache.getUnchecked(accessToken.appId);
 
         if(!applicationOptional.isPresent()) {
             LOGGER.warn("No application with id = {} as specified by token {}", accessToken.appId, credentials.tokenOrCode);
@@ -0,0 +1,251 @@
+package com.hello.suripu.core.pill.data;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.protobuf.ByteString;
+import com.hello.suripu.api.ble.SenseCommandProtos;
+import com.hello.suripu.core.db.KeyStore;
+import com.hello.suripu.core.models.DeviceAccountPair;
+import com.hello.suripu.core.models.TrackerMotion;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.security.GeneralSecurityException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Turns a batch of pill uploads into TrackerMotion, ready for PillDataDAODynamoDB.batchInsertTrackerMotionData.
+ *
+ * Same output as calling TrackerMotion.create on every upload, but:
+ *  - all keys are fetched with a single KeyStore.getBatch call
+ *  - each thread reuses one AES/CTR cipher and one output buffer
+ *  - payloads are decrypted straight from the ByteString and parsed in place, without intermediate byte[] copies
+ *
+ * Uploads without a key, without motion data, or that fail to decrypt or parse are left out and counted in the Result.
+ */
+public class PillDataDecoder {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(PillDataDecoder.class);
+
+    private final static int NONCE_LENGTH = 8;
+    private final static int IV_LENGTH = 16;
+
+    public static class Upload {
+        public final SenseCommandProtos.pill_data pillData;
+        public final DeviceAccountPair accountPair;
+        public final DateTimeZone timeZone;
+
+        public Upload(final SenseCommandProtos.pill_data pillData, final DeviceAccountPair accountPair, final DateTimeZone timeZone) {
+            this.pillData = pillData;
+            this.accountPair = accountPair;
+            this.timeZone = timeZone;
+        }
+    }
+
+    public static class Result {
+        public final List<TrackerMotion> trackerMotions;
+        public final Set<String> missingKeys;  // pill ids without a key in the key store
+        public final int noMotionData;         // heartbeats and unknown firmware versions
+        public final int invalidPayloads;      // failed to decrypt or parse
+
+        private Result(final List<TrackerMotion> trackerMotions, final Set<String> missingKeys, final int noMotionData, final int invalidPayloads) {
+            this.trackerMotions = trackerMotions;
+            this.missingKeys = missingKeys;
+            this.noMotionData = noMotionData;
+            this.invalidPayloads = invalidPayloads;
+        }
+    }
+
+    /**
+     * Per-thread cipher and buffers. Cipher.getInstance is too expensive to call for every payload.
+     */
+    private static class DecryptionState {
+        final Cipher cipher;
+        final byte[] iv = new byte[IV_LENGTH];
+        ByteBuffer output = ByteBuffer.allocate(64);
+
+        DecryptionState() {
+            try {
+                this.cipher = Cipher.getInstance("AES/CTR/NoPadding");
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private final static ThreadLocal<DecryptionState> DECRYPTION_STATE = new ThreadLocal<DecryptionState>() {
+        @Override
+        protected DecryptionState initialValue() {
+            return new DecryptionState();
+        }
+    };
+
+    private final KeyStore keyStore;
+
+    public PillDataDecoder(final KeyStore keyStore) {
+        this.keyStore = keyStore;
+    }
+
+    public Result decode(final List<Upload> uploads) {
+        if (uploads.isEmpty()) {
+            return new Result(Collections.<TrackerMotion>emptyList(), Collections.<String>emptySet(), 0, 0);
+        }
+
+        final Set<String> pillIds = Sets.newHashSet();
+        for (final Upload upload : uploads) {
+            pillIds.add(upload.accountPair.externalDeviceId);
+        }
+
+        final Map<String, Optional<byte[]>> keys = keyStore.getBatch(pillIds);
+        final Map<String, SecretKeySpec> keySpecs = Maps.newHashMapWithExpectedSize(keys.size());
+        for (final Map.Entry<String, Optional<byte[]>> entry : keys.entrySet()) {
+            if (entry.getValue().isPresent()) {
+                keySpecs.put(entry.getKey(), new SecretKeySpec(entry.getValue().get(), "AES"));
+            }
+        }
+
+        final List<TrackerMotion> trackerMotions = Lists.newArrayListWithCapacity(uploads.size());
+        final Set<String> missingKeys = Sets.newHashSet();
+        int noMotionData = 0;
+        int invalidPayloads = 0;
+
+        for (final Upload upload : uploads) {
+            final String pillId = upload.accountPair.externalDeviceId;
+            final SecretKeySpec keySpec = keySpecs.get(pillId);
+            if (keySpec == null) {
+                missingKeys.add(pillId);
+                continue;
+            }
+
+            final SenseCommandProtos.pill_data pillData = upload.pillData;
+            if (!pillData.hasMotionDataEntrypted() || pillData.getFirmwareVersion() < 0 || pillData.getFirmwareVersion() > 4) {
+                noMotionData++;
+                continue;
+            }
+
+            final long timestampMillis = TrackerMotion.Utils.convertTimestampInSecondsToTimestampInMillis(pillData.getTimestamp());
+            final TrackerMotion.Builder builder = new TrackerMotion.Builder()
+                    .withAccountId(upload.accountPair.accountId)
+                    .withTrackerId(upload.accountPair.internalDeviceId)
+                    .withExternalTrackerId(pillId)
+                    .withTimestampMillis(timestampMillis)
+                    .withOffsetMillis(upload.timeZone.getOffset(timestampMillis));
+
+            try {
+                decode(pillData.getMotionDataEntrypted(), pillData.getFirmwareVersion(), keySpec, builder);
+            } catch (TrackerMotion.InvalidEncryptedPayloadException e) {
+                LOGGER.warn("error=invalid-payload pill_id={} firmware_version={} message={}", pillId, pillData.getFirmwareVersion(), e.getMessage());
+                invalidPayloads++;
+                continue;
+            }
+            trackerMotions.add(builder.build());
+        }
+
+        if (!missingKeys.isEmpty()) {
+            LOGGER.warn("error=missing-keys pill_ids={}", missingKeys);
+        }
+        return new Result(trackerMotions, missingKeys, noMotionData, invalidPayloads);
+    }
+
+    /**
+     * Decrypts an 8-byte nonce + AES/CTR payload and sets the motion fields of the builder,
+     * following TrackerMotion.Utils.decryptedToPillPayload* for each firmware version.
+     */
+    static void decode(final ByteString encrypted, final int firmwareVersion, final SecretKeySpec keySpec, final TrackerMotion.Builder builder)
+            throws TrackerMotion.InvalidEncryptedPayloadException {
+        final ByteBuffer decrypted = decrypt(encrypted, keySpec);
+        final int length = decrypted.remaining();
+
+        switch (firmwareVersion) {
+            case 0:
+            case 1: {
+                checkForMagicBytes(decrypted);
+                checkLength(length, 4);
+                final long motionAmplitude = decrypted.getInt(0) & 0xFFFFFFFFL;
+                builder.withValue((int) TrackerMotion.Utils.rawToMilliMS2(motionAmplitude).longValue());
+                return;
+            }
+            case 2:
+            case 3: {
+                checkForMagicBytes(decrypted);
+                checkLength(length, 8);
+                final long motionAmplitude = decrypted.getInt(0) & 0xFFFFFFFFL;
+                builder.withValue((int) TrackerMotion.Utils.rawToMilliMS2(motionAmplitude).longValue())
+                        .withMotionRange(decrypted.getShort(4) & 0xFFFFL)
+                        .withKickOffCounts(decrypted.get(6) & 0xFFL)
+                        .withOnDurationInSeconds(decrypted.get(7) & 0xFFL);
+                return;
+            }
+            case 4: {
+                checkLength(length, 10);
+                // Need to left-shift, since we have bits 8-15 of a 16-bit number.
+                final double maxAccelerationMS2 = ((decrypted.get(0) & 0xFF) << 7) * TrackerMotion.Utils.COUNTS_IN_G;
+                final long cosTheta = decrypted.get(1) & 0xFFL;
+                final long motionMask = decrypted.getLong(2);
+                final long value = (((long) (1000 * maxAccelerationMS2)) - TrackerMotion.Utils.PILL_1P5_MOTION_OFFSET) * TrackerMotion.Utils.PILL_1P5_MOTION_MULTIPLIER;
+                builder.withValue((int) value)
+                        .withOnDurationInSeconds((long) Long.bitCount(motionMask))
+                        .withMotionMask(motionMask)
+                        .withCosTheta(cosTheta);
+                return;
+            }
+            default:
+                throw new TrackerMotion.InvalidEncryptedPayloadException("Unknown firmware version " + firmwareVersion);
+        }
+    }
+
+    /**
+     * @return this thread's output buffer, little endian, positioned on the decrypted bytes. Only valid until the next call.
+     */
+    private static ByteBuffer decrypt(final ByteString encrypted, final SecretKeySpec keySpec) throws TrackerMotion.InvalidEncryptedPayloadException {
+        if (encrypted.size() < NONCE_LENGTH) {
+            throw new TrackerMotion.InvalidEncryptedPayloadException("Payload shorter than nonce");
+        }
+
+        final DecryptionState state = DECRYPTION_STATE.get();
+        encrypted.copyTo(state.iv, 0, 0, NONCE_LENGTH);  // remaining iv bytes stay 0
+
+        final int encryptedLength = encrypted.size() - NONCE_LENGTH;
+        if (state.output.capacity() < encryptedLength) {
+            state.output = ByteBuffer.allocate(encryptedLength);
+        }
+        final ByteBuffer input = encrypted.asReadOnlyByteBuffer();
+        input.position(input.position() + NONCE_LENGTH);
+        state.output.clear();
+
+        try {
+            state.cipher.init(Cipher.DECRYPT_MODE, keySpec, new IvParameterSpec(state.iv));
+            state.cipher.doFinal(input, state.output);
+        } catch (GeneralSecurityException e) {
+            throw new TrackerMotion.InvalidEncryptedPayloadException(e.getMessage());
+        }
+
+        state.output.flip();
+        return state.output.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void checkForMagicBytes(final ByteBuffer decrypted) throws TrackerMotion.InvalidEncryptedPayloadException {
+        // same check as TrackerMotion.Utils: only pill DVT has magic bytes 5A5A
+        final int length = decrypted.remaining();
+        if (length > 4 && decrypted.get(length - 1) != 0x5A && decrypted.get(length - 2) != 0x5A) {
+            throw new TrackerMotion.InvalidEncryptedPayloadException("Magic bytes don't match");
+        }
+    }
+
+    private static void checkLength(final int length, final int expected) throws TrackerMotion.InvalidEncryptedPayloadException {
+        if (length < expected) {
+            throw new TrackerMotion.InvalidEncryptedPayloadException(String.format("Payload too short: %d < %d bytes", length, expected));
+        }
+    }
+}
@@ -208,6 +208,14 @@ public class FeatureFlippedProcessor {
         return featureFlipper.userFeatureActive(FeatureFlipper.TIMELINE_LOCKDOWN, accountId, Collections.EMPTY_LIST);
     }
 
+    protected Boolean useParallelSleepPeriods(final Long accountId){
+        return featureFlipper.userFeatureActive(FeatureFlipper.TIMELINE_PARALLEL_SLEEP_PERIODS, accountId, Collections.EMPTY_LIST);
+    }
+
+    protected Boolean useParallelOnlineHmmEvaluation(final Long accountId){
+        return featureFlipper.userFeatureActive(FeatureFlipper.ONLINE_HMM_PARALLEL_EVALUATION, accountId, Collections.EMPTY_LIST);
+    }
+
     protected Boolean useHigherMotionAmplitudeThreshold(final Long accountId){
         return featureFlipper.userFeatureActive(FeatureFlipper.MIN_MOTION_AMPLITUDE_HIGH_THRESHOLD, accountId, Collections.EMPTY_LIST);
     }
@@ -15,14 +15,14 @@ import com.hello.suripu.core.db.DeviceDataInsightQueryDAO;
 import com.hello.suripu.core.db.DeviceReadDAO;
 import com.hello.suripu.core.db.InsightsDAODynamoDB;
 import com.hello.suripu.core.db.MarketingInsightsSeenDAODynamoDB;
+import com.hello.suripu.core.db.SleepStatsDAO;
 import com.hello.suripu.core.db.SleepStatsDAODynamoDB;
 import com.hello.suripu.core.db.TrendsInsightsDAO;
 import com.hello.suripu.core.db.colors.SenseColorDAO;
 import com.hello.suripu.core.flipper.FeatureFlipper;
 import com.hello.suripu.core.insights.InsightsLastSeen;
 import com.hello.suripu.core.insights.InsightsLastSeenDAO;
-import com.hello.suripu.core.models.Calibration;
-import com.hello.suripu.core.models.Device;
+import com.hello.suripu.core.insights.InsightsWriter;
 import com.hello.suripu.core.models.DeviceAccountPair;
 import com.hello.suripu.core.models.Insights.InfoInsightCards;
 import com.hello.suripu.core.models.Insights.InsightCard;
@@ -36,6 +36,7 @@ import com.hello.suripu.core.processors.insights.CaffeineAlarm;
 import com.hello.suripu.core.processors.insights.CorrelationTemperature;
 import com.hello.suripu.core.processors.insights.GoalsInsights;
 import com.hello.suripu.core.processors.insights.Humidity;
+import com.hello.suripu.core.processors.insights.InsightDataSnapshot;
 import com.hello.suripu.core.processors.insights.IntroductionInsights;
 import com.hello.suripu.core.processors.insights.LightData;
 import com.hello.suripu.core.processors.insights.Lights;
@@ -104,6 +105,7 @@ public class InsightProcessor {
     private final AccountReadDAO accountReadDAO;
     private final CalibrationDAO calibrationDAO;
     private final MarketingInsightsSeenDAODynamoDB marketingInsightsSeenDAODynamoDB;
+    private final InsightsWriter insightsWriter;
 
     private static final ImmutableSet<InsightCard.Category> marketingInsightPool = ImmutableSet.copyOf(Sets.newHashSet(InsightCard.Category.DRIVE,
             InsightCard.Category.EAT,
@@ -145,6 +147,36 @@ public class InsightProcessor {
         this.accountReadDAO = accountReadDAO;
         this.calibrationDAO = calibrationDAO;
         this.marketingInsightsSeenDAODynamoDB = marketingInsightsSeenDAODynamoDB;
+        this.insightsWriter = (insightCard, insightLastSeen) -> {
+            insightsDAODynamoDB.insertInsight(insightCard);
+            insightsLastSeenDAO.markLastSeen(insightLastSeen);
+        };
+    }
+
+    private InsightProcessor(final InsightProcessor processor, final InsightsWriter insightsWriter) {
+        this.deviceDataDAODynamoDB = processor.deviceDataDAODynamoDB;
+        this.deviceReadDAO = processor.deviceReadDAO;
+        this.trendsInsightsDAO = processor.trendsInsightsDAO;
+        this.scoreDAODynamoDB = processor.scoreDAODynamoDB;
+        this.senseColorDAO = processor.senseColorDAO;
+        this.insightsDAODynamoDB = processor.insightsDAODynamoDB;
+        this.insightsLastSeenDAO = processor.insightsLastSeenDAO;
+        this.preferencesDAO = processor.preferencesDAO;
+        this.sleepStatsDAODynamoDB = processor.sleepStatsDAODynamoDB;
+        this.lightData = processor.lightData;
+        this.wakeStdDevData = processor.wakeStdDevData;
+        this.accountInfoProcessor = processor.accountInfoProcessor;
+        this.accountReadDAO = processor.accountReadDAO;
+        this.calibrationDAO = processor.calibrationDAO;
+        this.marketingInsightsSeenDAODynamoDB = processor.marketingInsightsSeenDAODynamoDB;
+        this.insightsWriter = insightsWriter;
+    }
+
+    /**
+     * Same processor, generated cards and last seen times go to insightsWriter instead of straight to DynamoDB
+     */
+    public InsightProcessor withInsightsWriter(final InsightsWriter insightsWriter) {
+        return new InsightProcessor(this, insightsWriter);
     }
 
     public void generateInsights(final Long accountId, final DateTime accountCreated, final RolloutClient featureFlipper) {
@@ -206,9 +238,8 @@ public class InsightProcessor {
 
         //insert to DynamoDB
         LOGGER.debug("Inserting {} new user insight for accountId {}", card.category, accountId);
-        this.insightsDAODynamoDB.insertInsight(card);
         final InsightsLastSeen newInsight = new InsightsLastSeen(accountId, card.category, DateTime.now(DateTimeZone.UTC));
-        this.insightsLastSeenDAO.markLastSeen(newInsight);
+        this.insightsWriter.write(card, newInsight);
         return Optional.of(card.category);
     }
 
@@ -232,7 +263,10 @@ public class InsightProcessor {
     public Optional<InsightCard.Category> generateGeneralInsights(final Long accountId, final DeviceAccountPair deviceAccountPair, final DeviceDataInsightQueryDAO deviceDataInsightQueryDAO,
                                                                   final Map<InsightCard.Category, DateTime> recentCategories, final DateTime currentTimeUTC, final RolloutClient featureFlipper) {
 
-        final Optional<Integer> timeZoneOffsetOptional = sleepStatsDAODynamoDB.getTimeZoneOffset(accountId);
+        //read by every category tried below
+        final InsightDataSnapshot snapshot = createSnapshot(accountId, Optional.of(deviceAccountPair));
+
+        final Optional<Integer> timeZoneOffsetOptional = snapshot.timeZoneOffset();
         final Integer timeZoneOffset = (timeZoneOffsetOptional.isPresent()) ? timeZoneOffsetOptional.get() : 0; //defaults to utc if no timezone present
         final DateTime currentTimeLocal = currentTimeUTC.plusMillis(timeZoneOffset);
 
@@ -240,7 +274,7 @@ public class InsightProcessor {
 
         if (toGenerateWeeklyCategory.isPresent()) {
             LOGGER.debug("Trying to generate {} category insight for accountId {}", toGenerateWeeklyCategory.get(), accountId);
-            final Optional<InsightCard.Category> generatedWeeklyCategory = this.generateInsightsByCategory(accountId, deviceAccountPair, deviceDataInsightQueryDAO, toGenerateWeeklyCategory.get(), featureFlipper);
+            final Optional<InsightCard.Category> generatedWeeklyCategory = this.generateInsightsByCategory(snapshot, deviceAccountPair, deviceDataInsightQueryDAO, toGenerateWeeklyCategory.get(), featureFlipper);
             if (generatedWeeklyCategory.isPresent()) {
                 LOGGER.debug("Successfully generated {} category insight for accountId {}", generatedWeeklyCategory.get(), accountId);
                 return generatedWeeklyCategory;
@@ -256,7 +290,7 @@ public class InsightProcessor {
         if (!toGenerateHighPriorityCategories.isEmpty()) {
             for (InsightCard.Category category :toGenerateHighPriorityCategories){
                 LOGGER.debug("Trying to generate {} category insight for accountId {}", category, accountId);
-                final Optional<InsightCard.Category> generatedHighPriorityCategory = this.generateInsightsByCategory(accountId, deviceAccountPair, deviceDataInsightQueryDAO, category, featureFlipper);
+                final Optional<InsightCard.Category> generatedHighPriorityCategory = this.generateInsightsByCategory(snapshot, deviceAccountPair, deviceDataInsightQueryDAO, category, featureFlipper);
                 if (generatedHighPriorityCategory.isPresent()) {
                     LOGGER.debug("Successfully generated {} category insight for accountId {}", generatedHighPriorityCategory.get(), accountId);
                 }
@@ -267,7 +301,7 @@ public class InsightProcessor {
         final Optional<InsightCard.Category> toGenerateRandomCategory = selectRandomOldInsightsToGenerate(accountId, recentCategories, currentTimeLocal, featureFlipper);
         if (toGenerateRandomCategory.isPresent()) {
             LOGGER.debug("Trying to generate {} category insight for accountId {}", toGenerateRandomCategory.get(), accountId);
-            final Optional<InsightCard.Category> generatedRandomCategory = this.generateInsightsByCategory(accountId, deviceAccountPair, deviceDataInsightQueryDAO, toGenerateRandomCategory.get(), featureFlipper);
+            final Optional<InsightCard.Category> generatedRandomCategory = this.generateInsightsByCategory(snapshot, deviceAccountPair, deviceDataInsightQueryDAO, toGenerateRandomCategory.get(), featureFlipper);
             if (generatedRandomCategory.isPresent()) {
                 LOGGER.debug("Successfully generated {} category insight for accountId {}", generatedRandomCategory.get(), accountId);
                 return generatedRandomCategory;
@@ -284,7 +318,7 @@ public class InsightProcessor {
 
         if (toGenerateOneTimeCategory.isPresent()) {
             LOGGER.debug("Trying to generate {} category insight for accountId {}", toGenerateOneTimeCategory.get(), accountId);
-            final Optional<InsightCard.Category> generatedRandomOneTimeInsight = this.generateInsightsByCategory(accountId, deviceAccountPair, deviceDataInsightQueryDAO, toGenerateOneTimeCategory.get(), featureFlipper);
+            final Optional<InsightCard.Category> generatedRandomOneTimeInsight = this.generateInsightsByCategory(snapshot, deviceAccountPair, deviceDataInsightQueryDAO, toGenerateOneTimeCategory.get(), featureFlipper);
             if (generatedRandomOneTimeInsight.isPresent()) {
                 LOGGER.debug("Successfully generated {} category insight for accountId {}", generatedRandomOneTimeInsight.get(), accountId);
                 return generatedRandomOneTimeInsight;
@@ -463,27 +497,33 @@ public class InsightProcessor {
     }
 
     public Optional<InsightCard.Category> generateInsightsByCategory(final Long accountId, final DeviceAccountPair deviceAccountPair, final DeviceDataInsightQueryDAO deviceDataInsightQueryDAO, final InsightCard.Category category, final RolloutClient featureFlipper) {
+        return generateInsightsByCategory(createSnapshot(accountId, Optional.of(deviceAccountPair)), deviceAccountPair, deviceDataInsightQueryDAO, category, featureFlipper);
+    }
+
+    /**
+     * Same as above, account data is read from (and kept in) snapshot
+     */
+    public Optional<InsightCard.Category> generateInsightsByCategory(final InsightDataSnapshot snapshot, final DeviceAccountPair deviceAccountPair, final DeviceDataInsightQueryDAO deviceDataInsightQueryDAO, final InsightCard.Category category, final RolloutClient featureFlipper) {
 
+        final Long accountId = snapshot.accountId;
+        final SleepStatsDAO sleepStatsDAO = snapshot.sleepStatsDAO();
         final DateTimeFormatter timeFormat;
         final TemperatureUnit tempUnit;
 
-        final Optional<Calibration> calibrationOptional = calibrationDAO.getStrict(deviceAccountPair.externalDeviceId);
-        final Optional<Device.Color> colorOptional = senseColorDAO.getColorForSense(deviceAccountPair.externalDeviceId);
-
         Optional<InsightCard> insightCardOptional = Optional.absent();
         switch (category) {
             case AIR_QUALITY: //TODO syntax change
-                insightCardOptional = Particulates.getInsights(accountId, deviceAccountPair, sleepStatsDAODynamoDB, deviceDataInsightQueryDAO, calibrationDAO);
+                insightCardOptional = Particulates.getInsights(accountId, deviceAccountPair, sleepStatsDAO, deviceDataInsightQueryDAO, snapshot.calibration());
                 break;
             case BED_LIGHT_DURATION: //TODO modify thresholds
-                insightCardOptional = BedLightDuration.getInsights(accountId, deviceAccountPair, deviceDataInsightQueryDAO, sleepStatsDAODynamoDB);
+                insightCardOptional = BedLightDuration.getInsights(accountId, deviceAccountPair, deviceDataInsightQueryDAO, sleepStatsDAO);
                 break;
             case BED_LIGHT_INTENSITY_RATIO: //TODO calibration interpretation?
-                insightCardOptional = BedLightIntensity.getInsights(accountId, deviceAccountPair, deviceDataInsightQueryDAO, sleepStatsDAODynamoDB);
+                insightCardOptional = BedLightIntensity.getInsights(accountId, deviceAccountPair, deviceDataInsightQueryDAO, sleepStatsDAO);
                 break;
             case CAFFEINE:
-                timeFormat = this.getTimeFormat(accountId);
-                insightCardOptional = CaffeineAlarm.getInsights(accountInfoProcessor, sleepStatsDAODynamoDB, accountId, timeFormat);
+                timeFormat = getTimeFormat(snapshot.preferences());
+                insightCardOptional = CaffeineAlarm.getInsights(accountInfoProcessor, sleepStatsDAO, accountId, timeFormat);
                 break;
             case DRIVE:
                 insightCardOptional = MarketingInsights.getDriveInsight(accountId);
@@ -507,13 +547,13 @@ public class InsightProcessor {
                 insightCardOptional = GoalsInsights.getWakeVarianceInsight(accountId);
                 break;
             case HUMIDITY:
-                insightCardOptional = Humidity.getInsights(accountId, deviceAccountPair, colorOptional, calibrationOptional, deviceDataInsightQueryDAO, sleepStatsDAODynamoDB);
+                insightCardOptional = Humidity.getInsights(accountId, deviceAccountPair, snapshot.color(), snapshot.calibration(), deviceDataInsightQueryDAO, sleepStatsDAO);
                 break;
             case LEARN:
                 insightCardOptional = MarketingInsights.getLearnInsight(accountId);
                 break;
             case LIGHT: //TODO recalculate data
-                insightCardOptional = Lights.getInsights(accountId, deviceAccountPair, colorOptional, calibrationOptional, deviceDataInsightQueryDAO, lightData, sleepStatsDAODynamoDB);
+                insightCardOptional = Lights.getInsights(accountId, deviceAccountPair, snapshot.color(), snapshot.calibration(), deviceDataInsightQueryDAO, lightData, sleepStatsDAO);
                 break;
             case LOVE:
                 insightCardOptional = MarketingInsights.getLoveInsight(accountId);
@@ -526,31 +566,31 @@ public class InsightProcessor {
                 break;
             case SLEEP_DEPRIVATION:
                 final boolean hasSleepDeprivationInsight = featureFlipper.userFeatureActive(FeatureFlipper.INSIGHTS_SLEEP_DEPRIVATION, accountId, Collections.EMPTY_LIST);
-                insightCardOptional = SleepDeprivation.getInsights(sleepStatsDAODynamoDB, accountReadDAO, accountId, hasSleepDeprivationInsight);
+                insightCardOptional = SleepDeprivation.getInsights(sleepStatsDAO, accountReadDAO, accountId, hasSleepDeprivationInsight);
                 break;
             case SLEEP_QUALITY:
-                insightCardOptional = SleepMotion.getInsights(accountId, sleepStatsDAODynamoDB, false);
+                insightCardOptional = SleepMotion.getInsights(accountId, sleepStatsDAO, false);
                 break;
             case SLEEP_SCORE:
                 insightCardOptional = MarketingInsights.getMarketingSleepScoreInsight(accountId);
                 break;
             case SLEEP_TIME:
-                timeFormat = this.getTimeFormat(accountId);
-                insightCardOptional = SleepAlarm.getInsights(sleepStatsDAODynamoDB, accountReadDAO, accountId, timeFormat);
+                timeFormat = getTimeFormat(snapshot.preferences());
+                insightCardOptional = SleepAlarm.getInsights(sleepStatsDAO, accountReadDAO, accountId, timeFormat);
                 break;
             case SOUND: //TODO
-                insightCardOptional = SoundDisturbance.getInsights(accountId, deviceAccountPair, deviceDataDAODynamoDB, sleepStatsDAODynamoDB);
+                insightCardOptional = SoundDisturbance.getInsights(accountId, deviceAccountPair, deviceDataDAODynamoDB, sleepStatsDAO);
                 break;
             case SWIM:
                 insightCardOptional = MarketingInsights.getSwimInsight(accountId);
                 break;
             case TEMPERATURE:
-                tempUnit = this.getTemperatureUnitString(accountId);
-                insightCardOptional = TemperatureHumidity.getInsights(accountId, deviceAccountPair, colorOptional, calibrationOptional, deviceDataInsightQueryDAO, tempUnit, sleepStatsDAODynamoDB);
+                tempUnit = getTemperatureUnitString(snapshot.preferences());
+                insightCardOptional = TemperatureHumidity.getInsights(accountId, deviceAccountPair, snapshot.color(), snapshot.calibration(), deviceDataInsightQueryDAO, tempUnit, sleepStatsDAO);
                 break;
             case WAKE_VARIANCE:
                 final DateTime queryEndDate = DateTime.now(DateTimeZone.UTC).withTimeAtStartOfDay();
-                insightCardOptional = WakeVariance.getInsights(sleepStatsDAODynamoDB, accountId, wakeStdDevData, queryEndDate, DAYS_ONE_WEEK);
+                insightCardOptional = WakeVariance.getInsights(sleepStatsDAO, accountId, wakeStdDevData, queryEndDate, DAYS_ONE_WEEK);
                 break;
             case WORK:
                 insightCardOptional = MarketingInsights.getWorkInsight(accountId);
@@ -564,9 +604,8 @@ public class InsightProcessor {
 
             // save to dynamo
             LOGGER.info("action=generated_insight_card category={} account_id={} next_action=insert_into_dynamo", insightCardOptional.get(), accountId);
-            this.insightsDAODynamoDB.insertInsight(insightCardOptional.get());
             final InsightsLastSeen newInsight = new InsightsLastSeen(accountId, insightCardOptional.get().category, DateTime.now(DateTimeZone.UTC));
-            this.insightsLastSeenDAO.markLastSeen(newInsight);
+            this.insightsWriter.write(insightCardOptional.get(), newInsight);
             return Optional.of(category);
         }
 
@@ -603,9 +642,8 @@ public class InsightProcessor {
 
             // save to dynamo
             LOGGER.info("action=generated_insight_card category={} account_id={} next_action=insert_into_dynamo", insightCardOptional.get(), accountId);
-            this.insightsDAODynamoDB.insertInsight(insightCardOptional.get());
             final InsightsLastSeen newInsight = new InsightsLastSeen(accountId, insightCardOptional.get().category, publicationDateUTC);
-            this.insightsLastSeenDAO.markLastSeen(newInsight);
+            this.insightsWriter.write(insightCardOptional.get(), newInsight);
             return Optional.of(category);
         }
 
@@ -664,8 +702,11 @@ public class InsightProcessor {
     }
 
 
-    private TemperatureUnit getTemperatureUnitString(final Long accountId) {
-        final Map<PreferenceName, Boolean> preferences = this.preferencesDAO.get(accountId);
+    private InsightDataSnapshot createSnapshot(final Long accountId, final Optional<DeviceAccountPair> deviceAccountPair) {
+        return InsightDataSnapshot.create(accountId, deviceAccountPair, sleepStatsDAODynamoDB, calibrationDAO, senseColorDAO, preferencesDAO);
+    }
+
+    private static TemperatureUnit getTemperatureUnitString(final Map<PreferenceName, Boolean> preferences) {
         if (preferences.containsKey(PreferenceName.TEMP_CELSIUS)) {
             final Boolean isCelsius = preferences.get(PreferenceName.TEMP_CELSIUS);
             if (isCelsius) {
@@ -676,8 +717,7 @@ public class InsightProcessor {
         return TemperatureUnit.FAHRENHEIT;
     }
 
-    private DateTimeFormatter getTimeFormat(final Long accountId) {
-        final Map<PreferenceName, Boolean> preferences = this.preferencesDAO.get(accountId);
+    private static DateTimeFormatter getTimeFormat(final Map<PreferenceName, Boolean> preferences) {
         if (preferences.containsKey(PreferenceName.TIME_TWENTY_FOUR_HOUR)) {
             final Boolean isMilitary = preferences.get(PreferenceName.TIME_TWENTY_FOUR_HOUR);
             if (isMilitary) {
@@ -88,6 +88,26 @@ public class RingProcessor {
                                                                final int slidingWindowSizeInMinutes,
                                                                final float lightSleepThreshold,
                                                                final RolloutClient feature){
+        return updateAndReturnNextRingTimeForSense(mergedUserInfoDynamoDB, scheduledRingTimeHistoryDAODynamoDB, smartAlarmLoggerDynamoDB,
+                pillDataDAODynamoDB, morpheusId, currentTimeNotAligned, smartAlarmProcessAheadInMinutes, slidingWindowSizeInMinutes,
+                lightSleepThreshold, feature, Optional.<SmartAlarmScheduler>absent());
+    }
+
+    /**
+     * @param smartAlarmScheduler when present, progressive smart alarms are handed to the scheduler instead of being
+     *                            evaluated during the sync
+     */
+    public static RingTime updateAndReturnNextRingTimeForSense(final MergedUserInfoDynamoDB mergedUserInfoDynamoDB,
+                                                               final ScheduledRingTimeHistoryDAODynamoDB scheduledRingTimeHistoryDAODynamoDB,
+                                                               final SmartAlarmLoggerDynamoDB smartAlarmLoggerDynamoDB,
+                                                               final PillDataDAODynamoDB pillDataDAODynamoDB,
+                                                               final String morpheusId,
+                                                               final DateTime currentTimeNotAligned,
+                                                               final int smartAlarmProcessAheadInMinutes,
+                                                               final int slidingWindowSizeInMinutes,
+                                                               final float lightSleepThreshold,
+                                                               final RolloutClient feature,
+                                                               final Optional<SmartAlarmScheduler> smartAlarmScheduler){
 
         Optional<List<UserInfo>> alarmInfoListOptional = Optional.absent();
 
@@ -124,7 +144,8 @@ public class RingProcessor {
             if(feature != null) {
                 if (feature.userFeatureActive(FeatureFlipper.SMART_ALARM_REFACTORED, userInfo.accountId, Collections.<String>emptyList())) {
                     nextRingTime = updateAndReturnNextProgressiveSmartRingTimeForUser(currentUserLocalTime, smartAlarmProcessAheadInMinutes,
-                            nextRingTimeFromWorker, nextRingTimeFromTemplate, userInfo, pillDataDAODynamoDB,mergedUserInfoDynamoDB, smartAlarmLoggerDynamoDB, feature);
+                            nextRingTimeFromWorker, nextRingTimeFromTemplate, userInfo, pillDataDAODynamoDB,mergedUserInfoDynamoDB, smartAlarmLoggerDynamoDB, feature,
+                            smartAlarmScheduler);
                 }else {
                     nextRingTime = updateAndReturnNextSmartRingTimeForUser(currentUserLocalTime,
                             slidingWindowSizeInMinutes, lightSleepThreshold, smartAlarmProcessAheadInMinutes,
@@ -283,6 +304,21 @@ public class RingProcessor {
                                                                    final MergedUserInfoDynamoDB mergedUserInfoDynamoDB,
                                                                    final SmartAlarmLoggerDynamoDB smartAlarmLoggerDynamoDB,
                                                                    final RolloutClient feature){
+        return updateAndReturnNextProgressiveSmartRingTimeForUser(currentTimeAlignedToStartOfMinuteLocal, smartAlarmProcessAheadInMinutes,
+                nextRingTimeFromWorker, nextRingTimeFromTemplate, userInfo, pillDataDAODynamoDB, mergedUserInfoDynamoDB, smartAlarmLoggerDynamoDB, feature,
+                Optional.<SmartAlarmScheduler>absent());
+    }
+
+    public static RingTime updateAndReturnNextProgressiveSmartRingTimeForUser(final DateTime currentTimeAlignedToStartOfMinuteLocal,
+                                                                   final int smartAlarmProcessAheadInMinutes,
+                                                                   final RingTime nextRingTimeFromWorker,
+                                                                   final RingTime nextRingTimeFromTemplate,
+                                                                   final UserInfo userInfo,
+                                                                   final PillDataDAODynamoDB pillDataDAODynamoDB,
+                                                                   final MergedUserInfoDynamoDB mergedUserInfoDynamoDB,
+                                                                   final SmartAlarmLoggerDynamoDB smartAlarmLoggerDynamoDB,
+                                                                   final RolloutClient feature,
+                                                                   final Optional<SmartAlarmScheduler> smartAlarmScheduler){
         /* Possible States
        1. Current Alarm is a Smart Alarm
             a. Within Appropriate Window Not Processed
@@ -296,7 +332,10 @@ public class RingProcessor {
         //is next alarm a smart alarm? within the appropriate time window? and processed?
         if (isRingTimeFromNextProgressiveSmartAlarm(currentTimeAlignedToStartOfMinuteUTC, nextRingTimeFromWorker)) {
 
-            if(hasSufficientTimeToApplyNextProgressiveSmartAlarm(currentTimeAlignedToStartOfMinuteUTC, nextRingTimeFromWorker, smartAlarmProcessAheadInMinutes)){
+            if(smartAlarmScheduler.isPresent()) {
+                // evaluated once per decision point by the scheduler, scheduling the same alarm again is a no-op
+                smartAlarmScheduler.get().schedule(userInfo, nextRingTimeFromWorker, currentTimeAlignedToStartOfMinuteUTC);
+            } else if(hasSufficientTimeToApplyNextProgressiveSmartAlarm(currentTimeAlignedToStartOfMinuteUTC, nextRingTimeFromWorker, smartAlarmProcessAheadInMinutes)){
                 final DateTime dataCollectionBeginTimeUTC = currentTimeAlignedToStartOfMinuteUTC.minusMinutes(PROGRESSIVE_MOTION_WINDOW_MIN);
                 final List<TrackerMotion> motionWithinProgressiveWindow = pillDataDAODynamoDB.getBetween(userInfo.accountId,
                         dataCollectionBeginTimeUTC, currentTimeAlignedToStartOfMinuteUTC.plusMinutes(1));
@@ -350,6 +389,9 @@ public class RingProcessor {
         RingTime nextRingTime = nextRingTimeFromTemplate;
         //updated userInfo
         mergedUserInfoDynamoDB.setRingTime(userInfo.deviceId, userInfo.accountId, nextRingTime);
+        if(smartAlarmScheduler.isPresent()) {
+            smartAlarmScheduler.get().schedule(userInfo, nextRingTime, currentTimeAlignedToStartOfMinuteUTC);
+        }
         if(nextRingTimeFromWorker.expectedRingTimeUTC < nextRingTimeFromTemplate.expectedRingTimeUTC){
             LOGGER.info("action=set-next-alarm account_id={} device_id={} updated_ring_time={}", userInfo.accountId, userInfo.deviceId, new DateTime(nextRingTimeFromTemplate.actualRingTimeUTC, userInfo.timeZone.get()));
         }else if(nextRingTimeFromWorker.expectedRingTimeUTC > nextRingTimeFromTemplate.expectedRingTimeUTC){
@@ -0,0 +1,392 @@
+package com.hello.suripu.core.processors;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.hello.suripu.core.db.MergedUserInfoDynamoDB;
+import com.hello.suripu.core.db.PillDataDAODynamoDB;
+import com.hello.suripu.core.db.SmartAlarmLoggerDynamoDB;
+import com.hello.suripu.core.flipper.FeatureFlipper;
+import com.hello.suripu.core.models.RingTime;
+import com.hello.suripu.core.models.TrackerMotion;
+import com.hello.suripu.core.models.UserInfo;
+import com.librato.rollout.RolloutClient;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Evaluates progressive smart alarms on a minute time wheel instead of on every Sense sync.
+ *
+ * RingProcessor schedules a pending smart alarm (fromSmartAlarm and not processed) when it sees it during a sync.
+ * Its decision points are the minutes where RingProcessor.hasSufficientTimeToApplyNextProgressiveSmartAlarm holds,
+ * tick() evaluates each of them exactly once, with the motion handed to onTrackerMotion() by the pill ingest.
+ * Unless the motion received since scheduling reaches back to the start of the window, the window is read from pill data once.
+ * A ring time found awake is published like the sync path does it, with a smart alarm log row, except that the ring time
+ * is only written if it has not changed since the alarm was scheduled.
+ *
+ * The wheel holds one day of minutes, alarms further away are scheduled by a later sync.
+ * start() ticks every few seconds on a single thread of its own, schedule() and onTrackerMotion() are thread safe.
+ * Scheduled alarms live in memory: an account's syncs and pill data must be routed to one instance, which owns its alarms.
+ * If several instances do end up scheduling the same alarm, the conditional write lets only the first one publish.
+ */
+public class SmartAlarmScheduler {
+
+    private final static Logger LOGGER = LoggerFactory.getLogger(SmartAlarmScheduler.class);
+
+    private final static int WHEEL_SIZE_MINUTES = DateTimeConstants.MINUTES_PER_DAY;
+    private final static long MOTION_WINDOW_MILLIS = (RingProcessor.PROGRESSIVE_MOTION_WINDOW_MIN + 1) * DateTimeConstants.MILLIS_PER_MINUTE;
+    private final static long TICK_INTERVAL_SECONDS = 10L;
+
+    private static class ScheduledAlarm {
+        final String deviceId;
+        final long accountId;
+        final DateTimeZone timeZone;
+        final RingTime ringTime;
+
+        ScheduledAlarm(final String deviceId, final long accountId, final DateTimeZone timeZone, final RingTime ringTime) {
+            this.deviceId = deviceId;
+            this.accountId = accountId;
+            this.timeZone = timeZone;
+            this.ringTime = ringTime;
+        }
+
+        String key() {
+            return key(deviceId, accountId);
+        }
+
+        static String key(final String deviceId, final long accountId) {
+            return deviceId + ":" + accountId;
+        }
+    }
+
+    /**
+     * Motion of one account received since its alarm got scheduled, trimmed to the progressive motion window
+     */
+    private static class MotionWindow {
+        final ArrayDeque<TrackerMotion> motions = new ArrayDeque<>();
+        long earliestReceivedMillis = Long.MAX_VALUE;
+        boolean backfilled = false;
+        int scheduledAlarms = 0;
+
+        synchronized void add(final TrackerMotion motion, final long nowMillis) {
+            motions.addLast(motion);
+            earliestReceivedMillis = Math.min(earliestReceivedMillis, motion.timestamp);
+            trim(nowMillis);
+        }
+
+        synchronized void addAll(final List<TrackerMotion> backfill) {
+            motions.addAll(backfill);
+            backfilled = true;
+        }
+
+        /**
+         * Whether the motion since windowStartMillis is all here: read from pill data, or received up from before the window.
+         * Not having received any motion says nothing, the pill may just not have uploaded since the alarm got scheduled.
+         */
+        synchronized boolean covers(final long windowStartMillis) {
+            return backfilled || earliestReceivedMillis <= windowStartMillis;
+        }
+
+        /**
+         * @return motion with startMillis <= timestamp < endMillis, in timestamp order and without duplicate timestamps
+         */
+        synchronized List<TrackerMotion> between(final long startMillis, final long endMillis) {
+            final List<TrackerMotion> selected = Lists.newArrayList();
+            for (final TrackerMotion motion : motions) {
+                if (motion.timestamp >= startMillis && motion.timestamp < endMillis) {
+                    selected.add(motion);
+                }
+            }
+            Collections.sort(selected, new Comparator<TrackerMotion>() {
+                @Override
+                public int compare(final TrackerMotion o1, final TrackerMotion o2) {
+                    return Long.compare(o1.timestamp, o2.timestamp);
+                }
+            });
+            return TrackerMotion.Utils.removeDuplicates(selected);
+        }
+
+        private void trim(final long nowMillis) {
+            final long oldest = nowMillis - MOTION_WINDOW_MILLIS;
+            final Iterator<TrackerMotion> iterator = motions.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().timestamp < oldest) {
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    private final MergedUserInfoDynamoDB mergedUserInfoDynamoDB;
+    private final SmartAlarmLoggerDynamoDB smartAlarmLoggerDynamoDB;
+    private final PillDataDAODynamoDB pillDataDAODynamoDB;
+    private final RolloutClient feature;
+    private final int smartAlarmProcessAheadInMinutes;
+
+    private final List<Set<ScheduledAlarm>> wheel;
+    private final ConcurrentMap<String, ScheduledAlarm> scheduledAlarms = Maps.newConcurrentMap();
+    private final ConcurrentMap<Long, MotionWindow> motionWindows = Maps.newConcurrentMap();
+    private final AtomicBoolean ticking = new AtomicBoolean(false);
+
+    // an alarm is put on the wheel either before tick() drains its slot, or after the slot's minute is published
+    private final Object wheelLock = new Object();
+    // guarded by wheelLock
+    private long lastTickMinute = -1L;
+    private Optional<ScheduledExecutorService> tickExecutor = Optional.absent();
+
+    private final AtomicLong evaluations = new AtomicLong(0L);
+    private final AtomicLong published = new AtomicLong(0L);
+
+    public SmartAlarmScheduler(final MergedUserInfoDynamoDB mergedUserInfoDynamoDB,
+                               final SmartAlarmLoggerDynamoDB smartAlarmLoggerDynamoDB,
+                               final PillDataDAODynamoDB pillDataDAODynamoDB,
+                               final RolloutClient feature,
+                               final int smartAlarmProcessAheadInMinutes) {
+        this.mergedUserInfoDynamoDB = mergedUserInfoDynamoDB;
+        this.smartAlarmLoggerDynamoDB = smartAlarmLoggerDynamoDB;
+        this.pillDataDAODynamoDB = pillDataDAODynamoDB;
+        this.feature = feature;
+        this.smartAlarmProcessAheadInMinutes = smartAlarmProcessAheadInMinutes;
+        this.wheel = Lists.newArrayListWithCapacity(WHEEL_SIZE_MINUTES);
+        for (int i = 0; i < WHEEL_SIZE_MINUTES; i++) {
+            wheel.add(Collections.newSetFromMap(new ConcurrentHashMap<ScheduledAlarm, Boolean>()));
+        }
+    }
+
+    /**
+     * Schedules the first decision point of a pending smart alarm. Scheduling the same ring time again is a no-op,
+     * a different ring time for the same user and Sense replaces the previous one.
+     * @return false if the alarm is not a pending smart alarm or too far away for the wheel
+     */
+    public boolean schedule(final UserInfo userInfo, final RingTime nextRingTimeFromWorker, final DateTime now) {
+        if (!userInfo.timeZone.isPresent() || nextRingTimeFromWorker.isEmpty()
+                || !nextRingTimeFromWorker.fromSmartAlarm || nextRingTimeFromWorker.processed()) {
+            return false;
+        }
+
+        final String key = ScheduledAlarm.key(userInfo.deviceId, userInfo.accountId);
+        final ScheduledAlarm existing = scheduledAlarms.get(key);
+        if (existing != null && existing.ringTime.equals(nextRingTimeFromWorker)) {
+            return true;
+        }
+
+        final ScheduledAlarm alarm = new ScheduledAlarm(userInfo.deviceId, userInfo.accountId, userInfo.timeZone.get(), nextRingTimeFromWorker);
+        final long firstDecisionMinute;
+        synchronized (wheelLock) {
+            // first minute strictly after expected - processAhead, and not before the next tick
+            firstDecisionMinute = Math.max(
+                    toMinute(nextRingTimeFromWorker.expectedRingTimeUTC) - smartAlarmProcessAheadInMinutes + 1,
+                    Math.max(toMinute(now.getMillis()), lastTickMinute + 1));
+            if (firstDecisionMinute - toMinute(now.getMillis()) >= WHEEL_SIZE_MINUTES) {
+                return false;
+            }
+
+            if (scheduledAlarms.put(key, alarm) == null) {
+                motionWindows.compute(alarm.accountId, (accountId, motionWindow) -> {
+                    final MotionWindow tracked = (motionWindow == null) ? new MotionWindow() : motionWindow;
+                    tracked.scheduledAlarms++;
+                    return tracked;
+                });
+            }
+            slot(firstDecisionMinute).add(alarm);
+        }
+        LOGGER.debug("action=schedule-smart-alarm account_id={} device_id={} first_decision={}",
+                alarm.accountId, alarm.deviceId, new DateTime(firstDecisionMinute * DateTimeConstants.MILLIS_PER_MINUTE, alarm.timeZone));
+        return true;
+    }
+
+    /**
+     * Incremental motion from the pill ingest. Motion of accounts without a scheduled alarm is ignored.
+     */
+    public void onTrackerMotion(final List<TrackerMotion> trackerMotions, final DateTime now) {
+        for (final TrackerMotion trackerMotion : trackerMotions) {
+            final MotionWindow motionWindow = motionWindows.get(trackerMotion.accountId);
+            if (motionWindow != null) {
+                motionWindow.add(trackerMotion, now.getMillis());
+            }
+        }
+    }
+
+    /**
+     * Starts ticking on a thread of its own
+     */
+    public synchronized void start() {
+        if (tickExecutor.isPresent()) {
+            return;
+        }
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("smart-alarm-scheduler-%d").setDaemon(true).build());
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    tick(DateTime.now(DateTimeZone.UTC));
+                } catch (Exception e) {
+                    LOGGER.error("error=smart-alarm-tick-failed message={}", e.getMessage());
+                }
+            }
+        }, 0L, TICK_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        tickExecutor = Optional.of(executor);
+        LOGGER.info("action=start-smart-alarm-scheduler tick_interval_seconds={}", TICK_INTERVAL_SECONDS);
+    }
+
+    public synchronized void stop() {
+        if (tickExecutor.isPresent()) {
+            tickExecutor.get().shutdownNow();
+            tickExecutor = Optional.absent();
+        }
+    }
+
+    /**
+     * Evaluates every decision point up to the current minute, including minutes missed since the last tick.
+     * A tick while another one is running is skipped, so a decision point is never evaluated twice.
+     */
+    public void tick(final DateTime now) {
+        if (!ticking.compareAndSet(false, true)) {
+            LOGGER.warn("action=skip-smart-alarm-tick reason=tick-in-progress");
+            return;
+        }
+        try {
+            evaluateUpTo(toMinute(now.getMillis()));
+        } finally {
+            ticking.set(false);
+        }
+    }
+
+    private void evaluateUpTo(final long currentMinute) {
+        final long firstMinute;
+        synchronized (wheelLock) {
+            firstMinute = (lastTickMinute < 0) ? currentMinute : Math.max(lastTickMinute + 1, currentMinute - WHEEL_SIZE_MINUTES + 1);
+        }
+
+        for (long minute = firstMinute; minute <= currentMinute; minute++) {
+            final List<ScheduledAlarm> due;
+            synchronized (wheelLock) {
+                // from here on schedule() puts alarms after this minute
+                lastTickMinute = minute;
+                final Set<ScheduledAlarm> slot = slot(minute);
+                due = Lists.newArrayList(slot);
+                slot.clear();
+            }
+            for (final ScheduledAlarm alarm : due) {
+                // replaced or cancelled since it was put on the wheel
+                if (scheduledAlarms.get(alarm.key()) != alarm) {
+                    continue;
+                }
+                if (minute < currentMinute) {
+                    // missed decision point, a ring time computed from it could already be in the past
+                    slot(currentMinute).add(alarm);
+                    continue;
+                }
+                evaluate(alarm, minute);
+            }
+        }
+    }
+
+    public int scheduledAlarmCount() {
+        return scheduledAlarms.size();
+    }
+
+    public long evaluationCount() {
+        return evaluations.get();
+    }
+
+    public long publishedCount() {
+        return published.get();
+    }
+
+    private void evaluate(final ScheduledAlarm alarm, final long minute) {
+        final DateTime nowUTC = new DateTime(minute * DateTimeConstants.MILLIS_PER_MINUTE, DateTimeZone.UTC);
+        if (!RingProcessor.hasSufficientTimeToApplyNextProgressiveSmartAlarm(nowUTC, alarm.ringTime, smartAlarmProcessAheadInMinutes)) {
+            LOGGER.debug("action=drop-smart-alarm account_id={} device_id={} reason=outside-window", alarm.accountId, alarm.deviceId);
+            remove(alarm);
+            return;
+        }
+        evaluations.incrementAndGet();
+
+        final DateTime nowLocal = nowUTC.withZone(alarm.timeZone);
+        final long windowStart = nowUTC.minusMinutes(RingProcessor.PROGRESSIVE_MOTION_WINDOW_MIN).getMillis();
+        final long windowEnd = nowUTC.plusMinutes(1).getMillis();
+        final MotionWindow motionWindow = motionWindow(alarm.accountId);
+        if (!motionWindow.covers(windowStart)) {
+            motionWindow.addAll(pillDataDAODynamoDB.getBetween(alarm.accountId, new DateTime(windowStart, DateTimeZone.UTC), new DateTime(windowEnd, DateTimeZone.UTC)));
+        }
+
+        final boolean useDecayingThreshold = feature != null
+                && feature.userFeatureActive(FeatureFlipper.DECAYING_SMART_ALARM_THRESHOLD, alarm.accountId, Collections.<String>emptyList());
+        final Optional<RingTime> progressiveRingTimeOptional = RingProcessor.getProgressiveRingTime(alarm.accountId, nowLocal, alarm.ringTime,
+                motionWindow.between(windowStart, windowEnd), useDecayingThreshold);
+
+        if (progressiveRingTimeOptional.isPresent()) {
+            publish(alarm, nowLocal, progressiveRingTimeOptional.get());
+            remove(alarm);
+            return;
+        }
+
+        final DateTime nextMinuteUTC = nowUTC.plusMinutes(1);
+        if (RingProcessor.hasSufficientTimeToApplyNextProgressiveSmartAlarm(nextMinuteUTC, alarm.ringTime, smartAlarmProcessAheadInMinutes)) {
+            slot(minute + 1).add(alarm);
+        } else {
+            remove(alarm);
+        }
+    }
+
+    private void publish(final ScheduledAlarm alarm, final DateTime nowLocal, final RingTime progressiveRingTime) {
+        // the alarm was changed, or already published by another instance
+        if (!mergedUserInfoDynamoDB.setRingTimeIfUnchanged(alarm.deviceId, alarm.accountId, alarm.ringTime, progressiveRingTime)) {
+            return;
+        }
+        smartAlarmLoggerDynamoDB.log(alarm.accountId, new DateTime(0, DateTimeZone.UTC),
+                nowLocal,
+                new DateTime(alarm.ringTime.actualRingTimeUTC, alarm.timeZone),
+                new DateTime(progressiveRingTime.expectedRingTimeUTC, alarm.timeZone),
+                Optional.of(new DateTime(progressiveRingTime.actualRingTimeUTC, alarm.timeZone)),
+                alarm.timeZone);
+        published.incrementAndGet();
+        LOGGER.info("action=set-smart-progressive-alarm account_id={} device_id={} original_ring_time={} updated_ring_time={}",
+                alarm.accountId, alarm.deviceId, new DateTime(alarm.ringTime.actualRingTimeUTC, alarm.timeZone),
+                new DateTime(progressiveRingTime.actualRingTimeUTC, alarm.timeZone));
+    }
+
+    private void remove(final ScheduledAlarm alarm) {
+        if (!scheduledAlarms.remove(alarm.key(), alarm)) {
+            return;
+        }
+        // stop buffering motion once the account has no scheduled alarm left
+        motionWindows.computeIfPresent(alarm.accountId, (accountId, motionWindow) -> {
+            motionWindow.scheduledAlarms--;
+            return (motionWindow.scheduledAlarms > 0) ? motionWindow : null;
+        });
+    }
+
+    private MotionWindow motionWindow(final long accountId) {
+        final MotionWindow motionWindow = motionWindows.get(accountId);
+        return (motionWindow == null) ? new MotionWindow() : motionWindow;
+    }
+
+    private Set<ScheduledAlarm> slot(final long minute) {
+        return wheel.get((int) (minute % WHEEL_SIZE_MINUTES));
+    }
+
+    private static long toMinute(final long millis) {
+        return millis / DateTimeConstants.MILLIS_PER_MINUTE;
+    }
+}
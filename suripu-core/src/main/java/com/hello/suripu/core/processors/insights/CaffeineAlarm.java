@@ -3,7 +3,7 @@ package com.hello.suripu.core.processors.insights;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
-import com.hello.suripu.core.db.SleepStatsDAODynamoDB;
+import com.hello.suripu.core.db.SleepStatsDAO;
 import com.hello.suripu.core.models.AggregateSleepStats;
 import com.hello.suripu.core.models.Insights.InsightCard;
 import com.hello.suripu.core.models.Insights.Message.CaffeineAlarmMsgEN;
@@ -36,7 +36,7 @@ public class CaffeineAlarm {
     public static final Integer LATEST_ALLOWED_SLEEP_TIME = (4 + 24) * 60; //4AM
     public static final Integer EARLIEST_ALLOWED_SLEEP_TIME = 20 * 60; //8PM
 
-    public static Optional<InsightCard> getInsights(final AccountInfoProcessor accountInfoProcessor, final SleepStatsDAODynamoDB sleepStatsDAODynamoDB, final Long accountId, final DateTimeFormatter timeFormat) {
+    public static Optional<InsightCard> getInsights(final AccountInfoProcessor accountInfoProcessor, final SleepStatsDAO sleepStatsDAODynamoDB, final Long accountId, final DateTimeFormatter timeFormat) {
 
         final Boolean drinksCoffee = accountInfoProcessor.checkUserDrinksCaffeine(accountId);
         if (!drinksCoffee) {
@@ -5,7 +5,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.hello.suripu.core.db.DeviceDataInsightQueryDAO;
-import com.hello.suripu.core.db.SleepStatsDAODynamoDB;
+import com.hello.suripu.core.db.SleepStatsDAO;
 import com.hello.suripu.core.db.responses.Response;
 import com.hello.suripu.core.firmware.HardwareVersion;
 import com.hello.suripu.core.models.CalibratedDeviceData;
@@ -48,7 +48,7 @@ public class Humidity {
                                                     final Optional<Device.Color> colorOptional,
                                                     final Optional<Calibration> calibrationOptional,
                                                     final DeviceDataInsightQueryDAO deviceDataDAO,
-                                                    final SleepStatsDAODynamoDB sleepStatsDAODynamoDB) {
+                                                    final SleepStatsDAO sleepStatsDAODynamoDB) {
 
 
         final Optional<Integer> timeZoneOffsetOptional = sleepStatsDAODynamoDB.getTimeZoneOffset(accountId);
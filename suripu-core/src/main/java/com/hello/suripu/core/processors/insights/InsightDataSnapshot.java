@@ -0,0 +1,171 @@
+package com.hello.suripu.core.processors.insights;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.hello.suripu.core.db.CalibrationDAO;
+import com.hello.suripu.core.db.SleepStatsDAO;
+import com.hello.suripu.core.db.colors.SenseColorDAO;
+import com.hello.suripu.core.models.AggregateSleepStats;
+import com.hello.suripu.core.models.Calibration;
+import com.hello.suripu.core.models.Device;
+import com.hello.suripu.core.models.DeviceAccountPair;
+import com.hello.suripu.core.models.SleepScore;
+import com.hello.suripu.core.models.SleepStats;
+import com.hello.suripu.core.preferences.AccountPreferencesDAO;
+import com.hello.suripu.core.preferences.PreferenceName;
+import com.hello.suripu.core.util.DateTimeUtil;
+import org.joda.time.DateTime;
+
+import java.util.Map;
+
+/**
+ * Data of one account shared by all the insight generators of a single insight run.
+ *
+ * Every read happens the first time a generator needs it and is kept for the rest of the run, so a run that tries
+ * several categories asks DynamoDB for the timezone, calibration, color and preferences once.
+ * Sleep stats are kept for the widest range asked so far and filtered by date for each generator, which sees the same
+ * rows it would get from the DAO. A range outside of it reads the union of both ranges once.
+ *
+ * Not thread safe, build one per run.
+ */
+public class InsightDataSnapshot {
+
+    public final Long accountId;
+    private final Optional<DeviceAccountPair> deviceAccountPair;
+
+    private final SleepStatsDAO sleepStatsDAO;
+    private final Supplier<Optional<Integer>> timeZoneOffset;
+    private final Supplier<Optional<Calibration>> calibration;
+    private final Supplier<Optional<Device.Color>> color;
+    private final Supplier<Map<PreferenceName, Boolean>> preferences;
+
+    private Optional<String> sleepStatsStartDate = Optional.absent();
+    private Optional<String> sleepStatsEndDate = Optional.absent();
+    private ImmutableList<AggregateSleepStats> sleepStats = ImmutableList.of();
+
+    private InsightDataSnapshot(final Long accountId,
+                                final Optional<DeviceAccountPair> deviceAccountPair,
+                                final SleepStatsDAO sleepStatsDAO,
+                                final CalibrationDAO calibrationDAO,
+                                final SenseColorDAO senseColorDAO,
+                                final AccountPreferencesDAO preferencesDAO) {
+        this.accountId = accountId;
+        this.deviceAccountPair = deviceAccountPair;
+        this.sleepStatsDAO = sleepStatsDAO;
+
+        this.timeZoneOffset = Suppliers.memoize(() -> sleepStatsDAO.getTimeZoneOffset(accountId));
+        this.calibration = Suppliers.memoize(() -> deviceAccountPair.isPresent()
+                ? calibrationDAO.getStrict(deviceAccountPair.get().externalDeviceId)
+                : Optional.<Calibration>absent());
+        this.color = Suppliers.memoize(() -> deviceAccountPair.isPresent()
+                ? senseColorDAO.getColorForSense(deviceAccountPair.get().externalDeviceId)
+                : Optional.<Device.Color>absent());
+        this.preferences = Suppliers.memoize(() -> preferencesDAO.get(accountId));
+    }
+
+    public static InsightDataSnapshot create(final Long accountId,
+                                             final Optional<DeviceAccountPair> deviceAccountPair,
+                                             final SleepStatsDAO sleepStatsDAO,
+                                             final CalibrationDAO calibrationDAO,
+                                             final SenseColorDAO senseColorDAO,
+                                             final AccountPreferencesDAO preferencesDAO) {
+        return new InsightDataSnapshot(accountId, deviceAccountPair, sleepStatsDAO, calibrationDAO, senseColorDAO, preferencesDAO);
+    }
+
+    public Optional<Integer> timeZoneOffset() {
+        return timeZoneOffset.get();
+    }
+
+    /**
+     * absent without a paired sense
+     */
+    public Optional<Calibration> calibration() {
+        return calibration.get();
+    }
+
+    /**
+     * absent without a paired sense
+     */
+    public Optional<Device.Color> color() {
+        return color.get();
+    }
+
+    public Map<PreferenceName, Boolean> preferences() {
+        return preferences.get();
+    }
+
+    /**
+     * same as SleepStatsDAO.getBatchStats for this account
+     */
+    public ImmutableList<AggregateSleepStats> sleepStats(final String startDate, final String endDate) {
+        if (!sleepStatsStartDate.isPresent()) {
+            readSleepStats(startDate, endDate);
+        } else if (startDate.compareTo(sleepStatsStartDate.get()) < 0 || endDate.compareTo(sleepStatsEndDate.get()) > 0) {
+            readSleepStats(min(startDate, sleepStatsStartDate.get()), max(endDate, sleepStatsEndDate.get()));
+        }
+
+        // dates are compared as strings, like the BETWEEN condition on the range key
+        final ImmutableList.Builder<AggregateSleepStats> inRange = ImmutableList.builder();
+        for (final AggregateSleepStats stat : sleepStats) {
+            final String date = DateTimeUtil.dateToYmdString(stat.dateTime);
+            if (date.compareTo(startDate) >= 0 && date.compareTo(endDate) <= 0) {
+                inRange.add(stat);
+            }
+        }
+        return inRange.build();
+    }
+
+    private void readSleepStats(final String startDate, final String endDate) {
+        sleepStats = sleepStatsDAO.getBatchStats(accountId, startDate, endDate);
+        sleepStatsStartDate = Optional.of(startDate);
+        sleepStatsEndDate = Optional.of(endDate);
+    }
+
+    private static String min(final String first, final String second) {
+        return first.compareTo(second) <= 0 ? first : second;
+    }
+
+    private static String max(final String first, final String second) {
+        return first.compareTo(second) >= 0 ? first : second;
+    }
+
+    /**
+     * SleepStatsDAO for the generators, reads of this account come from the snapshot
+     */
+    public SleepStatsDAO sleepStatsDAO() {
+        return new SleepStatsDAO() {
+            @Override
+            public Boolean updateStat(final Long accountId, final DateTime date, final Integer overallSleepScore, final SleepScore sleepScore, final SleepStats stats, final Integer offsetMillis) {
+                return sleepStatsDAO.updateStat(accountId, date, overallSleepScore, sleepScore, stats, offsetMillis);
+            }
+
+            @Override
+            public Optional<Integer> getTimeZoneOffset(final Long accountId) {
+                if (InsightDataSnapshot.this.accountId.equals(accountId)) {
+                    return timeZoneOffset();
+                }
+                return sleepStatsDAO.getTimeZoneOffset(accountId);
+            }
+
+            @Override
+            public Optional<Integer> getTimeZoneOffset(final Long accountId, final DateTime queryDate) {
+                return sleepStatsDAO.getTimeZoneOffset(accountId, queryDate);
+            }
+
+            @Override
+            public Optional<AggregateSleepStats> getSingleStat(final Long accountId, final String date) {
+                return sleepStatsDAO.getSingleStat(accountId, date);
+            }
+
+            @Override
+            public ImmutableList<AggregateSleepStats> getBatchStats(final Long accountId, final String startDate, final String endDate) {
+                if (InsightDataSnapshot.this.accountId.equals(accountId)) {
+                    return sleepStats(startDate, endDate);
+                }
+                return sleepStatsDAO.getBatchStats(accountId, startDate, endDate);
+            }
+        };
+    }
+}
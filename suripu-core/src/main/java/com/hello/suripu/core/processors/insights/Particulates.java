@@ -4,9 +4,8 @@ import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
-import com.hello.suripu.core.db.CalibrationDAO;
 import com.hello.suripu.core.db.DeviceDataInsightQueryDAO;
-import com.hello.suripu.core.db.SleepStatsDAODynamoDB;
+import com.hello.suripu.core.db.SleepStatsDAO;
 import com.hello.suripu.core.db.responses.Response;
 import com.hello.suripu.core.models.Calibration;
 import com.hello.suripu.core.models.DeviceAccountPair;
@@ -38,7 +37,7 @@ public class Particulates {
 
     private static final Integer NUM_DAYS = 7;
 
-    public static Optional<InsightCard> getInsights(final Long accountId, final DeviceAccountPair deviceAccountPair, final SleepStatsDAODynamoDB sleepStatsDAODynamoDB, final DeviceDataInsightQueryDAO deviceDataDAO, final CalibrationDAO calibrationDAO) {
+    public static Optional<InsightCard> getInsights(final Long accountId, final DeviceAccountPair deviceAccountPair, final SleepStatsDAO sleepStatsDAODynamoDB, final DeviceDataInsightQueryDAO deviceDataDAO, final Optional<Calibration> calibrationOptional) {
 
         final Optional<Integer> timeZoneOffsetOptional = sleepStatsDAODynamoDB.getTimeZoneOffset(accountId);
         if (!timeZoneOffsetOptional.isPresent()) {
@@ -47,7 +46,7 @@ public class Particulates {
         }
         final Integer timeZoneOffset = timeZoneOffsetOptional.get();
 
-        final List<Float> dustList = getAvgAirQualityList(accountId, deviceAccountPair, NUM_DAYS, timeZoneOffset, deviceDataDAO, calibrationDAO);
+        final List<Float> dustList = getAvgAirQualityList(accountId, deviceAccountPair, NUM_DAYS, timeZoneOffset, deviceDataDAO, calibrationOptional);
         if (dustList.isEmpty()) {
             LOGGER.debug("action=insight-absent insight=particulates reason=dust-list-empty account_id={}", accountId);
             return Optional.absent();
@@ -70,7 +69,7 @@ public class Particulates {
                 DateTime.now(DateTimeZone.UTC), InsightCard.InsightType.DEFAULT));
     }
 
-    private static List<Float> getAvgAirQualityList(final Long accountId, final DeviceAccountPair deviceAccountPair, final Integer num_days, final Integer timeZoneOffset, final DeviceDataInsightQueryDAO deviceDataDAO, final CalibrationDAO calibrationDAO) {
+    private static List<Float> getAvgAirQualityList(final Long accountId, final DeviceAccountPair deviceAccountPair, final Integer num_days, final Integer timeZoneOffset, final DeviceDataInsightQueryDAO deviceDataDAO, final Optional<Calibration> calibrationOptional) {
 
         final DateTime queryEndTime = DateTime.now(DateTimeZone.UTC).withTimeAtStartOfDay(); //start of day time?
         final DateTime queryStartTime = queryEndTime.minusDays(num_days);
@@ -79,7 +78,6 @@ public class Particulates {
         final DateTime queryStartTimeLocal = queryStartTime.plusMillis(timeZoneOffset);
 
         //Grab all night-time data for past week
-        final Optional<Calibration> calibrationOptional = calibrationDAO.getStrict(deviceAccountPair.externalDeviceId);
         return getAirQualityList(deviceDataDAO, accountId, deviceAccountPair, queryStartTime, queryEndTime, queryStartTimeLocal, queryEndTimeLocal, calibrationOptional);
     }
 
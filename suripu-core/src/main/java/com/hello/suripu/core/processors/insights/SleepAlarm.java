@@ -5,7 +5,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
 import com.hello.suripu.core.util.AccountUtils;
 import com.hello.suripu.core.db.AccountReadDAO;
-import com.hello.suripu.core.db.SleepStatsDAODynamoDB;
+import com.hello.suripu.core.db.SleepStatsDAO;
 import com.hello.suripu.core.models.Account;
 import com.hello.suripu.core.models.AggregateSleepStats;
 import com.hello.suripu.core.models.Insights.InsightCard;
@@ -35,7 +35,7 @@ public class SleepAlarm {
     public static final Integer LATEST_ALLOWED_WAKE_TIME = (11) * 60; //11 AM
     public static final Integer EARLIEST_ALLOWED_WAKE_TIME = 4 * 60; //4 AM
 
-    public static Optional<InsightCard> getInsights(final SleepStatsDAODynamoDB sleepStatsDAODynamoDB, final AccountReadDAO accountReadDAO, final Long accountId, final DateTimeFormatter timeFormat) {
+    public static Optional<InsightCard> getInsights(final SleepStatsDAO sleepStatsDAODynamoDB, final AccountReadDAO accountReadDAO, final Long accountId, final DateTimeFormatter timeFormat) {
 
         //get sleep variance data for the past NUM_DAYS
         final DateTime queryEndDate = DateTime.now(DateTimeZone.UTC).withTimeAtStartOfDay();
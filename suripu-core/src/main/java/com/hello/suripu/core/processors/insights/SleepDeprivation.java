@@ -2,7 +2,7 @@ package com.hello.suripu.core.processors.insights;
 import com.google.common.base.Optional;
 import com.hello.suripu.core.util.AccountUtils;
 import com.hello.suripu.core.db.AccountReadDAO;
-import com.hello.suripu.core.db.SleepStatsDAODynamoDB;
+import com.hello.suripu.core.db.SleepStatsDAO;
 import com.hello.suripu.core.models.Account;
 import com.hello.suripu.core.models.AggregateSleepStats;
 import com.hello.suripu.core.models.Insights.InsightCard;
@@ -31,7 +31,7 @@ public class SleepDeprivation {
     private static final int MIN_AGE = 18;
     private static final int MAX_AGE = 90;
 
-    public static Optional<InsightCard> getInsights(final SleepStatsDAODynamoDB sleepStatsDAODynamoDB, final AccountReadDAO accountReadDAO, final Long accountId, final boolean hasSleepDeprivationInsight) {
+    public static Optional<InsightCard> getInsights(final SleepStatsDAO sleepStatsDAODynamoDB, final AccountReadDAO accountReadDAO, final Long accountId, final boolean hasSleepDeprivationInsight) {
         //ideal sleep duration
         final Optional<Account> optionalAccount = accountReadDAO.getById(accountId);
         if (!optionalAccount.isPresent()){
@@ -75,7 +75,7 @@ public class SleepDeprivation {
         return Optional.absent();
     }
 
-    private static List<AggregateSleepStats> getSleepDebprivationStats(final Long accountId, final SleepStatsDAODynamoDB sleepStatsDAODynamoDB, final DateTime queryEndDate, final int numNights){
+    private static List<AggregateSleepStats> getSleepDebprivationStats(final Long accountId, final SleepStatsDAO sleepStatsDAODynamoDB, final DateTime queryEndDate, final int numNights){
 
         final DateTime queryStartDate = queryEndDate.minusDays(numNights - 1);
         final String queryStartDateString = DateTimeUtil.dateToYmdString(queryStartDate);
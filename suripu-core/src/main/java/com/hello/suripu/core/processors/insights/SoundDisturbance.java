@@ -5,7 +5,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.hello.suripu.core.db.DeviceDataInsightQueryDAO;
-import com.hello.suripu.core.db.SleepStatsDAODynamoDB;
+import com.hello.suripu.core.db.SleepStatsDAO;
 import com.hello.suripu.core.db.responses.Response;
 import com.hello.suripu.core.models.AggregateSleepStats;
 import com.hello.suripu.core.models.DeviceAccountPair;
@@ -39,7 +39,7 @@ public class SoundDisturbance {
     public static Optional<InsightCard> getInsights(final Long accountId,
                                                     final DeviceAccountPair deviceAccountPair,
                                                     final DeviceDataInsightQueryDAO deviceDataDAO,
-                                                    final SleepStatsDAODynamoDB sleepStatsDAODynamoDB) {
+                                                    final SleepStatsDAO sleepStatsDAODynamoDB) {
 
         final Optional<Integer> timeZoneOffsetOptional = getTimeZoneOffsetOptional(sleepStatsDAODynamoDB, accountId, DateTime.now(DateTimeZone.UTC));
         if (!timeZoneOffsetOptional.isPresent()) {
@@ -135,7 +135,7 @@ er
         return Lists.newArrayList();
     }
 
-    private static final Optional<Integer> getTimeZoneOffsetOptional(final SleepStatsDAODynamoDB sleepStatsDAODynamoDB, final Long accountId, final DateTime queryEndDate) {
+    private static final Optional<Integer> getTimeZoneOffsetOptional(final SleepStatsDAO sleepStatsDAODynamoDB, final Long accountId, final DateTime queryEndDate) {
         final String sleepStatsQueryEndDate = DateTimeUtil.dateToYmdString(queryEndDate);
         final String sleepStatsQueryStartDate = DateTimeUtil.dateToYmdString(queryEndDate.minusDays(1));
 
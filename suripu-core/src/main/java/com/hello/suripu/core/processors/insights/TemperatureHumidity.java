@@ -5,7 +5,7 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.hello.suripu.core.db.DeviceDataInsightQueryDAO;
-import com.hello.suripu.core.db.SleepStatsDAODynamoDB;
+import com.hello.suripu.core.db.SleepStatsDAO;
 import com.hello.suripu.core.db.responses.Response;
 import com.hello.suripu.core.models.CalibratedDeviceData;
 import com.hello.suripu.core.models.Calibration;
@@ -63,7 +63,7 @@ public class TemperatureHumidity {
                                                     final Optional<Calibration> calibrationOptional,
                                                     final DeviceDataInsightQueryDAO deviceDataDAO,
                                                     final TemperatureUnit tempUnit,
-                                                    final SleepStatsDAODynamoDB sleepStatsDAODynamoDB) {
+                                                    final SleepStatsDAO sleepStatsDAODynamoDB) {
         final Optional<Integer> timeZoneOffsetOptional = sleepStatsDAODynamoDB.getTimeZoneOffset(accountId);
         if (!timeZoneOffsetOptional.isPresent()) {
             return Optional.absent(); //cannot compute insight without timezone info
@@ -2,7 +2,7 @@ package com.hello.suripu.core.processors.insights;
 
 import com.google.common.base.Optional;
 import com.google.common.collect.Lists;
-import com.hello.suripu.core.db.SleepStatsDAODynamoDB;
+import com.hello.suripu.core.db.SleepStatsDAO;
 import com.hello.suripu.core.models.AggregateSleepStats;
 import com.hello.suripu.core.models.Insights.InsightCard;
 import com.hello.suripu.core.models.Insights.Message.Text;
@@ -23,7 +23,7 @@ import java.util.List;
 public class WakeVariance {
     private static final Logger LOGGER = LoggerFactory.getLogger(WakeVariance.class);
 
-    public static Optional<InsightCard> getInsights(final SleepStatsDAODynamoDB sleepStatsDAODynamoDB, final Long accountId, final WakeStdDevData wakeStdDevData, final DateTime queryEndDate, final int numDays) {
+    public static Optional<InsightCard> getInsights(final SleepStatsDAO sleepStatsDAODynamoDB, final Long accountId, final WakeStdDevData wakeStdDevData, final DateTime queryEndDate, final int numDays) {
 
         //get wake variance data for the past n=numDays days
         final DateTime queryStartDate = queryEndDate.minusDays(numDays);
@@ -0,0 +1,275 @@
+package com.hello.suripu.core.algorithmintegration;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.protobuf.ByteString;
+import com.hello.suripu.api.datascience.NeuralNetMessages;
+import com.hello.suripu.api.datascience.NeuralNetProtos;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.closeTo;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class LocalNeuralNetEndpointTest {
+
+    private static final double TOLERANCE = 1e-9;
+
+    private static final String LSTM_CONFIGURATION = "{\"input_size\": 2, \"layers\": [" +
+            "{\"type\": \"lstm\", \"units\": 3, \"activation\": \"tanh\", \"recurrent_activation\": \"hard_sigmoid\"}," +
+            "{\"type\": \"dense\", \"units\": 2, \"activation\": \"softmax\"}]}";
+
+    private static byte [] params(final float [] ... arrays) {
+        int size = 0;
+        for (final float [] array : arrays) {
+            size += array.length;
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(size * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (final float [] array : arrays) {
+            for (final float value : array) {
+                buffer.putFloat(value);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static float [] randomWeights(final Random random, final int size) {
+        final float [] weights = new float[size];
+        for (int i = 0; i < size; i++) {
+            weights[i] = (float) random.nextGaussian();
+        }
+        return weights;
+    }
+
+    private static double [][] randomInput(final Random random, final int rows, final int numTimeSteps) {
+        final double [][] x = new double[rows][numTimeSteps];
+        for (int i = 0; i < rows; i++) {
+            for (int t = 0; t < numTimeSteps; t++) {
+                x[i][t] = random.nextDouble() * 4 - 2;
+            }
+        }
+        return x;
+    }
+
+    private static double hardSigmoid(final double value) {
+        return Math.max(0.0, Math.min(1.0, 0.2 * value + 0.5));
+    }
+
+    @Test
+    public void testDenseSoftmax() {
+        final float [] w = {1, 2, -1, 0.5f};
+        final float [] b = {0.1f, -0.2f};
+        final LocalNeuralNet net = LocalNeuralNet.create("dense", "{\"input_size\": 2, \"layers\": [{\"type\": \"dense\", \"units\": 2, \"activation\": \"softmax\"}]}", params(w, b));
+
+        final double [][] output = net.evaluate(new double[][]{{1.0, -2.0}, {0.5, 3.0}});
+
+        for (int t = 0; t < 2; t++) {
+            final double x0 = t == 0 ? 1.0 : -2.0;
+            final double x1 = t == 0 ? 0.5 : 3.0;
+            final double z0 = 0.1f + 1 * x0 + 2 * x1;
+            final double z1 = -0.2f - 1 * x0 + 0.5 * x1;
+            final double p0 = Math.exp(z0) / (Math.exp(z0) + Math.exp(z1));
+            assertThat(output[0][t], closeTo(p0, TOLERANCE));
+            assertThat(output[1][t], closeTo(1.0 - p0, TOLERANCE));
+        }
+    }
+
+    @Test
+    public void testLstmMatchesReference() {
+        final Random random = new Random(42);
+        final int units = 3;
+        final int inputSize = 2;
+        final float [] w = randomWeights(random, 4 * units * inputSize);
+        final float [] u = randomWeights(random, 4 * units * units);
+        final float [] b = randomWeights(random, 4 * units);
+        final LocalNeuralNet net = LocalNeuralNet.create("lstm", "{\"input_size\": 2, \"layers\": [{\"type\": \"lstm\", \"units\": 3, \"activation\": \"tanh\"}]}", params(w, u, b));
+
+        final double [][] x = randomInput(random, inputSize, 10);
+        final double [][] output = net.evaluate(x);
+
+        final double [] h = new double[units];
+        final double [] c = new double[units];
+        for (int t = 0; t < 10; t++) {
+            final double [] z = new double[4 * units];
+            for (int k = 0; k < 4 * units; k++) {
+                z[k] = b[k];
+                for (int i = 0; i < inputSize; i++) {
+                    z[k] += w[k * inputSize + i] * x[i][t];
+                }
+                for (int j = 0; j < units; j++) {
+                    z[k] += u[k * units + j] * h[j];
+                }
+            }
+            for (int j = 0; j < units; j++) {
+                c[j] = hardSigmoid(z[units + j]) * c[j] + hardSigmoid(z[j]) * Math.tanh(z[2 * units + j]);
+                h[j] = hardSigmoid(z[3 * units + j]) * Math.tanh(c[j]);
+                assertThat(output[j][t], closeTo(h[j], TOLERANCE));
+            }
+        }
+    }
+
+    @Test
+    public void testReverseLstm() {
+        final Random random = new Random(7);
+        final byte [] params = params(randomWeights(random, 4 * 3 * 2), randomWeights(random, 4 * 3 * 3), randomWeights(random, 4 * 3));
+        final LocalNeuralNet forward = LocalNeuralNet.create("forward", "{\"input_size\": 2, \"layers\": [{\"type\": \"lstm\", \"units\": 3, \"activation\": \"tanh\"}]}", params);
+        final LocalNeuralNet reverse = LocalNeuralNet.create("reverse", "{\"input_size\": 2, \"layers\": [{\"type\": \"lstm\", \"units\": 3, \"activation\": \"tanh\", \"reverse\": true}]}", params);
+
+        final double [][] x = randomInput(random, 2, 8);
+        final double [][] reversedX = new double[2][8];
+        for (int i = 0; i < 2; i++) {
+            for (int t = 0; t < 8; t++) {
+                reversedX[i][t] = x[i][7 - t];
+            }
+        }
+
+        final double [][] reverseOutput = reverse.evaluate(x);
+        final double [][] forwardOutput = forward.evaluate(reversedX);
+        for (int j = 0; j < 3; j++) {
+            for (int t = 0; t < 8; t++) {
+                assertThat(reverseOutput[j][t], closeTo(forwardOutput[j][7 - t], TOLERANCE));
+            }
+        }
+    }
+
+    @Test
+    public void testBuffersAreReused() {
+        final Random random = new Random(1);
+        final byte [] params = params(randomWeights(random, 4 * 3 * 2), randomWeights(random, 4 * 3 * 3), randomWeights(random, 4 * 3), randomWeights(random, 2 * 3), randomWeights(random, 2));
+        final LocalNeuralNet net = LocalNeuralNet.create("net", LSTM_CONFIGURATION, params);
+        final LocalNeuralNet fresh = LocalNeuralNet.create("net", LSTM_CONFIGURATION, params);
+
+        // a long sequence first, leftovers in the buffers must not leak into the shorter one
+        net.evaluate(randomInput(random, 2, 100));
+        final double [][] x = randomInput(random, 2, 20);
+        assertThat(net.evaluate(x), is(fresh.evaluate(x)));
+    }
+
+    private static final String DIFFLIGHT_CONFIGURATION = "{\"input_size\": 8, \"layers\": [{\"type\": \"dense\", \"units\": 2, \"activation\": \"softmax\"}]}";
+
+    private static NeuralNetProtos.NeuralNetMessage message(final String netId, final String configuration, final byte [] params) {
+        return NeuralNetProtos.NeuralNetMessage.newBuilder()
+                .setId(netId)
+                .setConfiguration(configuration)
+                .setParams(ByteString.copyFrom(params))
+                .setInputType(NeuralNetProtos.NeuralNetMessage.InputType.DIFFLIGHT)
+                .build();
+    }
+
+    /**
+     * What the evaluation service returned for a dense softmax net, written out independently of LocalNeuralNet
+     */
+    private static LocalNeuralNetEndpoint.Recording recording(final String netId, final float [] w, final float [] b, final double [][] x) {
+        final NeuralNetMessages.NeuralNetInput.Builder input = NeuralNetMessages.NeuralNetInput.newBuilder().setNetId(netId);
+        for (final double [] row : x) {
+            final NeuralNetMessages.DataVector.Builder vec = NeuralNetMessages.DataVector.newBuilder();
+            for (final double value : row) {
+                vec.addVec(value);
+            }
+            input.addMat(vec);
+        }
+
+        final NeuralNetMessages.DataVector.Builder p0 = NeuralNetMessages.DataVector.newBuilder();
+        final NeuralNetMessages.DataVector.Builder p1 = NeuralNetMessages.DataVector.newBuilder();
+        for (int t = 0; t < x[0].length; t++) {
+            double z0 = b[0];
+            double z1 = b[1];
+            for (int i = 0; i < x.length; i++) {
+                z0 += w[i] * x[i][t];
+                z1 += w[x.length + i] * x[i][t];
+            }
+            p0.addVec(Math.exp(z0) / (Math.exp(z0) + Math.exp(z1)));
+            p1.addVec(Math.exp(z1) / (Math.exp(z0) + Math.exp(z1)));
+        }
+        final NeuralNetMessages.NeuralNetOutput output = NeuralNetMessages.NeuralNetOutput.newBuilder().setSuccess(true).addMat(p0).addMat(p1).build();
+
+        return LocalNeuralNetEndpoint.Recording.create(input.build(), output);
+    }
+
+    @Test
+    public void testVerifiedNetIsEvaluatedLocally() {
+        final Random random = new Random(3);
+        final float [] w = randomWeights(random, 2 * 8);
+        final float [] b = randomWeights(random, 2);
+        final NeuralNetEndpoint remoteEndpoint = mock(NeuralNetEndpoint.class);
+
+        final LocalNeuralNetEndpoint endpoint = LocalNeuralNetEndpoint.create(
+                ImmutableList.of(message("SLEEP", DIFFLIGHT_CONFIGURATION, params(w, b))),
+                ImmutableList.of(recording("SLEEP", w, b, randomInput(random, 8, 30)), recording("SLEEP", w, b, randomInput(random, 8, 60))),
+                1e-6, remoteEndpoint);
+        assertThat(endpoint.hasNet("SLEEP"), is(true));
+
+        final double [][] x = randomInput(random, 8, 40);
+        final Optional<NeuralNetAlgorithmOutput> output = endpoint.getNetOutput("SLEEP", x);
+        assertThat(output.isPresent(), is(true));
+        final double [][] expected = recording("SLEEP", w, b, x).output;
+        for (int t = 0; t < 40; t++) {
+            assertThat(output.get().output[0][t], closeTo(expected[0][t], 1e-6));
+            assertThat(output.get().output[1][t], closeTo(expected[1][t], 1e-6));
+        }
+
+        // input rows are set by the input type
+        assertThat(endpoint.getNetOutput("SLEEP", randomInput(random, 3, 30)).isPresent(), is(false));
+        verify(remoteEndpoint, never()).getNetOutput(anyString(), any(double[][].class));
+    }
+
+    @Test
+    public void testNetThatDoesNotMatchRecordingsGoesRemote() {
+        final Random random = new Random(5);
+        final float [] w = randomWeights(random, 2 * 8);
+        final float [] b = randomWeights(random, 2);
+        final LocalNeuralNetEndpoint.Recording recording = recording("SLEEP", w, b, randomInput(random, 8, 30));
+        recording.output[0][10] += 1e-3;
+
+        final NeuralNetEndpoint remoteEndpoint = mock(NeuralNetEndpoint.class);
+        final Optional<NeuralNetAlgorithmOutput> remoteOutput = Optional.of(new NeuralNetAlgorithmOutput(new double[][]{{1.0}}));
+        when(remoteEndpoint.getNetOutput(anyString(), any(double[][].class))).thenReturn(remoteOutput);
+
+        final LocalNeuralNetEndpoint endpoint = LocalNeuralNetEndpoint.create(
+                ImmutableList.of(message("SLEEP", DIFFLIGHT_CONFIGURATION, params(w, b))), ImmutableList.of(recording), 1e-6, remoteEndpoint);
+
+        assertThat(endpoint.hasNet("SLEEP"), is(false));
+        final double [][] x = randomInput(random, 8, 30);
+        assertThat(endpoint.getNetOutput("SLEEP", x), is(remoteOutput));
+        verify(remoteEndpoint).getNetOutput("SLEEP", x);
+    }
+
+    @Test
+    public void testUnverifiedAndInvalidNetsGoRemote() {
+        final Random random = new Random(9);
+        final float [] w = randomWeights(random, 2 * 8);
+        final float [] b = randomWeights(random, 2);
+        final byte [] params = params(w, b);
+        final byte [] lstmParams = params(randomWeights(random, 4 * 3 * 2), randomWeights(random, 4 * 3 * 3), randomWeights(random, 4 * 3), randomWeights(random, 2 * 3), randomWeights(random, 2));
+
+        final LocalNeuralNetEndpoint endpoint = LocalNeuralNetEndpoint.create(
+                ImmutableList.of(
+                        message("NO_RECORDINGS", DIFFLIGHT_CONFIGURATION, params),
+                        message("BROKEN", DIFFLIGHT_CONFIGURATION, Arrays.copyOf(params, params.length - 4)),
+                        message("WRONG_INPUT_SIZE", LSTM_CONFIGURATION, lstmParams)),
+                ImmutableList.of(
+                        recording("BROKEN", w, b, randomInput(random, 8, 30)),
+                        recording("WRONG_INPUT_SIZE", w, b, randomInput(random, 8, 30))),
+                1e-6, mock(NeuralNetEndpoint.class));
+
+        assertThat(endpoint.hasNet("NO_RECORDINGS"), is(false));
+        assertThat(endpoint.hasNet("BROKEN"), is(false));
+        assertThat(endpoint.hasNet("WRONG_INPUT_SIZE"), is(false));
+    }
+
+    @Test
+    public void testDiffLightInputRows() {
+        assertThat(LocalNeuralNetEndpoint.inputRows(NeuralNetProtos.NeuralNetMessage.InputType.DIFFLIGHT), is(Optional.of(NeuralNetAlgorithm.SensorIndices.MAX_NUM_INDICES)));
+    }
+}
@@ -10,6 +10,7 @@ import com.hello.suripu.core.models.Calibration;
 import com.hello.suripu.core.models.Device;
 import com.hello.suripu.core.models.DeviceData;
 import com.hello.suripu.core.models.Sample;
+import com.hello.suripu.core.models.SampleSeries;
 import com.hello.suripu.core.models.Sensor;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
@@ -20,6 +21,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.Set;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -165,5 +167,44 @@ public class BucketingTest {
         assertThat(map.get(Sensor.SOUND).get(1L).value, greaterThan((float) 25.0));
     }
 
+    @Test
+    public void testFillEmptyBucketsMatchesMergeAndSort() {
+        final Random random = new Random(42);
+        for (int trial = 0; trial < 50; trial++) {
+            final List<DeviceData> deviceDataList = Lists.newArrayList();
+            DateTime dateTime = startDate.minusMinutes(random.nextInt(120));
+            final int numData = random.nextInt(20);
+            for (int i = 0; i < numData; i++) {
+                // some data falls off the grid or before/after it
+                dateTime = dateTime.plusMinutes(random.nextInt(8));
+                deviceDataList.add(DeviceData.senseOne(999L, 111L, "", 2000 + random.nextInt(1000), 333, 444, 555, 0, 0, 0, 666, 777, 777, 888,
+                        dateTime, random.nextInt(3) * 3600000, 0, 0, 0, 0, 0, 0, 0));
+            }
+            final Optional<Map<Long, Sample>> populatedMap = Bucketing.populateMap(deviceDataList, Sensor.TEMPERATURE, Optional.<Device.Color>absent(), calibration, false);
+            final Optional<SampleSeries> populatedSeries = Bucketing.populateSeries(deviceDataList, Sensor.TEMPERATURE, Optional.<Device.Color>absent(), calibration, false);
+            assertThat(populatedSeries.isPresent(), is(populatedMap.isPresent()));
+            if (!populatedMap.isPresent()) {
+                continue;
+            }
+
+            final Map<Long, Sample> generated = Bucketing.generateEmptyMap(numberOfBuckets * 4, startDate, slotDurationInMinutes, -1);
+            final List<Sample> expected = Bucketing.sortResults(Bucketing.mergeResults(generated, populatedMap.get()), 1234);
+            final SampleSeries actual = Bucketing.fillEmptyBuckets(populatedSeries.get(), numberOfBuckets * 4, startDate, slotDurationInMinutes, -1, 1234);
+            assertThat(actual.toSamples(), is(expected));
+        }
+    }
 
+    @Test
+    public void testPopulateMapAllSeries() {
+        final List<DeviceData> deviceDataList = ImmutableList.of(
+                DeviceData.senseOne(999L, 111L, "", 2220, 333, 444, 555, 0, 0, 0, 666, 777, 777, 888, startDate, 0, 0, 0, 0, 0, 0, 0, 0),
+                DeviceData.senseOne(999L, 111L, "", 2220, 333, 444, 555, 0, 0, 0, 666, 777, 777, 888, startDate.plusMinutes(5), 0, 0, 0, 0, 0, 0, 0, 0));
+        final AllSensorSampleMap map = Bucketing.populateMapAll(deviceDataList, Optional.<Device.Color>absent(), Optional.<Calibration>absent(), false);
+        final SampleSeries series = map.getSeries(Sensor.TEMPERATURE);
+        assertThat(series.size(), is(2));
+        assertThat(series.timestamp(0), is(startDate.getMillis()));
+        assertThat(series.timestamp(1), is(startDate.plusMinutes(5).getMillis()));
+        assertThat(map.getSeries(Sensor.CO2).isEmpty(), is(true));
+        assertThat(map.get(Sensor.TEMPERATURE).get(startDate.getMillis()).value, is(series.value(0)));
+    }
 }
@@ -1,15 +1,25 @@
 package com.hello.suripu.core.db;
 
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.hello.suripu.core.db.dynamo.BatchWritePipeline;
 import com.hello.suripu.core.models.Insights.InsightCard;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -17,10 +27,17 @@ import java.util.Set;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 public class InsightsDAODynamoDBTest {
 
 
+    private static BatchWritePipeline pipeline(final AmazonDynamoDB amazonDynamoDB) {
+        return new BatchWritePipeline(amazonDynamoDB, MoreExecutors.newDirectExecutorService(), 1, 5, 100.0, 5.0, 1000.0);
+    }
+
     private InsightCard generate(InsightCard.Category category) {
         return InsightCard.createBasicInsightCard(13L, "title", "message", category, InsightCard.TimePeriod.DAILY, DateTime.now(DateTimeZone.UTC), InsightCard.InsightType.DEFAULT);
     }
@@ -133,4 +150,43 @@ public class InsightsDAODynamoDBTest {
                 Optional.of("basic")
         );
     }
+
+    @Test
+    public void testOnlyUnprocessedInsightsAreSentAgain() {
+        final AmazonDynamoDB amazonDynamoDB = mock(AmazonDynamoDB.class);
+        final List<Integer> batchSizes = Lists.newArrayList();
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(new Answer<BatchWriteItemResult>() {
+            @Override
+            public BatchWriteItemResult answer(InvocationOnMock invocation) throws Throwable {
+                final List<WriteRequest> requests = ((BatchWriteItemRequest) invocation.getArguments()[0]).getRequestItems().get("insights");
+                batchSizes.add(requests.size());
+                if (batchSizes.size() == 1) {
+                    return new BatchWriteItemResult().withUnprocessedItems(ImmutableMap.of("insights", requests.subList(0, 2)));
+                }
+                return new BatchWriteItemResult().withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap());
+            }
+        });
+
+        final List<InsightCard> cards = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            cards.add(generate(InsightCard.Category.LIGHT));
+        }
+        new InsightsDAODynamoDB(amazonDynamoDB, "insights").insertListOfInsights(cards, pipeline(amazonDynamoDB));
+
+        assertThat(batchSizes, is((List<Integer>) Lists.newArrayList(10, 2)));
+    }
+
+    @Test(expected = AmazonClientException.class)
+    public void testInsertListOfInsightsThrowsWhenGivingUp() {
+        final AmazonDynamoDB amazonDynamoDB = mock(AmazonDynamoDB.class);
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(new Answer<BatchWriteItemResult>() {
+            @Override
+            public BatchWriteItemResult answer(InvocationOnMock invocation) throws Throwable {
+                final BatchWriteItemRequest request = (BatchWriteItemRequest) invocation.getArguments()[0];
+                return new BatchWriteItemResult().withUnprocessedItems(request.getRequestItems());
+            }
+        });
+
+        new InsightsDAODynamoDB(amazonDynamoDB, "insights").insertListOfInsights(Lists.newArrayList(generate(InsightCard.Category.LIGHT)), pipeline(amazonDynamoDB));
+    }
 }
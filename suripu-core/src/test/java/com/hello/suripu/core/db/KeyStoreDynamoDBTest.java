@@ -0,0 +1,145 @@
+package com.hello.suripu.core.db;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.GetItemResult;
+import com.google.common.base.Optional;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hello.suripu.core.models.DeviceKeyStoreRecord;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class KeyStoreDynamoDBTest {
+
+    private static final String TABLE_NAME = "key_store";
+    private static final String SENSE_ID = "sense";
+    private static final String PILL_ID = "pill";
+    private static final String UNKNOWN_ID = "unknown";
+
+    private static class FakeTicker extends Ticker {
+        long nanos = 0L;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(final long value, final TimeUnit unit) {
+            nanos += unit.toNanos(value);
+        }
+    }
+
+    private AmazonDynamoDB dynamoDB;
+    private FakeTicker ticker;
+
+    private static Map<String, AttributeValue> item(final String deviceId, final String aesKey) {
+        final Map<String, AttributeValue> item = Maps.newHashMap();
+        item.put("device_id", new AttributeValue().withS(deviceId));
+        item.put("aes_key", new AttributeValue().withS(aesKey));
+        return item;
+    }
+
+    @Before
+    public void setUp() {
+        dynamoDB = mock(AmazonDynamoDB.class);
+        ticker = new FakeTicker();
+
+        when(dynamoDB.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult().withItem(item(SENSE_ID, "0A0B")));
+
+        final List<Map<String, AttributeValue>> responses = Lists.newArrayList(item(SENSE_ID, "0A0B"), item(PILL_ID, "0C0D"));
+        final Map<String, List<Map<String, AttributeValue>>> responsesByTable = Maps.newHashMap();
+        responsesByTable.put(TABLE_NAME, responses);
+        when(dynamoDB.batchGetItem(any(BatchGetItemRequest.class))).thenReturn(new BatchGetItemResult().withResponses(responsesByTable));
+    }
+
+    @Test
+    public void testCachedKeyIsOnlyReadOnce() {
+        final KeyStoreDynamoDB keyStore = new KeyStoreDynamoDB(dynamoDB, TABLE_NAME, 600, ticker);
+
+        for (int i = 0; i < 5; i++) {
+            final Optional<byte[]> key = keyStore.getStrict(SENSE_ID);
+            assertThat(key.isPresent(), is(true));
+            assertThat(key.get()[1], is((byte) 0x0B));
+        }
+
+        verify(dynamoDB, times(1)).getItem(any(GetItemRequest.class));
+        assertThat(keyStore.cacheStats().hitCount(), is(4L));
+
+        ticker.advance(601, TimeUnit.SECONDS);
+        keyStore.getStrict(SENSE_ID);
+        verify(dynamoDB, times(2)).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    public void testMissExpiresBeforeKey() {
+        when(dynamoDB.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult());
+        final KeyStoreDynamoDB keyStore = new KeyStoreDynamoDB(dynamoDB, TABLE_NAME, 600, ticker);
+
+        assertThat(keyStore.getStrict(UNKNOWN_ID).isPresent(), is(false));
+        assertThat(keyStore.get(UNKNOWN_ID).get(), is(KeyStoreDynamoDB.DEFAULT_AES_KEY));
+        verify(dynamoDB, times(1)).getItem(any(GetItemRequest.class));
+
+        // key got provisioned in the meantime
+        when(dynamoDB.getItem(any(GetItemRequest.class))).thenReturn(new GetItemResult().withItem(item(UNKNOWN_ID, "0E0F")));
+        ticker.advance(61, TimeUnit.SECONDS);
+
+        assertThat(keyStore.getStrict(UNKNOWN_ID).isPresent(), is(true));
+        verify(dynamoDB, times(2)).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    public void testBatchPrefetchesKeys() {
+        final KeyStoreDynamoDB keyStore = new KeyStoreDynamoDB(dynamoDB, TABLE_NAME, 600, ticker);
+
+        final Map<String, DeviceKeyStoreRecord> records = keyStore.getKeyStoreRecordBatch(ImmutableSet.of(SENSE_ID, PILL_ID, UNKNOWN_ID));
+        assertThat(records.size(), is(2));
+        assertThat(records.get(PILL_ID).uncensoredKey(), is("0C0D"));
+
+        assertThat(keyStore.getStrict(PILL_ID).get()[0], is((byte) 0x0C));
+        assertThat(keyStore.getKeyStoreRecord(SENSE_ID).isPresent(), is(true));
+        assertThat(keyStore.getStrict(UNKNOWN_ID).isPresent(), is(false));
+
+        verify(dynamoDB, times(1)).batchGetItem(any(BatchGetItemRequest.class));
+        verify(dynamoDB, times(0)).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    public void testPutInvalidatesKey() {
+        final KeyStoreDynamoDB keyStore = new KeyStoreDynamoDB(dynamoDB, TABLE_NAME, 600, ticker);
+
+        keyStore.getStrict(SENSE_ID);
+        keyStore.put(SENSE_ID, "0102");
+        keyStore.getStrict(SENSE_ID);
+
+        verify(dynamoDB, times(2)).getItem(any(GetItemRequest.class));
+    }
+
+    @Test
+    public void testNoCache() {
+        final KeyStoreDynamoDB keyStore = new KeyStoreDynamoDB(dynamoDB, TABLE_NAME, null, ticker);
+
+        keyStore.getStrict(SENSE_ID);
+        keyStore.getStrict(SENSE_ID);
+
+        verify(dynamoDB, times(2)).getItem(any(GetItemRequest.class));
+        assertThat(keyStore.cacheStats().requestCount(), is(0L));
+    }
+}
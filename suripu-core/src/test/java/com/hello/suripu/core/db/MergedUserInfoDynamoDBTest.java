@@ -0,0 +1,140 @@
+package com.hello.suripu.core.db;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
+import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.hello.suripu.core.models.UserInfo;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MergedUserInfoDynamoDBTest {
+
+    private static final String TABLE_NAME = "alarm_info";
+    private static final String SENSE_ID = "sense";
+    private static final String ALARMS = "[{\"year\":0,\"month\":0,\"day_of_month\":0,\"hour\":7,\"minute\":30,\"day_of_week\":[1,2,3,4,5]," +
+            "\"repeated\":true,\"enabled\":true,\"editable\":true,\"smart\":false,\"sound\":{\"id\":5,\"name\":\"Dusk\",\"url\":\"\"}," +
+            "\"id\":\"1e91dfbc-0534-4228-a14d-d2b3e75010d1\",\"source\":\"MOBILE_APP\",\"expansions\":[]}]";
+
+    private AmazonDynamoDB dynamoDB;
+    private final Map<Long, Long> updatedAtByAccountId = Maps.newHashMap();
+    private int fullQueries;
+    private int versionQueries;
+
+    private static Map<String, AttributeValue> item(final long accountId, final long updatedAt) {
+        final Map<String, AttributeValue> item = Maps.newHashMap();
+        item.put(MergedUserInfoDynamoDB.MORPHEUS_ID_ATTRIBUTE_NAME, new AttributeValue().withS(SENSE_ID));
+        item.put(MergedUserInfoDynamoDB.ACCOUNT_ID_ATTRIBUTE_NAME, new AttributeValue().withN(String.valueOf(accountId)));
+        item.put(MergedUserInfoDynamoDB.TIMEZONE_ID_ATTRIBUTE_NAME, new AttributeValue().withS("America/Los_Angeles"));
+        item.put(MergedUserInfoDynamoDB.ALARM_TEMPLATES_ATTRIBUTE_NAME, new AttributeValue().withS(ALARMS));
+        item.put(MergedUserInfoDynamoDB.UPDATED_AT_ATTRIBUTE_NAME, new AttributeValue().withN(String.valueOf(updatedAt)));
+        return item;
+    }
+
+    @Before
+    public void setUp() {
+        dynamoDB = mock(AmazonDynamoDB.class);
+        updatedAtByAccountId.put(1L, 100L);
+        updatedAtByAccountId.put(2L, 200L);
+
+        when(dynamoDB.query(any(QueryRequest.class))).thenAnswer(new Answer<QueryResult>() {
+            @Override
+            public QueryResult answer(final InvocationOnMock invocation) throws Throwable {
+                final QueryRequest request = (QueryRequest) invocation.getArguments()[0];
+                if (request.getAttributesToGet().contains(MergedUserInfoDynamoDB.ALARM_TEMPLATES_ATTRIBUTE_NAME)) {
+                    fullQueries++;
+                } else {
+                    versionQueries++;
+                }
+
+                final List<Map<String, AttributeValue>> items = Lists.newArrayList();
+                for (final Map.Entry<Long, Long> entry : updatedAtByAccountId.entrySet()) {
+                    items.add(item(entry.getKey(), entry.getValue()));
+                }
+                return new QueryResult().withItems(items);
+            }
+        });
+        when(dynamoDB.updateItem(any(UpdateItemRequest.class))).thenReturn(new UpdateItemResult());
+    }
+
+    @Test
+    public void testUnchangedRowsAreNotReadAgain() {
+        final MergedUserInfoDynamoDB mergedUserInfoDynamoDB = new MergedUserInfoDynamoDB(dynamoDB, TABLE_NAME, 100);
+
+        final List<UserInfo> first = mergedUserInfoDynamoDB.getInfo(SENSE_ID);
+        final List<UserInfo> second = mergedUserInfoDynamoDB.getInfo(SENSE_ID);
+
+        assertThat(first.size(), is(2));
+        assertThat(second, sameInstance(first));
+        assertThat(fullQueries, is(1));
+        assertThat(versionQueries, is(1));
+        assertThat(mergedUserInfoDynamoDB.cacheStats().hitCount(), is(1L));
+    }
+
+    @Test
+    public void testChangedRowIsParsedAgain() {
+        final MergedUserInfoDynamoDB mergedUserInfoDynamoDB = new MergedUserInfoDynamoDB(dynamoDB, TABLE_NAME, 100);
+
+        final List<UserInfo> first = mergedUserInfoDynamoDB.getInfo(SENSE_ID);
+
+        // another server updated the alarms of account 2
+        updatedAtByAccountId.put(2L, 300L);
+        final List<UserInfo> second = mergedUserInfoDynamoDB.getInfo(SENSE_ID);
+
+        assertThat(fullQueries, is(2));
+        assertThat(second, not(sameInstance(first)));
+        assertThat(byAccountId(second).get(1L), sameInstance(byAccountId(first).get(1L)));
+        assertThat(byAccountId(second).get(2L).lastUpdatedAt, is(300L));
+        assertThat(byAccountId(second).get(2L).alarmList, not(sameInstance(byAccountId(first).get(2L).alarmList)));
+    }
+
+    private static Map<Long, UserInfo> byAccountId(final List<UserInfo> userInfos) {
+        final Map<Long, UserInfo> userInfoByAccountId = Maps.newHashMap();
+        for (final UserInfo userInfo : userInfos) {
+            userInfoByAccountId.put(userInfo.accountId, userInfo);
+        }
+        return userInfoByAccountId;
+    }
+
+    @Test
+    public void testWriteInvalidatesSense() {
+        final MergedUserInfoDynamoDB mergedUserInfoDynamoDB = new MergedUserInfoDynamoDB(dynamoDB, TABLE_NAME, 100);
+
+        mergedUserInfoDynamoDB.getInfo(SENSE_ID);
+        mergedUserInfoDynamoDB.setTimeZone(SENSE_ID, 1L, DateTimeZone.UTC);
+        mergedUserInfoDynamoDB.getInfo(SENSE_ID);
+
+        assertThat(fullQueries, is(2));
+        assertThat(versionQueries, is(0));
+    }
+
+    @Test
+    public void testNoCache() {
+        final MergedUserInfoDynamoDB mergedUserInfoDynamoDB = new MergedUserInfoDynamoDB(dynamoDB, TABLE_NAME);
+
+        mergedUserInfoDynamoDB.getInfo(SENSE_ID);
+        mergedUserInfoDynamoDB.getInfo(SENSE_ID);
+
+        assertThat(fullQueries, is(2));
+        assertThat(versionQueries, is(0));
+        assertThat(mergedUserInfoDynamoDB.cacheStats().requestCount(), is(0L));
+    }
+}
@@ -1,18 +1,56 @@
 package com.hello.suripu.core.db;
 
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.hello.suripu.core.db.dynamo.Expressions;
+import com.hello.suripu.core.db.dynamo.expressions.Expression;
+import com.hello.suripu.core.db.responses.Response;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 /**
  * Created by jakepiccolo on 1/21/16.
  */
 public class TimeSeriesDAODynamoDBTest {
+
+    private static final List<String> TABLES = ImmutableList.of("pill_data_2016_01", "pill_data_2016_02", "pill_data_2016_03");
+    private static final Expression KEY_CONDITION = Expressions.equals(
+            PillDataDAODynamoDB.PillDataAttribute.ACCOUNT_ID, new AttributeValue().withN("1"));
+
+    private AmazonDynamoDB amazonDynamoDB;
+    private ExecutorService queryExecutor;
+
+    @Before
+    public void setUp() {
+        amazonDynamoDB = mock(AmazonDynamoDB.class);
+        queryExecutor = TimeSeriesDAODynamoDB.newQueryExecutor(4, 8);
+    }
+
+    @After
+    public void tearDown() {
+        queryExecutor.shutdownNow();
+    }
+
     @Test
     public void testAttributeValueMapToLogString() {
         assertThat(
@@ -28,4 +66,59 @@ public class TimeSeriesDAODynamoDBTest {
                                 "bool", new AttributeValue().withBOOL(true))),
                 is("number=1"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testQueryTablesConcurrentlyMatchesSerial() {
+        when(amazonDynamoDB.query(any(QueryRequest.class))).thenAnswer(new Answer<QueryResult>() {
+            @Override
+            public QueryResult answer(InvocationOnMock invocation) throws Throwable {
+                final QueryRequest request = (QueryRequest) invocation.getArguments()[0];
+                return new QueryResult().withItems(item(request.getTableName(), 1), item(request.getTableName(), 2));
+            }
+        });
+
+        final Response<List<Map<String, AttributeValue>>> serial = new PillDataDAODynamoDB(amazonDynamoDB, "pill_data")
+                .queryTables(TABLES, KEY_CONDITION, ImmutableSet.of(PillDataDAODynamoDB.PillDataAttribute.ACCOUNT_ID));
+        final MetricRegistry metricRegistry = new MetricRegistry();
+        final Response<List<Map<String, AttributeValue>>> concurrent = new PillDataDAODynamoDB(amazonDynamoDB, "pill_data", queryExecutor, metricRegistry)
+                .queryTables(TABLES, KEY_CONDITION, ImmutableSet.of(PillDataDAODynamoDB.PillDataAttribute.ACCOUNT_ID));
+
+        assertThat(concurrent.status, is(Response.Status.SUCCESS));
+        assertThat(concurrent.data.size(), is(6));
+        assertThat(concurrent.data, is(serial.data));
+        assertThat(concurrent.data.get(0).get("table").getS(), is(TABLES.get(0)));
+        assertThat(concurrent.data.get(5).get("table").getS(), is(TABLES.get(2)));
+        assertThat(metricRegistry.timer(MetricRegistry.name(PillDataDAODynamoDB.class, "shard-query")).getCount(), is(3L));
+    }
+
+    @Test
+    public void testQueryTablesConcurrentlyStopsAtFirstThrottledTable() {
+        when(amazonDynamoDB.query(any(QueryRequest.class))).thenAnswer(new Answer<QueryResult>() {
+            @Override
+            public QueryResult answer(InvocationOnMock invocation) throws Throwable {
+                final QueryRequest request = (QueryRequest) invocation.getArguments()[0];
+                if (request.getTableName().equals(TABLES.get(1))) {
+                    throw new ProvisionedThroughputExceededException("throttled");
+                }
+                return new QueryResult().withItems(item(request.getTableName(), 1));
+            }
+        });
+
+        final PillDataDAODynamoDB pillDataDAODynamoDB = new PillDataDAODynamoDB(amazonDynamoDB, "pill_data", queryExecutor, new MetricRegistry()) {
+            @Override
+            protected void backoff(int numberOfAttempts) {}
+        };
+        final Response<List<Map<String, AttributeValue>>> response = pillDataDAODynamoDB
+                .queryTables(TABLES, KEY_CONDITION, ImmutableSet.of(PillDataDAODynamoDB.PillDataAttribute.ACCOUNT_ID));
+
+        assertThat(response.status, is(Response.Status.PARTIAL_RESULTS));
+        assertThat(response.data.size(), is(1));
+        assertThat(response.data.get(0).get("table").getS(), is(TABLES.get(0)));
+    }
+
+    private static Map<String, AttributeValue> item(final String tableName, final int value) {
+        return ImmutableMap.of(
+                "table", new AttributeValue().withS(tableName),
+                "val", new AttributeValue().withN(String.valueOf(value)));
+    }
+}
@@ -0,0 +1,202 @@
+package com.hello.suripu.core.db.dynamo;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BatchWritePipelineTest {
+
+    private AmazonDynamoDB amazonDynamoDB;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        amazonDynamoDB = mock(AmazonDynamoDB.class);
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testWritesEveryTableInBatchesOfAtMost25() {
+        final AtomicInteger maxBatchSize = new AtomicInteger(0);
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(new Answer<BatchWriteItemResult>() {
+            @Override
+            public BatchWriteItemResult answer(InvocationOnMock invocation) throws Throwable {
+                final BatchWriteItemRequest request = (BatchWriteItemRequest) invocation.getArguments()[0];
+                assertThat(request.getRequestItems().size(), is(1));
+                for (final List<WriteRequest> requests : request.getRequestItems().values()) {
+                    maxBatchSize.set(Math.max(maxBatchSize.get(), requests.size()));
+                }
+                return new BatchWriteItemResult().withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap());
+            }
+        });
+
+        final BatchWritePipeline pipeline = new BatchWritePipeline(amazonDynamoDB, executor, 4, 3, 100000.0, 1000.0, 100000.0);
+        final BatchWritePipeline.Result result = pipeline.write(ImmutableMap.of(
+                "table_1", writeRequests("table_1", 60),
+                "table_2", writeRequests("table_2", 30)));
+
+        assertThat(result.written, is(90));
+        assertThat(result.remaining.isEmpty(), is(true));
+        assertThat(maxBatchSize.get(), is(BatchWritePipeline.MAX_BATCH_ITEMS));
+        assertThat(pipeline.stats().batches, is(5L));
+        assertThat(pipeline.stats().written, is(90L));
+    }
+
+    @Test
+    public void testRequeuesUnprocessedItemsAndLowersTableRate() {
+        final AtomicInteger calls = new AtomicInteger(0);
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(new Answer<BatchWriteItemResult>() {
+            @Override
+            public BatchWriteItemResult answer(InvocationOnMock invocation) throws Throwable {
+                final BatchWriteItemRequest request = (BatchWriteItemRequest) invocation.getArguments()[0];
+                if (calls.getAndIncrement() > 0) {
+                    return new BatchWriteItemResult().withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap());
+                }
+                // first call: the last 5 items are not processed
+                final List<WriteRequest> requests = request.getRequestItems().get("table_1");
+                final List<WriteRequest> unprocessed = Lists.newArrayList(requests.subList(requests.size() - 5, requests.size()));
+                return new BatchWriteItemResult().withUnprocessedItems(ImmutableMap.of("table_1", unprocessed));
+            }
+        });
+
+        final BatchWritePipeline pipeline = new BatchWritePipeline(amazonDynamoDB, executor, 1, 3, 100000.0, 1000.0, 100000.0);
+        final BatchWritePipeline.Result result = pipeline.write(ImmutableMap.of("table_1", writeRequests("table_1", 20)));
+
+        assertThat(result.written, is(20));
+        assertThat(result.remaining.isEmpty(), is(true));
+        assertThat(calls.get(), is(2));
+        assertThat(pipeline.stats().unprocessed, is(5L));
+        assertThat(pipeline.stats().throttledBatches, is(1L));
+        assertThat(pipeline.tableRates().get("table_1"), lessThan(100000.0));
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() {
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(new Answer<BatchWriteItemResult>() {
+            @Override
+            public BatchWriteItemResult answer(InvocationOnMock invocation) throws Throwable {
+                final BatchWriteItemRequest request = (BatchWriteItemRequest) invocation.getArguments()[0];
+                return new BatchWriteItemResult().withUnprocessedItems(request.getRequestItems());
+            }
+        });
+
+        final BatchWritePipeline pipeline = new BatchWritePipeline(amazonDynamoDB, executor, 2, 3, 100000.0, 1000.0, 100000.0);
+        final BatchWritePipeline.Result result = pipeline.write(ImmutableMap.of("table_1", writeRequests("table_1", 10)));
+
+        assertThat(result.written, is(0));
+        assertThat(result.remainingCount(), is(10));
+        assertThat(pipeline.stats().batches, is(3L));
+        assertThat(pipeline.stats().failed, is(10L));
+    }
+
+    @Test
+    public void testClientErrorReturnsBatchAsRemaining() {
+        final AtomicInteger calls = new AtomicInteger(0);
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(new Answer<BatchWriteItemResult>() {
+            @Override
+            public BatchWriteItemResult answer(InvocationOnMock invocation) throws Throwable {
+                if (calls.getAndIncrement() == 0) {
+                    throw new AmazonClientException("boom");
+                }
+                return new BatchWriteItemResult().withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap());
+            }
+        });
+
+        final BatchWritePipeline pipeline = new BatchWritePipeline(amazonDynamoDB, executor, 1, 3, 100000.0, 1000.0, 100000.0);
+        final BatchWritePipeline.Result result = pipeline.write(ImmutableMap.of("table_1", writeRequests("table_1", 30)));
+
+        assertThat(result.written, is(5));
+        assertThat(result.remainingCount(), is(25));
+        assertThat(pipeline.stats().failed, greaterThan(0L));
+    }
+
+    @Test
+    public void testUnmatchedUnprocessedItemIsNotReportedAsWritten() {
+        final List<WriteRequest> unknown = writeRequests("table_2", 1);
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(new Answer<BatchWriteItemResult>() {
+            @Override
+            public BatchWriteItemResult answer(InvocationOnMock invocation) throws Throwable {
+                return new BatchWriteItemResult().withUnprocessedItems(ImmutableMap.of("table_1", unknown));
+            }
+        });
+
+        final BatchWritePipeline pipeline = new BatchWritePipeline(amazonDynamoDB, executor, 1, 3, 100000.0, 1000.0, 100000.0);
+        final BatchWritePipeline.Result result = pipeline.write(ImmutableMap.of("table_1", writeRequests("table_1", 10)));
+
+        assertThat(result.written, is(9));
+        assertThat(result.remainingCount(), is(1));
+        assertThat(pipeline.stats().failed, is(1L));
+    }
+
+    @Test
+    public void testInterruptReportsBatchesInFlightAsRemaining() throws InterruptedException {
+        final CountDownLatch called = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(new Answer<BatchWriteItemResult>() {
+            @Override
+            public BatchWriteItemResult answer(InvocationOnMock invocation) throws Throwable {
+                called.countDown();
+                release.await();
+                return new BatchWriteItemResult().withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap());
+            }
+        });
+
+        final BatchWritePipeline pipeline = new BatchWritePipeline(amazonDynamoDB, executor, 2, 3, 100000.0, 1000.0, 100000.0);
+        final AtomicReference<BatchWritePipeline.Result> result = new AtomicReference<>();
+        final Thread writer = new Thread(() -> result.set(pipeline.write(ImmutableMap.of("table_1", writeRequests("table_1", 60)))));
+        writer.start();
+
+        called.await();
+        writer.interrupt();
+        writer.join();
+        release.countDown();
+
+        assertThat(result.get().written, is(0));
+        assertThat(result.get().remainingCount(), is(60));
+        assertThat(pipeline.stats().failed, is(60L));
+    }
+
+    private static List<WriteRequest> writeRequests(final String tableName, final int count) {
+        final List<WriteRequest> requests = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            final Map<String, AttributeValue> item = ImmutableMap.of(
+                    "table", new AttributeValue().withS(tableName),
+                    "val", new AttributeValue().withN(String.valueOf(i)));
+            requests.add(new WriteRequest().withPutRequest(new PutRequest().withItem(item)));
+        }
+        return requests;
+    }
+}
@@ -0,0 +1,55 @@
+package com.hello.suripu.core.db.util;
+
+import com.google.common.io.Resources;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+
+public class CompressionTest {
+
+    private static byte[] timeline() throws IOException {
+        return Resources.toByteArray(Resources.getResource("fixtures/timeline/timeline-with-statistics.json"));
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final byte[] raw = timeline();
+        for (final Compression.CompressionType type : Compression.CompressionType.values()) {
+            if (type == Compression.CompressionType.UNKNOWN) {
+                continue;
+            }
+
+            final byte[] compressed = Compression.compress(raw, type);
+            assertThat(Compression.decompress(compressed, type), is(raw));
+
+            if (type != Compression.CompressionType.NONE) {
+                assertThat(compressed.length, lessThan(raw.length));
+            }
+        }
+    }
+
+    @Test
+    public void testEmpty() throws IOException {
+        for (final Compression.CompressionType type : Compression.CompressionType.values()) {
+            assertThat(Compression.decompress(Compression.compress(new byte[0], type), type).length, is(0));
+        }
+    }
+
+    @Test
+    public void testTypeValues() {
+        for (final Compression.CompressionType type : Compression.CompressionType.values()) {
+            assertThat(Compression.CompressionType.fromInt(type.getValue()), is(type));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testTruncatedLZ4() throws IOException {
+        final byte[] compressed = Compression.compress(timeline(), Compression.CompressionType.LZ4);
+        Compression.decompress(Arrays.copyOf(compressed, compressed.length / 2), Compression.CompressionType.LZ4);
+    }
+}
@@ -0,0 +1,101 @@
+package com.hello.suripu.core.db.util;
+
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class StreamingDynamoDBItemAggregatorTest {
+
+    private static final int X = 0;
+    private static final int Y = 1;
+    private static final int Z = 2;
+
+    StreamingDynamoDBItemAggregator aggregator;
+
+    private AttributeValue toAttributeValue(final double x) {
+        return new AttributeValue().withN(String.valueOf(x));
+    }
+
+    private Map<String, AttributeValue> makeItem(final double x, final double y) {
+        final Map<String, AttributeValue> item = Maps.newHashMap();
+        item.put("x", toAttributeValue(x));
+        item.put("y", toAttributeValue(y));
+        return item;
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        this.aggregator = new StreamingDynamoDBItemAggregator(ImmutableList.of("x", "y", "z"));
+        aggregator.add(makeItem(0, 100));
+        aggregator.add(makeItem(-3, 200));
+        aggregator.add(makeItem(-6, 10));
+        aggregator.add(makeItem(20, 1000));
+    }
+
+    @Test
+    public void testSum() throws Exception {
+        assertThat(aggregator.sum(X), is(11.0));
+        assertThat(aggregator.sum(Y), is(1310.0));
+    }
+
+    @Test
+    public void testMean() throws Exception {
+        assertThat(aggregator.mean(X), is(2.75));
+        assertThat(aggregator.mean(Y), is(327.5));
+    }
+
+    @Test
+    public void testRoundedMean() throws Exception {
+        assertThat(aggregator.roundedMean(X), is(3L));
+        assertThat(aggregator.roundedMean(Y), is(328L));
+    }
+
+    @Test
+    public void testMax() throws Exception {
+        assertThat(aggregator.max(X), is(20.0));
+        assertThat(aggregator.max(Y), is(1000.0));
+    }
+
+    @Test
+    public void testMin() throws Exception {
+        assertThat(aggregator.min(X), is(-6.0));
+        assertThat(aggregator.min(Y), is(10.0));
+    }
+
+    @Test
+    public void testMissingKey() {
+        assertThat(aggregator.mean(Z), is(0.0));
+        assertThat(aggregator.max(Z), is(0.0));
+    }
+
+    @Test
+    public void testReset() {
+        aggregator.reset();
+        assertThat(aggregator.isEmpty(), is(true));
+        assertThat(aggregator.sum(X), is(0.0));
+        assertThat(aggregator.mean(X), is(0.0));
+        assertThat(aggregator.min(X), is(0.0));
+        assertThat(aggregator.max(X), is(0.0));
+
+        aggregator.add(makeItem(5, 6));
+        assertThat(aggregator.count(), is(1));
+        assertThat(aggregator.min(Y), is(6.0));
+        assertThat(aggregator.max(Y), is(6.0));
+    }
+
+    @Test
+    public void testMatchesListAggregator() {
+        final DynamoDBItemAggregator listAggregator = new DynamoDBItemAggregator(ImmutableList.of(
+                makeItem(0, 100), makeItem(-3, 200), makeItem(-6, 10), makeItem(20, 1000)));
+        assertThat(aggregator.roundedMean(Y), is(listAggregator.roundedMean("y")));
+        assertThat(aggregator.min(X), is(listAggregator.min("x")));
+        assertThat(aggregator.max(Z), is(listAggregator.max("z")));
+    }
+}
@@ -0,0 +1,192 @@
+package com.hello.suripu.core.logging;
+
+import com.amazonaws.services.kinesis.AmazonKinesisAsyncClient;
+import com.amazonaws.services.kinesis.model.PutRecordsRequest;
+import com.amazonaws.services.kinesis.model.PutRecordsRequestEntry;
+import com.amazonaws.services.kinesis.model.PutRecordsResult;
+import com.amazonaws.services.kinesis.model.PutRecordsResultEntry;
+import com.google.common.collect.Lists;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class BufferedKinesisLoggerTest {
+
+    private static final String STREAM_NAME = "stream";
+
+    private AmazonKinesisAsyncClient kinesisClient;
+    private final List<Integer> batchSizes = Lists.newArrayList();
+    private final List<Integer> batchBytes = Lists.newArrayList();
+    private final AtomicInteger failingCalls = new AtomicInteger(0);
+
+    @Before
+    public void setUp() {
+        kinesisClient = mock(AmazonKinesisAsyncClient.class);
+        when(kinesisClient.putRecords(any(PutRecordsRequest.class))).thenAnswer(new Answer<PutRecordsResult>() {
+            @Override
+            public PutRecordsResult answer(final InvocationOnMock invocation) throws Throwable {
+                final List<PutRecordsRequestEntry> entries = ((PutRecordsRequest) invocation.getArguments()[0]).getRecords();
+                batchSizes.add(entries.size());
+                int bytes = 0;
+                for (final PutRecordsRequestEntry entry : entries) {
+                    bytes += entry.getData().remaining() + entry.getPartitionKey().getBytes(StandardCharsets.UTF_8).length;
+                }
+                batchBytes.add(bytes);
+
+                // first entry of every failing call is throttled
+                final boolean fail = failingCalls.getAndDecrement() > 0;
+                final List<PutRecordsResultEntry> results = Lists.newArrayList();
+                for (int i = 0; i < entries.size(); i++) {
+                    if (fail && i == 0) {
+                        results.add(new PutRecordsResultEntry().withErrorCode("ProvisionedThroughputExceededException"));
+                    } else {
+                        results.add(new PutRecordsResultEntry().withSequenceNumber(String.valueOf(i)));
+                    }
+                }
+                return new PutRecordsResult().withFailedRecordCount(fail ? 1 : 0).withRecords(results);
+            }
+        });
+    }
+
+    private BufferedKinesisLogger logger(final int capacity, final BufferedKinesisLogger.OverflowPolicy overflowPolicy) {
+        return new BufferedKinesisLogger(kinesisClient, STREAM_NAME, capacity, overflowPolicy, 10L, 10L, 3);
+    }
+
+    @Test
+    public void testPutDoesNotCallKinesis() {
+        final BufferedKinesisLogger logger = logger(10, BufferedKinesisLogger.OverflowPolicy.DROP_NEWEST);
+
+        assertThat(logger.put("sense", new byte[10]), is(BufferedKinesisLogger.NO_SEQUENCE_NUMBER));
+        logger.putAsync("sense", new byte[10]);
+
+        verify(kinesisClient, never()).putRecords(any(PutRecordsRequest.class));
+        assertThat(logger.stats().bufferDepth, is(2));
+    }
+
+    @Test
+    public void testBatchesAreLimitedByCount() {
+        final BufferedKinesisLogger logger = logger(1200, BufferedKinesisLogger.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 1200; i++) {
+            logger.putAsync("sense", new byte[10]);
+        }
+
+        while (logger.flushOnce() > 0) {}
+
+        assertThat(batchSizes, is((List<Integer>) Lists.newArrayList(500, 500, 200)));
+        assertThat(logger.stats().sent, is(1200L));
+        assertThat(logger.stats().bufferDepth, is(0));
+    }
+
+    @Test
+    public void testBatchesAreLimitedBySize() {
+        final BufferedKinesisLogger logger = logger(20, BufferedKinesisLogger.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 12; i++) {
+            logger.putAsync("sense", new byte[1000 * 1000]);
+        }
+        assertThat(logger.put("sense", new byte[BufferedKinesisLogger.MAX_RECORD_BYTES]), is(BufferedKinesisLogger.NO_SEQUENCE_NUMBER));
+
+        while (logger.flushOnce() > 0) {}
+
+        assertThat(batchSizes, is((List<Integer>) Lists.newArrayList(5, 5, 2)));
+        assertThat(logger.stats().dropped, is(1L));
+    }
+
+    @Test
+    public void testRecordOverTheBatchSizeIsCarriedOver() throws InterruptedException {
+        final BufferedKinesisLogger logger = logger(20, BufferedKinesisLogger.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 6; i++) {
+            logger.putAsync("sense", new byte[1000 * 1000]);
+        }
+
+        assertThat(logger.flushOnce(), is(5));
+        // polled but not sent, it still holds its slot
+        assertThat(logger.stats().bufferDepth, is(1));
+
+        logger.stop(1, TimeUnit.SECONDS);
+
+        assertThat(batchSizes, is((List<Integer>) Lists.newArrayList(5, 1)));
+        for (final Integer bytes : batchBytes) {
+            assertThat(bytes <= BufferedKinesisLogger.MAX_BATCH_BYTES, is(true));
+        }
+        assertThat(logger.stats().sent, is(6L));
+        assertThat(logger.stats().bufferDepth, is(0));
+    }
+
+    @Test
+    public void testFailedEntriesAreRetriedTogether() {
+        final BufferedKinesisLogger logger = logger(10, BufferedKinesisLogger.OverflowPolicy.DROP_NEWEST);
+        for (int i = 0; i < 5; i++) {
+            logger.putAsync("sense", new byte[10]);
+        }
+        failingCalls.set(1);
+
+        logger.flushOnce();
+
+        assertThat(batchSizes, is((List<Integer>) Lists.newArrayList(5, 1)));
+        assertThat(logger.stats().sent, is(5L));
+        assertThat(logger.stats().retried, is(1L));
+        assertThat(logger.stats().failed, is(0L));
+    }
+
+    @Test
+    public void testGivesUpAfterMaxAttempts() {
+        final BufferedKinesisLogger logger = logger(10, BufferedKinesisLogger.OverflowPolicy.DROP_NEWEST);
+        logger.putAsync("sense", new byte[10]);
+        failingCalls.set(10);
+
+        logger.flushOnce();
+
+        verify(kinesisClient, times(3)).putRecords(any(PutRecordsRequest.class));
+        assertThat(logger.stats().failed, is(1L));
+    }
+
+    @Test
+    public void testOverflowPolicies() {
+        final BufferedKinesisLogger dropNewest = logger(2, BufferedKinesisLogger.OverflowPolicy.DROP_NEWEST);
+        final List<DataLoggerBatchPayload> payloads = Lists.newArrayList(
+                new DataLoggerBatchPayload("1", new byte[1]),
+                new DataLoggerBatchPayload("2", new byte[1]),
+                new DataLoggerBatchPayload("3", new byte[1]));
+
+        final KinesisBatchPutResult result = dropNewest.putRecords(payloads);
+        assertThat(result.numSuccesses, is(2));
+        assertThat(result.successPuts, is((List<Boolean>) Lists.newArrayList(true, true, false)));
+
+        final BufferedKinesisLogger dropOldest = logger(2, BufferedKinesisLogger.OverflowPolicy.DROP_OLDEST);
+        assertThat(dropOldest.putRecords(payloads).numSuccesses, is(3));
+        assertThat(dropOldest.stats().dropped, is(1L));
+        assertThat(dropOldest.stats().bufferDepth, is(2));
+
+        final BufferedKinesisLogger block = logger(2, BufferedKinesisLogger.OverflowPolicy.BLOCK);
+        assertThat(block.putRecords(payloads).numSuccesses, is(2));
+        assertThat(block.stats().dropped, is(1L));
+    }
+
+    @Test
+    public void testStopFlushesBuffer() throws InterruptedException {
+        final BufferedKinesisLogger logger = logger(100, BufferedKinesisLogger.OverflowPolicy.DROP_NEWEST);
+        logger.start();
+        for (int i = 0; i < 50; i++) {
+            logger.putAsync("sense", new byte[10]);
+        }
+        logger.stop(5, TimeUnit.SECONDS);
+
+        assertThat(logger.stats().sent, is(50L));
+        assertThat(logger.stats().bufferDepth, is(0));
+    }
+}
@@ -17,7 +17,10 @@ import java.util.UUID;
 
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 public class PersistentAccessTokenStoreTest {
@@ -134,4 +137,53 @@ public class PersistentAccessTokenStoreTest {
         final AccessToken newToken = AccessToken.createWithExternalId(accessTokenOptional.get(), uuid);
         assertThat(newToken.externalId().equals(uuid.toString()), is(true));
     }
+
+    @Test
+    public void testTokenAndApplicationAreCached() throws MissingRequiredScopeException {
+        when(accessTokenDAO.getByAccessToken(validUUID)).thenReturn(Optional.of(accessToken));
+        when(applicationStore.getApplicationById(accessToken.appId)).thenReturn(Optional.of(application));
+
+        final String serialized = accessToken.serializeAccessToken();
+        for (int i = 0; i < 3; i++) {
+            assertThat(store.getTokenByClientCredentials(new ClientCredentials(application.scopes, serialized), now).isPresent(), is(true));
+        }
+
+        // scopes are checked on every request, not cached with the token
+        try {
+            store.getTokenByClientCredentials(new ClientCredentials(new OAuthScope[]{OAuthScope.AUTH}, serialized), now);
+            fail("expected MissingRequiredScopeException");
+        } catch (MissingRequiredScopeException e) {
+            // expected
+        }
+
+        verify(accessTokenDAO, times(1)).getByAccessToken(validUUID);
+        verify(applicationStore, times(1)).getApplicationById(accessToken.appId);
+        assertThat(store.tokenCacheStats().hitCount(), is(3L));
+    }
+
+    @Test
+    public void testDisableInvalidatesToken() throws MissingRequiredScopeException {
+        when(accessTokenDAO.getByAccessToken(validUUID)).thenReturn(Optional.of(accessToken));
+        when(applicationStore.getApplicationById(accessToken.appId)).thenReturn(Optional.of(application));
+
+        final ClientCredentials credentials = new ClientCredentials(application.scopes, accessToken.serializeAccessToken());
+        assertThat(store.getTokenByClientCredentials(credentials, now).isPresent(), is(true));
+
+        store.disable(accessToken);
+        when(accessTokenDAO.getByAccessToken(validUUID)).thenReturn(Optional.<AccessToken>absent());
+        assertThat(store.getTokenByClientCredentials(credentials, now).isPresent(), is(false));
+    }
+
+    @Test
+    public void testDisableByRefreshTokenInvalidatesToken() throws MissingRequiredScopeException {
+        when(accessTokenDAO.getByAccessToken(validUUID)).thenReturn(Optional.of(accessToken));
+        when(applicationStore.getApplicationById(accessToken.appId)).thenReturn(Optional.of(application));
+
+        final ClientCredentials credentials = new ClientCredentials(application.scopes, accessToken.serializeAccessToken());
+        assertThat(store.getTokenByClientCredentials(credentials, now).isPresent(), is(true));
+
+        store.disableByRefreshToken(accessToken.serializeRefreshToken());
+        when(accessTokenDAO.getByAccessToken(validUUID)).thenReturn(Optional.<AccessToken>absent());
+        assertThat(store.getTokenByClientCredentials(credentials, now).isPresent(), is(false));
+    }
 }
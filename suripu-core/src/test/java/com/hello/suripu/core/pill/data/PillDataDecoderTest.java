@@ -0,0 +1,121 @@
+package com.hello.suripu.core.pill.data;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.ByteString;
+import com.hello.suripu.api.ble.SenseCommandProtos;
+import com.hello.suripu.core.db.KeyStore;
+import com.hello.suripu.core.models.DeviceAccountPair;
+import com.hello.suripu.core.models.TrackerMotion;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Set;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.anySetOf;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class PillDataDecoderTest {
+
+    private static final DateTimeZone TIME_ZONE = DateTimeZone.forID("America/Los_Angeles");
+
+    private static final byte[] KEY_V1 = new byte[16];
+    private static final byte[] PAYLOAD_V1 = bytes(0x3D, 0xF9, 0x53, 0x77, 0x85, 0xCF, 0xBD, 0xC0, 0xFE, 0xD2, 0x70, 0x18);
+
+    private static final byte[] KEY_V4 = bytes(0xD4, 0xD9, 0xEC, 0x79, 0xC9, 0x24, 0xB6, 0xC1,
+                                               0x23, 0xA2, 0x82, 0x4F, 0x47, 0x8A, 0x5E, 0xCB);
+    private static final byte[] PAYLOAD_V4 = bytes(0x0F, 0xFB, 0x55, 0x0A, 0xC4, 0x2C, 0x53, 0x03, 0x59,
+                                                   0x79, 0x0E, 0xC4, 0x5C, 0xD1, 0x43, 0x28, 0xA2, 0x87);
+
+    private KeyStore keyStore;
+
+    @Before
+    public void setUp() {
+        keyStore = mock(KeyStore.class);
+        when(keyStore.getBatch(anySetOf(String.class))).thenReturn(ImmutableMap.of(
+                "pill_v1", Optional.of(KEY_V1),
+                "pill_v4", Optional.of(KEY_V4),
+                "pill_no_key", Optional.<byte[]>absent()));
+    }
+
+    @Test
+    public void testMatchesTrackerMotionCreate() throws Exception {
+        final PillDataDecoder.Upload v1 = upload("pill_v1", 1L, 1, PAYLOAD_V1, 1466000000L);
+        final PillDataDecoder.Upload v4 = upload("pill_v4", 4L, 4, PAYLOAD_V4, 1466000060L);
+
+        final PillDataDecoder.Result result = new PillDataDecoder(keyStore).decode(ImmutableList.of(v1, v4, v4));
+
+        assertThat(result.trackerMotions.size(), is(3));
+        assertSame(result.trackerMotions.get(0), TrackerMotion.create(v1.pillData, v1.accountPair, TIME_ZONE, KEY_V1));
+        assertSame(result.trackerMotions.get(1), TrackerMotion.create(v4.pillData, v4.accountPair, TIME_ZONE, KEY_V4));
+        assertSame(result.trackerMotions.get(2), TrackerMotion.create(v4.pillData, v4.accountPair, TIME_ZONE, KEY_V4));
+        verify(keyStore, times(1)).getBatch(anySetOf(String.class));
+    }
+
+    @Test
+    public void testSkipsMissingKeysHeartbeatsAndInvalidPayloads() {
+        final SenseCommandProtos.pill_data heartbeat = SenseCommandProtos.pill_data.newBuilder()
+                .setDeviceId("pill_v4")
+                .setBatteryLevel(90)
+                .setTimestamp(1466000000L)
+                .build();
+        final PillDataDecoder.Upload heartbeatUpload = new PillDataDecoder.Upload(heartbeat, pair("pill_v4", 4L), TIME_ZONE);
+
+        final PillDataDecoder.Result result = new PillDataDecoder(keyStore).decode(ImmutableList.of(
+                upload("pill_no_key", 2L, 4, PAYLOAD_V4, 1466000000L),
+                upload("pill_unknown", 3L, 4, PAYLOAD_V4, 1466000000L),
+                heartbeatUpload,
+                upload("pill_v4", 4L, 4, bytes(0x0F, 0xFB, 0x55), 1466000000L),
+                upload("pill_v4", 4L, 4, PAYLOAD_V4, 1466000000L)));
+
+        final Set<String> expectedMissing = ImmutableMap.of("pill_no_key", 1, "pill_unknown", 1).keySet();
+        assertThat(result.trackerMotions.size(), is(1));
+        assertThat(result.missingKeys, is(expectedMissing));
+        assertThat(result.noMotionData, is(1));
+        assertThat(result.invalidPayloads, is(1));
+    }
+
+    private static void assertSame(final TrackerMotion actual, final TrackerMotion expected) {
+        assertThat(actual, is(expected));
+        assertThat(actual.accountId, is(expected.accountId));
+        assertThat(actual.trackerId, is(expected.trackerId));
+        assertThat(actual.externalTrackerId, is(expected.externalTrackerId));
+        assertThat(actual.motionRange, is(expected.motionRange));
+        assertThat(actual.kickOffCounts, is(expected.kickOffCounts));
+        assertThat(actual.onDurationInSeconds, is(expected.onDurationInSeconds));
+        assertThat(actual.motionMask, is(expected.motionMask));
+        assertThat(actual.cosTheta, is(expected.cosTheta));
+    }
+
+    private static PillDataDecoder.Upload upload(final String pillId, final Long internalPillId, final int firmwareVersion,
+                                                 final byte[] payload, final long timestampSeconds) {
+        final SenseCommandProtos.pill_data pillData = SenseCommandProtos.pill_data.newBuilder()
+                .setDeviceId(pillId)
+                .setBatteryLevel(100)
+                .setFirmwareVersion(firmwareVersion)
+                .setMotionDataEntrypted(ByteString.copyFrom(payload))
+                .setTimestamp(timestampSeconds)
+                .build();
+        return new PillDataDecoder.Upload(pillData, pair(pillId, internalPillId), TIME_ZONE);
+    }
+
+    private static DeviceAccountPair pair(final String pillId, final Long internalPillId) {
+        return new DeviceAccountPair(42L, internalPillId, pillId, DateTime.now(DateTimeZone.UTC));
+    }
+
+    private static byte[] bytes(int... ints) {
+        final byte[] output = new byte[ints.length];
+        for (int i = 0; i < ints.length; i++) {
+            output[i] = (byte) ints[i];
+        }
+        return output;
+    }
+}
@@ -2,10 +2,10 @@ package com.hello.suripu.core.processors;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.io.Resources;
+import com.hello.suripu.algorithm.hmm.FeatureSequences;
 import com.hello.suripu.core.algorithmintegration.LabelMaker;
 import org.apache.commons.codec.binary.Base64;
 
@@ -60,25 +60,18 @@ public class HmmUtils {
     }
 
 
-    public static List<Map<String,ImmutableList<Integer>>> getFeatureDataFromFile(final String path) {
+    public static List<FeatureSequences> getFeatureDataFromFile(final String path) {
         final ObjectMapper mapper = new ObjectMapper();
         final URL fileUrl = Resources.getResource(path);
         final File file = new File(fileUrl.getFile());
 
         try {
-            List<Map<String,ImmutableList<Integer>>> result = Lists.newArrayList();
+            List<FeatureSequences> result = Lists.newArrayList();
 
             final AlphabetsAndLabels [] paths = mapper.readValue(file, AlphabetsAndLabels [].class);
 
             for (int i = 0; i < paths.length; i++) {
-
-                final Map<String,ImmutableList<Integer>> featuresById = Maps.newHashMap();
-
-                for (Map.Entry<String,List<Integer>> entry : paths[i].alphabets.entrySet()) {
-                    featuresById.put(entry.getKey(),ImmutableList.copyOf(entry.getValue()));
-                }
-
-                result.add(featuresById);
+                result.add(FeatureSequences.createFromPaths(paths[i].alphabets));
             }
 
             return result;
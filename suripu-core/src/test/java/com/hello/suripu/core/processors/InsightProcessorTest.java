@@ -33,6 +33,7 @@ import com.hello.suripu.core.models.Insights.MarketingInsightsSeen;
 import com.hello.suripu.core.models.MotionScore;
 import com.hello.suripu.core.models.SleepStats;
 import com.hello.suripu.core.preferences.AccountPreferencesDAO;
+import com.hello.suripu.core.processors.insights.InsightDataSnapshot;
 import com.hello.suripu.core.processors.insights.LightData;
 import com.hello.suripu.core.processors.insights.WakeStdDevData;
 import com.hello.suripu.core.util.DateTimeUtil;
@@ -40,6 +41,7 @@ import com.librato.rollout.RolloutClient;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Test;
+import org.mockito.ArgumentMatcher;
 import org.mockito.Mockito;
 
 import java.util.Collections;
@@ -128,6 +130,15 @@ public class InsightProcessorTest {
         return mockFeatureFlipper;
     }
 
+    private static InsightDataSnapshot snapshotFor(final Long accountId) {
+        return Mockito.argThat(new ArgumentMatcher<InsightDataSnapshot>() {
+            @Override
+            public boolean matches(final Object argument) {
+                return ((InsightDataSnapshot) argument).accountId.equals(accountId);
+            }
+        });
+    }
+
     private InsightProcessor setUp() {
 
         final Long FAKE_ACCOUNT_ID = 9999L;
@@ -327,7 +338,7 @@ public class InsightProcessorTest {
 
         //TEST - Look for weekly Insight, try to generate wake variance, get Optional.absent() b/c no data
         Mockito.verify(spyInsightProcessor).selectWeeklyInsightsToGenerate(recentCategories, FAKE_SATURDAY.plusMillis(OFFSET_MILLIS));
-        Mockito.verify(spyInsightProcessor).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.WAKE_VARIANCE, mockFeatureFlipper);
+        Mockito.verify(spyInsightProcessor).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.WAKE_VARIANCE), Mockito.eq(mockFeatureFlipper));
 
         final Optional<InsightCard.Category> wakeCardCategory = spyInsightProcessor.generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.WAKE_VARIANCE, mockFeatureFlipper);
         assertThat(wakeCardCategory.isPresent(), is(Boolean.FALSE));
@@ -336,10 +347,10 @@ public class InsightProcessorTest {
 
         //look for random old Insight - get nothing b/c wrong date
         Mockito.verify(spyInsightProcessor).selectRandomOldInsightsToGenerate(FAKE_ACCOUNT_ID, recentCategories, FAKE_SATURDAY.plusMillis(OFFSET_MILLIS), mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.LIGHT, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.TEMPERATURE, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.SLEEP_QUALITY, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.BED_LIGHT_DURATION, mockFeatureFlipper);
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.LIGHT), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.TEMPERATURE), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.SLEEP_QUALITY), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.BED_LIGHT_DURATION), Mockito.eq(mockFeatureFlipper));
     }
 
     @Test
@@ -358,7 +369,7 @@ public class InsightProcessorTest {
 
         //TEST - Look for weekly Insight, do not try to generate b/c recent
         Mockito.verify(spyInsightProcessor).selectWeeklyInsightsToGenerate(recentCategories, FAKE_SATURDAY.plusMillis(OFFSET_MILLIS));
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.WAKE_VARIANCE, mockFeatureFlipper);
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.WAKE_VARIANCE), Mockito.eq(mockFeatureFlipper));
 
         final Optional<InsightCard.Category> wakeCardCategory = spyInsightProcessor.generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.WAKE_VARIANCE, mockFeatureFlipper);
         assertThat(wakeCardCategory.isPresent(), is(Boolean.FALSE));
@@ -367,10 +378,10 @@ public class InsightProcessorTest {
 
         //look for random old Insight - get nothing b/c wrong date
         Mockito.verify(spyInsightProcessor).selectRandomOldInsightsToGenerate(FAKE_ACCOUNT_ID, recentCategories, FAKE_SATURDAY.plusMillis(OFFSET_MILLIS), mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.LIGHT, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.TEMPERATURE, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.SLEEP_QUALITY, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.BED_LIGHT_DURATION, mockFeatureFlipper);
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.LIGHT), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.TEMPERATURE), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.SLEEP_QUALITY), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.BED_LIGHT_DURATION), Mockito.eq(mockFeatureFlipper));
     }
 
     @Test
@@ -389,16 +400,16 @@ public class InsightProcessorTest {
 
         //TEST - Look for weekly Insight, do not try to generate b/c wrong date
         Mockito.verify(spyInsightProcessor).selectWeeklyInsightsToGenerate(recentCategories, FAKE_DATE_1.plusMillis(OFFSET_MILLIS));
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.WAKE_VARIANCE, mockFeatureFlipper);
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.WAKE_VARIANCE), Mockito.eq(mockFeatureFlipper));
 
         //look for high priority Insight - get nothing
 
         //look for random old Insight, try to generate humidity
         Mockito.verify(spyInsightProcessor).selectRandomOldInsightsToGenerate(FAKE_ACCOUNT_ID, recentCategories, FAKE_DATE_1.plusMillis(OFFSET_MILLIS), mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.HUMIDITY, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.TEMPERATURE, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.SLEEP_QUALITY, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.BED_LIGHT_DURATION, mockFeatureFlipper);
+        Mockito.verify(spyInsightProcessor).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.HUMIDITY), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.TEMPERATURE), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.SLEEP_QUALITY), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.BED_LIGHT_DURATION), Mockito.eq(mockFeatureFlipper));
     }
 
     @Test
@@ -416,16 +427,16 @@ public class InsightProcessorTest {
 
         //TEST - Correct date for weekly insight, but Goal inserted does nothing, so generate wake variance, get Optional.absent() b/c no data
         Mockito.verify(spyInsightProcessor).selectWeeklyInsightsToGenerate(recentCategories, FAKE_SATURDAY.plusMillis(OFFSET_MILLIS));
-        Mockito.verify(spyInsightProcessor).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.WAKE_VARIANCE, mockFeatureFlipper);
+        Mockito.verify(spyInsightProcessor).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.WAKE_VARIANCE), Mockito.eq(mockFeatureFlipper));
 
         //look for high priority Insight - get nothing
 
         //Look for random old insight, but get nothing because wrong date
         Mockito.verify(spyInsightProcessor).selectRandomOldInsightsToGenerate(FAKE_ACCOUNT_ID, recentCategories, FAKE_SATURDAY.plusMillis(OFFSET_MILLIS), mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.HUMIDITY, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.TEMPERATURE, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.SLEEP_QUALITY, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.BED_LIGHT_DURATION, mockFeatureFlipper);
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.HUMIDITY), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.TEMPERATURE), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.SLEEP_QUALITY), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.BED_LIGHT_DURATION), Mockito.eq(mockFeatureFlipper));
     }
 
     @Test
@@ -450,11 +461,11 @@ public class InsightProcessorTest {
 
         //Look for random old insight - light is already generated, so we do nothing
         Mockito.verify(spyInsightProcessor).selectRandomOldInsightsToGenerate(FAKE_ACCOUNT_ID, recentCategories, FAKE_DATE_13.plusMillis(OFFSET_MILLIS), mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.LIGHT, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.HUMIDITY, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.TEMPERATURE, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.SLEEP_QUALITY, mockFeatureFlipper);
-        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, InsightCard.Category.BED_LIGHT_DURATION, mockFeatureFlipper);
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.LIGHT), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.HUMIDITY), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.TEMPERATURE), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.SLEEP_QUALITY), Mockito.eq(mockFeatureFlipper));
+        Mockito.verify(spyInsightProcessor, Mockito.never()).generateInsightsByCategory(snapshotFor(FAKE_ACCOUNT_ID), Mockito.eq(FAKE_DEVICE_ACCOUNT_PAIR), Mockito.eq(deviceDataDAODynamoDB), Mockito.eq(InsightCard.Category.BED_LIGHT_DURATION), Mockito.eq(mockFeatureFlipper));
 
         //Look for marketing insight - can't spy on private random, so do assert
         assertThat(insightProcessor.generateGeneralInsights(FAKE_ACCOUNT_ID, FAKE_DEVICE_ACCOUNT_PAIR, deviceDataDAODynamoDB, recentCategories, FAKE_DATE_13, mockFeatureFlipper).get(), isIn(marketingInsightPool));
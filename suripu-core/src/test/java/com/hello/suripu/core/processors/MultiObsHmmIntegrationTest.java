@@ -5,6 +5,7 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
+import com.hello.suripu.algorithm.hmm.FeatureSequences;
 import com.hello.suripu.algorithm.sleep.SleepEvents;
 import com.hello.suripu.core.algorithmintegration.EvaluationResult;
 import com.hello.suripu.core.algorithmintegration.LabelMaker;
@@ -30,11 +31,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Created by benjo on 8/25/15.
@@ -231,13 +234,13 @@ public class MultiObsHmmIntegrationTest {
             TestCase.assertFalse(defaultEnsemble.isEmpty());
 
             //get feature data -- it should be a list of days, each day has a bunch of key value pairs that correspond to different sensor data streams for that day
-            List<Map<String,ImmutableList<Integer>>> featureData = HmmUtils.getFeatureDataFromFile("fixtures/algorithm/1012-August.json");
+            List<FeatureSequences> featureData = HmmUtils.getFeatureDataFromFile("fixtures/algorithm/1012-August.json");
             TestCase.assertFalse(featureData.isEmpty());
 
             //evaluate
             final OnlineHmmModelEvaluator evaluator = new OnlineHmmModelEvaluator(Optional.<UUID>absent());
 
-            final Map<String,ImmutableList<Integer>> features = featureData.get(0);
+            final FeatureSequences features = featureData.get(0);
             final EvaluationResult evaluationResult = evaluator.evaluate(defaultEnsemble, model.get(),features);
             final Map<String,MultiEvalHmmDecodedResult> results = evaluationResult.predictions;
 
@@ -289,14 +292,14 @@ public class MultiObsHmmIntegrationTest {
             TestCase.assertFalse(defaultEnsemble.isEmpty());
 
             //get feature data -- it should be a list of days, each day has a bunch of key value pairs that correspond to different sensor data streams for that day
-            List<Map<String,ImmutableList<Integer>>> featureData = HmmUtils.getFeatureDataFromFile("fixtures/algorithm/1012-August.json");
+            List<FeatureSequences> featureData = HmmUtils.getFeatureDataFromFile("fixtures/algorithm/1012-August.json");
             TestCase.assertFalse(featureData.isEmpty());
 
             //evaluate
             final OnlineHmmModelEvaluator evaluator = new OnlineHmmModelEvaluator(Optional.<UUID>absent());
             final String outputId = "SLEEP";
 
-            for (final Map<String,ImmutableList<Integer>> features : featureData) {
+            for (final FeatureSequences features : featureData) {
 
                 final EvaluationResult evaluationResult = evaluator.evaluate(defaultEnsemble, model.get(),features);
                 final Map<String,MultiEvalHmmDecodedResult> results = evaluationResult.predictions;
@@ -315,6 +318,46 @@ public class MultiObsHmmIntegrationTest {
     }
 
 
+    @Test
+    public void testParallelEvaluationMatchesSerial() throws IOException {
+        final byte [] protobuf = HmmUtils.loadFile("fixtures/algorithm/normal3.model",false);
+        final Optional<OnlineHmmPriors> model = OnlineHmmPriors.createFromProtoBuf(protobuf);
+        TestCase.assertTrue(model.isPresent());
+
+        final OnlineHmmPriors defaultEnsemble = new LocalDefaultModelEnsembleDAO().getDefaultModelEnsemble();
+        final List<FeatureSequences> featureData = HmmUtils.getFeatureDataFromFile("fixtures/algorithm/1012-August.json");
+
+        final OnlineHmmModelEvaluator serialEvaluator = new OnlineHmmModelEvaluator(Optional.<UUID>absent());
+        final ForkJoinPool pool = new ForkJoinPool(4);
+
+        try {
+            final OnlineHmmModelEvaluator parallelEvaluator = new OnlineHmmModelEvaluator(Optional.<UUID>absent(), Optional.of(pool));
+
+            for (final FeatureSequences features : featureData) {
+                final EvaluationResult serial = serialEvaluator.evaluate(defaultEnsemble, model.get(), features);
+                final EvaluationResult parallel = parallelEvaluator.evaluate(defaultEnsemble, model.get(), features);
+
+                TestCase.assertEquals(serial.predictions.keySet(), parallel.predictions.keySet());
+                for (final String outputId : serial.predictions.keySet()) {
+                    TestCase.assertTrue(Arrays.equals(serial.predictions.get(outputId).path, parallel.predictions.get(outputId).path));
+
+                    final List<MultiEvalHmmDecodedResult> serialModels = Lists.newArrayList(serial.modelEvaluations.get(outputId));
+                    final List<MultiEvalHmmDecodedResult> parallelModels = Lists.newArrayList(parallel.modelEvaluations.get(outputId));
+                    TestCase.assertEquals(serialModels.size(), parallelModels.size());
+
+                    for (int i = 0; i < serialModels.size(); i++) {
+                        TestCase.assertEquals(serialModels.get(i).originatingModel, parallelModels.get(i).originatingModel);
+                        TestCase.assertTrue(Arrays.equals(serialModels.get(i).path, parallelModels.get(i).path));
+                        TestCase.assertTrue(parallel.decodeMicrosByOutputId.get(outputId).containsKey(parallelModels.get(i).originatingModel));
+                    }
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
     @Test
     public void testReestimation() {
 
@@ -336,7 +379,7 @@ public class MultiObsHmmIntegrationTest {
 
             //get feature data -- it should be a list of days, each day has a bunch of key value pairs that correspond to different sensor data streams for that day
             final String modelFilename = "fixtures/algorithm/36584.json";
-            final List<Map<String, ImmutableList<Integer>>> featureData = HmmUtils.getFeatureDataFromFile(modelFilename);
+            final List<FeatureSequences> featureData = HmmUtils.getFeatureDataFromFile(modelFilename);
             final List<Map<String,Map<Integer,Integer>>> labels = HmmUtils.getLabelsFromFile(modelFilename);
             TestCase.assertFalse(featureData.isEmpty());
             TestCase.assertTrue(labels.size() == featureData.size());
@@ -0,0 +1,235 @@
+package com.hello.suripu.core.processors;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.hello.suripu.api.output.OutputProtos;
+import com.hello.suripu.core.db.MergedUserInfoDynamoDB;
+import com.hello.suripu.core.db.PillDataDAODynamoDB;
+import com.hello.suripu.core.db.SmartAlarmLoggerDynamoDB;
+import com.hello.suripu.core.models.Alarm;
+import com.hello.suripu.core.models.RingTime;
+import com.hello.suripu.core.models.TrackerMotion;
+import com.hello.suripu.core.models.UserInfo;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.List;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SmartAlarmSchedulerTest {
+
+    private final static String SENSE_ID = "test_sense";
+    private final static long ACCOUNT_ID = 1L;
+    private final static int PROCESS_AHEAD_MINUTES = 30;
+    private final static DateTime ALARM_TIME = new DateTime(2017, 1, 10, 7, 30, DateTimeZone.UTC);
+
+    private MergedUserInfoDynamoDB mergedUserInfoDynamoDB;
+    private SmartAlarmLoggerDynamoDB smartAlarmLoggerDynamoDB;
+    private PillDataDAODynamoDB pillDataDAODynamoDB;
+    private SmartAlarmScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        mergedUserInfoDynamoDB = mock(MergedUserInfoDynamoDB.class);
+        smartAlarmLoggerDynamoDB = mock(SmartAlarmLoggerDynamoDB.class);
+        pillDataDAODynamoDB = mock(PillDataDAODynamoDB.class);
+        when(pillDataDAODynamoDB.getBetween(anyLong(), any(DateTime.class), any(DateTime.class))).thenReturn(ImmutableList.<TrackerMotion>of());
+        when(mergedUserInfoDynamoDB.setRingTimeIfUnchanged(anyString(), anyLong(), any(RingTime.class), any(RingTime.class))).thenReturn(true);
+        scheduler = new SmartAlarmScheduler(mergedUserInfoDynamoDB, smartAlarmLoggerDynamoDB, pillDataDAODynamoDB, null, PROCESS_AHEAD_MINUTES);
+    }
+
+    @Test
+    public void testScheduleIsIdempotent() {
+        final RingTime ringTime = smartRingTime();
+        final DateTime now = ALARM_TIME.minusMinutes(40);
+
+        assertThat(scheduler.schedule(userInfo(ringTime), ringTime, now), is(true));
+        assertThat(scheduler.schedule(userInfo(ringTime), ringTime, now.plusMinutes(1)), is(true));
+        assertThat(scheduler.scheduledAlarmCount(), is(1));
+
+        tickBetween(now, ALARM_TIME.minusMinutes(PROCESS_AHEAD_MINUTES - 1));
+        assertThat(scheduler.evaluationCount(), is(1L));
+    }
+
+    @Test
+    public void testIgnoresRegularAndProcessedRingTimes() {
+        final RingTime regular = new RingTime(ALARM_TIME.getMillis(), ALARM_TIME.getMillis(), new long[0], false);
+        final RingTime processed = new RingTime(ALARM_TIME.minusMinutes(5).getMillis(), ALARM_TIME.getMillis(), new long[0], true);
+
+        assertThat(scheduler.schedule(userInfo(regular), regular, ALARM_TIME.minusMinutes(10)), is(false));
+        assertThat(scheduler.schedule(userInfo(processed), processed, ALARM_TIME.minusMinutes(10)), is(false));
+        assertThat(scheduler.scheduledAlarmCount(), is(0));
+    }
+
+    @Test
+    public void testEvaluatesEachDecisionPointOnceWithoutQueryingPillData() {
+        final RingTime ringTime = smartRingTime();
+        final DateTime now = ALARM_TIME.minusMinutes(40);
+        scheduler.schedule(userInfo(ringTime), ringTime, now);
+        scheduler.onTrackerMotion(Lists.newArrayList(motion(now)), now);
+
+        // nothing to do before the processing window
+        tickBetween(now, ALARM_TIME.minusMinutes(PROCESS_AHEAD_MINUTES));
+        assertThat(scheduler.evaluationCount(), is(0L));
+
+        tickBetween(ALARM_TIME.minusMinutes(PROCESS_AHEAD_MINUTES - 1), ALARM_TIME.plusMinutes(5));
+
+        // minutes 7:01 to 7:27, the last one leaving enough time before the ring time
+        assertThat(scheduler.evaluationCount(), is((long) PROCESS_AHEAD_MINUTES - RingProcessor.PROGRESSIVE_SAFE_GAP_MIN - 1));
+        assertThat(scheduler.scheduledAlarmCount(), is(0));
+        assertThat(scheduler.publishedCount(), is(0L));
+        // motion received since scheduling reaches back before every window
+        verify(pillDataDAODynamoDB, never()).getBetween(anyLong(), any(DateTime.class), any(DateTime.class));
+        verify(mergedUserInfoDynamoDB, never()).setRingTimeIfUnchanged(anyString(), anyLong(), any(RingTime.class), any(RingTime.class));
+    }
+
+    @Test
+    public void testBackfillsWhenNoMotionWasReceived() {
+        final RingTime ringTime = smartRingTime();
+        final DateTime now = ALARM_TIME.minusMinutes(40);
+        scheduler.schedule(userInfo(ringTime), ringTime, now);
+
+        // tracked for longer than the window, but the pill did not upload anything
+        tickBetween(now, ALARM_TIME.minusMinutes(PROCESS_AHEAD_MINUTES - 1));
+
+        assertThat(scheduler.evaluationCount(), is(1L));
+        verify(pillDataDAODynamoDB, times(1)).getBetween(eq(ACCOUNT_ID), any(DateTime.class), any(DateTime.class));
+    }
+
+    @Test
+    public void testBackfillsMotionWindowOnce() {
+        final RingTime ringTime = smartRingTime();
+        final DateTime now = ALARM_TIME.minusMinutes(20);
+        scheduler.schedule(userInfo(ringTime), ringTime, now);
+
+        tickBetween(now, now.plusMinutes(5));
+
+        assertThat(scheduler.evaluationCount(), is(6L));
+        verify(pillDataDAODynamoDB, times(1)).getBetween(eq(ACCOUNT_ID), any(DateTime.class), any(DateTime.class));
+    }
+
+    @Test
+    public void testPublishesProgressiveRingTimeWhenAwake() {
+        final RingTime ringTime = smartRingTime();
+        final DateTime now = ALARM_TIME.minusMinutes(40);
+        scheduler.schedule(userInfo(ringTime), ringTime, now);
+
+        final DateTime awakeMinute = ALARM_TIME.minusMinutes(25);
+        tickBetween(now, awakeMinute.minusMinutes(1));
+        scheduler.onTrackerMotion(Lists.newArrayList(
+                motion(awakeMinute.minusMinutes(1)), motion(awakeMinute)), awakeMinute);
+        tickBetween(awakeMinute, ALARM_TIME);
+
+        final RingTime expected = new RingTime(awakeMinute.plusMinutes(RingProcessor.PROGRESSIVE_SAFE_GAP_MIN).getMillis(),
+                ALARM_TIME.getMillis(), new long[0], true);
+        verify(mergedUserInfoDynamoDB, times(1)).setRingTimeIfUnchanged(eq(SENSE_ID), eq(ACCOUNT_ID), eq(ringTime), eq(expected));
+        verify(mergedUserInfoDynamoDB, never()).setRingTime(anyString(), anyLong(), any(RingTime.class));
+        assertThat(scheduler.publishedCount(), is(1L));
+        assertThat(scheduler.scheduledAlarmCount(), is(0));
+        // 7:01 to 7:05, nothing after publishing
+        assertThat(scheduler.evaluationCount(), is(5L));
+    }
+
+    @Test
+    public void testDoesNotLogWhenRingTimeWasAlreadyChanged() {
+        when(mergedUserInfoDynamoDB.setRingTimeIfUnchanged(anyString(), anyLong(), any(RingTime.class), any(RingTime.class))).thenReturn(false);
+        final RingTime ringTime = smartRingTime();
+        final DateTime now = ALARM_TIME.minusMinutes(40);
+        scheduler.schedule(userInfo(ringTime), ringTime, now);
+
+        final DateTime awakeMinute = ALARM_TIME.minusMinutes(25);
+        tickBetween(now, awakeMinute.minusMinutes(1));
+        scheduler.onTrackerMotion(Lists.newArrayList(motion(awakeMinute.minusMinutes(1)), motion(awakeMinute)), awakeMinute);
+        tickBetween(awakeMinute, ALARM_TIME);
+
+        assertThat(scheduler.publishedCount(), is(0L));
+        assertThat(scheduler.scheduledAlarmCount(), is(0));
+        verify(smartAlarmLoggerDynamoDB, never()).log(anyLong(), any(DateTime.class), any(DateTime.class), any(DateTime.class), any(DateTime.class),
+                any(Optional.class), any(DateTimeZone.class));
+    }
+
+    @Test
+    public void testCatchesUpOnMissedTicksAtCurrentMinute() {
+        final RingTime ringTime = smartRingTime();
+        final DateTime now = ALARM_TIME.minusMinutes(40);
+        scheduler.schedule(userInfo(ringTime), ringTime, now);
+        scheduler.tick(now);
+
+        // missed every tick from 6:51 to 7:09
+        scheduler.tick(ALARM_TIME.minusMinutes(20));
+        assertThat(scheduler.evaluationCount(), is(1L));
+        assertThat(scheduler.scheduledAlarmCount(), is(1));
+    }
+
+    @Test
+    public void testAlarmScheduledDuringTickIsEvaluatedOnNextTick() {
+        final RingTime ringTime = smartRingTime();
+        final DateTime now = ALARM_TIME.minusMinutes(40);
+        final DateTime firstDecision = ALARM_TIME.minusMinutes(PROCESS_AHEAD_MINUTES - 1);
+        scheduler.schedule(userInfo(ringTime), ringTime, now);
+
+        // another Sense syncs while the tick is backfilling the first account
+        final long otherAccountId = 2L;
+        when(pillDataDAODynamoDB.getBetween(eq(ACCOUNT_ID), any(DateTime.class), any(DateTime.class))).thenAnswer(new Answer<List<TrackerMotion>>() {
+            @Override
+            public List<TrackerMotion> answer(final InvocationOnMock invocation) throws Throwable {
+                final Thread sync = new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        scheduler.schedule(userInfo("other_sense", otherAccountId, ringTime), ringTime, firstDecision);
+                    }
+                });
+                sync.start();
+                sync.join();
+                return ImmutableList.of();
+            }
+        });
+
+        tickBetween(now, firstDecision);
+        assertThat(scheduler.evaluationCount(), is(1L));
+        assertThat(scheduler.scheduledAlarmCount(), is(2));
+
+        scheduler.tick(firstDecision.plusMinutes(1));
+        assertThat(scheduler.evaluationCount(), is(3L));
+        verify(pillDataDAODynamoDB, times(1)).getBetween(eq(otherAccountId), any(DateTime.class), any(DateTime.class));
+    }
+
+    private void tickBetween(final DateTime start, final DateTime end) {
+        for (DateTime minute = start; !minute.isAfter(end); minute = minute.plusMinutes(1)) {
+            scheduler.tick(minute);
+        }
+    }
+
+    private static TrackerMotion motion(final DateTime minute) {
+        return new TrackerMotion(0L, ACCOUNT_ID, 1L, minute.getMillis(), 5000, 0, 0L, 10L, 0L);
+    }
+
+    private static RingTime smartRingTime() {
+        return new RingTime(ALARM_TIME.getMillis(), ALARM_TIME.getMillis(), new long[0], true);
+    }
+
+    private static UserInfo userInfo(final RingTime ringTime) {
+        return userInfo(SENSE_ID, ACCOUNT_ID, ringTime);
+    }
+
+    private static UserInfo userInfo(final String senseId, final long accountId, final RingTime ringTime) {
+        return new UserInfo(senseId, accountId, Lists.<Alarm>newArrayList(), Optional.of(ringTime), Optional.of(DateTimeZone.UTC),
+                Optional.<OutputProtos.SyncResponse.PillSettings>absent(), 0L);
+    }
+}
@@ -0,0 +1,134 @@
+package com.hello.suripu.core.processors.insights;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.hello.suripu.core.db.CalibrationDAO;
+import com.hello.suripu.core.db.SleepStatsDAO;
+import com.hello.suripu.core.db.colors.SenseColorDAO;
+import com.hello.suripu.core.models.AggregateSleepStats;
+import com.hello.suripu.core.models.Calibration;
+import com.hello.suripu.core.models.DeviceAccountPair;
+import com.hello.suripu.core.preferences.AccountPreferencesDAO;
+import com.hello.suripu.core.util.DateTimeUtil;
+import org.joda.time.DateTime;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class InsightDataSnapshotTest {
+
+    private static final Long ACCOUNT_ID = 9999L;
+    private static final Long OTHER_ACCOUNT_ID = 1234L;
+    private static final String SENSE_ID = "XYZBLAH";
+
+    private SleepStatsDAO sleepStatsDAO;
+    private CalibrationDAO calibrationDAO;
+    private SenseColorDAO senseColorDAO;
+    private AccountPreferencesDAO preferencesDAO;
+
+    @Before
+    public void setUp() {
+        sleepStatsDAO = Mockito.mock(SleepStatsDAO.class);
+        calibrationDAO = Mockito.mock(CalibrationDAO.class);
+        senseColorDAO = Mockito.mock(SenseColorDAO.class);
+        preferencesDAO = Mockito.mock(AccountPreferencesDAO.class);
+
+        Mockito.when(sleepStatsDAO.getTimeZoneOffset(Mockito.anyLong())).thenReturn(Optional.of(-28800000));
+        Mockito.when(sleepStatsDAO.getBatchStats(Mockito.anyLong(), Mockito.anyString(), Mockito.anyString())).thenReturn(ImmutableList.<AggregateSleepStats>of());
+        Mockito.when(calibrationDAO.getStrict(SENSE_ID)).thenReturn(Optional.<Calibration>absent());
+    }
+
+    private InsightDataSnapshot snapshot(final Optional<DeviceAccountPair> deviceAccountPair) {
+        return InsightDataSnapshot.create(ACCOUNT_ID, deviceAccountPair, sleepStatsDAO, calibrationDAO, senseColorDAO, preferencesDAO);
+    }
+
+    @Test
+    public void testReadsOnce() {
+        final DeviceAccountPair pair = new DeviceAccountPair(ACCOUNT_ID, 9998L, SENSE_ID, DateTime.parse("2015-01-01"));
+        final InsightDataSnapshot snapshot = snapshot(Optional.of(pair));
+        final SleepStatsDAO snapshotDAO = snapshot.sleepStatsDAO();
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(snapshotDAO.getTimeZoneOffset(ACCOUNT_ID), is(Optional.of(-28800000)));
+            snapshotDAO.getBatchStats(ACCOUNT_ID, "2015-09-01", "2015-09-14");
+            snapshot.calibration();
+        }
+        snapshotDAO.getBatchStats(ACCOUNT_ID, "2015-09-08", "2015-09-14");
+
+        Mockito.verify(sleepStatsDAO, Mockito.times(1)).getTimeZoneOffset(ACCOUNT_ID);
+        Mockito.verify(sleepStatsDAO, Mockito.times(1)).getBatchStats(Mockito.anyLong(), Mockito.anyString(), Mockito.anyString());
+        Mockito.verify(sleepStatsDAO, Mockito.times(1)).getBatchStats(ACCOUNT_ID, "2015-09-01", "2015-09-14");
+        Mockito.verify(calibrationDAO, Mockito.times(1)).getStrict(SENSE_ID);
+    }
+
+    @Test
+    public void testNarrowerRangeIsFilteredFromWidestRead() {
+        Mockito.when(sleepStatsDAO.getBatchStats(ACCOUNT_ID, "2015-09-01", "2015-09-14")).thenReturn(ImmutableList.of(
+                stat("2015-09-01"), stat("2015-09-07"), stat("2015-09-08"), stat("2015-09-14")));
+        final SleepStatsDAO snapshotDAO = snapshot(Optional.<DeviceAccountPair>absent()).sleepStatsDAO();
+
+        assertThat(dates(snapshotDAO.getBatchStats(ACCOUNT_ID, "2015-09-01", "2015-09-14")), is(ImmutableList.of("2015-09-01", "2015-09-07", "2015-09-08", "2015-09-14")));
+        assertThat(dates(snapshotDAO.getBatchStats(ACCOUNT_ID, "2015-09-08", "2015-09-14")), is(ImmutableList.of("2015-09-08", "2015-09-14")));
+        assertThat(dates(snapshotDAO.getBatchStats(ACCOUNT_ID, "2015-09-02", "2015-09-07")), is(ImmutableList.of("2015-09-07")));
+
+        Mockito.verify(sleepStatsDAO, Mockito.times(1)).getBatchStats(Mockito.anyLong(), Mockito.anyString(), Mockito.anyString());
+    }
+
+    @Test
+    public void testRangeOutsideOfReadReadsTheUnion() {
+        Mockito.when(sleepStatsDAO.getBatchStats(ACCOUNT_ID, "2015-08-25", "2015-09-14")).thenReturn(ImmutableList.of(
+                stat("2015-08-25"), stat("2015-09-08")));
+        final SleepStatsDAO snapshotDAO = snapshot(Optional.<DeviceAccountPair>absent()).sleepStatsDAO();
+
+        snapshotDAO.getBatchStats(ACCOUNT_ID, "2015-09-08", "2015-09-14");
+        assertThat(dates(snapshotDAO.getBatchStats(ACCOUNT_ID, "2015-08-25", "2015-09-07")), is(ImmutableList.of("2015-08-25")));
+        assertThat(dates(snapshotDAO.getBatchStats(ACCOUNT_ID, "2015-09-01", "2015-09-14")), is(ImmutableList.of("2015-09-08")));
+
+        Mockito.verify(sleepStatsDAO, Mockito.times(1)).getBatchStats(ACCOUNT_ID, "2015-09-08", "2015-09-14");
+        Mockito.verify(sleepStatsDAO, Mockito.times(1)).getBatchStats(ACCOUNT_ID, "2015-08-25", "2015-09-14");
+        Mockito.verify(sleepStatsDAO, Mockito.times(2)).getBatchStats(Mockito.anyLong(), Mockito.anyString(), Mockito.anyString());
+    }
+
+    private static AggregateSleepStats stat(final String date) {
+        return new AggregateSleepStats.Builder()
+                .withAccountId(ACCOUNT_ID)
+                .withDateTime(DateTimeUtil.ymdStringToDateTime(date))
+                .build();
+    }
+
+    private static List<String> dates(final List<AggregateSleepStats> sleepStats) {
+        final List<String> dates = Lists.newArrayList();
+        for (final AggregateSleepStats stat : sleepStats) {
+            dates.add(DateTimeUtil.dateToYmdString(stat.dateTime));
+        }
+        return dates;
+    }
+
+    @Test
+    public void testOtherAccountGoesToDAO() {
+        final SleepStatsDAO snapshotDAO = snapshot(Optional.<DeviceAccountPair>absent()).sleepStatsDAO();
+
+        snapshotDAO.getTimeZoneOffset(OTHER_ACCOUNT_ID);
+        snapshotDAO.getTimeZoneOffset(OTHER_ACCOUNT_ID);
+        snapshotDAO.getBatchStats(OTHER_ACCOUNT_ID, "2015-09-01", "2015-09-14");
+        snapshotDAO.getBatchStats(OTHER_ACCOUNT_ID, "2015-09-01", "2015-09-14");
+
+        Mockito.verify(sleepStatsDAO, Mockito.times(2)).getTimeZoneOffset(OTHER_ACCOUNT_ID);
+        Mockito.verify(sleepStatsDAO, Mockito.times(2)).getBatchStats(OTHER_ACCOUNT_ID, "2015-09-01", "2015-09-14");
+    }
+
+    @Test
+    public void testNoPairedSense() {
+        final InsightDataSnapshot snapshot = snapshot(Optional.<DeviceAccountPair>absent());
+
+        assertThat(snapshot.calibration().isPresent(), is(false));
+        assertThat(snapshot.color().isPresent(), is(false));
+        Mockito.verifyZeroInteractions(calibrationDAO, senseColorDAO);
+    }
+}
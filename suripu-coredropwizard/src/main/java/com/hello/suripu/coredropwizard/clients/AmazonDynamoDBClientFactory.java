@@ -1,11 +1,13 @@
 package com.hello.suripu.coredropwizard.clients;
 
+import com.google.common.base.Optional;
 import com.google.common.collect.Maps;
 
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDBClient;
+import com.codahale.metrics.MetricRegistry;
 import com.hello.suripu.core.configuration.DynamoDBTableName;
 import com.hello.suripu.coredropwizard.configuration.NewDynamoDBConfiguration;
 import com.hello.suripu.coredropwizard.metrics.InstrumentedDynamoDBClient;
@@ -19,21 +21,34 @@ public class AmazonDynamoDBClientFactory {
     private final Map<String, AmazonDynamoDB> clients = Maps.newHashMap();
     private final Map<String, AmazonDynamoDB> instrumentedClients = Maps.newHashMap(); // key is className
     private final NewDynamoDBConfiguration dynamoDBConfiguration;
+    private final Optional<MetricRegistry> metricRegistry;
 
     private final static ClientConfiguration DEFAULT_CLIENT_CONFIGURATION = new ClientConfiguration().withConnectionTimeout(200).withMaxErrorRetry(1);
 
     public static AmazonDynamoDBClientFactory create(final AWSCredentialsProvider awsCredentialsProvider, final ClientConfiguration clientConfiguration, final NewDynamoDBConfiguration dynamoDBConfiguration) {
-        return new AmazonDynamoDBClientFactory(awsCredentialsProvider, clientConfiguration, dynamoDBConfiguration);
+        return new AmazonDynamoDBClientFactory(awsCredentialsProvider, clientConfiguration, dynamoDBConfiguration, Optional.<MetricRegistry>absent());
+    }
+
+    /**
+     * Instrumented clients report to metricRegistry
+     */
+    public static AmazonDynamoDBClientFactory create(final AWSCredentialsProvider awsCredentialsProvider, final ClientConfiguration clientConfiguration, final NewDynamoDBConfiguration dynamoDBConfiguration, final MetricRegistry metricRegistry) {
+        return new AmazonDynamoDBClientFactory(awsCredentialsProvider, clientConfiguration, dynamoDBConfiguration, Optional.of(metricRegistry));
     }
 
     public static AmazonDynamoDBClientFactory create(final AWSCredentialsProvider awsCredentialsProvider, final NewDynamoDBConfiguration dynamoDBConfiguration) {
-        return new AmazonDynamoDBClientFactory(awsCredentialsProvider, DEFAULT_CLIENT_CONFIGURATION, dynamoDBConfiguration);
+        return new AmazonDynamoDBClientFactory(awsCredentialsProvider, DEFAULT_CLIENT_CONFIGURATION, dynamoDBConfiguration, Optional.<MetricRegistry>absent());
+    }
+
+    public static AmazonDynamoDBClientFactory create(final AWSCredentialsProvider awsCredentialsProvider, final NewDynamoDBConfiguration dynamoDBConfiguration, final MetricRegistry metricRegistry) {
+        return new AmazonDynamoDBClientFactory(awsCredentialsProvider, DEFAULT_CLIENT_CONFIGURATION, dynamoDBConfiguration, Optional.of(metricRegistry));
     }
 
-    private AmazonDynamoDBClientFactory(final AWSCredentialsProvider awsCredentialsProvider, final ClientConfiguration clientConfiguration, final NewDynamoDBConfiguration dynamoDBConfiguration) {
+    private AmazonDynamoDBClientFactory(final AWSCredentialsProvider awsCredentialsProvider, final ClientConfiguration clientConfiguration, final NewDynamoDBConfiguration dynamoDBConfiguration, final Optional<MetricRegistry> metricRegistry) {
         this.awsCredentialsProvider = awsCredentialsProvider;
         this.clientConfiguration = clientConfiguration;
         this.dynamoDBConfiguration = dynamoDBConfiguration;
+        this.metricRegistry = metricRegistry;
     }
 
 
@@ -87,7 +102,10 @@ public class AmazonDynamoDBClientFactory {
             return instrumentedClients.get(klass.getName());
         }
 
-        final AmazonDynamoDB client = new InstrumentedDynamoDBClient(new AmazonDynamoDBClient(awsCredentialsProvider, clientConfiguration), klass);
+        final AmazonDynamoDBClient amazonDynamoDBClient = new AmazonDynamoDBClient(awsCredentialsProvider, clientConfiguration);
+        final AmazonDynamoDB client = metricRegistry.isPresent()
+                ? new InstrumentedDynamoDBClient(amazonDynamoDBClient, klass, metricRegistry.get(), dynamoDBConfiguration.returnConsumedCapacity())
+                : new InstrumentedDynamoDBClient(amazonDynamoDBClient, klass);
         client.setEndpoint(endpoint);
         instrumentedClients.put(klass.getName(), client);
         return client;
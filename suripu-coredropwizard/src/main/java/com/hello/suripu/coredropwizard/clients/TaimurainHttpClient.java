@@ -1,38 +1,84 @@
 package com.hello.suripu.coredropwizard.clients;
 
 import com.google.common.base.Optional;
-import com.hello.suripu.api.datascience.NeuralNetMessages;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListeningExecutorService;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+import com.hello.suripu.core.algorithmintegration.AsyncNeuralNetEndpoint;
 import com.hello.suripu.core.algorithmintegration.NeuralNetAlgorithmOutput;
-import com.hello.suripu.core.algorithmintegration.NeuralNetEndpoint;
 import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ByteArrayEntity;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.util.EntityUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Created by benjo on 3/23/16.
+ *
+ * Messages are the ones in NeuralNetMessages, but they are encoded and decoded straight from / to double arrays
+ * instead of going through the generated builders and their boxed List<Double>.
+ * Input vectors are written as packed repeated fields, which proto2 parsers accept for repeated doubles,
+ * output vectors are read whether they are packed or not.
  */
-public class TaimurainHttpClient implements NeuralNetEndpoint {
+public class TaimurainHttpClient implements AsyncNeuralNetEndpoint {
     public final static String EVALUATION_ENDPOINT = "/v1/neuralnet/evaluate";
+
+    // field numbers from neural_net_messages.proto
+    private final static int INPUT_NET_ID_FIELD = 1;
+    private final static int INPUT_MAT_FIELD = 2;
+    private final static int OUTPUT_MAT_FIELD = 2;
+    private final static int DATA_VECTOR_VEC_FIELD = 1;
+
+    private final static int MAT_TAG = tag(OUTPUT_MAT_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+    private final static int VEC_TAG = tag(DATA_VECTOR_VEC_FIELD, WireFormat.WIRETYPE_FIXED64);
+    private final static int PACKED_VEC_TAG = tag(DATA_VECTOR_VEC_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+
     public static TaimurainHttpClient create(final HttpClient httpClient,final String endpoint) {
        return new TaimurainHttpClient(httpClient,endpoint);
     }
 
+    /**
+     * getNetOutputAsync runs requests on executor, the http client's connection pool should allow as many connections as the executor has threads.
+     */
+    public static TaimurainHttpClient create(final HttpClient httpClient, final String endpoint, final ExecutorService executor) {
+        return new TaimurainHttpClient(httpClient, endpoint, Optional.of(MoreExecutors.listeningDecorator(executor)));
+    }
+
     private final Logger LOGGER = LoggerFactory.getLogger(TaimurainHttpClient.class);
     private final String endpoint;
     final HttpClient httpClient;
+    private final Optional<ListeningExecutorService> executor;
 
     public TaimurainHttpClient(final HttpClient httpClient, final String endpoint) {
+        this(httpClient, endpoint, Optional.<ListeningExecutorService>absent());
+    }
+
+    private TaimurainHttpClient(final HttpClient httpClient, final String endpoint, final Optional<ListeningExecutorService> executor) {
         this.httpClient = httpClient;
         this.endpoint = endpoint;
+        this.executor = executor;
+    }
+
+    @Override
+    public ListenableFuture<Optional<NeuralNetAlgorithmOutput>> getNetOutputAsync(final String netId, final double [][] sensorData) {
+        if (!executor.isPresent()) {
+            return Futures.immediateFuture(getNetOutput(netId, sensorData));
+        }
+        return executor.get().submit(() -> getNetOutput(netId, sensorData));
     }
 
     public Optional<NeuralNetAlgorithmOutput> getNetOutput(final String netId, final double [][] sensorData) {
@@ -41,61 +87,121 @@ public class TaimurainHttpClient implements NeuralNetEndpoint {
             return Optional.absent();
         }
 
-        final NeuralNetMessages.NeuralNetInput.Builder builder = NeuralNetMessages.NeuralNetInput.newBuilder();
-
-
-        builder.setNetId(netId);
-
-        for (int i = 0; i < sensorData.length; i++) {
-            final  NeuralNetMessages.DataVector.Builder vecBuilder = NeuralNetMessages.DataVector.newBuilder();
-            for (int t = 0; t < sensorData[i].length;t++) {
-                vecBuilder.addVec(sensorData[i][t]);
-            }
-
-            builder.addMat(vecBuilder);
-        }
-
-        final NeuralNetMessages.NeuralNetInput input = builder.build();
-        final byte [] payload = input.toByteArray();
-
         try  {
+            final byte [] payload = encodeInput(netId, sensorData);
+
             final HttpPost httppost = new HttpPost(endpoint + EVALUATION_ENDPOINT);
 
-            httppost.setEntity(new InputStreamEntity(new ByteArrayInputStream(payload), payload.length, ContentType.APPLICATION_OCTET_STREAM));
+            httppost.setEntity(new ByteArrayEntity(payload, ContentType.APPLICATION_OCTET_STREAM));
 
             final long startTime = DateTime.now().getMillis();
             final HttpResponse response = httpClient.execute(httppost);
+
+            // reading the whole entity releases the connection back to the pool
+            final byte [] responseBytes = EntityUtils.toByteArray(response.getEntity());
             final long endTime = DateTime.now().getMillis();
 
             LOGGER.info("action=posted_neuralnet duration={} net_id={}",endTime - startTime,netId);
 
-            final NeuralNetMessages.NeuralNetOutput output = NeuralNetMessages.NeuralNetOutput.parseFrom(response.getEntity().getContent());
-
-            final double [][] outputMatrix = new double[output.getMatCount()][0];
+            return Optional.of(new NeuralNetAlgorithmOutput(decodeOutput(responseBytes)));
 
-            for (int i = 0; i < output.getMatCount(); i++) {
-                final List<Double> vec = output.getMat(i).getVecList();
+        }
+        catch (IOException e) {
+            LOGGER.error("action=caught_exception exception=IOException message=\"{}\" ",e.getMessage());
+            LOGGER.debug(e.getMessage());
+        }
 
-                outputMatrix[i] = new double [vec.size()];
 
-                for (int t = 0; t < vec.size(); t++) {
-                    outputMatrix[i][t] = vec.get(t);
-                }
+        return Optional.absent();
 
-            }
+    }
 
-            return Optional.of(new NeuralNetAlgorithmOutput(outputMatrix));
+    private static int tag(final int fieldNumber, final int wireType) {
+        return (fieldNumber << 3) | wireType;
+    }
 
+    private static int packedVecSize(final double [] vec) {
+        if (vec.length == 0) {
+            return 0;
+        }
+        final int dataSize = vec.length * CodedOutputStream.LITTLE_ENDIAN_64_SIZE;
+        return CodedOutputStream.computeTagSize(DATA_VECTOR_VEC_FIELD) + CodedOutputStream.computeRawVarint32Size(dataSize) + dataSize;
+    }
 
+    /**
+     * Serialized NeuralNetInput with one packed DataVector per row of sensorData
+     */
+    static byte [] encodeInput(final String netId, final double [][] sensorData) throws IOException {
+        int size = CodedOutputStream.computeStringSize(INPUT_NET_ID_FIELD, netId);
+        for (final double [] vec : sensorData) {
+            final int vecSize = packedVecSize(vec);
+            size += CodedOutputStream.computeTagSize(INPUT_MAT_FIELD) + CodedOutputStream.computeRawVarint32Size(vecSize) + vecSize;
+        }
 
+        final byte [] payload = new byte[size];
+        final CodedOutputStream out = CodedOutputStream.newInstance(payload);
+        out.writeString(INPUT_NET_ID_FIELD, netId);
+        for (final double [] vec : sensorData) {
+            out.writeTag(INPUT_MAT_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeRawVarint32(packedVecSize(vec));
+            if (vec.length == 0) {
+                continue;
+            }
+            out.writeTag(DATA_VECTOR_VEC_FIELD, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeRawVarint32(vec.length * CodedOutputStream.LITTLE_ENDIAN_64_SIZE);
+            for (final double value : vec) {
+                out.writeDoubleNoTag(value);
+            }
         }
-        catch (IOException e) {
-            LOGGER.error("action=caught_exception exception=IOException message=\"{}\" ",e.getMessage());
-            LOGGER.debug(e.getMessage());
+        out.checkNoSpaceLeft();
+        return payload;
+    }
+
+    /**
+     * Matrix of a serialized NeuralNetOutput, one row per DataVector
+     */
+    static double [][] decodeOutput(final byte [] bytes) throws IOException {
+        final CodedInputStream in = CodedInputStream.newInstance(bytes);
+        final List<double []> rows = Lists.newArrayList();
+
+        while (true) {
+            final int tag = in.readTag();
+            if (tag == 0) {
+                break;
+            }
+            if (tag != MAT_TAG) {
+                in.skipField(tag);
+                continue;
+            }
+            final int length = in.readRawVarint32();
+            final int oldLimit = in.pushLimit(length);
+            rows.add(decodeVec(in, length));
+            in.popLimit(oldLimit);
         }
 
+        return rows.toArray(new double[rows.size()][]);
+    }
 
-        return Optional.absent();
+    private static double [] decodeVec(final CodedInputStream in, final int length) throws IOException {
+        // every double takes at least 8 bytes, packed or not
+        final double [] vec = new double[length / CodedOutputStream.LITTLE_ENDIAN_64_SIZE];
+        int size = 0;
+
+        while (!in.isAtEnd()) {
+            final int tag = in.readTag();
+            if (tag == VEC_TAG) {
+                vec[size++] = in.readDouble();
+            } else if (tag == PACKED_VEC_TAG) {
+                final int oldLimit = in.pushLimit(in.readRawVarint32());
+                while (!in.isAtEnd()) {
+                    vec[size++] = in.readDouble();
+                }
+                in.popLimit(oldLimit);
+            } else {
+                in.skipField(tag);
+            }
+        }
 
+        return size == vec.length ? vec : Arrays.copyOf(vec, size);
     }
 }
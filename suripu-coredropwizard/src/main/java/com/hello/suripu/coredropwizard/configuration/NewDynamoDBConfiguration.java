@@ -44,4 +44,14 @@ public class NewDynamoDBConfiguration {
     public ImmutableMap<DynamoDBTableName, String> endpoints() {
         return ImmutableMap.copyOf(endpoints);
     }
+
+    @JsonProperty("return_consumed_capacity")
+    private Boolean returnConsumedCapacity = false;
+
+    /**
+     * Instrumented clients ask DynamoDB for the consumed capacity of every call
+     */
+    public Boolean returnConsumedCapacity() {
+        return returnConsumedCapacity;
+    }
 }
@@ -1,7 +1,9 @@
 package com.hello.suripu.coredropwizard.db;
 
 import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
@@ -10,19 +12,18 @@ import com.amazonaws.services.dynamodbv2.model.AttributeAction;
 import com.amazonaws.services.dynamodbv2.model.AttributeDefinition;
 import com.amazonaws.services.dynamodbv2.model.AttributeValue;
 import com.amazonaws.services.dynamodbv2.model.AttributeValueUpdate;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
-import com.amazonaws.services.dynamodbv2.model.ComparisonOperator;
-import com.amazonaws.services.dynamodbv2.model.Condition;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
 import com.amazonaws.services.dynamodbv2.model.ExpectedAttributeValue;
 import com.amazonaws.services.dynamodbv2.model.KeySchemaElement;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.KeyType;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
 import com.amazonaws.services.dynamodbv2.model.PutRequest;
-import com.amazonaws.services.dynamodbv2.model.QueryRequest;
-import com.amazonaws.services.dynamodbv2.model.QueryResult;
 import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.ReturnValue;
 import com.amazonaws.services.dynamodbv2.model.ScalarAttributeType;
@@ -36,11 +37,12 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
 import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.hello.suripu.core.db.dynamo.Util;
 import com.hello.suripu.core.db.util.Compression;
 import com.hello.suripu.core.models.CachedTimelines;
-import com.hello.suripu.core.models.Timeline;
 import com.hello.suripu.core.models.TimelineResult;
 import com.hello.suripu.coredropwizard.timeline.InstrumentedTimelineProcessor;
 
@@ -50,14 +52,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -71,6 +70,9 @@ public class TimelineDAODynamoDB {
     private final AmazonDynamoDB dynamoDBClient;
     private final String tableName;
 
+    private final Compression.CompressionType compressionType;
+    private final Encoding encoding;
+
     private final MetricRegistry metrics;
     private final Meter timelineExpiredAtRequestMeter;
     private final Meter timelineNotExpiredAtRequestMeter;
@@ -81,6 +83,7 @@ public class TimelineDAODynamoDB {
     public static final String DATA_BLOB_ATTRIBUTE_NAME = "timelines";
 
     public static final String COMPRESS_TYPE_ATTRIBUTE_NAME = "compression_type";
+    public static final String ENCODING_ATTRIBUTE_NAME = "encoding";  // absent on items written before it existed, those are JSON
     public static final String UPDATED_AT_ATTRIBUTE_NAME = "updated_at";
 
     public static final String VERSION = "version";
@@ -89,22 +92,62 @@ public class TimelineDAODynamoDB {
 
     private final int MAX_CALL_COUNT = 5;
     private final int MAX_BATCH_SIZE = 25;  // Based on: http://docs.aws.amazon.com/cli/latest/reference/dynamodb/batch-write-item.html
+    private static final int MAX_BATCH_GET_SIZE = 100;
     private final int maxBackTrackDays;
 
     public static final int MAX_REQUEST_DAYS = 31;
 
+    private static final List<String> REQUIRED_ATTRIBUTES = ImmutableList.of(
+            ACCOUNT_ID_ATTRIBUTE_NAME,
+            TARGET_DATE_OF_NIGHT_ATTRIBUTE_NAME,
+            DATA_BLOB_ATTRIBUTE_NAME,
+            UPDATED_AT_ATTRIBUTE_NAME,
+            COMPRESS_TYPE_ATTRIBUTE_NAME,
+            EXPIRED_AT_MILLIS,
+            VERSION);
+    private static final List<String> ATTRIBUTES_TO_GET = ImmutableList.<String>builder()
+            .addAll(REQUIRED_ATTRIBUTES)
+            .add(ENCODING_ATTRIBUTE_NAME)
+            .build();
+
     public final String JSON_CHARSET = "UTF-8";
 
+    /**
+     * How a TimelineResult is serialized before compression.
+     * SMILE is Jackson's binary JSON: same mapping as JSON, smaller and faster to parse.
+     */
+    public enum Encoding {
+        JSON,
+        SMILE
+    }
+
     private static ObjectMapper mapper = new ObjectMapper();
+    private static ObjectMapper smileMapper = new ObjectMapper(new SmileFactory());
 
     public TimelineDAODynamoDB(final AmazonDynamoDB dynamoDBClient, final String tableName, final int maxBackTrackDays, final MetricRegistry metricRegistry){
+        this(dynamoDBClient, tableName, maxBackTrackDays, metricRegistry, Compression.CompressionType.NONE, Encoding.JSON);
+    }
+
+    /**
+     * Reads whatever compression and encoding an item was written with, only writes use compressionType and encoding.
+     *
+     * Rollout: readers built before SNAPPY, LZ4 and SMILE ignore the encoding attribute and log a parse or decompress error
+     * for such items, which then read as missing and get regenerated. Only write them once every service reading the table
+     * runs this version. NONE, GZIP and BZIP2 with JSON are the old format and stay readable by old readers.
+     */
+    public TimelineDAODynamoDB(final AmazonDynamoDB dynamoDBClient, final String tableName, final int maxBackTrackDays, final MetricRegistry metricRegistry,
+                               final Compression.CompressionType compressionType, final Encoding encoding){
         this.dynamoDBClient = dynamoDBClient;
         this.tableName = tableName;
         this.metrics = metricRegistry;
+        this.compressionType = compressionType;
+        this.encoding = encoding;
 
-        mapper.registerModule(new GuavaModule());
-        mapper.registerModule(new GuavaExtrasModule());
-        mapper.registerModule(new JodaModule());
+        for(final ObjectMapper objectMapper : Arrays.asList(mapper, smileMapper)) {
+            objectMapper.registerModule(new GuavaModule());
+            objectMapper.registerModule(new GuavaExtrasModule());
+            objectMapper.registerModule(new JodaModule());
+        }
 
         this.maxBackTrackDays = maxBackTrackDays;
 
@@ -213,6 +256,7 @@ public class TimelineDAODynamoDB {
 
     /*
     * Get events for maybe not consecutive days, internal use only
+    * One BatchGetItem per 100 days on the exact keys, so a week or a month is a single round trip.
      */
     protected ImmutableMap<Long, CachedTimelines> getTimelinesForDatesImpl(final Long accountId, final Collection<Long> datesInMillis){
         if(datesInMillis.size() > MAX_REQUEST_DAYS){
@@ -220,118 +264,123 @@ public class TimelineDAODynamoDB {
             throw new RuntimeException("Request too many days event.");
         }
 
+        if(datesInMillis.isEmpty()){
+            return ImmutableMap.of();
+        }
+
+        final List<Map<String, AttributeValue>> items = batchGetItems(accountId, datesInMillis);
+
         final Map<Long, CachedTimelines> finalResult = new HashMap<>();
-        final Map<String, Condition> queryConditions = new HashMap<String, Condition>();
-
-        final Long[] sortedDateMillis = datesInMillis.toArray(new Long[0]);
-        Arrays.sort(sortedDateMillis);
-
-        final Long startDateMillis = sortedDateMillis[0];
-        final Long endDateMillis = sortedDateMillis[sortedDateMillis.length - 1];
-
-        final Condition selectDateCondition = new Condition()
-                .withComparisonOperator(ComparisonOperator.BETWEEN.toString())
-                .withAttributeValueList(new AttributeValue().withN(String.valueOf(startDateMillis)),
-                        new AttributeValue().withN(String.valueOf(endDateMillis)));
-
-
-        queryConditions.put(TARGET_DATE_OF_NIGHT_ATTRIBUTE_NAME, selectDateCondition);
-
-        // AND accound_id = :accound_id
-        final Condition selectAccountIdCondition = new Condition()
-                .withComparisonOperator(ComparisonOperator.EQ)
-                .withAttributeValueList(new AttributeValue().withN(String.valueOf(accountId)));
-        queryConditions.put(ACCOUNT_ID_ATTRIBUTE_NAME, selectAccountIdCondition);
-
-        Map<String, AttributeValue> lastEvaluatedKey = null;
-        final Collection<String> targetAttributeSet = new HashSet<String>();
-        Collections.addAll(targetAttributeSet,
-                ACCOUNT_ID_ATTRIBUTE_NAME,
-                TARGET_DATE_OF_NIGHT_ATTRIBUTE_NAME,
-                DATA_BLOB_ATTRIBUTE_NAME,
-                UPDATED_AT_ATTRIBUTE_NAME,
-                COMPRESS_TYPE_ATTRIBUTE_NAME,
-                EXPIRED_AT_MILLIS,
-                VERSION);
-
-
-        int loopCount = 0;
-
-        // Loop and construct queries..
-        do{
-            final QueryRequest queryRequest = new QueryRequest()
-                    .withTableName(this.tableName)
-                    .withKeyConditions(queryConditions)
-                    .withAttributesToGet(targetAttributeSet)
-                    .withLimit(MAX_REQUEST_DAYS)
-                    .withExclusiveStartKey(lastEvaluatedKey);
-
-            final QueryResult queryResult = this.dynamoDBClient.query(queryRequest);
-            if(queryResult.getItems() == null){
-                break;
+        for(final Map<String, AttributeValue> item : items){
+            final Optional<CachedTimelines> decoded = decodeItem(accountId, item);
+            if(decoded.isPresent()){
+                finalResult.put(Long.valueOf(item.get(TARGET_DATE_OF_NIGHT_ATTRIBUTE_NAME).getN()), decoded.get());
             }
+        }
+
+        return ImmutableMap.copyOf(finalResult);
+    }
+
+    private List<Map<String, AttributeValue>> batchGetItems(final Long accountId, final Collection<Long> datesInMillis){
+        final List<Map<String, AttributeValue>> items = new ArrayList<>();
 
-            final List<Map<String, AttributeValue>> items = queryResult.getItems();
+        for(final List<Long> datesInBatch : Lists.partition(new ArrayList<>(datesInMillis), MAX_BATCH_GET_SIZE)){
+            final List<Map<String, AttributeValue>> keys = new ArrayList<>();
+            for(final Long dateInMillis : datesInBatch){
+                final Map<String, AttributeValue> key = new HashMap<>();
+                key.put(ACCOUNT_ID_ATTRIBUTE_NAME, new AttributeValue().withN(String.valueOf(accountId)));
+                key.put(TARGET_DATE_OF_NIGHT_ATTRIBUTE_NAME, new AttributeValue().withN(String.valueOf(dateInMillis)));
+                keys.add(key);
+            }
 
-            for(final Map<String, AttributeValue> item:items){
-                if(!item.keySet().containsAll(targetAttributeSet)){
-                    LOGGER.warn("Missing field in item {}", item);
-                    continue;
+            KeysAndAttributes keysAndAttributes = new KeysAndAttributes()
+                    .withKeys(keys)
+                    .withAttributesToGet(ATTRIBUTES_TO_GET);
+
+            int callCount = 0;
+            while(keysAndAttributes != null && callCount < MAX_CALL_COUNT){
+                if(callCount > 0 && !Util.backoff(this.tableName, callCount)){
+                    break;
                 }
 
-                final Long dateInMillis = Long.valueOf(item.get(TARGET_DATE_OF_NIGHT_ATTRIBUTE_NAME).getN());
-                final ArrayList<Timeline> eventsWithAllTypes = new ArrayList<>();
+                final Map<String, KeysAndAttributes> requestItems = new HashMap<>();
+                requestItems.put(this.tableName, keysAndAttributes);
+                final BatchGetItemResult result = this.dynamoDBClient.batchGetItem(new BatchGetItemRequest().withRequestItems(requestItems));
+
+                if(result.getResponses() != null && result.getResponses().containsKey(this.tableName)){
+                    items.addAll(result.getResponses().get(this.tableName));
+                }
+
+                keysAndAttributes = (result.getUnprocessedKeys() == null) ? null : result.getUnprocessedKeys().get(this.tableName);
+                callCount++;
+            }
 
-                final ByteBuffer byteBuffer = item.get(DATA_BLOB_ATTRIBUTE_NAME).getB();
-                final byte[] compressed = byteBuffer.array();
+            if(keysAndAttributes != null){
+                // Treated as cache misses, those nights get recomputed
+                LOGGER.warn("warning=unprocessed-timeline-keys account_id={} count={}", accountId, keysAndAttributes.getKeys().size());
+            }
+        }
 
-                final Compression.CompressionType compressionType = Compression.CompressionType.fromInt(Integer.valueOf(item.get(COMPRESS_TYPE_ATTRIBUTE_NAME).getN()));
-                final String version = item.get(VERSION).getS();
-                final Long expiredAtMillis = Long.valueOf(item.get(EXPIRED_AT_MILLIS).getN());
+        return items;
+    }
 
-                try {
-                    final byte[] decompressed = Compression.decompress(compressed, compressionType);
-                    final String jsonString = new String(decompressed, JSON_CHARSET);
-                    final TimelineResult result = mapper.readValue(jsonString, new TypeReference<TimelineResult>() {});
+    private Optional<CachedTimelines> decodeItem(final Long accountId, final Map<String, AttributeValue> item){
+        if(!item.keySet().containsAll(REQUIRED_ATTRIBUTES)){
+            LOGGER.warn("Missing field in item {}", item);
+            return Optional.absent();
+        }
 
-                    final CachedTimelines cachedTimelines = CachedTimelines.create(result, version, expiredAtMillis);
-                    finalResult.put(dateInMillis, cachedTimelines);
+        final ByteBuffer byteBuffer = item.get(DATA_BLOB_ATTRIBUTE_NAME).getB();
+        final byte[] compressed = byteBuffer.array();
 
-                }catch (JsonParseException jpe){
-                    LOGGER.error("Parsing event list for account {}, failed: {}",
-                            accountId,
-                            //dataAttributeName,
-                            jpe.getMessage());
+        final Compression.CompressionType compressionType = Compression.CompressionType.fromInt(Integer.valueOf(item.get(COMPRESS_TYPE_ATTRIBUTE_NAME).getN()));
+        final String version = item.get(VERSION).getS();
+        final Long expiredAtMillis = Long.valueOf(item.get(EXPIRED_AT_MILLIS).getN());
 
-                }catch (JsonMappingException jmp){
-                    LOGGER.error("Parsing event list for account {}, failed: {}",
-                            accountId,
-                            //dataAttributeName,
-                            jmp.getMessage());
+        try {
+            final byte[] decompressed = Compression.decompress(compressed, compressionType);
+            final TimelineResult result = mapperFor(getEncoding(item)).readValue(decompressed, new TypeReference<TimelineResult>() {});
+            return Optional.of(CachedTimelines.create(result, version, expiredAtMillis));
 
-                }catch (IOException ioe){
+        }catch (JsonParseException jpe){
+            LOGGER.error("Parsing event list for account {}, failed: {}",
+                    accountId,
+                    jpe.getMessage());
 
-                    LOGGER.error("Decompress event list for account {}, failed: {}",
-                            accountId,
-                            //dataAttributeName,
-                            ioe.getMessage());
-                }
-            }
+        }catch (JsonMappingException jmp){
+            LOGGER.error("Parsing event list for account {}, failed: {}",
+                    accountId,
+                    jmp.getMessage());
 
-            lastEvaluatedKey = queryResult.getLastEvaluatedKey();
-            loopCount++;
-        }while (lastEvaluatedKey != null && loopCount < MAX_CALL_COUNT);
+        }catch (IOException ioe){
 
+            LOGGER.error("Decompress event list for account {}, failed: {}",
+                    accountId,
+                    ioe.getMessage());
+        }
 
+        return Optional.absent();
+    }
 
-        if(lastEvaluatedKey != null){
-            // We still have something not fetched. Request still too large!
-            LOGGER.warn("Request too large for events, num of days requested: {}, accountId: {}, tableName: {}", datesInMillis.size(), accountId, this.tableName);
-            throw new RuntimeException("Request too many days event.");
+    private static Encoding getEncoding(final Map<String, AttributeValue> item) throws IOException {
+        if(!item.containsKey(ENCODING_ATTRIBUTE_NAME)){
+            return Encoding.JSON;
+        }
 
+        final String encodingName = item.get(ENCODING_ATTRIBUTE_NAME).getS();
+        for(final Encoding encoding : Encoding.values()){
+            if(encoding.name().equals(encodingName)){
+                return encoding;
+            }
         }
+        throw new IOException(String.format("Unknown timeline encoding %s", encodingName));
+    }
 
-        return ImmutableMap.copyOf(finalResult);
+    private static ObjectMapper mapperFor(final Encoding encoding){
+        if(encoding == Encoding.SMILE){
+            return smileMapper;
+        }
+        return mapper;
     }
 
 
@@ -372,7 +421,7 @@ public class TimelineDAODynamoDB {
 
 
             try {
-                final String jsonEventList = mapper.writeValueAsString(timelines);
+                final byte[] encodedTimelines = mapperFor(this.encoding).writeValueAsBytes(timelines);
 
                 final HashMap<String, AttributeValue> item = new HashMap<>();
                 item.put(ACCOUNT_ID_ATTRIBUTE_NAME, new AttributeValue().withN(String.valueOf(accountId)));
@@ -381,14 +430,14 @@ public class TimelineDAODynamoDB {
                 item.put(VERSION, new AttributeValue().withS(InstrumentedTimelineProcessor.VERSION));
                 item.put(EXPIRED_AT_MILLIS, new AttributeValue().withN(String.valueOf(DateTime.now().plusHours(3).getMillis())));
 
-                final int compressType = Compression.CompressionType.NONE.getValue();
+                final int compressType = this.compressionType.getValue();
                 item.put(COMPRESS_TYPE_ATTRIBUTE_NAME, new AttributeValue().withN(
                         String.valueOf(compressType)));
+                item.put(ENCODING_ATTRIBUTE_NAME, new AttributeValue().withS(this.encoding.name()));
 
                 // final ByteBuffer byteBuffer = ByteBuffer.wrap(builder.build().toByteArray());
 
-                final byte[] compressedData = Compression.compress(jsonEventList.getBytes(JSON_CHARSET),
-                        Compression.CompressionType.fromInt(compressType));
+                final byte[] compressedData = Compression.compress(encodedTimelines, this.compressionType);
                 final ByteBuffer byteBuffer = ByteBuffer.wrap(compressedData);
                 byteBuffer.position(0);
 
@@ -419,12 +468,6 @@ public class TimelineDAODynamoDB {
                         //type,
                         targetDateOfNightLocalUTC,
                         jpe.getMessage());
-            }catch (UnsupportedEncodingException uee) {
-                LOGGER.error("Serialize events for account {}, night {} failed: {}",
-                        accountId,
-                        //type,
-                        targetDateOfNightLocalUTC,
-                        uee.getMessage());
             }catch (IOException ioe){
                 LOGGER.error("Compress events for account {}, night {} failed: {}",
                         accountId,
@@ -0,0 +1,360 @@
+package com.hello.suripu.coredropwizard.insights;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.hello.suripu.core.db.AccountReadDAO;
+import com.hello.suripu.core.db.InsightsDAODynamoDB;
+import com.hello.suripu.core.db.dynamo.BatchWritePipeline;
+import com.hello.suripu.core.insights.InsightsLastSeen;
+import com.hello.suripu.core.insights.InsightsLastSeenDAO;
+import com.hello.suripu.core.insights.InsightsWriter;
+import com.hello.suripu.core.models.Account;
+import com.hello.suripu.core.models.Insights.InsightCard;
+import com.hello.suripu.core.processors.InsightProcessor;
+import com.hello.suripu.coredropwizard.util.AccountCheckpoint;
+import com.librato.rollout.RolloutClient;
+import org.isomorphism.util.TokenBucket;
+import org.isomorphism.util.TokenBuckets;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Runs InsightProcessor.generateInsights for a stream of accounts, e.g. the nightly insight job.
+ *
+ * Accounts run on a fixed pool of parallelism threads. Workers mostly wait on DynamoDB and Postgres, so size it for
+ * those calls rather than for cores. The account stream is read lazily, at most 2 * parallelism accounts are queued.
+ *
+ * Rate limits, per second:
+ * - accountsPerSecond: accounts started, which bounds the account lookups and the reads each generator makes
+ * - insightWritesPerSecond: cards written to the insights table
+ * - lastSeenWritesPerSecond: updates to the insights last seen table
+ *
+ * Generated cards are buffered and written with InsightsDAODynamoDB.insertListOfInsights through the job's
+ * BatchWritePipeline, up to MAX_BATCH_WRITE at a time, followed by their last seen updates. Those are partial item updates (one attribute per category), which
+ * BatchWriteItem can not do, so they are written one by one after the batch.
+ *
+ * An account is recorded in the checkpoint once it is generated and all its writes are done, and skipped when the
+ * job is restarted.
+ */
+public class InsightGenerationScheduler {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(InsightGenerationScheduler.class);
+
+    static final int MAX_BATCH_WRITE = 25; // DynamoDB BatchWriteItem limit
+    private static final int MAX_ACCOUNTS_PER_FLUSH = 100;
+    private static final int LOG_EVERY_N_ACCOUNTS = 1000;
+
+    /**
+     * Generates the insights of one account, cards and last seen times go to the writer it was created with
+     */
+    interface AccountInsights {
+        void generate(Long accountId, DateTime accountCreated);
+    }
+
+    private final Function<InsightsWriter, AccountInsights> accountInsightsFactory;
+    private final AccountReadDAO accountReadDAO;
+    private final InsightsDAODynamoDB insightsDAODynamoDB;
+    private final BatchWritePipeline insightsWritePipeline;
+    private final InsightsLastSeenDAO insightsLastSeenDAO;
+    private final AccountCheckpoint checkpoint;
+    private final int parallelism;
+
+    private final TokenBucket accountsBucket;
+    private final TokenBucket insightWritesBucket;
+    private final TokenBucket lastSeenWritesBucket;
+    private final int batchSize;
+
+    private final Meter accountsMeter;
+    private final Meter failedAccountsMeter;
+    private final Meter insightsMeter;
+    private final Timer accountTimer;
+
+    private final AtomicLong accountsProcessed = new AtomicLong(0L);
+    private final AtomicLong accountsFailed = new AtomicLong(0L);
+    private final AtomicLong accountsSkipped = new AtomicLong(0L);
+    private final AtomicLong insightsWritten = new AtomicLong(0L);
+
+    InsightGenerationScheduler(final Function<InsightsWriter, AccountInsights> accountInsightsFactory,
+                               final AccountReadDAO accountReadDAO,
+                               final InsightsDAODynamoDB insightsDAODynamoDB,
+                               final BatchWritePipeline insightsWritePipeline,
+                               final InsightsLastSeenDAO insightsLastSeenDAO,
+                               final AccountCheckpoint checkpoint,
+                               final int parallelism,
+                               final int accountsPerSecond,
+                               final int insightWritesPerSecond,
+                               final int lastSeenWritesPerSecond,
+                               final MetricRegistry metrics) {
+        this.accountInsightsFactory = accountInsightsFactory;
+        this.accountReadDAO = accountReadDAO;
+        this.insightsDAODynamoDB = insightsDAODynamoDB;
+        this.insightsWritePipeline = insightsWritePipeline;
+        this.insightsLastSeenDAO = insightsLastSeenDAO;
+        this.checkpoint = checkpoint;
+        this.parallelism = parallelism;
+
+        this.accountsBucket = perSecond(accountsPerSecond);
+        this.insightWritesBucket = perSecond(insightWritesPerSecond);
+        this.lastSeenWritesBucket = perSecond(lastSeenWritesPerSecond);
+
+        // a batch can not take more tokens than the bucket holds
+        this.batchSize = Math.min(MAX_BATCH_WRITE, insightWritesPerSecond);
+
+        this.accountsMeter = metrics.meter(name(InsightGenerationScheduler.class, "accounts"));
+        this.failedAccountsMeter = metrics.meter(name(InsightGenerationScheduler.class, "failed-accounts"));
+        this.insightsMeter = metrics.meter(name(InsightGenerationScheduler.class, "insights-written"));
+        this.accountTimer = metrics.timer(name(InsightGenerationScheduler.class, "account"));
+    }
+
+    /**
+     * @param insightsWritePipeline writes the insight cards, its attempts per item and table rate bounds apply on top of insightWritesPerSecond
+     */
+    public static InsightGenerationScheduler create(final InsightProcessor insightProcessor,
+                                                    final RolloutClient featureFlipper,
+                                                    final AccountReadDAO accountReadDAO,
+                                                    final InsightsDAODynamoDB insightsDAODynamoDB,
+                                                    final BatchWritePipeline insightsWritePipeline,
+                                                    final InsightsLastSeenDAO insightsLastSeenDAO,
+                                                    final AccountCheckpoint checkpoint,
+                                                    final int parallelism,
+                                                    final int accountsPerSecond,
+                                                    final int insightWritesPerSecond,
+                                                    final int lastSeenWritesPerSecond,
+                                                    final MetricRegistry metrics) {
+        final Function<InsightsWriter, AccountInsights> accountInsightsFactory = insightsWriter -> {
+            final InsightProcessor processor = insightProcessor.withInsightsWriter(insightsWriter);
+            return (accountId, accountCreated) -> processor.generateInsights(accountId, accountCreated, featureFlipper);
+        };
+
+        return new InsightGenerationScheduler(accountInsightsFactory, accountReadDAO, insightsDAODynamoDB, insightsWritePipeline, insightsLastSeenDAO, checkpoint,
+                parallelism, accountsPerSecond, insightWritesPerSecond, lastSeenWritesPerSecond, metrics);
+    }
+
+    private static TokenBucket perSecond(final int tokensPerSecond) {
+        return TokenBuckets.builder()
+                .withCapacity(tokensPerSecond)
+                .withFixedIntervalRefillStrategy(tokensPerSecond, 1L, TimeUnit.SECONDS)
+                .build();
+    }
+
+    public static class Stats {
+        public final long accountsProcessed;
+        public final long accountsFailed;
+        public final long accountsSkipped;
+        public final long insightsWritten;
+        public final long elapsedMillis;
+
+        private Stats(final long accountsProcessed, final long accountsFailed, final long accountsSkipped,
+                      final long insightsWritten, final long elapsedMillis) {
+            this.accountsProcessed = accountsProcessed;
+            this.accountsFailed = accountsFailed;
+            this.accountsSkipped = accountsSkipped;
+            this.insightsWritten = insightsWritten;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public double accountsPerSecond() {
+            return elapsedMillis == 0 ? 0.0 : accountsProcessed * 1000.0 / elapsedMillis;
+        }
+    }
+
+    /**
+     * Generates insights for every account of the stream, blocks until all of them are done and written
+     */
+    public Stats run(final Iterator<Long> accountIds) {
+        LOGGER.info("action=start-insight-generation parallelism={} batch_size={}", parallelism, batchSize);
+
+        final long startMillis = System.currentTimeMillis();
+        final BatchWriter batchWriter = new BatchWriter();
+        final AccountInsights accountInsights = accountInsightsFactory.apply(batchWriter);
+
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        final Semaphore queued = new Semaphore(2 * parallelism);
+        try {
+            while (accountIds.hasNext()) {
+                final Long accountId = accountIds.next();
+                if (checkpoint.isCompleted(accountId)) {
+                    accountsSkipped.incrementAndGet();
+                    continue;
+                }
+
+                queued.acquireUninterruptibly();
+                accountsBucket.consume();
+                executor.execute(() -> {
+                    try {
+                        processAccount(accountId, accountInsights, batchWriter);
+                    } finally {
+                        queued.release();
+                    }
+                });
+            }
+        } finally {
+            executor.shutdown();
+            awaitTermination(executor);
+        }
+
+        batchWriter.flush();
+
+        final Stats stats = new Stats(accountsProcessed.get(), accountsFailed.get(), accountsSkipped.get(), insightsWritten.get(),
+                System.currentTimeMillis() - startMillis);
+        LOGGER.info("action=finish-insight-generation accounts={} failed_accounts={} skipped_accounts={} insights_written={} elapsed_ms={} accounts_per_second={}",
+                stats.accountsProcessed, stats.accountsFailed, stats.accountsSkipped, stats.insightsWritten, stats.elapsedMillis, stats.accountsPerSecond());
+        return stats;
+    }
+
+    private static void awaitTermination(final ExecutorService executor) {
+        try {
+            while (!executor.awaitTermination(1L, TimeUnit.MINUTES)) {
+                LOGGER.debug("action=wait-for-insight-workers");
+            }
+        } catch (InterruptedException e) {
+            LOGGER.error("error=insight-generation-interrupted");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processAccount(final Long accountId, final AccountInsights accountInsights, final BatchWriter batchWriter) {
+        final Timer.Context context = accountTimer.time();
+        try {
+            final Optional<Account> accountOptional = accountReadDAO.getById(accountId);
+            if (accountOptional.isPresent()) {
+                accountInsights.generate(accountId, accountOptional.get().created);
+            } else {
+                LOGGER.warn("warning=account-not-found account_id={}", accountId);
+            }
+            batchWriter.accountFinished(accountId);
+        } catch (Exception e) {
+            accountsFailed.incrementAndGet();
+            failedAccountsMeter.mark();
+            LOGGER.error("error=insight-generation-failed account_id={} message={}", accountId, e.getMessage());
+        } finally {
+            context.stop();
+        }
+
+        accountsMeter.mark();
+        final long processed = accountsProcessed.incrementAndGet();
+        if (processed % LOG_EVERY_N_ACCOUNTS == 0) {
+            LOGGER.info("action=insight-generation-progress accounts={} failed_accounts={} insights_written={} accounts_per_second={}",
+                    processed, accountsFailed.get(), insightsWritten.get(), accountsMeter.getOneMinuteRate());
+        }
+    }
+
+    /**
+     * Buffers the writes of all workers of one run.
+     *
+     * Flushes run one at a time, so by the time an account is checkpointed the flushes holding its earlier writes
+     * are over, and a failed write has kept it out of the checkpoint.
+     */
+    private class BatchWriter implements InsightsWriter {
+        private final Object flushLock = new Object();
+        private final Set<Long> failedWrites = ConcurrentHashMap.newKeySet();
+
+        // guarded by this
+        private List<InsightCard> insightCards = Lists.newArrayList();
+        private List<InsightsLastSeen> insightsLastSeen = Lists.newArrayList();
+        private List<Long> finishedAccounts = Lists.newArrayList();
+
+        @Override
+        public void write(final InsightCard insightCard, final InsightsLastSeen insightLastSeen) {
+            final boolean full;
+            synchronized (this) {
+                insightCards.add(insightCard);
+                insightsLastSeen.add(insightLastSeen);
+                full = insightCards.size() >= batchSize;
+            }
+
+            if (full) {
+                flush();
+            }
+        }
+
+        void accountFinished(final Long accountId) {
+            final boolean full;
+            synchronized (this) {
+                finishedAccounts.add(accountId);
+                full = finishedAccounts.size() >= MAX_ACCOUNTS_PER_FLUSH;
+            }
+
+            if (full) {
+                flush();
+            }
+        }
+
+        void flush() {
+            synchronized (flushLock) {
+                final List<InsightCard> cardsToWrite;
+                final List<InsightsLastSeen> lastSeenToWrite;
+                final List<Long> accountsToCheckpoint;
+                synchronized (this) {
+                    cardsToWrite = insightCards;
+                    lastSeenToWrite = insightsLastSeen;
+                    accountsToCheckpoint = finishedAccounts;
+                    insightCards = Lists.newArrayList();
+                    insightsLastSeen = Lists.newArrayList();
+                    finishedAccounts = Lists.newArrayList();
+                }
+
+                // cards and last seen times were added in pairs, so the partitions line up
+                final List<List<InsightCard>> cardBatches = Lists.partition(cardsToWrite, batchSize);
+                final List<List<InsightsLastSeen>> lastSeenBatches = Lists.partition(lastSeenToWrite, batchSize);
+                for (int i = 0; i < cardBatches.size(); i++) {
+                    writeBatch(cardBatches.get(i), lastSeenBatches.get(i));
+                }
+
+                for (final Long accountId : accountsToCheckpoint) {
+                    if (!failedWrites.contains(accountId)) {
+                        checkpoint.markCompleted(accountId);
+                    }
+                }
+            }
+        }
+
+        /**
+         * The last seen times are only written once their cards are, a category marked seen without its card
+         * would not be generated again for two weeks
+         */
+        private void writeBatch(final List<InsightCard> batch, final List<InsightsLastSeen> batchLastSeen) {
+            insightWritesBucket.consume(batch.size());
+            try {
+                insightsDAODynamoDB.insertListOfInsights(batch, insightsWritePipeline);
+                insightsWritten.addAndGet(batch.size());
+                insightsMeter.mark(batch.size());
+            } catch (Exception e) {
+                LOGGER.error("error=insights-batch-write-failed num_insights={} message={}", batch.size(), e.getMessage());
+                for (final InsightsLastSeen lastSeen : batchLastSeen) {
+                    failedWrites.add(lastSeen.accountId);
+                }
+                return;
+            }
+
+            for (final InsightsLastSeen lastSeen : batchLastSeen) {
+                lastSeenWritesBucket.consume();
+                try {
+                    if (!insightsLastSeenDAO.markLastSeen(lastSeen)) {
+                        failedWrites.add(lastSeen.accountId);
+                    }
+                } catch (Exception e) {
+                    LOGGER.error("error=insights-last-seen-write-failed account_id={} category={} message={}", lastSeen.accountId, lastSeen.seenCategory, e.getMessage());
+                    failedWrites.add(lastSeen.accountId);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.hello.suripu.coredropwizard.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.hello.suripu.core.db.dynamo.BatchWritePipeline;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Exports the counters of a BatchWritePipeline as gauges
+ */
+public class BatchWritePipelineGauges {
+
+    private BatchWritePipelineGauges() {}
+
+    public static void register(final MetricRegistry metrics, final String pipelineName, final BatchWritePipeline pipeline) {
+        metrics.register(name(BatchWritePipeline.class, pipelineName, "in-flight"), (Gauge<Integer>) () -> pipeline.stats().inFlight);
+        metrics.register(name(BatchWritePipeline.class, pipelineName, "submitted"), (Gauge<Long>) () -> pipeline.stats().submitted);
+        metrics.register(name(BatchWritePipeline.class, pipelineName, "written"), (Gauge<Long>) () -> pipeline.stats().written);
+        metrics.register(name(BatchWritePipeline.class, pipelineName, "unprocessed"), (Gauge<Long>) () -> pipeline.stats().unprocessed);
+        metrics.register(name(BatchWritePipeline.class, pipelineName, "failed"), (Gauge<Long>) () -> pipeline.stats().failed);
+        metrics.register(name(BatchWritePipeline.class, pipelineName, "batches"), (Gauge<Long>) () -> pipeline.stats().batches);
+        metrics.register(name(BatchWritePipeline.class, pipelineName, "throttled-batches"), (Gauge<Long>) () -> pipeline.stats().throttledBatches);
+    }
+}
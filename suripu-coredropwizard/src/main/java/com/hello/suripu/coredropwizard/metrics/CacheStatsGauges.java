@@ -0,0 +1,28 @@
+package com.hello.suripu.coredropwizard.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Supplier;
+import com.google.common.cache.CacheStats;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Exports the stats of a guava cache as gauges, e.g. CacheStatsGauges.register(registry, KeyStoreDynamoDB.class, "keys", keyStore::cacheStats)
+ */
+public class CacheStatsGauges {
+
+    private CacheStatsGauges() {}
+
+    public static void register(final MetricRegistry metrics, final Class<?> klass, final String cacheName, final Supplier<CacheStats> stats) {
+        metrics.register(name(klass, cacheName, "hits"), (Gauge<Long>) () -> stats.get().hitCount());
+        metrics.register(name(klass, cacheName, "misses"), (Gauge<Long>) () -> stats.get().missCount());
+        metrics.register(name(klass, cacheName, "hit-rate"), (Gauge<Double>) () -> stats.get().hitRate());
+        metrics.register(name(klass, cacheName, "load-exceptions"), (Gauge<Long>) () -> stats.get().loadExceptionCount());
+        metrics.register(name(klass, cacheName, "evictions"), (Gauge<Long>) () -> stats.get().evictionCount());
+        metrics.register(name(klass, cacheName, "average-load-millis"),
+                (Gauge<Double>) () -> stats.get().averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1L));
+    }
+}
@@ -14,6 +14,7 @@ import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
 import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
 import com.amazonaws.services.dynamodbv2.model.Condition;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.CreateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.CreateTableResult;
 import com.amazonaws.services.dynamodbv2.model.DeleteItemRequest;
@@ -29,10 +30,12 @@ import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
 import com.amazonaws.services.dynamodbv2.model.ListTablesRequest;
 import com.amazonaws.services.dynamodbv2.model.ListTablesResult;
 import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughput;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
 import com.amazonaws.services.dynamodbv2.model.PutItemRequest;
 import com.amazonaws.services.dynamodbv2.model.PutItemResult;
 import com.amazonaws.services.dynamodbv2.model.QueryRequest;
 import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
 import com.amazonaws.services.dynamodbv2.model.ScanRequest;
 import com.amazonaws.services.dynamodbv2.model.ScanResult;
 import com.amazonaws.services.dynamodbv2.model.UpdateItemRequest;
@@ -40,61 +43,300 @@ import com.amazonaws.services.dynamodbv2.model.UpdateItemResult;
 import com.amazonaws.services.dynamodbv2.model.UpdateTableRequest;
 import com.amazonaws.services.dynamodbv2.model.UpdateTableResult;
 import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Maps;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * AmazonDynamoDB decorator timing every item, batch, query and scan call.
+ *
+ * Metrics are named after the DAO class (klass) and the operation, e.g. "...TimelineDAODynamoDB.query",
+ * with a per-table breakdown under "...TimelineDAODynamoDB.query.{tableName}":
+ *  - timer of the call, per-table when the call touches a single table
+ *  - throttled: calls failing with ProvisionedThroughputExceededException
+ *  - items / bytes: histograms of the items sent or returned and their estimated size
+ *  - unprocessed: items or keys handed back by batch calls
+ *  - consumed-capacity-centiunits: consumed capacity in 1/100 units, only when consumed capacity is returned
+ *
+ * When returnConsumedCapacity is set, requests that don't ask for consumed capacity are sent with TOTAL,
+ * on a copy so the caller's request is never modified.
+ */
 public class InstrumentedDynamoDBClient implements AmazonDynamoDB {
 
+    // only used by clients created without a registry, nothing reports it
     static final MetricRegistry metrics = new MetricRegistry();
-    private final Timer getItem;
-    private final Timer putItem;
-    private final Timer deleteItem;
-    private final Timer batchGetItem;
-    private final Timer query;
+
+    private static final String ALL_TABLES = "all";
+
+    private static class TableMetrics {
+        final Timer timer;
+        final Meter throttled;
+        final Histogram items;
+        final Histogram bytes;
+        final Meter unprocessed;
+        final Meter consumedCapacity;
+
+        TableMetrics(final MetricRegistry registry, final String prefix) {
+            this.timer = registry.timer(prefix);
+            this.throttled = registry.meter(MetricRegistry.name(prefix, "throttled"));
+            this.items = registry.histogram(MetricRegistry.name(prefix, "items"));
+            this.bytes = registry.histogram(MetricRegistry.name(prefix, "bytes"));
+            this.unprocessed = registry.meter(MetricRegistry.name(prefix, "unprocessed"));
+            this.consumedCapacity = registry.meter(MetricRegistry.name(prefix, "consumed-capacity-centiunits"));
+        }
+    }
+
     private final AmazonDynamoDB client;
+    private final MetricRegistry registry;
+    private final Class<?> klass;
+    private final boolean returnConsumedCapacity;
+    private final ConcurrentMap<String, TableMetrics> tableMetrics = Maps.newConcurrentMap();
 
     public InstrumentedDynamoDBClient(final AmazonDynamoDB amazonDynamoDB, final Class<?> klass) {
+        this(amazonDynamoDB, klass, metrics, false);
+    }
 
+    /**
+     * @param registry application registry the metrics are reported from
+     * @param returnConsumedCapacity ask DynamoDB for the consumed capacity of every call that doesn't already
+     */
+    public InstrumentedDynamoDBClient(final AmazonDynamoDB amazonDynamoDB, final Class<?> klass,
+                                      final MetricRegistry registry, final boolean returnConsumedCapacity) {
         this.client = amazonDynamoDB;
-        this.getItem = metrics.timer(MetricRegistry.name(klass, "getItem"));
-        this.putItem = metrics.timer(MetricRegistry.name(klass, "putItem"));
-        this.deleteItem = metrics.timer(MetricRegistry.name(klass, "deleteItem"));
-        this.batchGetItem = metrics.timer(MetricRegistry.name(klass, "batchGetItem"));
-        this.query = metrics.timer(MetricRegistry.name(klass, "query"));
+        this.klass = klass;
+        this.registry = registry;
+        this.returnConsumedCapacity = returnConsumedCapacity;
     }
 
-    @Override
-    public GetItemResult getItem(GetItemRequest getItemRequest) throws AmazonServiceException, AmazonClientException {
-        final Timer.Context context = getItem.time();
+    private TableMetrics metrics(final String operation, final String tableName) {
+        final String key = operation + "/" + tableName;
+        final TableMetrics existing = tableMetrics.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        final String prefix = ALL_TABLES.equals(tableName)
+                ? MetricRegistry.name(klass, operation)
+                : MetricRegistry.name(klass, operation, tableName);
+        final TableMetrics created = new TableMetrics(registry, prefix);
+        final TableMetrics raced = tableMetrics.putIfAbsent(key, created);
+        return (raced == null) ? created : raced;
+    }
+
+    /**
+     * Times a single-table call, on both the operation timer and its per-table timer.
+     */
+    private <R> R timed(final String operation, final String tableName, final Call<R> call) {
+        final TableMetrics all = metrics(operation, ALL_TABLES);
+        final TableMetrics table = metrics(operation, tableName);
+        final Timer.Context allContext = all.timer.time();
+        final Timer.Context tableContext = table.timer.time();
         try {
-            return client.getItem(getItemRequest);
+            return call.call();
+        } catch (ProvisionedThroughputExceededException e) {
+            all.throttled.mark();
+            table.throttled.mark();
+            throw e;
         } finally {
-            context.stop();
+            tableContext.stop();
+            allContext.stop();
         }
     }
 
-    @Override
-    public PutItemResult putItem(PutItemRequest putItemRequest) throws AmazonServiceException, AmazonClientException {
-        final Timer.Context context = putItem.time();
+    /**
+     * Times a batch call, per table only when the batch targets a single table.
+     */
+    private <R> R timedBatch(final String operation, final Collection<String> tableNames, final Call<R> call) {
+        if (tableNames.size() == 1) {
+            return timed(operation, tableNames.iterator().next(), call);
+        }
+        final TableMetrics all = metrics(operation, ALL_TABLES);
+        final Timer.Context context = all.timer.time();
         try {
-            return client.putItem(putItemRequest);
+            return call.call();
+        } catch (ProvisionedThroughputExceededException e) {
+            all.throttled.mark();
+            for (final String tableName : tableNames) {
+                metrics(operation, tableName).throttled.mark();
+            }
+            throw e;
         } finally {
             context.stop();
         }
     }
 
-    @Override
-    public DeleteItemResult deleteItem(DeleteItemRequest deleteItemRequest) throws AmazonServiceException, AmazonClientException {
-        final Timer.Context context = deleteItem.time();
-        try {
-            return client.deleteItem(deleteItemRequest);
-        } finally {
-            context.stop();
+    private interface Call<R> {
+        R call();
+    }
+
+    private void recordItems(final String operation, final String tableName, final Collection<Map<String, AttributeValue>> items) {
+        final TableMetrics table = metrics(operation, tableName);
+        table.items.update(items.size());
+        table.bytes.update(estimateSize(items));
+    }
+
+    private void recordItem(final String operation, final String tableName, final Map<String, AttributeValue> item) {
+        final TableMetrics table = metrics(operation, tableName);
+        table.items.update((item == null) ? 0 : 1);
+        table.bytes.update((item == null) ? 0 : estimateSize(item));
+    }
+
+    private void recordConsumedCapacity(final String operation, final ConsumedCapacity consumedCapacity) {
+        if (consumedCapacity == null || consumedCapacity.getCapacityUnits() == null) {
+            return;
+        }
+        final long centiUnits = Math.round(consumedCapacity.getCapacityUnits() * 100.0);
+        metrics(operation, ALL_TABLES).consumedCapacity.mark(centiUnits);
+        if (consumedCapacity.getTableName() != null) {
+            metrics(operation, consumedCapacity.getTableName()).consumedCapacity.mark(centiUnits);
+        }
+    }
+
+    private void recordConsumedCapacity(final String operation, final List<ConsumedCapacity> consumedCapacities) {
+        if (consumedCapacities == null) {
+            return;
+        }
+        for (final ConsumedCapacity consumedCapacity : consumedCapacities) {
+            recordConsumedCapacity(operation, consumedCapacity);
+        }
+    }
+
+    private void recordUnprocessed(final String operation, final String tableName, final int count) {
+        if (count > 0) {
+            metrics(operation, ALL_TABLES).unprocessed.mark(count);
+            metrics(operation, tableName).unprocessed.mark(count);
         }
     }
 
+    private boolean shouldAskForConsumedCapacity(final String requested) {
+        return returnConsumedCapacity && requested == null;
+    }
+
+    //region size estimates
+    @VisibleForTesting
+    static long estimateSize(final Collection<Map<String, AttributeValue>> items) {
+        long size = 0L;
+        for (final Map<String, AttributeValue> item : items) {
+            size += estimateSize(item);
+        }
+        return size;
+    }
+
+    /**
+     * Approximation of DynamoDB's item size: attribute names plus values, UTF-8 strings and raw binary.
+     */
+    @VisibleForTesting
+    static long estimateSize(final Map<String, AttributeValue> item) {
+        long size = 0L;
+        for (final Map.Entry<String, AttributeValue> entry : item.entrySet()) {
+            size += utf8Length(entry.getKey()) + estimateSize(entry.getValue());
+        }
+        return size;
+    }
+
+    private static long estimateSize(final AttributeValue value) {
+        if (value == null) {
+            return 0L;
+        }
+        if (value.getS() != null) {
+            return utf8Length(value.getS());
+        }
+        if (value.getN() != null) {
+            return value.getN().length();
+        }
+        if (value.getB() != null) {
+            return value.getB().remaining();
+        }
+        if (value.getSS() != null) {
+            long size = 0L;
+            for (final String s : value.getSS()) {
+                size += utf8Length(s);
+            }
+            return size;
+        }
+        if (value.getNS() != null) {
+            long size = 0L;
+            for (final String n : value.getNS()) {
+                size += n.length();
+            }
+            return size;
+        }
+        if (value.getBS() != null) {
+            long size = 0L;
+            for (final ByteBuffer b : value.getBS()) {
+                size += b.remaining();
+            }
+            return size;
+        }
+        if (value.getM() != null) {
+            return estimateSize(value.getM());
+        }
+        if (value.getL() != null) {
+            long size = 0L;
+            for (final AttributeValue element : value.getL()) {
+                size += estimateSize(element);
+            }
+            return size;
+        }
+        return 1L; // BOOL, NULL
+    }
+
+    private static long utf8Length(final String s) {
+        return s.getBytes(StandardCharsets.UTF_8).length;
+    }
+    //endregion
+
+    @Override
+    public GetItemResult getItem(final GetItemRequest getItemRequest) throws AmazonServiceException, AmazonClientException {
+        final GetItemRequest request = shouldAskForConsumedCapacity(getItemRequest.getReturnConsumedCapacity())
+                ? getItemRequest.clone().withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                : getItemRequest;
+        final GetItemResult result = timed("getItem", getItemRequest.getTableName(), () -> client.getItem(request));
+        recordItem("getItem", getItemRequest.getTableName(), result.getItem());
+        recordConsumedCapacity("getItem", result.getConsumedCapacity());
+        return result;
+    }
+
+    @Override
+    public PutItemResult putItem(final PutItemRequest putItemRequest) throws AmazonServiceException, AmazonClientException {
+        final PutItemRequest request = shouldAskForConsumedCapacity(putItemRequest.getReturnConsumedCapacity())
+                ? putItemRequest.clone().withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                : putItemRequest;
+        final PutItemResult result = timed("putItem", putItemRequest.getTableName(), () -> client.putItem(request));
+        recordItem("putItem", putItemRequest.getTableName(), putItemRequest.getItem());
+        recordConsumedCapacity("putItem", result.getConsumedCapacity());
+        return result;
+    }
+
+    @Override
+    public DeleteItemResult deleteItem(final DeleteItemRequest deleteItemRequest) throws AmazonServiceException, AmazonClientException {
+        final DeleteItemRequest request = shouldAskForConsumedCapacity(deleteItemRequest.getReturnConsumedCapacity())
+                ? deleteItemRequest.clone().withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                : deleteItemRequest;
+        final DeleteItemResult result = timed("deleteItem", deleteItemRequest.getTableName(), () -> client.deleteItem(request));
+        recordConsumedCapacity("deleteItem", result.getConsumedCapacity());
+        return result;
+    }
+
+    @Override
+    public UpdateItemResult updateItem(final UpdateItemRequest updateItemRequest) throws AmazonServiceException, AmazonClientException {
+        final UpdateItemRequest request = shouldAskForConsumedCapacity(updateItemRequest.getReturnConsumedCapacity())
+                ? updateItemRequest.clone().withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                : updateItemRequest;
+        final UpdateItemResult result = timed("updateItem", updateItemRequest.getTableName(), () -> client.updateItem(request));
+        recordConsumedCapacity("updateItem", result.getConsumedCapacity());
+        return result;
+    }
+
     @Override
     public void setEndpoint(String s) throws IllegalArgumentException {
         client.setEndpoint(s);
@@ -106,8 +348,16 @@ public class InstrumentedDynamoDBClient implements AmazonDynamoDB {
     }
 
     @Override
-    public ScanResult scan(ScanRequest scanRequest) throws AmazonServiceException, AmazonClientException {
-        return client.scan(scanRequest);
+    public ScanResult scan(final ScanRequest scanRequest) throws AmazonServiceException, AmazonClientException {
+        final ScanRequest request = shouldAskForConsumedCapacity(scanRequest.getReturnConsumedCapacity())
+                ? scanRequest.clone().withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                : scanRequest;
+        final ScanResult result = timed("scan", scanRequest.getTableName(), () -> client.scan(request));
+        if (result.getItems() != null) {
+            recordItems("scan", scanRequest.getTableName(), result.getItems());
+        }
+        recordConsumedCapacity("scan", result.getConsumedCapacity());
+        return result;
     }
 
     @Override
@@ -121,8 +371,33 @@ public class InstrumentedDynamoDBClient implements AmazonDynamoDB {
     }
 
     @Override
-    public BatchWriteItemResult batchWriteItem(BatchWriteItemRequest batchWriteItemRequest) throws AmazonServiceException, AmazonClientException {
-        return client.batchWriteItem(batchWriteItemRequest);
+    public BatchWriteItemResult batchWriteItem(final BatchWriteItemRequest batchWriteItemRequest) throws AmazonServiceException, AmazonClientException {
+        final BatchWriteItemRequest request = shouldAskForConsumedCapacity(batchWriteItemRequest.getReturnConsumedCapacity())
+                ? batchWriteItemRequest.clone().withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                : batchWriteItemRequest;
+        final Map<String, List<WriteRequest>> requestItems = batchWriteItemRequest.getRequestItems();
+        final BatchWriteItemResult result = timedBatch("batchWriteItem", requestItems.keySet(), () -> client.batchWriteItem(request));
+
+        for (final Map.Entry<String, List<WriteRequest>> entry : requestItems.entrySet()) {
+            final TableMetrics table = metrics("batchWriteItem", entry.getKey());
+            long bytes = 0L;
+            for (final WriteRequest writeRequest : entry.getValue()) {
+                if (writeRequest.getPutRequest() != null) {
+                    bytes += estimateSize(writeRequest.getPutRequest().getItem());
+                } else if (writeRequest.getDeleteRequest() != null) {
+                    bytes += estimateSize(writeRequest.getDeleteRequest().getKey());
+                }
+            }
+            table.items.update(entry.getValue().size());
+            table.bytes.update(bytes);
+        }
+        if (result.getUnprocessedItems() != null) {
+            for (final Map.Entry<String, List<WriteRequest>> entry : result.getUnprocessedItems().entrySet()) {
+                recordUnprocessed("batchWriteItem", entry.getKey(), entry.getValue().size());
+            }
+        }
+        recordConsumedCapacity("batchWriteItem", result.getConsumedCapacity());
+        return result;
     }
 
     @Override
@@ -137,14 +412,16 @@ public class InstrumentedDynamoDBClient implements AmazonDynamoDB {
     }
 
     @Override
-    public QueryResult query(QueryRequest queryRequest) throws AmazonServiceException, AmazonClientException {
-        final Timer.Context context = query.time();
-        try {
-            return client.query(queryRequest);
-        }   finally {
-            context.stop();
+    public QueryResult query(final QueryRequest queryRequest) throws AmazonServiceException, AmazonClientException {
+        final QueryRequest request = shouldAskForConsumedCapacity(queryRequest.getReturnConsumedCapacity())
+                ? queryRequest.clone().withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                : queryRequest;
+        final QueryResult result = timed("query", queryRequest.getTableName(), () -> client.query(request));
+        if (result.getItems() != null) {
+            recordItems("query", queryRequest.getTableName(), result.getItems());
         }
-
+        recordConsumedCapacity("query", result.getConsumedCapacity());
+        return result;
     }
 
     @Override
@@ -153,13 +430,24 @@ public class InstrumentedDynamoDBClient implements AmazonDynamoDB {
     }
 
     @Override
-    public UpdateItemResult updateItem(UpdateItemRequest updateItemRequest) throws AmazonServiceException, AmazonClientException {
-        return client.updateItem(updateItemRequest);
-    }
+    public BatchGetItemResult batchGetItem(final BatchGetItemRequest batchGetItemRequest) throws AmazonServiceException, AmazonClientException {
+        final BatchGetItemRequest request = shouldAskForConsumedCapacity(batchGetItemRequest.getReturnConsumedCapacity())
+                ? batchGetItemRequest.clone().withReturnConsumedCapacity(ReturnConsumedCapacity.TOTAL)
+                : batchGetItemRequest;
+        final BatchGetItemResult result = timedBatch("batchGetItem", batchGetItemRequest.getRequestItems().keySet(), () -> client.batchGetItem(request));
 
-    @Override
-    public BatchGetItemResult batchGetItem(BatchGetItemRequest batchGetItemRequest) throws AmazonServiceException, AmazonClientException {
-        return client.batchGetItem(batchGetItemRequest);
+        if (result.getResponses() != null) {
+            for (final Map.Entry<String, List<Map<String, AttributeValue>>> entry : result.getResponses().entrySet()) {
+                recordItems("batchGetItem", entry.getKey(), entry.getValue());
+            }
+        }
+        if (result.getUnprocessedKeys() != null) {
+            for (final Map.Entry<String, KeysAndAttributes> entry : result.getUnprocessedKeys().entrySet()) {
+                recordUnprocessed("batchGetItem", entry.getKey(), entry.getValue().getKeys().size());
+            }
+        }
+        recordConsumedCapacity("batchGetItem", result.getConsumedCapacity());
+        return result;
     }
 
     @Override
@@ -169,17 +457,17 @@ public class InstrumentedDynamoDBClient implements AmazonDynamoDB {
 
     @Override
     public ScanResult scan(String tableName, List<String> attributesToGet) throws AmazonServiceException, AmazonClientException {
-        return client.scan(tableName, attributesToGet);
+        return scan(new ScanRequest().withTableName(tableName).withAttributesToGet(attributesToGet));
     }
 
     @Override
     public ScanResult scan(String tableName, Map<String,Condition> scanFilter) throws AmazonServiceException, AmazonClientException {
-        return client.scan(tableName, scanFilter);
+        return scan(new ScanRequest().withTableName(tableName).withScanFilter(scanFilter));
     }
 
     @Override
     public ScanResult scan(String tableName, List<String> attributesToGet, Map<String,Condition> scanFilter) throws AmazonServiceException, AmazonClientException {
-        return client.scan(tableName, attributesToGet, scanFilter);
+        return scan(new ScanRequest().withTableName(tableName).withAttributesToGet(attributesToGet).withScanFilter(scanFilter));
     }
 
     @Override
@@ -194,7 +482,7 @@ public class InstrumentedDynamoDBClient implements AmazonDynamoDB {
 
     @Override
     public BatchWriteItemResult batchWriteItem(Map<String,List<WriteRequest>> requestItems) throws AmazonServiceException, AmazonClientException {
-        return client.batchWriteItem(requestItems);
+        return batchWriteItem(new BatchWriteItemRequest().withRequestItems(requestItems));
     }
 
     @Override
@@ -204,22 +492,22 @@ public class InstrumentedDynamoDBClient implements AmazonDynamoDB {
 
     @Override
     public GetItemResult getItem(String tableName, Map<String,AttributeValue> key) throws AmazonServiceException, AmazonClientException {
-        return client.getItem(tableName, key);
+        return getItem(new GetItemRequest().withTableName(tableName).withKey(key));
     }
 
     @Override
     public GetItemResult getItem(String tableName, Map<String,AttributeValue> key, Boolean consistentRead) throws AmazonServiceException, AmazonClientException {
-        return client.getItem(tableName, key, consistentRead);
+        return getItem(new GetItemRequest().withTableName(tableName).withKey(key).withConsistentRead(consistentRead));
     }
 
     @Override
     public DeleteItemResult deleteItem(String tableName, Map<String,AttributeValue> key) throws AmazonServiceException, AmazonClientException {
-        return client.deleteItem(tableName, key);
+        return deleteItem(new DeleteItemRequest().withTableName(tableName).withKey(key));
     }
 
     @Override
     public DeleteItemResult deleteItem(String tableName, Map<String,AttributeValue> key, String returnValues) throws AmazonServiceException, AmazonClientException {
-        return client.deleteItem(tableName, key, returnValues);
+        return deleteItem(new DeleteItemRequest().withTableName(tableName).withKey(key).withReturnValues(returnValues));
     }
 
     @Override
@@ -229,12 +517,12 @@ public class InstrumentedDynamoDBClient implements AmazonDynamoDB {
 
     @Override
     public PutItemResult putItem(String tableName, Map<String,AttributeValue> item) throws AmazonServiceException, AmazonClientException {
-        return client.putItem(tableName, item);
+        return putItem(new PutItemRequest().withTableName(tableName).withItem(item));
     }
 
     @Override
     public PutItemResult putItem(String tableName, Map<String,AttributeValue> item, String returnValues) throws AmazonServiceException, AmazonClientException {
-        return client.putItem(tableName, item, returnValues);
+        return putItem(new PutItemRequest().withTableName(tableName).withItem(item).withReturnValues(returnValues));
     }
 
     @Override
@@ -254,27 +542,22 @@ public class InstrumentedDynamoDBClient implements AmazonDynamoDB {
 
     @Override
     public UpdateItemResult updateItem(String tableName, Map<String,AttributeValue> key, Map<String,AttributeValueUpdate> attributeUpdates) throws AmazonServiceException, AmazonClientException {
-        return client.updateItem(tableName, key, attributeUpdates);
+        return updateItem(new UpdateItemRequest().withTableName(tableName).withKey(key).withAttributeUpdates(attributeUpdates));
     }
 
     @Override
     public UpdateItemResult updateItem(String tableName, Map<String,AttributeValue> key, Map<String,AttributeValueUpdate> attributeUpdates, String returnValues) throws AmazonServiceException, AmazonClientException {
-        return client.updateItem(tableName, key, attributeUpdates, returnValues);
+        return updateItem(new UpdateItemRequest().withTableName(tableName).withKey(key).withAttributeUpdates(attributeUpdates).withReturnValues(returnValues));
     }
 
     @Override
     public BatchGetItemResult batchGetItem(Map<String,KeysAndAttributes> requestItems, String returnConsumedCapacity) throws AmazonServiceException, AmazonClientException {
-        return client.batchGetItem(requestItems, returnConsumedCapacity);
+        return batchGetItem(new BatchGetItemRequest().withRequestItems(requestItems).withReturnConsumedCapacity(returnConsumedCapacity));
     }
 
     @Override
     public BatchGetItemResult batchGetItem(Map<String, KeysAndAttributes> requestItems) throws AmazonServiceException, AmazonClientException {
-        final Timer.Context context = batchGetItem.time();
-        try {
-            return client.batchGetItem(requestItems);
-        } finally {
-            context.stop();
-        }
+        return batchGetItem(new BatchGetItemRequest().withRequestItems(requestItems));
     }
 
     @Override
@@ -0,0 +1,26 @@
+package com.hello.suripu.coredropwizard.metrics;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.hello.suripu.core.logging.BufferedKinesisLogger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Exports the buffer depth, counters and latency of a BufferedKinesisLogger as gauges
+ */
+public class KinesisLoggerGauges {
+
+    private KinesisLoggerGauges() {}
+
+    public static void register(final MetricRegistry metrics, final String streamName, final BufferedKinesisLogger logger) {
+        metrics.register(name(BufferedKinesisLogger.class, streamName, "buffer-depth"), (Gauge<Integer>) () -> logger.stats().bufferDepth);
+        metrics.register(name(BufferedKinesisLogger.class, streamName, "enqueued"), (Gauge<Long>) () -> logger.stats().enqueued);
+        metrics.register(name(BufferedKinesisLogger.class, streamName, "sent"), (Gauge<Long>) () -> logger.stats().sent);
+        metrics.register(name(BufferedKinesisLogger.class, streamName, "dropped"), (Gauge<Long>) () -> logger.stats().dropped);
+        metrics.register(name(BufferedKinesisLogger.class, streamName, "failed"), (Gauge<Long>) () -> logger.stats().failed);
+        metrics.register(name(BufferedKinesisLogger.class, streamName, "retried"), (Gauge<Long>) () -> logger.stats().retried);
+        metrics.register(name(BufferedKinesisLogger.class, streamName, "batches"), (Gauge<Long>) () -> logger.stats().batches);
+        metrics.register(name(BufferedKinesisLogger.class, streamName, "latency-millis"), (Gauge<Long>) () -> logger.stats().lastBatchLatencyMillis);
+    }
+}
@@ -3,6 +3,7 @@ package com.hello.suripu.coredropwizard.oauth.stores;
 import com.google.common.base.Optional;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
 
 import com.hello.suripu.coredropwizard.oauth.AccessToken;
@@ -43,20 +44,22 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
     private static final Long PASSWORD_GRANT_ACCESS_EXPIRATION_TIME_IN_SECONDS = 86400L * 365; // 365 days
     private static final Logger LOGGER = LoggerFactory.getLogger(com.hello.suripu.core.oauth.stores.PersistentAccessTokenStore.class);
 
-    final LoadingCache<String, Optional<AccessToken>> cache;
+    private static final Long DEFAULT_TOKEN_CACHE_EXPIRE_AFTER_IN_SECONDS = 60L;
+    private static final Long MAX_CACHED_TOKENS = 100000L;
 
-    // This is called by the cache when it doesn't contain the key
-    final CacheLoader loader = new CacheLoader<String, Optional<AccessToken>>() {
-        public Optional<AccessToken> load(final String dirtyToken) throws MissingRequiredScopeException {
-            LOGGER.debug("{} not in cache, fetching from DB", dirtyToken);
-            return fromDB(dirtyToken, false);
-        }
-    };
+    final LoadingCache<UUID, Optional<AccessToken>> cache;
 
     public PersistentAccessTokenStore(final AccessTokenDAO accessTokenDAO, final ApplicationStore<Application, ApplicationRegistration> applicationStore, final AuthorizationCodeDAO authCodeDAO) {
         this(accessTokenDAO, applicationStore,  authCodeDAO, ACCESS_EXPIRATION_TIME_IN_SECONDS);
     }
 
+    public PersistentAccessTokenStore(
+            final AccessTokenDAO accessTokenDAO,
+            final ApplicationStore<Application, ApplicationRegistration> applicationStore,
+            final AuthorizationCodeDAO authCodeDAO,
+            final Long expirationTimeInSeconds) {
+        this(accessTokenDAO, applicationStore, authCodeDAO, expirationTimeInSeconds, DEFAULT_TOKEN_CACHE_EXPIRE_AFTER_IN_SECONDS);
+    }
 
     /**
      * Default constructor for PersistentAccessTokenStore
@@ -64,21 +67,34 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
      * @param accessTokenDAO where we store or retrieve access tokens from
      * @param applicationStore
      * @param expirationTimeInSeconds
+     * @param tokenCacheExpireAfterInSeconds how long a token read from accessTokenDAO is trusted for
      */
     public PersistentAccessTokenStore(
             final AccessTokenDAO accessTokenDAO,
             final ApplicationStore<Application, ApplicationRegistration> applicationStore,
             final AuthorizationCodeDAO authCodeDAO,
-            final Long expirationTimeInSeconds) {
+            final Long expirationTimeInSeconds,
+            final Long tokenCacheExpireAfterInSeconds) {
         this.accessTokenDAO = accessTokenDAO;
         this.applicationStore = applicationStore;
         this.authCodeDAO = authCodeDAO;
         this.expirationTimeInSeconds = expirationTimeInSeconds;
 
-        // TODO: get expiration from Config
         this.cache = CacheBuilder.newBuilder()
-                .expireAfterWrite(60, TimeUnit.SECONDS)
-                .build(loader);
+                .maximumSize(MAX_CACHED_TOKENS)
+                .expireAfterWrite(tokenCacheExpireAfterInSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build(new CacheLoader<UUID, Optional<AccessToken>>() {
+                    @Override
+                    public Optional<AccessToken> load(final UUID tokenUUID) {
+                        LOGGER.debug("{} not in cache, fetching from DB", tokenUUID);
+                        return accessTokenDAO.getByAccessToken(tokenUUID);
+                    }
+                });
+    }
+
+    public CacheStats cacheStats() {
+        return cache.stats();
     }
 
     /**
@@ -158,7 +174,13 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
     }
 
     public Optional<AccessToken> getAccessTokenByToken(final String dirtyToken, final DateTime now) throws MissingRequiredScopeException {
-        final Optional<AccessToken> token = cache.getUnchecked(dirtyToken);
+        final Optional<UUID> optionalTokenUUID = AccessTokenUtils.cleanUUID(dirtyToken);
+        if(!optionalTokenUUID.isPresent()) {
+            LOGGER.warn("warning=invalid_token_format token={}", dirtyToken);
+            return Optional.absent();
+        }
+
+        final Optional<AccessToken> token = checkAppId(dirtyToken, cache.getUnchecked(optionalTokenUUID.get()));
         if(!token.isPresent()) {
             return Optional.absent();
         }
@@ -244,6 +266,7 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
     @Override
     public void disable(final AccessToken accessToken) {
         accessTokenDAO.disable(accessToken.token);
+        cache.invalidate(accessToken.token);
     }
 
     @Override
@@ -253,6 +276,10 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
             LOGGER.error("error=invalid_refresh_token token={}", dirtyToken);
         }
         accessTokenDAO.disableByRefreshToken(optionalToken.get());
+
+        // the cache is keyed by access token, so look for the one issued with this refresh token
+        final UUID refreshToken = optionalToken.get();
+        cache.asMap().values().removeIf(token -> token.isPresent() && refreshToken.equals(token.get().refreshToken));
     }
 
 
@@ -300,8 +327,12 @@ public class PersistentAccessTokenStore implements OAuthTokenStore<AccessToken,
             accessTokenOptional = accessTokenDAO.getByAccessToken(tokenUUID);
         }
 
+        return checkAppId(dirtyToken, accessTokenOptional);
+    }
+
+    private Optional<AccessToken> checkAppId(final String dirtyToken, final Optional<AccessToken> accessTokenOptional) {
         if(!accessTokenOptional.isPresent()) {
-            LOGGER.warn("warning=token_not_found token={}", tokenUUID);
+            LOGGER.warn("warning=token_not_found token={}", dirtyToken);
             return Optional.absent();
         }
 
@@ -1,10 +1,12 @@
 package com.hello.suripu.coredropwizard.timeline;
 
 import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.hello.suripu.algorithm.sleep.SleepEvents;
 import com.hello.suripu.core.algorithmintegration.AlgorithmConfiguration;
@@ -54,6 +56,7 @@ import com.hello.suripu.core.models.SleepScore;
 import com.hello.suripu.core.models.SleepScoreParameters;
 import com.hello.suripu.core.models.SleepSegment;
 import com.hello.suripu.core.models.SleepStats;
+import com.hello.suripu.core.models.TimeZoneHistory;
 import com.hello.suripu.core.models.Timeline;
 import com.hello.suripu.core.models.TimelineFeedback;
 import com.hello.suripu.core.models.TimelineResult;
@@ -85,6 +88,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -121,7 +125,16 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
 
     private final AlgorithmFactory algorithmFactory;
 
+    private final TimelineDataFetcher dataFetcher;
+    private final TimelineDataFetcher sleepPeriodEvaluator;
+
+    // prefetched nights' reads, oldest first, see prefetch. A copy is used by one thread at a time
+    private final LinkedList<PrefetchedNightRead> prefetchedNightReads = Lists.newLinkedList();
+    private Optional<SensorDataReads> prefetchedSensorDataReads = Optional.absent();
+
     protected Histogram scoreDiff;
+    private final Meter speculativeSleepPeriodsUsed;
+    private final Meter speculativeSleepPeriodsReevaluated;
 
     public final static int MIN_TRACKER_MOTION_COUNT = 20;
     public final static int MIN_TRACKER_MOTION_COUNT_LOWER_THRESHOLD = 9;
@@ -136,6 +149,8 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
     final static long DOMINANT_GROUP_DURATION_ALL_PERIODS = (long) (DateTimeConstants.MILLIS_PER_HOUR * 36.0); //num hours in a motion group for full day sensor data
 
     private final static int MIN_NUM_EVENTS = 4;
+    // the night being retrieved and the one after it
+    private final static int MAX_PREFETCHED_NIGHTS = 2;
 
     static public InstrumentedTimelineProcessorV3 createTimelineProcessor(final PillDataReadDAO pillDataDAODynamoDB,
                                                                         final DeviceReadDAO deviceDAO,
@@ -156,11 +171,75 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
                                                                         final Map<AlgorithmType, NeuralNetEndpoint> neuralNetEndpoints,
                                                                         final AlgorithmConfiguration algorithmConfiguration,
                                                                         final MetricRegistry metrics) {
+        return createTimelineProcessor(pillDataDAODynamoDB, deviceDAO, deviceDataDAODynamoDB, ringTimeHistoryDAODynamoDB,
+                feedbackDAO, sleepHmmDAO, accountDAO, sleepStatsDAODynamoDB, mainEventTimesDAO, senseDataDAO, timeZoneHistoryDAO,
+                priorsDAO, featureExtractionModelsDAO, defaultModelEnsembleDAO, userTimelineTestGroupDAO, sleepScoreParametersDAO,
+                neuralNetEndpoints, algorithmConfiguration, metrics, TimelineDataFetcher.serial());
+    }
+
+    /**
+     * Same as above, reads needed to build the timeline are issued through dataFetcher
+     * (see TimelineDataFetcher.concurrent to overlap them on a bounded pool)
+     */
+    static public InstrumentedTimelineProcessorV3 createTimelineProcessor(final PillDataReadDAO pillDataDAODynamoDB,
+                                                                        final DeviceReadDAO deviceDAO,
+                                                                        final DeviceDataReadAllSensorsDAO deviceDataDAODynamoDB,
+                                                                        final RingTimeHistoryReadDAO ringTimeHistoryDAODynamoDB,
+                                                                        final FeedbackReadDAO feedbackDAO,
+                                                                        final SleepHmmDAO sleepHmmDAO,
+                                                                        final AccountReadDAO accountDAO,
+                                                                        final SleepStatsDAO sleepStatsDAODynamoDB,
+                                                                        final MainEventTimesDAO mainEventTimesDAO,
+                                                                        final SenseDataDAO senseDataDAO,
+                                                                        final TimeZoneHistoryDAO timeZoneHistoryDAO,
+                                                                        final OnlineHmmModelsDAO priorsDAO,
+                                                                        final FeatureExtractionModelsDAO featureExtractionModelsDAO,
+                                                                        final DefaultModelEnsembleDAO defaultModelEnsembleDAO,
+                                                                        final UserTimelineTestGroupDAO userTimelineTestGroupDAO,
+                                                                        final SleepScoreParametersDAO sleepScoreParametersDAO,
+                                                                        final Map<AlgorithmType, NeuralNetEndpoint> neuralNetEndpoints,
+                                                                        final AlgorithmConfiguration algorithmConfiguration,
+                                                                        final MetricRegistry metrics,
+                                                                        final TimelineDataFetcher dataFetcher) {
+        return createTimelineProcessor(pillDataDAODynamoDB, deviceDAO, deviceDataDAODynamoDB, ringTimeHistoryDAODynamoDB,
+                feedbackDAO, sleepHmmDAO, accountDAO, sleepStatsDAODynamoDB, mainEventTimesDAO, senseDataDAO, timeZoneHistoryDAO,
+                priorsDAO, featureExtractionModelsDAO, defaultModelEnsembleDAO, userTimelineTestGroupDAO, sleepScoreParametersDAO,
+                neuralNetEndpoints, algorithmConfiguration, metrics, dataFetcher, TimelineDataFetcher.serial());
+    }
+
+    /**
+     * Same as above, sleep periods are evaluated speculatively on sleepPeriodEvaluator when timeline_parallel_sleep_periods is on
+     * and sleepPeriodEvaluator is concurrent (see TimelineDataFetcher.newEvaluationExecutor).
+     * Its timeout bounds the wait on one speculative sleep period, the period is evaluated again on the calling thread past it.
+     */
+    static public InstrumentedTimelineProcessorV3 createTimelineProcessor(final PillDataReadDAO pillDataDAODynamoDB,
+                                                                        final DeviceReadDAO deviceDAO,
+                                                                        final DeviceDataReadAllSensorsDAO deviceDataDAODynamoDB,
+                                                                        final RingTimeHistoryReadDAO ringTimeHistoryDAODynamoDB,
+                                                                        final FeedbackReadDAO feedbackDAO,
+                                                                        final SleepHmmDAO sleepHmmDAO,
+                                                                        final AccountReadDAO accountDAO,
+                                                                        final SleepStatsDAO sleepStatsDAODynamoDB,
+                                                                        final MainEventTimesDAO mainEventTimesDAO,
+                                                                        final SenseDataDAO senseDataDAO,
+                                                                        final TimeZoneHistoryDAO timeZoneHistoryDAO,
+                                                                        final OnlineHmmModelsDAO priorsDAO,
+                                                                        final FeatureExtractionModelsDAO featureExtractionModelsDAO,
+                                                                        final DefaultModelEnsembleDAO defaultModelEnsembleDAO,
+                                                                        final UserTimelineTestGroupDAO userTimelineTestGroupDAO,
+                                                                        final SleepScoreParametersDAO sleepScoreParametersDAO,
+                                                                        final Map<AlgorithmType, NeuralNetEndpoint> neuralNetEndpoints,
+                                                                        final AlgorithmConfiguration algorithmConfiguration,
+                                                                        final MetricRegistry metrics,
+                                                                        final TimelineDataFetcher dataFetcher,
+                                                                        final TimelineDataFetcher sleepPeriodEvaluator) {
         final LoggerWithSessionId logger = new LoggerWithSessionId(STATIC_LOGGER);
 
         final AlgorithmFactory algorithmFactory = AlgorithmFactory.create(sleepHmmDAO, priorsDAO, defaultModelEnsembleDAO, featureExtractionModelsDAO, neuralNetEndpoints, algorithmConfiguration, Optional.<UUID>absent());
 
         final Histogram scoreDiff = metrics.histogram(name(InstrumentedTimelineProcessorV3.class, "sleep-score-diff"));
+        final Meter speculativeSleepPeriodsUsed = metrics.meter(name(InstrumentedTimelineProcessorV3.class, "speculative-sleep-periods-used"));
+        final Meter speculativeSleepPeriodsReevaluated = metrics.meter(name(InstrumentedTimelineProcessorV3.class, "speculative-sleep-periods-reevaluated"));
 
         return new InstrumentedTimelineProcessorV3(pillDataDAODynamoDB,
                 deviceDAO, deviceDataDAODynamoDB, ringTimeHistoryDAODynamoDB,
@@ -172,12 +251,16 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
                 userTimelineTestGroupDAO,
                 sleepScoreParametersDAO,
                 algorithmFactory,
-                scoreDiff);
+                dataFetcher,
+                sleepPeriodEvaluator,
+                scoreDiff,
+                speculativeSleepPeriodsUsed,
+                speculativeSleepPeriodsReevaluated);
     }
 
     public InstrumentedTimelineProcessorV3 copyMeWithNewUUID(final UUID uuid) {
 
-        return new InstrumentedTimelineProcessorV3(pillDataDAODynamoDB, deviceDAO, deviceDataDAODynamoDB, ringTimeHistoryDAODynamoDB, feedbackDAO, sleepHmmDAO, accountDAO, sleepStatsDAODynamoDB, mainEventTimesDAO, senseDataDAO, timeZoneHistoryDAO, Optional.of(uuid), userTimelineTestGroupDAO, sleepScoreParametersDAO, algorithmFactory.cloneWithNewUUID(Optional.of(uuid)), scoreDiff);
+        return new InstrumentedTimelineProcessorV3(pillDataDAODynamoDB, deviceDAO, deviceDataDAODynamoDB, ringTimeHistoryDAODynamoDB, feedbackDAO, sleepHmmDAO, accountDAO, sleepStatsDAODynamoDB, mainEventTimesDAO, senseDataDAO, timeZoneHistoryDAO, Optional.of(uuid), userTimelineTestGroupDAO, sleepScoreParametersDAO, algorithmFactory.cloneWithNewUUID(Optional.of(uuid)), dataFetcher, sleepPeriodEvaluator, scoreDiff, speculativeSleepPeriodsUsed, speculativeSleepPeriodsReevaluated);
 
     }
 
@@ -198,7 +281,11 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
                                           final UserTimelineTestGroupDAO userTimelineTestGroupDAO,
                                           final SleepScoreParametersDAO sleepScoreParametersDAO,
                                           final AlgorithmFactory algorithmFactory,
-                                          final Histogram scoreDiff) {
+                                          final TimelineDataFetcher dataFetcher,
+                                          final TimelineDataFetcher sleepPeriodEvaluator,
+                                          final Histogram scoreDiff,
+                                          final Meter speculativeSleepPeriodsUsed,
+                                          final Meter speculativeSleepPeriodsReevaluated) {
         this.pillDataDAODynamoDB = pillDataDAODynamoDB;
         this.deviceDAO = deviceDAO;
         this.deviceDataDAODynamoDB = deviceDataDAODynamoDB;
@@ -213,12 +300,16 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
         this.userTimelineTestGroupDAO = userTimelineTestGroupDAO;
         this.sleepScoreParametersDAO = sleepScoreParametersDAO;
         this.algorithmFactory = algorithmFactory;
+        this.dataFetcher = dataFetcher;
+        this.sleepPeriodEvaluator = sleepPeriodEvaluator;
         timelineUtils = new TimelineUtils(uuid);
         timelineSafeguards = new TimelineSafeguards(uuid);
         feedbackUtils = new FeedbackUtils(uuid);
         partnerDataUtils = new PartnerDataUtils(uuid);
         this.LOGGER = new LoggerWithSessionId(STATIC_LOGGER, uuid);
         this.scoreDiff = scoreDiff;
+        this.speculativeSleepPeriodsUsed = speculativeSleepPeriodsUsed;
+        this.speculativeSleepPeriodsReevaluated = speculativeSleepPeriodsReevaluated;
     }
 
     private Long getTestGroup(final Long accountId, final DateTime targetDateLocalUTC, final int timezoneOffsetMillis) {
@@ -235,6 +326,119 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
         return TimelineLog.DEFAULT_TEST_GROUP;
     }
 
+    /**
+     * Starts the time zone history and sensor data reads of retrieveTimelinesFast(accountId, queryDate) for the night,
+     * so they overlap with whatever this copy computes before that call. They do not depend on anything a timeline saves.
+     * A prefetched night is only used by the night asking for the same time zone history read, and other prefetched
+     * nights stay pending, so the next night can be prefetched before the current one is retrieved.
+     * At most MAX_PREFETCHED_NIGHTS are kept, the oldest one is cancelled. No-op for serial data fetchers.
+     */
+    public void prefetch(final Long accountId, final DateTime queryDate) {
+        if (!dataFetcher.isConcurrent()) {
+            return;
+        }
+
+        // same windows as retrieveTimelineForAllSleepPeriods and retrieveTimelineForSingleSleepPeriod
+        final boolean allSleepPeriods = useTimelineSleepPeriods(accountId);
+        final DateTime timeZoneHistoryEnd = allSleepPeriods ? queryDate.plusHours(44) : queryDate.withTimeAtStartOfDay().plusHours(44);
+
+        final Optional<PrefetchedNightRead> replaced = takePrefetchedNightRead(accountId, timeZoneHistoryEnd);
+        if (replaced.isPresent()) {
+            replaced.get().read.cancel();
+        }
+        while (prefetchedNightReads.size() >= MAX_PREFETCHED_NIGHTS) {
+            prefetchedNightReads.removeFirst().read.cancel();
+        }
+        prefetchedNightReads.addLast(new PrefetchedNightRead(accountId, timeZoneHistoryEnd,
+                dataFetcher.read("prefetch", () -> prefetchNight(accountId, queryDate, allSleepPeriods, timeZoneHistoryEnd))));
+    }
+
+    private Optional<PrefetchedNightRead> takePrefetchedNightRead(final long accountId, final DateTime timeZoneHistoryEnd) {
+        final Iterator<PrefetchedNightRead> iterator = prefetchedNightReads.iterator();
+        while (iterator.hasNext()) {
+            final PrefetchedNightRead prefetchedNightRead = iterator.next();
+            if (prefetchedNightRead.accountId == accountId && prefetchedNightRead.timeZoneHistoryEnd.equals(timeZoneHistoryEnd)) {
+                iterator.remove();
+                return Optional.of(prefetchedNightRead);
+            }
+        }
+        return Optional.absent();
+    }
+
+    private Optional<PrefetchedNight> prefetchNight(final Long accountId, final DateTime queryDate, final boolean allSleepPeriods, final DateTime timeZoneHistoryEnd) {
+        final List<TimeZoneHistory> timeZoneHistory = timeZoneHistoryDAO.getMostRecentTimeZoneHistory(accountId, timeZoneHistoryEnd, TIMEZONE_HISTORY_LIMIT);
+
+        final TimeZoneOffsetMap timeZoneOffsetMap = TimeZoneOffsetMap.createFromTimezoneHistoryList(timeZoneHistory);
+        final DateTime currentTimeLocal = timeZoneOffsetMap.getCurrentLocalDateTimeWithUTCDefault();
+        final DateTime startTimeLocalUTC;
+        final DateTime endTimeLocalUTC;
+        if (allSleepPeriods) {
+            final DateTime targetDate = timelineUtils.getTargetDate(isDaySleeper(accountId), queryDate, currentTimeLocal, Optional.<Integer>absent(), timeZoneOffsetMap);
+            final List<SleepPeriod> sleepPeriodQueue = SleepPeriod.getSleepPeriodQueue(targetDate, currentTimeLocal);
+            if (sleepPeriodQueue.isEmpty()) {
+                return Optional.of(new PrefetchedNight(timeZoneHistory, Optional.<SensorDataReads>absent()));
+            }
+            startTimeLocalUTC = sleepPeriodQueue.get(0).getSleepPeriodTime(SleepPeriod.Boundary.START, 0);
+            endTimeLocalUTC = sleepPeriodQueue.get(sleepPeriodQueue.size() - 1).getSleepPeriodTime(SleepPeriod.Boundary.END_DATA, 0);
+        } else {
+            final DateTime targetDate = timelineUtils.getTargetDate(false, queryDate, currentTimeLocal, Optional.<Integer>absent(), timeZoneOffsetMap);
+            final SleepPeriod sleepPeriod = SleepPeriod.createSleepPeriod(SleepPeriod.Period.NIGHT, targetDate);
+            startTimeLocalUTC = sleepPeriod.getSleepPeriodTime(SleepPeriod.Boundary.START, 0);
+            endTimeLocalUTC = sleepPeriod.getSleepPeriodTime(SleepPeriod.Boundary.END_DATA, 0);
+        }
+
+        final SensorDataReads sensorDataReads = new SensorDataReads(accountId, startTimeLocalUTC, endTimeLocalUTC, DateTime.now(DateTimeZone.UTC), expectedOffsetMillis(timeZoneOffsetMap, startTimeLocalUTC));
+        return Optional.of(new PrefetchedNight(timeZoneHistory, Optional.of(sensorDataReads)));
+    }
+
+    private static class PrefetchedNightRead {
+        private final long accountId;
+        private final DateTime timeZoneHistoryEnd;
+        private final TimelineDataFetcher.Read<Optional<PrefetchedNight>> read;
+
+        private PrefetchedNightRead(final long accountId, final DateTime timeZoneHistoryEnd, final TimelineDataFetcher.Read<Optional<PrefetchedNight>> read) {
+            this.accountId = accountId;
+            this.timeZoneHistoryEnd = timeZoneHistoryEnd;
+            this.read = read;
+        }
+    }
+
+    private static class PrefetchedNight {
+        private final List<TimeZoneHistory> timeZoneHistory;
+        private final Optional<SensorDataReads> sensorDataReads;
+
+        private PrefetchedNight(final List<TimeZoneHistory> timeZoneHistory, final Optional<SensorDataReads> sensorDataReads) {
+            this.timeZoneHistory = timeZoneHistory;
+            this.sensorDataReads = sensorDataReads;
+        }
+    }
+
+    /**
+     * Prefetched time zone history if there is one for the same read, which also makes its sensor data reads available
+     */
+    private List<TimeZoneHistory> getTimeZoneHistory(final Long accountId, final DateTime end) {
+        Optional<PrefetchedNight> prefetchedNight = Optional.absent();
+        final Optional<PrefetchedNightRead> prefetchedNightRead = takePrefetchedNightRead(accountId, end);
+        if (prefetchedNightRead.isPresent()) {
+            try {
+                prefetchedNight = prefetchedNightRead.get().read.get();
+            } catch (TimelineReadException e) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                LOGGER.warn("error=prefetch-failed account_id={} message={}", accountId, e.getMessage());
+            } catch (RuntimeException e) {
+                LOGGER.warn("error=prefetch-failed account_id={} message={}", accountId, e.getMessage());
+            }
+        }
+
+        if (prefetchedNight.isPresent()) {
+            prefetchedSensorDataReads = prefetchedNight.get().sensorDataReads;
+            return prefetchedNight.get().timeZoneHistory;
+        }
+        return timeZoneHistoryDAO.getMostRecentTimeZoneHistory(accountId, end, TIMEZONE_HISTORY_LIMIT);
+    }
+
     public TimelineResult retrieveTimelinesFast(final Long accountId, final DateTime queryDate,final Optional<Integer> queryHourOptional, final Optional<TimelineFeedback> newFeedback) {
 
         if (useTimelineSleepPeriods(accountId)) {
@@ -246,7 +450,7 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
 
     public TimelineResult retrieveTimelineForSingleSleepPeriod(final Long accountId, final DateTime queryDate,final Optional<Integer> queryHourOptional, final SleepPeriod.Period period, final Optional<Long> previousOutOfBedTimeOptional, final Optional<TimelineFeedback> newFeedback) {
 
-        final TimeZoneOffsetMap timeZoneOffsetMap = TimeZoneOffsetMap.createFromTimezoneHistoryList(timeZoneHistoryDAO.getMostRecentTimeZoneHistory(accountId, queryDate.withTimeAtStartOfDay().plusHours(44), TIMEZONE_HISTORY_LIMIT)); //END time UTC - add 12 hours to ensure entire night is within query window
+        final TimeZoneOffsetMap timeZoneOffsetMap = TimeZoneOffsetMap.createFromTimezoneHistoryList(getTimeZoneHistory(accountId, queryDate.withTimeAtStartOfDay().plusHours(44))); //END time UTC - add 12 hours to ensure entire night is within query window
         final DateTime currentTimeUTC = DateTime.now().withZone(DateTimeZone.UTC);
         final DateTime currentTimeLocal = timeZoneOffsetMap.getCurrentLocalDateTimeWithUTCDefault();
         final DateTime targetDate = timelineUtils.getTargetDate(false, queryDate, currentTimeLocal, queryHourOptional, timeZoneOffsetMap);
@@ -257,7 +461,7 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
 
         LOGGER.info("action=get_timeline date={} account_id={} start_time={} end_time={} time_zone={}", targetDate.toDate(), accountId, startTimeLocalUTC, endTimeLocalUTC, timeZoneOffsetMap.getTimeZoneIdWithUTCDefault(targetDate.getMillis()));
 
-        final Optional<OneDaysSensorData> sensorDataOptional = getSensorData(accountId, startTimeLocalUTC, endTimeLocalUTC, currentTimeUTC, newFeedback);
+        final Optional<OneDaysSensorData> sensorDataOptional = getSensorData(accountId, startTimeLocalUTC, endTimeLocalUTC, currentTimeUTC, newFeedback, expectedOffsetMillis(timeZoneOffsetMap, startTimeLocalUTC));
 
         if (!sensorDataOptional.isPresent()) {
             LOGGER.info("account_id = {} and day = {}", accountId, startTimeLocalUTC);
@@ -286,7 +490,7 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
 
     public TimelineResult retrieveTimelineForAllSleepPeriods(final Long accountId,final DateTime queryDate, final Optional<Integer> queryHourOptional, final Optional<TimelineFeedback> newFeedback) {
 
-        final TimeZoneOffsetMap timeZoneOffsetMap = TimeZoneOffsetMap.createFromTimezoneHistoryList(timeZoneHistoryDAO.getMostRecentTimeZoneHistory(accountId, queryDate.plusHours(44), TIMEZONE_HISTORY_LIMIT)); //END time UTC - add 12 hours to ensure entire night is within query window
+        final TimeZoneOffsetMap timeZoneOffsetMap = TimeZoneOffsetMap.createFromTimezoneHistoryList(getTimeZoneHistory(accountId, queryDate.plusHours(44))); //END time UTC - add 12 hours to ensure entire night is within query window
         final DateTime currentTimeLocal = timeZoneOffsetMap.getCurrentLocalDateTimeWithUTCDefault();
         final DateTime targetDate = timelineUtils.getTargetDate(isDaySleeper(accountId), queryDate, currentTimeLocal, queryHourOptional, timeZoneOffsetMap);
 
@@ -302,10 +506,17 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
             return TimelineResult.createEmpty(log, English.TIMELINE_NO_SLEEP_DATA, DataCompleteness.NO_DATA);
         }
 
+        //Gets previously generated MainEventTimes for target day and target day -1 for possible OOB time of previous night
+        //only depends on target date, so it is read while the sensor data is gathered
+        final TimelineDataFetcher.Read<List<MainEventTimes>> mainEventTimesRead = dataFetcher.read("main_event_times",
+                () -> mainEventTimesDAO.getEventTimes(accountId, targetDate.minusDays(1), targetDate.plusDays(1)));
+
         //gets sensor data for range of sleepPeriod Queue - from start of first period (morning) to end of data window of last period
-        final Optional<OneDaysSensorData> fullDaysSensorDataOptional = getSensorData(accountId, sleepPeriodQueue.get(0).getSleepPeriodTime(SleepPeriod.Boundary.START,0), sleepPeriodQueue.get(numSleepPeriods-1).getSleepPeriodTime(SleepPeriod.Boundary.END_DATA, 0), currentTimeLocal, Optional.absent());
+        final DateTime startTimeLocalUTC = sleepPeriodQueue.get(0).getSleepPeriodTime(SleepPeriod.Boundary.START,0);
+        final Optional<OneDaysSensorData> fullDaysSensorDataOptional = getSensorData(accountId, startTimeLocalUTC, sleepPeriodQueue.get(numSleepPeriods-1).getSleepPeriodTime(SleepPeriod.Boundary.END_DATA, 0), currentTimeLocal, Optional.absent(), expectedOffsetMillis(timeZoneOffsetMap, startTimeLocalUTC));
 
         if (!fullDaysSensorDataOptional.isPresent()) {
+            mainEventTimesRead.cancel();
             LOGGER.info("msg=no-timeline-generated reason=missing-sensor-data account_id = {} day = {}", accountId, targetDate);
             final TimelineLog log = new TimelineLog(accountId, targetDate.withZone(DateTimeZone.UTC).getMillis());
             log.addMessage(TimelineError.NO_DATA);
@@ -314,8 +525,7 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
 
         final OneDaysSensorData fullDaySensorData = fullDaysSensorDataOptional.get();
 
-        //Gets previously generated MainEventTimes for target day and target day -1 for possible OOB time of previous night
-        final List<MainEventTimes> generatedMainEventTimesList = mainEventTimesDAO.getEventTimes(accountId, targetDate.minusDays(1), targetDate.plusDays(1));
+        final List<MainEventTimes> generatedMainEventTimesList = mainEventTimesRead.get();
         //get sleepPeriodResults for all Sleep Periods in queue
         final SleepDay targetSleepDay = getSleepPeriodResultsForAllSleepPeriods(accountId, targetDate, numSleepPeriods, fullDaySensorData, generatedMainEventTimesList, timeZoneOffsetMap);
 
@@ -447,42 +657,165 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
         final Optional<TimelineFeedback> newFeedback = Optional.absent();
         final boolean attemptLockDown = !newFeedback.isPresent() && useTimelineLockdown(accountId);
 
+        final Map<SleepPeriod.Period, SpeculativeSleepPeriod> speculativeSleepPeriods = Maps.newEnumMap(SleepPeriod.Period.class);
+        if (sleepPeriodEvaluator.isConcurrent() && useParallelSleepPeriods(accountId)) {
+            speculativeSleepPeriods.putAll(speculateSleepPeriods(accountId, targetDate, numSleepPeriods, fullDaySensorData, generatedMainEventTimesList, prevNightMainEventTimes, timeZoneOffsetMap, attemptLockDown, newFeedback));
+        }
+
+        try {
+            for (int i = 0; i < numSleepPeriods; i++) {
+                final SleepPeriod targetSleepPeriod = SleepPeriod.createSleepPeriod(SleepPeriod.Period.fromInteger(i), targetDate);
+                //Placeholder for feedback - current defaults to no new feedback
+                //check if new timeline needs to be attempted
+                final Optional<Long> prevOutOfBedTimeOptional = targetSleepDay.getPreviousOutOfBedTime(targetSleepPeriod.period, prevNightMainEventTimes);
+
+                final boolean attemptTimeline;
+                if (attemptLockDown) {
+                    attemptTimeline = TimelineLockdown.isAttemptNeededForSleepPeriod(targetSleepDay, targetSleepPeriod, prevOutOfBedTimeOptional, fullDaySensorData.oneDaysTrackerMotion.processedtrackerMotions);
+                } else{
+                    attemptTimeline = true;
+                }
+
+                final SleepPeriodResults targetSleepPeriodResults;
+                if(attemptTimeline){
+                    final SpeculativeSleepPeriod speculativeSleepPeriod = speculativeSleepPeriods.get(targetSleepPeriod.period);
+                    if (speculativeSleepPeriod != null) {
+                        targetSleepPeriodResults = saveSleepPeriodEvaluation(speculativeSleepPeriod.getOrEvaluate(prevOutOfBedTimeOptional));
+                    } else {
+                        targetSleepPeriodResults = retrievePopulateAndSaveSleepPeriodResult(accountId, targetDate, targetSleepPeriod, fullDaySensorData, timeZoneOffsetMap, prevOutOfBedTimeOptional, newFeedback);
+                    }
+                    targetSleepDay.updateSleepPeriod(targetSleepPeriodResults);
+                    //update targetDateSleepPeriodsMainEventsMap for prevOutOfBedTime
+
+                } else {
+                    //targetDateSleepPeriodsMainEventsMap will contain the target SleepPeriod at this point
+                    final MainEventTimes generatedTargetPeriodMainEventTimes = targetSleepDay.getSleepPeriod(targetSleepPeriod.period).mainEventTimes;
+                    final OneDaysSensorData targetSleepPeriodSensorData = fullDaySensorData.getForSleepPeriod(prevOutOfBedTimeOptional, targetSleepPeriod, hasOutlierFilterEnabled(accountId));
+                    targetSleepPeriodResults = populateSingleSleepPeriodTimeline(accountId, targetSleepPeriodSensorData, timeZoneOffsetMap, generatedTargetPeriodMainEventTimes, new TimelineLog(accountId, targetDate.getMillis(), DateTime.now(DateTimeZone.UTC).getMillis()), true);
+                }
+
+                //put all results - valid and invalid timelines
+                targetSleepDay.updateSleepPeriod(targetSleepPeriodResults);
+            }
+        } finally {
+            for (final SpeculativeSleepPeriod speculativeSleepPeriod : speculativeSleepPeriods.values()) {
+                speculativeSleepPeriod.cancel();
+            }
+        }
+        LOGGER.debug("msg=retrieved-all-sleep-periods date={} morning_success={} afternoon_success={}, night_success={}", targetDate, targetSleepDay.getSleepPeriod(SleepPeriod.Period.MORNING).resultsOptional.isPresent(),targetSleepDay.getSleepPeriod(SleepPeriod.Period.AFTERNOON).resultsOptional.isPresent(), targetSleepDay.getSleepPeriod(SleepPeriod.Period.NIGHT).resultsOptional.isPresent() );
+
+        return targetSleepDay;
+    }
+
+    /*
+    Starts evaluating sleep periods in parallel, assuming the previous out of bed time of each period is the one
+    given by the previously generated main event times. getSleepPeriodResultsForAllSleepPeriods still goes through
+    the periods in order and re-evaluates a period when its actual previous out of bed time differs from the assumed one,
+    so results are the same as evaluating them one after the other.
+     */
+    private Map<SleepPeriod.Period, SpeculativeSleepPeriod> speculateSleepPeriods(final Long accountId, final DateTime targetDate, final int numSleepPeriods, final OneDaysSensorData fullDaySensorData,
+                                                                                  final List<MainEventTimes> generatedMainEventTimesList, final MainEventTimes prevNightMainEventTimes,
+                                                                                  final TimeZoneOffsetMap timeZoneOffsetMap, final boolean attemptLockDown, final Optional<TimelineFeedback> newFeedback) {
+        final SleepDay generatedSleepDay = SleepDay.createSleepDay(accountId, targetDate, generatedMainEventTimesList);
+        final Map<SleepPeriod.Period, SpeculativeSleepPeriod> speculativeSleepPeriods = Maps.newEnumMap(SleepPeriod.Period.class);
+
         for (int i = 0; i < numSleepPeriods; i++) {
-            final SleepPeriod targetSleepPeriod = SleepPeriod.createSleepPeriod(SleepPeriod.Period.fromInteger(i), targetDate);
-            //Placeholder for feedback - current defaults to no new feedback
-            //check if new timeline needs to be attempted
-            final Optional<Long> prevOutOfBedTimeOptional = targetSleepDay.getPreviousOutOfBedTime(targetSleepPeriod.period, prevNightMainEventTimes);
-
-            final boolean attemptTimeline;
-            if (attemptLockDown) {
-                attemptTimeline = TimelineLockdown.isAttemptNeededForSleepPeriod(targetSleepDay, targetSleepPeriod, prevOutOfBedTimeOptional, fullDaySensorData.oneDaysTrackerMotion.processedtrackerMotions);
-            } else{
-                attemptTimeline = true;
+            final SleepPeriod sleepPeriod = SleepPeriod.createSleepPeriod(SleepPeriod.Period.fromInteger(i), targetDate);
+            final Optional<Long> assumedPrevOutOfBedTimeOptional = generatedSleepDay.getPreviousOutOfBedTime(sleepPeriod.period, prevNightMainEventTimes);
+
+            //most likely locked down, evaluated in order if it turns out it is not
+            if (attemptLockDown && !TimelineLockdown.isAttemptNeededForSleepPeriod(generatedSleepDay, sleepPeriod, assumedPrevOutOfBedTimeOptional, fullDaySensorData.oneDaysTrackerMotion.processedtrackerMotions)) {
+                continue;
             }
 
-            final SleepPeriodResults targetSleepPeriodResults;
-            if(attemptTimeline){
-                targetSleepPeriodResults = retrievePopulateAndSaveSleepPeriodResult(accountId, targetDate, targetSleepPeriod, fullDaySensorData, timeZoneOffsetMap, prevOutOfBedTimeOptional, newFeedback);
-                targetSleepDay.updateSleepPeriod(targetSleepPeriodResults);
-                //update targetDateSleepPeriodsMainEventsMap for prevOutOfBedTime
+            speculativeSleepPeriods.put(sleepPeriod.period, new SpeculativeSleepPeriod(accountId, targetDate, sleepPeriod, fullDaySensorData, timeZoneOffsetMap, assumedPrevOutOfBedTimeOptional, newFeedback));
+        }
+        return speculativeSleepPeriods;
+    }
 
+    private class SpeculativeSleepPeriod {
+        private final Long accountId;
+        private final DateTime targetDate;
+        private final SleepPeriod sleepPeriod;
+        private final OneDaysSensorData sensorData;
+        private final TimeZoneOffsetMap timeZoneOffsetMap;
+        private final Optional<Long> assumedPrevOutOfBedTimeOptional;
+        private final Optional<TimelineFeedback> newFeedback;
+        private final TimelineDataFetcher.Read<SleepPeriodEvaluation> evaluation;
+
+        private SpeculativeSleepPeriod(final Long accountId, final DateTime targetDate, final SleepPeriod sleepPeriod, final OneDaysSensorData sensorData, final TimeZoneOffsetMap timeZoneOffsetMap,
+                                       final Optional<Long> assumedPrevOutOfBedTimeOptional, final Optional<TimelineFeedback> newFeedback) {
+            this.accountId = accountId;
+            this.targetDate = targetDate;
+            this.sleepPeriod = sleepPeriod;
+            this.sensorData = sensorData;
+            this.timeZoneOffsetMap = timeZoneOffsetMap;
+            this.assumedPrevOutOfBedTimeOptional = assumedPrevOutOfBedTimeOptional;
+            this.newFeedback = newFeedback;
+            this.evaluation = sleepPeriodEvaluator.read("sleep_period_" + sleepPeriod.period.shortName(),
+                    () -> evaluateSleepPeriod(accountId, targetDate, sleepPeriod, sensorData, timeZoneOffsetMap, assumedPrevOutOfBedTimeOptional, newFeedback));
+        }
+
+        /**
+         * Speculative evaluation if it was made with the right previous out of bed time, otherwise evaluates the sleep period again
+         */
+        SleepPeriodEvaluation getOrEvaluate(final Optional<Long> prevOutOfBedTimeOptional) {
+            if (prevOutOfBedTimeOptional.equals(assumedPrevOutOfBedTimeOptional)) {
+                try {
+                    final SleepPeriodEvaluation speculativeEvaluation = evaluation.get();
+                    speculativeSleepPeriodsUsed.mark();
+                    return speculativeEvaluation;
+                } catch (TimelineReadException e) {
+                    // the inputs are all in memory, so evaluating again here still gives the full result
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                }
             } else {
-                //targetDateSleepPeriodsMainEventsMap will contain the target SleepPeriod at this point
-                final MainEventTimes generatedTargetPeriodMainEventTimes = targetSleepDay.getSleepPeriod(targetSleepPeriod.period).mainEventTimes;
-                final OneDaysSensorData targetSleepPeriodSensorData = fullDaySensorData.getForSleepPeriod(prevOutOfBedTimeOptional, targetSleepPeriod, hasOutlierFilterEnabled(accountId));
-                targetSleepPeriodResults = populateSingleSleepPeriodTimeline(accountId, targetSleepPeriodSensorData, timeZoneOffsetMap, generatedTargetPeriodMainEventTimes, new TimelineLog(accountId, targetDate.getMillis(), DateTime.now(DateTimeZone.UTC).getMillis()), true);
+                evaluation.cancel();
+                LOGGER.info("action=reevaluate-sleep-period reason=prev-out-of-bed-time-changed account_id={} date={} sleep_period={}", accountId, targetDate, sleepPeriod.period.shortName());
             }
-
-            //put all results - valid and invalid timelines
-            targetSleepDay.updateSleepPeriod(targetSleepPeriodResults);
+            speculativeSleepPeriodsReevaluated.mark();
+            return evaluateSleepPeriod(accountId, targetDate, sleepPeriod, sensorData, timeZoneOffsetMap, prevOutOfBedTimeOptional, newFeedback);
         }
-        LOGGER.debug("msg=retrieved-all-sleep-periods date={} morning_success={} afternoon_success={}, night_success={}", targetDate, targetSleepDay.getSleepPeriod(SleepPeriod.Period.MORNING).resultsOptional.isPresent(),targetSleepDay.getSleepPeriod(SleepPeriod.Period.AFTERNOON).resultsOptional.isPresent(), targetSleepDay.getSleepPeriod(SleepPeriod.Period.NIGHT).resultsOptional.isPresent() );
 
-        return targetSleepDay;
+        void cancel() {
+            evaluation.cancel();
+        }
     }
 
     //todo check if save all new results here
     public SleepPeriodResults retrievePopulateAndSaveSleepPeriodResult(final Long accountId, final DateTime targetDate, final SleepPeriod sleepPeriod, final OneDaysSensorData sensorData, final TimeZoneOffsetMap timeZoneOffsetMap, final Optional<Long> prevOutOfBedTimeOptional, final Optional<TimelineFeedback> newFeedback) {
+        final SleepPeriodEvaluation evaluation = evaluateSleepPeriod(accountId, targetDate, sleepPeriod, sensorData, timeZoneOffsetMap, prevOutOfBedTimeOptional, newFeedback);
+        return saveSleepPeriodEvaluation(evaluation);
+    }
+
+    private SleepPeriodResults saveSleepPeriodEvaluation(final SleepPeriodEvaluation evaluation) {
+        if (evaluation.mainEventTimesToSave.isPresent()) {
+            mainEventTimesDAO.updateEventTimes(evaluation.mainEventTimesToSave.get());
+        }
+        return evaluation.sleepPeriodResults;
+    }
+
+    /**
+     * Results of running the algorithm chain for one sleep period, along with the main event times to persist.
+     * Evaluating a sleep period does not write anything, so it is safe to do speculatively.
+     */
+    private static class SleepPeriodEvaluation {
+        final SleepPeriodResults sleepPeriodResults;
+        final Optional<MainEventTimes> mainEventTimesToSave;
+
+        private SleepPeriodEvaluation(final SleepPeriodResults sleepPeriodResults, final Optional<MainEventTimes> mainEventTimesToSave) {
+            this.sleepPeriodResults = sleepPeriodResults;
+            this.mainEventTimesToSave = mainEventTimesToSave;
+        }
+
+        static SleepPeriodEvaluation create(final SleepPeriodResults sleepPeriodResults, final Optional<MainEventTimes> mainEventTimesToSave) {
+            return new SleepPeriodEvaluation(sleepPeriodResults, mainEventTimesToSave);
+        }
+    }
+
+    private SleepPeriodEvaluation evaluateSleepPeriod(final Long accountId, final DateTime targetDate, final SleepPeriod sleepPeriod, final OneDaysSensorData sensorData, final TimeZoneOffsetMap timeZoneOffsetMap, final Optional<Long> prevOutOfBedTimeOptional, final Optional<TimelineFeedback> newFeedback) {
 
         final DateTime startTimeLocalUTC = sleepPeriod.getSleepPeriodTime(SleepPeriod.Boundary.START, timeZoneOffsetMap.getOffsetWithDefaultAsZero(targetDate.getMillis()));
         final DateTime endTimeLocalUTC = sleepPeriod.getSleepPeriodTime(SleepPeriod.Boundary.END_DATA, timeZoneOffsetMap.getOffsetWithDefaultAsZero(targetDate.getMillis()));
@@ -528,36 +861,30 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
             case TIMESPAN_TOO_SHORT:
                 log.addMessage(discardReason);
                 //TimelineResult.createEmpty(log, English.TIMELINE_NOT_ENOUGH_SLEEP_DATA, DataCompleteness.NOT_ENOUGH_DATA);
-                mainEventTimesDAO.updateEventTimes(mainEventTimesEmpty);
-                return SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.NOT_ENOUGH_DATA, true);
+                return SleepPeriodEvaluation.create(SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.NOT_ENOUGH_DATA, true), Optional.of(mainEventTimesEmpty));
 
 
             case NOT_ENOUGH_DATA:
                 log.addMessage(discardReason);
                 //TimelineResult.createEmpty(log, English.TIMELINE_NOT_ENOUGH_SLEEP_DATA, DataCompleteness.NOT_ENOUGH_DATA);
-                mainEventTimesDAO.updateEventTimes(mainEventTimesEmpty);
-                return SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.NOT_ENOUGH_DATA, true);
+                return SleepPeriodEvaluation.create(SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.NOT_ENOUGH_DATA, true), Optional.of(mainEventTimesEmpty));
 
             case NO_DATA:
                 log.addMessage(discardReason);
                 //TimelineResult.createEmpty(log, English.TIMELINE_NO_SLEEP_DATA, DataCompleteness.NO_DATA);
-                mainEventTimesDAO.updateEventTimes(mainEventTimesEmpty);
-                return SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.NO_DATA, true);
+                return SleepPeriodEvaluation.create(SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.NO_DATA, true), Optional.of(mainEventTimesEmpty));
             case LOW_AMP_DATA:
                 log.addMessage(discardReason);
                 //TimelineResult.createEmpty(log, English.TIMELINE_NOT_ENOUGH_SLEEP_DATA, DataCompleteness.NOT_ENOUGH_DATA);
-                mainEventTimesDAO.updateEventTimes(mainEventTimesEmpty);
-                return SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.NOT_ENOUGH_DATA, true);
+                return SleepPeriodEvaluation.create(SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.NOT_ENOUGH_DATA, true), Optional.of(mainEventTimesEmpty));
             case IMPROBABLE_SLEEP_PERIOD:
                 log.addMessage(discardReason);
                 //TimelineResult.createEmpty(log, English.TIMELINE_NOT_ENOUGH_SLEEP_DATA, DataCompleteness.NOT_ENOUGH_DATA);
-                mainEventTimesDAO.updateEventTimes(mainEventTimesEmpty);
-                return SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.ENOUGH_DATA, true);
+                return SleepPeriodEvaluation.create(SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.ENOUGH_DATA, true), Optional.of(mainEventTimesEmpty));
             case PARTNER_FILTER_REJECTED_DATA:
                 log.addMessage(discardReason);
                 //TimelineResult.createEmpty(log, English.TIMELINE_NOT_ENOUGH_SLEEP_DATA, DataCompleteness.NOT_ENOUGH_DATA);
-                mainEventTimesDAO.updateEventTimes(mainEventTimesEmpty);
-                return SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.NOT_ENOUGH_DATA, true);
+                return SleepPeriodEvaluation.create(SleepPeriodResults.createEmpty(accountId, mainEventTimesEmpty, log, DataCompleteness.NOT_ENOUGH_DATA, true), Optional.of(mainEventTimesEmpty));
             default:
                 break;
         }
@@ -597,9 +924,8 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
         }
         if (!resultOptional.isPresent()) {
             final MainEventTimes mainEventTimesAlgFail = MainEventTimes.createMainEventTimesEmpty(accountId, sleepPeriod, DateTime.now(DateTimeZone.UTC).getMillis(), 0, AlgorithmType.NONE, TimelineError.UNEXEPECTED);
-            mainEventTimesDAO.updateEventTimes(mainEventTimesAlgFail);
             LOGGER.info("msg=no-successful-algorithm account_id={} date={} sleep_period={}", accountId, targetDate, sleepPeriod.period.shortName());
-            return SleepPeriodResults.createEmpty(accountId, mainEventTimesAlgFail, log, DataCompleteness.ENOUGH_DATA, true);
+            return SleepPeriodEvaluation.create(SleepPeriodResults.createEmpty(accountId, mainEventTimesAlgFail, log, DataCompleteness.ENOUGH_DATA, true), Optional.of(mainEventTimesAlgFail));
         }
         final MainEventTimes mainEventTimes = MainEventTimes.createMainEventTimes(accountId, sleepPeriod, DateTime.now(DateTimeZone.UTC).getMillis(), 0, resultOptional.get(), TimelineError.NO_ERROR);
 
@@ -610,24 +936,22 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
         if (!sleepPeriodResults.resultsOptional.isPresent()) {
             LOGGER.info("msg=missing-populated-timeline-results account_id={} date={} sleep_period={}", accountId, targetDate, sleepPeriod.period.shortName());
             final MainEventTimes mainEventTimesPopulatedTimelineFail = MainEventTimes.createMainEventTimesEmpty(accountId, sleepPeriod, DateTime.now(DateTimeZone.UTC).getMillis(), 0, mainEventTimes.algorithmType, TimelineError.UNEXEPECTED);
-            mainEventTimesDAO.updateEventTimes(mainEventTimesPopulatedTimelineFail);
-            return SleepPeriodResults.createEmpty(accountId, mainEventTimes, log, DataCompleteness.ENOUGH_DATA, false);
+            return SleepPeriodEvaluation.create(SleepPeriodResults.createEmpty(accountId, mainEventTimes, log, DataCompleteness.ENOUGH_DATA, false), Optional.of(mainEventTimesPopulatedTimelineFail));
         }
 
         //we should never hit this points either
         if (!sleepPeriodResults.processed) {
             LOGGER.info("msg=invalid-timeline-generated account_id={} date={} sleep_period={}", accountId, targetDate, sleepPeriod.period.shortName());
             final MainEventTimes mainEventTimesPopulatedTimelineFail = MainEventTimes.createMainEventTimesEmpty(accountId, sleepPeriod, DateTime.now(DateTimeZone.UTC).getMillis(), 0, mainEventTimes.algorithmType, TimelineError.INVALID_SLEEP_SCORE);
-            mainEventTimesDAO.updateEventTimes(mainEventTimesPopulatedTimelineFail);
-            return SleepPeriodResults.createEmpty(accountId, mainEventTimesPopulatedTimelineFail, log, DataCompleteness.ENOUGH_DATA, false);
+            return SleepPeriodEvaluation.create(SleepPeriodResults.createEmpty(accountId, mainEventTimesPopulatedTimelineFail, log, DataCompleteness.ENOUGH_DATA, false), Optional.of(mainEventTimesPopulatedTimelineFail));
         }
 
         //regenerated maineventtimes after populating to incorporate user feedback.
         //save populated main event times to ensure that the OOB time affiliates the correct data to sleep period
         if(!timelineLockedDown) {
-            mainEventTimesDAO.updateEventTimes(sleepPeriodResults.mainEventTimes);
+            return SleepPeriodEvaluation.create(sleepPeriodResults, Optional.of(sleepPeriodResults.mainEventTimes));
         }
-        return sleepPeriodResults;
+        return SleepPeriodEvaluation.create(sleepPeriodResults, Optional.<MainEventTimes>absent());
     }
 
     private Set<String> getTimelineFeatureFlips(final long accountId) {
@@ -638,6 +962,9 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
         if (useTimelineSleepPeriods(accountId)) {
             featureFlips.add(FeatureFlipper.TIMELINE_SLEEP_PERIOD);
         }
+        if (useParallelOnlineHmmEvaluation(accountId)) {
+            featureFlips.add(FeatureFlipper.ONLINE_HMM_PARALLEL_EVALUATION);
+        }
         return featureFlips;
     }
 
@@ -661,9 +988,12 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
     }
 
     protected ImmutableList<TrackerMotion> filterPillPairingMotions(final ImmutableList<TrackerMotion> motions, final long accountId) {
-        final List<DateTime> pairTimes =  Lists.newArrayList();
         final ImmutableList<DeviceAccountPair> pills = deviceDAO.getPillsForAccountId(accountId); //get pills
+        return filterPillPairingMotions(motions, accountId, pills);
+    }
 
+    private ImmutableList<TrackerMotion> filterPillPairingMotions(final ImmutableList<TrackerMotion> motions, final long accountId, final ImmutableList<DeviceAccountPair> pills) {
+        final List<DateTime> pairTimes =  Lists.newArrayList();
 
         for (final DeviceAccountPair pill : pills) {
             pairTimes.add(pill.created);
@@ -674,10 +1004,130 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
         return timelineUtils.filterPillPairingMotionsWithTimes(motions,pairTimes);
     }
 
+    /**
+     * Best guess of the offset of the tracker motions starting at startTimeLocalUTC, absent if there is no timezone history
+     */
+    private static Optional<Integer> expectedOffsetMillis(final TimeZoneOffsetMap timeZoneOffsetMap, final DateTime startTimeLocalUTC) {
+        return timeZoneOffsetMap.getOffset(timeZoneOffsetMap.getUTCFromLocalTime(startTimeLocalUTC.getMillis()));
+    }
+
     protected Optional<OneDaysSensorData> getSensorData(final long accountId, final DateTime startTimeLocalUTC, final DateTime endTimeLocalUTC, final DateTime currentTimeUTC,final Optional<TimelineFeedback> newFeedback) {
+        return getSensorData(accountId, startTimeLocalUTC, endTimeLocalUTC, currentTimeUTC, newFeedback, Optional.<Integer>absent());
+    }
+
+    /**
+     * Reads that do not depend on each other are issued up front through the data fetcher.
+     * Sense data depends on the offset of the (filtered) tracker motions: when expectedOffsetMillis is known
+     * it is read alongside the pill data and re-read only if the actual offset turns out to be different.
+     */
+    protected Optional<OneDaysSensorData> getSensorData(final long accountId, final DateTime startTimeLocalUTC, final DateTime endTimeLocalUTC, final DateTime currentTimeUTC,final Optional<TimelineFeedback> newFeedback, final Optional<Integer> expectedOffsetMillis) {
 
-        final DateTime targetDate = startTimeLocalUTC.withTimeAtStartOfDay();
-        ImmutableList<TrackerMotion> originalTrackerMotions = pillDataDAODynamoDB.getBetweenLocalUTC(accountId, startTimeLocalUTC, endTimeLocalUTC);
+        final SensorDataReads reads;
+        if (prefetchedSensorDataReads.isPresent() && prefetchedSensorDataReads.get().matches(accountId, startTimeLocalUTC, endTimeLocalUTC, expectedOffsetMillis)) {
+            reads = prefetchedSensorDataReads.get();
+        } else {
+            if (prefetchedSensorDataReads.isPresent()) {
+                prefetchedSensorDataReads.get().cancel();
+            }
+            reads = new SensorDataReads(accountId, startTimeLocalUTC, endTimeLocalUTC, currentTimeUTC, expectedOffsetMillis);
+        }
+        prefetchedSensorDataReads = Optional.absent();
+
+        try {
+            return assembleSensorData(accountId, reads.targetDate, startTimeLocalUTC, endTimeLocalUTC, currentTimeUTC, newFeedback, reads.removePairingMotions,
+                    reads.trackerMotionsRead, reads.partnerMotionsRead, reads.pillsRead, reads.accountRead, reads.feedbackRead, expectedOffsetMillis, reads.expectedSenseDataRead);
+        } finally {
+            // nothing left to wait for, stop reads made useless by an early return
+            reads.cancel();
+        }
+    }
+
+    /**
+     * The reads of getSensorData, issued as soon as they are created. Prefetched reads are matched on their window,
+     * the sense data read does not depend on the current time.
+     */
+    private class SensorDataReads {
+        private final long accountId;
+        private final DateTime targetDate;
+        private final DateTime startTimeLocalUTC;
+        private final DateTime endTimeLocalUTC;
+        private final Optional<Integer> expectedOffsetMillis;
+        private final boolean removePairingMotions;
+
+        private final TimelineDataFetcher.Read<ImmutableList<TrackerMotion>> trackerMotionsRead;
+        private final TimelineDataFetcher.Read<ImmutableList<TrackerMotion>> partnerMotionsRead;
+        private final TimelineDataFetcher.Read<ImmutableList<DeviceAccountPair>> pillsRead;
+        private final TimelineDataFetcher.Read<Optional<Account>> accountRead;
+        private final TimelineDataFetcher.Read<ImmutableList<TimelineFeedback>> feedbackRead;
+        private final Optional<TimelineDataFetcher.Read<Optional<AllSensorSampleList>>> expectedSenseDataRead;
+
+        private SensorDataReads(final long accountId, final DateTime startTimeLocalUTC, final DateTime endTimeLocalUTC, final DateTime currentTimeUTC, final Optional<Integer> expectedOffsetMillis) {
+            this.accountId = accountId;
+            this.targetDate = startTimeLocalUTC.withTimeAtStartOfDay();
+            this.startTimeLocalUTC = startTimeLocalUTC;
+            this.endTimeLocalUTC = endTimeLocalUTC;
+            this.expectedOffsetMillis = expectedOffsetMillis;
+            this.removePairingMotions = hasRemovePairingMotions(accountId);
+
+            trackerMotionsRead = dataFetcher.read("tracker_motion",
+                    () -> pillDataDAODynamoDB.getBetweenLocalUTC(accountId, startTimeLocalUTC, endTimeLocalUTC));
+
+            // get partner tracker motion, if available. Partner pairing motions are filtered in the same read since it needs the partner account id
+            partnerMotionsRead = dataFetcher.read("partner_tracker_motion",
+                    () -> {
+                        final ImmutableList<TrackerMotion> partnerMotions = getPartnerTrackerMotion(accountId, startTimeLocalUTC, endTimeLocalUTC);
+                        if (removePairingMotions && !partnerMotions.isEmpty()) {
+                            return filterPillPairingMotions(partnerMotions, partnerMotions.get(0).accountId);
+                        }
+                        return partnerMotions;
+                    });
+
+            pillsRead = dataFetcher.read("pills",
+                    () -> removePairingMotions ? deviceDAO.getPillsForAccountId(accountId) : ImmutableList.<DeviceAccountPair>of());
+
+            accountRead = dataFetcher.read("account",
+                    () -> accountDAO.getById(accountId));
+
+            feedbackRead = dataFetcher.read("feedback",
+                    () -> getFeedbackList(accountId, startTimeLocalUTC));
+
+            if (expectedOffsetMillis.isPresent()) {
+                expectedSenseDataRead = Optional.of(dataFetcher.read("sense_data",
+                        () -> senseDataDAO.get(accountId, targetDate, startTimeLocalUTC, endTimeLocalUTC, currentTimeUTC, expectedOffsetMillis.get())));
+            } else {
+                expectedSenseDataRead = Optional.absent();
+            }
+        }
+
+        private boolean matches(final long accountId, final DateTime startTimeLocalUTC, final DateTime endTimeLocalUTC, final Optional<Integer> expectedOffsetMillis) {
+            return this.accountId == accountId && this.startTimeLocalUTC.equals(startTimeLocalUTC) && this.endTimeLocalUTC.equals(endTimeLocalUTC)
+                    && this.expectedOffsetMillis.equals(expectedOffsetMillis);
+        }
+
+        private void cancel() {
+            trackerMotionsRead.cancel();
+            partnerMotionsRead.cancel();
+            pillsRead.cancel();
+            accountRead.cancel();
+            feedbackRead.cancel();
+            if (expectedSenseDataRead.isPresent()) {
+                expectedSenseDataRead.get().cancel();
+            }
+        }
+    }
+
+    private Optional<OneDaysSensorData> assembleSensorData(final long accountId, final DateTime targetDate, final DateTime startTimeLocalUTC, final DateTime endTimeLocalUTC, final DateTime currentTimeUTC,
+                                                           final Optional<TimelineFeedback> newFeedback,
+                                                           final boolean removePairingMotions,
+                                                           final TimelineDataFetcher.Read<ImmutableList<TrackerMotion>> trackerMotionsRead,
+                                                           final TimelineDataFetcher.Read<ImmutableList<TrackerMotion>> partnerMotionsRead,
+                                                           final TimelineDataFetcher.Read<ImmutableList<DeviceAccountPair>> pillsRead,
+                                                           final TimelineDataFetcher.Read<Optional<Account>> accountRead,
+                                                           final TimelineDataFetcher.Read<ImmutableList<TimelineFeedback>> feedbackRead,
+                                                           final Optional<Integer> expectedOffsetMillis,
+                                                           final Optional<TimelineDataFetcher.Read<Optional<AllSensorSampleList>>> expectedSenseDataRead) {
+
+        ImmutableList<TrackerMotion> originalTrackerMotions = trackerMotionsRead.get();
 
         if (originalTrackerMotions.isEmpty()) {
             LOGGER.warn("No original tracker motion data for account {} on {}, returning optional absent", accountId, startTimeLocalUTC);
@@ -686,19 +1136,12 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
 
         LOGGER.debug("Length of originalTrackerMotion is {} for {} on {}", originalTrackerMotions.size(), accountId, startTimeLocalUTC);
 
-        // get partner tracker motion, if available
-        ImmutableList<TrackerMotion> originalPartnerMotions = getPartnerTrackerMotion(accountId, startTimeLocalUTC, endTimeLocalUTC);
+        final ImmutableList<TrackerMotion> originalPartnerMotions = partnerMotionsRead.get();
 
         //filter pairing motions for a good first night's experience
-        if (this.hasRemovePairingMotions(accountId)) {
-            //my motions
-            originalTrackerMotions = filterPillPairingMotions(originalTrackerMotions,accountId);
-
-            //my partner's motions
-            if (!originalPartnerMotions.isEmpty()) {
-                final long partnerAccountId = originalPartnerMotions.get(0).accountId;
-                originalPartnerMotions = filterPillPairingMotions(originalPartnerMotions, partnerAccountId);
-            }
+        if (removePairingMotions) {
+            //my motions, my partner's motions are filtered when read
+            originalTrackerMotions = filterPillPairingMotions(originalTrackerMotions, accountId, pillsRead.get());
 
             //lets check this again
             if (originalTrackerMotions.isEmpty()) {
@@ -707,7 +1150,7 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
             }
         }
 
-        final Optional<Account> accountOptional = accountDAO.getById(accountId);
+        final Optional<Account> accountOptional = accountRead.get();
         final UserBioInfo userBioInfo = UserBioInfo.getUserBioInfo(accountOptional, isDaySleeper(accountId), !originalPartnerMotions.isEmpty());
 
 
@@ -785,7 +1228,12 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
 
 
         final int tzOffsetMillis = trackerMotions.get(0).offsetMillis;
-        final Optional<AllSensorSampleList> allSensorSampleList = senseDataDAO.get(accountId,targetDate,startTimeLocalUTC, endTimeLocalUTC, currentTimeUTC, tzOffsetMillis);
+        final Optional<AllSensorSampleList> allSensorSampleList;
+        if (expectedSenseDataRead.isPresent() && expectedOffsetMillis.get() == tzOffsetMillis) {
+            allSensorSampleList = expectedSenseDataRead.get().get();
+        } else {
+            allSensorSampleList = senseDataDAO.get(accountId,targetDate,startTimeLocalUTC, endTimeLocalUTC, currentTimeUTC, tzOffsetMillis);
+        }
         LOGGER.info("Sensor data for timeline generated by DynamoDB for account {}", accountId);
 
         if (!allSensorSampleList.isPresent() || allSensorSampleList.get().isEmpty()) {
@@ -793,7 +1241,7 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
             return Optional.absent();
         }
 
-        final List<TimelineFeedback> feedbackList = Lists.newArrayList(getFeedbackList(accountId, startTimeLocalUTC, tzOffsetMillis));
+        final List<TimelineFeedback> feedbackList = Lists.newArrayList(feedbackRead.get());
 
         if (newFeedback.isPresent()) {
             feedbackList.add(newFeedback.get());
@@ -1362,7 +1810,7 @@ public class InstrumentedTimelineProcessorV3 extends FeatureFlippedProcessor {
         return environmentScore;
     }
 
-    private ImmutableList<TimelineFeedback> getFeedbackList(final Long accountId, final DateTime nightOf, final Integer offsetMillis) {
+    private ImmutableList<TimelineFeedback> getFeedbackList(final Long accountId, final DateTime nightOf) {
 
         if(!hasFeedbackInTimeline(accountId)) {
             LOGGER.debug("Timeline feedback not enabled for account {}", accountId);
@@ -0,0 +1,293 @@
+package com.hello.suripu.coredropwizard.timeline;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.hello.suripu.core.models.DataCompleteness;
+import com.hello.suripu.core.models.Timeline;
+import com.hello.suripu.core.models.TimelineResult;
+import com.hello.suripu.coredropwizard.db.TimelineDAODynamoDB;
+import com.hello.suripu.coredropwizard.util.AccountCheckpoint;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Recomputes and saves timelines for many accounts over a range of nights, e.g. after an algorithm change.
+ *
+ * Accounts are split over a fork-join pool so idle workers steal whole accounts from busy ones. The nights of one
+ * account run in date order on one worker, since a night reads the main event times saved for the night before.
+ * Each account gets a single processor copy (one session id) instead of one per night, and its timelines are saved
+ * with batch writes of up to TimelineDAODynamoDB.MAX_REQUEST_DAYS nights. The sensor data reads of the next night are
+ * prefetched while the current night is computed; the main event times of the next night are not, they depend on
+ * the current night.
+ *
+ * Nights without a usable timeline (no data, not enough data, or an empty timeline after an algorithm failure) are
+ * not saved, so they never overwrite a timeline that is already stored.
+ *
+ * Workers block on DynamoDB and the neural net endpoints, so parallelism is the number of nights in flight and should
+ * be sized for those calls, not for cores. Build the processor with TimelineDataFetcher.concurrent so the reads of a
+ * night overlap too.
+ *
+ * Accounts whose nights all succeeded are recorded in the checkpoint and skipped when the job is restarted.
+ */
+public class TimelineBackfillEngine {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimelineBackfillEngine.class);
+
+    private static final int LOG_EVERY_N_ACCOUNTS = 1000;
+
+    /**
+     * Computes the timelines of one account, the processor behind it is not shared with other accounts
+     */
+    interface AccountTimelines {
+        TimelineResult retrieve(DateTime targetDate);
+
+        /**
+         * Called before retrieving the night before targetDate, to start the reads of targetDate early
+         */
+        default void prefetch(DateTime targetDate) {}
+    }
+
+    private final Function<Long, AccountTimelines> accountTimelinesFactory;
+    private final TimelineDAODynamoDB timelineDAODynamoDB;
+    private final AccountCheckpoint checkpoint;
+    private final int parallelism;
+
+    private final Meter nightsMeter;
+    private final Meter failedNightsMeter;
+    private final Meter accountsMeter;
+    private final Timer nightTimer;
+
+    private final AtomicLong nightsProcessed = new AtomicLong(0L);
+    private final AtomicLong nightsFailed = new AtomicLong(0L);
+    private final AtomicLong timelinesSaved = new AtomicLong(0L);
+    private final AtomicLong emptyNights = new AtomicLong(0L);
+    private final AtomicLong accountsCompleted = new AtomicLong(0L);
+    private final AtomicLong accountsSkipped = new AtomicLong(0L);
+
+    TimelineBackfillEngine(final Function<Long, AccountTimelines> accountTimelinesFactory,
+                           final TimelineDAODynamoDB timelineDAODynamoDB,
+                           final AccountCheckpoint checkpoint,
+                           final int parallelism,
+                           final MetricRegistry metrics) {
+        this.accountTimelinesFactory = accountTimelinesFactory;
+        this.timelineDAODynamoDB = timelineDAODynamoDB;
+        this.checkpoint = checkpoint;
+        this.parallelism = parallelism;
+
+        this.nightsMeter = metrics.meter(name(TimelineBackfillEngine.class, "nights"));
+        this.failedNightsMeter = metrics.meter(name(TimelineBackfillEngine.class, "failed-nights"));
+        this.accountsMeter = metrics.meter(name(TimelineBackfillEngine.class, "accounts"));
+        this.nightTimer = metrics.timer(name(TimelineBackfillEngine.class, "night"));
+    }
+
+    public static TimelineBackfillEngine create(final InstrumentedTimelineProcessorV3 timelineProcessor,
+                                                final TimelineDAODynamoDB timelineDAODynamoDB,
+                                                final AccountCheckpoint checkpoint,
+                                                final int parallelism,
+                                                final MetricRegistry metrics) {
+        final Function<Long, AccountTimelines> accountTimelinesFactory = accountId -> {
+            final InstrumentedTimelineProcessorV3 processor = timelineProcessor.copyMeWithNewUUID(UUID.randomUUID());
+            return new AccountTimelines() {
+                @Override
+                public TimelineResult retrieve(final DateTime targetDate) {
+                    return processor.retrieveTimelinesFast(accountId, targetDate, Optional.<Integer>absent(), Optional.absent());
+                }
+
+                @Override
+                public void prefetch(final DateTime targetDate) {
+                    processor.prefetch(accountId, targetDate);
+                }
+            };
+        };
+
+        return new TimelineBackfillEngine(accountTimelinesFactory, timelineDAODynamoDB, checkpoint, parallelism, metrics);
+    }
+
+    public static class Stats {
+        public final long nightsProcessed;
+        public final long nightsFailed;
+        public final long timelinesSaved;
+        public final long emptyNights;
+        public final long accountsCompleted;
+        public final long accountsSkipped;
+        public final long elapsedMillis;
+
+        private Stats(final long nightsProcessed, final long nightsFailed, final long timelinesSaved, final long emptyNights,
+                      final long accountsCompleted, final long accountsSkipped, final long elapsedMillis) {
+            this.nightsProcessed = nightsProcessed;
+            this.nightsFailed = nightsFailed;
+            this.timelinesSaved = timelinesSaved;
+            this.emptyNights = emptyNights;
+            this.accountsCompleted = accountsCompleted;
+            this.accountsSkipped = accountsSkipped;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public double nightsPerSecond() {
+            return elapsedMillis == 0 ? 0.0 : nightsProcessed * 1000.0 / elapsedMillis;
+        }
+    }
+
+    /**
+     * Recomputes every night from startDate to endDate (inclusive, local UTC dates of the nights) for each account.
+     * Blocks until all accounts are done.
+     */
+    public Stats run(final List<Long> accountIds, final DateTime startDate, final DateTime endDate) {
+        final ImmutableList.Builder<DateTime> datesBuilder = ImmutableList.builder();
+        for (DateTime date = startDate.withTimeAtStartOfDay(); !date.isAfter(endDate); date = date.plusDays(1)) {
+            datesBuilder.add(date);
+        }
+        final ImmutableList<DateTime> dates = datesBuilder.build();
+
+        LOGGER.info("action=start-timeline-backfill num_accounts={} num_nights={} parallelism={}", accountIds.size(), dates.size(), parallelism);
+
+        final long startMillis = System.currentTimeMillis();
+        final ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            pool.invoke(new AccountsTask(ImmutableList.copyOf(accountIds), dates));
+        } finally {
+            pool.shutdown();
+        }
+
+        final Stats stats = stats(System.currentTimeMillis() - startMillis);
+        LOGGER.info("action=finish-timeline-backfill nights={} failed_nights={} timelines_saved={} empty_nights={} accounts_completed={} accounts_skipped={} elapsed_ms={} nights_per_second={}",
+                stats.nightsProcessed, stats.nightsFailed, stats.timelinesSaved, stats.emptyNights, stats.accountsCompleted, stats.accountsSkipped, stats.elapsedMillis, stats.nightsPerSecond());
+        return stats;
+    }
+
+    private Stats stats(final long elapsedMillis) {
+        return new Stats(nightsProcessed.get(), nightsFailed.get(), timelinesSaved.get(), emptyNights.get(), accountsCompleted.get(), accountsSkipped.get(), elapsedMillis);
+    }
+
+    /**
+     * Splits its accounts in halves until a single account is left, which runs on the current worker
+     */
+    private class AccountsTask extends RecursiveAction {
+        private final List<Long> accountIds;
+        private final List<DateTime> dates;
+
+        private AccountsTask(final List<Long> accountIds, final List<DateTime> dates) {
+            this.accountIds = accountIds;
+            this.dates = dates;
+        }
+
+        @Override
+        protected void compute() {
+            if (accountIds.isEmpty()) {
+                return;
+            }
+
+            if (accountIds.size() == 1) {
+                processAccount(accountIds.get(0), dates);
+                return;
+            }
+
+            final int middle = accountIds.size() / 2;
+            invokeAll(new AccountsTask(accountIds.subList(0, middle), dates),
+                    new AccountsTask(accountIds.subList(middle, accountIds.size()), dates));
+        }
+    }
+
+    void processAccount(final Long accountId, final List<DateTime> dates) {
+        if (checkpoint.isCompleted(accountId)) {
+            accountsSkipped.incrementAndGet();
+            return;
+        }
+
+        final AccountTimelines accountTimelines = accountTimelinesFactory.apply(accountId);
+        final Map<DateTime, TimelineResult> unsaved = Maps.newHashMap();
+        boolean allSucceeded = true;
+
+        for (int i = 0; i < dates.size(); i++) {
+            final DateTime date = dates.get(i);
+            if (i + 1 < dates.size()) {
+                accountTimelines.prefetch(dates.get(i + 1));
+            }
+
+            final Timer.Context context = nightTimer.time();
+            try {
+                final TimelineResult timelineResult = accountTimelines.retrieve(date);
+                if (hasTimeline(timelineResult)) {
+                    unsaved.put(date, timelineResult);
+                } else {
+                    emptyNights.incrementAndGet();
+                    LOGGER.debug("action=skip-empty-timeline account_id={} date={} data_completeness={}", accountId, date, timelineResult.dataCompleteness);
+                }
+                nightsProcessed.incrementAndGet();
+                nightsMeter.mark();
+            } catch (Exception e) {
+                allSucceeded = false;
+                nightsFailed.incrementAndGet();
+                failedNightsMeter.mark();
+                LOGGER.error("error=timeline-backfill-failed account_id={} date={} message={}", accountId, date, e.getMessage());
+            } finally {
+                context.stop();
+            }
+
+            if (unsaved.size() >= TimelineDAODynamoDB.MAX_REQUEST_DAYS) {
+                allSucceeded &= save(accountId, unsaved);
+            }
+        }
+
+        allSucceeded &= save(accountId, unsaved);
+
+        if (allSucceeded) {
+            checkpoint.markCompleted(accountId);
+        }
+
+        accountsMeter.mark();
+        final long completed = accountsCompleted.incrementAndGet();
+        if (completed % LOG_EVERY_N_ACCOUNTS == 0) {
+            LOGGER.info("action=timeline-backfill-progress accounts_completed={} nights={} failed_nights={} nights_per_second={}",
+                    completed, nightsProcessed.get(), nightsFailed.get(), nightsMeter.getOneMinuteRate());
+        }
+    }
+
+    /**
+     * Only complete timelines with events are saved
+     */
+    static boolean hasTimeline(final TimelineResult timelineResult) {
+        if (timelineResult.dataCompleteness != DataCompleteness.ENOUGH_DATA) {
+            return false;
+        }
+
+        for (final Timeline timeline : timelineResult.timelines) {
+            if (!timeline.events.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean save(final Long accountId, final Map<DateTime, TimelineResult> unsaved) {
+        if (unsaved.isEmpty()) {
+            return true;
+        }
+
+        try {
+            timelineDAODynamoDB.saveTimelinesForDates(accountId, unsaved);
+            timelinesSaved.addAndGet(unsaved.size());
+            return true;
+        } catch (Exception e) {
+            LOGGER.error("error=timeline-backfill-save-failed account_id={} num_nights={} message={}", accountId, unsaved.size(), e.getMessage());
+            return false;
+        } finally {
+            unsaved.clear();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.hello.suripu.coredropwizard.timeline;
+
+import com.google.common.base.Optional;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Issues the blocking reads needed to build a timeline.
+ *
+ * Without an executor every read is lazy and runs on the calling thread the first time it is needed,
+ * which is exactly the old serial behavior. With an executor reads start as soon as they are created
+ * so independent DAO round trips overlap, and waiting on a read is bounded by a per-call timeout
+ * after which TimelineReadException is thrown: a timeline built from missing data must not be saved.
+ *
+ * Reads must not wait on other reads, chain dependent calls inside a single read instead.
+ */
+public class TimelineDataFetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TimelineDataFetcher.class);
+
+    private final Optional<ExecutorService> executor;
+    private final long timeoutMillis;
+
+    private TimelineDataFetcher(final Optional<ExecutorService> executor, final long timeoutMillis) {
+        this.executor = executor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public static TimelineDataFetcher serial() {
+        return new TimelineDataFetcher(Optional.<ExecutorService>absent(), 0L);
+    }
+
+    public static TimelineDataFetcher concurrent(final ExecutorService executor, final long timeoutMillis) {
+        return new TimelineDataFetcher(Optional.of(executor), timeoutMillis);
+    }
+
+    /**
+     * Bounded pool for timeline reads. When the queue is full reads run on the calling thread.
+     */
+    public static ExecutorService newReadExecutor(final int maxThreads, final int maxQueueSize) {
+        return newExecutor("timeline-read-%d", maxThreads, maxQueueSize);
+    }
+
+    /**
+     * Bounded pool for cpu bound work such as evaluating sleep periods, kept apart from the read pool so it never
+     * holds up DAO round trips. When the queue is full work runs on the calling thread.
+     */
+    public static ExecutorService newEvaluationExecutor(final int maxThreads, final int maxQueueSize) {
+        return newExecutor("timeline-evaluation-%d", maxThreads, maxQueueSize);
+    }
+
+    private static ExecutorService newExecutor(final String nameFormat, final int maxThreads, final int maxQueueSize) {
+        return new ThreadPoolExecutor(maxThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<Runnable>(maxQueueSize),
+                new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build(),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public boolean isConcurrent() {
+        return executor.isPresent();
+    }
+
+    /**
+     * @param name used for logging
+     * @param supplier the blocking call
+     */
+    public <T> Read<T> read(final String name, final Supplier<T> supplier) {
+        return read(name, supplier, timeoutMillis);
+    }
+
+    /**
+     * Same as above with a timeout for calls that are expected to take longer than a single read
+     */
+    public <T> Read<T> read(final String name, final Supplier<T> supplier, final long timeoutMillis) {
+        if (!executor.isPresent()) {
+            return new Read<>(name, Suppliers.memoize(supplier), Optional.<Future<T>>absent(), timeoutMillis);
+        }
+        final Future<T> future = executor.get().submit(supplier::get);
+        return new Read<>(name, supplier, Optional.of(future), timeoutMillis);
+    }
+
+    public static class Read<T> {
+        private final String name;
+        private final Supplier<T> supplier;
+        private final Optional<Future<T>> future;
+        private final long timeoutMillis;
+
+        private Read(final String name, final Supplier<T> supplier, final Optional<Future<T>> future, final long timeoutMillis) {
+            this.name = name;
+            this.supplier = supplier;
+            this.future = future;
+            this.timeoutMillis = timeoutMillis;
+        }
+
+        /**
+         * @throws TimelineReadException if the read timed out or the calling thread was interrupted
+         */
+        public T get() {
+            if (!future.isPresent()) {
+                return supplier.get();
+            }
+
+            try {
+                return future.get().get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                future.get().cancel(true);
+                LOGGER.warn("error=read-timeout read={} timeout_ms={}", name, timeoutMillis);
+                throw new TimelineReadException(String.format("read=%s timed out after %d ms", name, timeoutMillis));
+            } catch (InterruptedException e) {
+                future.get().cancel(true);
+                Thread.currentThread().interrupt();
+                LOGGER.warn("error=read-interrupted read={}", name);
+                throw new TimelineReadException(String.format("read=%s interrupted", name));
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new RuntimeException(e.getCause());
+            }
+        }
+
+        /**
+         * Stop a read whose result is no longer needed, no-op for serial reads.
+         */
+        public void cancel() {
+            if (future.isPresent()) {
+                future.get().cancel(true);
+            }
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package com.hello.suripu.coredropwizard.timeline;
+
+/**
+ * A timeline read did not complete in time. The timeline can not be built from partial data,
+ * so nothing derived from it should be returned or saved.
+ */
+public class TimelineReadException extends RuntimeException {
+    TimelineReadException(final String message) { super(message); }
+}
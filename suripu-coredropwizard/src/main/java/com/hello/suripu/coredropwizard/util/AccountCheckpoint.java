@@ -0,0 +1,108 @@
+package com.hello.suripu.coredropwizard.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Optional;
+import com.google.common.base.Splitter;
+import com.google.common.io.Files;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Accounts a fleet-wide job (timeline backfill, insight generation) has finished, so a restarted job skips them.
+ *
+ * With a file, every completed account id is appended on its own line and flushed, and the file is read back
+ * when the checkpoint is opened again. A partially written last line (the job died mid-write) is dropped.
+ */
+public class AccountCheckpoint {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AccountCheckpoint.class);
+
+    private final Set<Long> completedAccounts;
+    private final Optional<Writer> writer;
+
+    private AccountCheckpoint(final Set<Long> completedAccounts, final Optional<Writer> writer) {
+        this.completedAccounts = completedAccounts;
+        this.writer = writer;
+    }
+
+    public static AccountCheckpoint inMemory() {
+        return new AccountCheckpoint(ConcurrentHashMap.<Long>newKeySet(), Optional.<Writer>absent());
+    }
+
+    public static AccountCheckpoint open(final File file) throws IOException {
+        final Set<Long> completedAccounts = ConcurrentHashMap.newKeySet();
+
+        if (file.exists()) {
+            final String contents = Files.toString(file, Charsets.UTF_8);
+
+            // "12" could be what is left of "1234", only newline terminated lines count
+            final String complete = contents.substring(0, contents.lastIndexOf('\n') + 1);
+            if (complete.length() < contents.length()) {
+                try (final RandomAccessFile truncated = new RandomAccessFile(file, "rw")) {
+                    truncated.setLength(complete.getBytes(Charsets.UTF_8).length);
+                }
+            }
+
+            for (final String line : Splitter.on('\n').omitEmptyStrings().split(complete)) {
+                try {
+                    completedAccounts.add(Long.valueOf(line.trim()));
+                } catch (NumberFormatException e) {
+                    LOGGER.warn("error=bad-checkpoint-line file={} line={}", file.getPath(), line);
+                }
+            }
+        }
+
+        LOGGER.info("action=open-account-checkpoint file={} completed_accounts={}", file.getPath(), completedAccounts.size());
+
+        final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), Charsets.UTF_8));
+        return new AccountCheckpoint(completedAccounts, Optional.of(writer));
+    }
+
+    public boolean isCompleted(final Long accountId) {
+        return completedAccounts.contains(accountId);
+    }
+
+    public int numCompleted() {
+        return completedAccounts.size();
+    }
+
+    public void markCompleted(final Long accountId) {
+        if (!completedAccounts.add(accountId) || !writer.isPresent()) {
+            return;
+        }
+
+        synchronized (writer.get()) {
+            try {
+                writer.get().write(accountId + "\n");
+                writer.get().flush();
+            } catch (IOException e) {
+                // the account is recomputed if the job is restarted, which is safe
+                LOGGER.error("error=checkpoint-write-failed account_id={} message={}", accountId, e.getMessage());
+            }
+        }
+    }
+
+    public void close() {
+        if (!writer.isPresent()) {
+            return;
+        }
+
+        synchronized (writer.get()) {
+            try {
+                writer.get().close();
+            } catch (IOException e) {
+                LOGGER.error("error=checkpoint-close-failed message={}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.hello.suripu.coredropwizard.clients;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.hello.suripu.api.datascience.NeuralNetMessages;
+import com.hello.suripu.core.algorithmintegration.NeuralNetAlgorithmOutput;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TaimurainHttpClientTest {
+
+    private static final double [][] SENSOR_DATA = {{1.0, 2.5, -3.0}, {}, {0.125}};
+
+    private HttpServer server;
+    private CloseableHttpClient httpClient;
+    private ExecutorService executor;
+    private String endpoint;
+
+    @Before
+    public void setUp() throws Exception {
+        // stub evaluation endpoint, doubles every input value
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext(TaimurainHttpClient.EVALUATION_ENDPOINT, exchange -> {
+            final NeuralNetMessages.NeuralNetInput input = NeuralNetMessages.NeuralNetInput.parseFrom(exchange.getRequestBody());
+            final NeuralNetMessages.NeuralNetOutput.Builder output = NeuralNetMessages.NeuralNetOutput.newBuilder().setSuccess(true);
+            for (final NeuralNetMessages.DataVector vec : input.getMatList()) {
+                final NeuralNetMessages.DataVector.Builder outputVec = NeuralNetMessages.DataVector.newBuilder();
+                for (final Double value : vec.getVecList()) {
+                    outputVec.addVec(value * 2);
+                }
+                output.addMat(outputVec);
+            }
+            final byte [] response = output.build().toByteArray();
+            exchange.sendResponseHeaders(200, response.length);
+            try (final OutputStream body = exchange.getResponseBody()) {
+                body.write(response);
+            }
+        });
+        server.start();
+
+        endpoint = "http://localhost:" + server.getAddress().getPort();
+        httpClient = HttpClients.createDefault();
+        executor = Executors.newFixedThreadPool(2);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        httpClient.close();
+        server.stop(0);
+    }
+
+    @Test
+    public void testEncodeInputMatchesGeneratedMessage() throws Exception {
+        final NeuralNetMessages.NeuralNetInput.Builder builder = NeuralNetMessages.NeuralNetInput.newBuilder().setNetId("SLEEP");
+        for (final double [] row : SENSOR_DATA) {
+            final NeuralNetMessages.DataVector.Builder vecBuilder = NeuralNetMessages.DataVector.newBuilder();
+            for (final double value : row) {
+                vecBuilder.addVec(value);
+            }
+            builder.addMat(vecBuilder);
+        }
+
+        final NeuralNetMessages.NeuralNetInput parsed = NeuralNetMessages.NeuralNetInput.parseFrom(TaimurainHttpClient.encodeInput("SLEEP", SENSOR_DATA));
+        assertThat(parsed, is(builder.build()));
+    }
+
+    @Test
+    public void testDecodeOutput() throws Exception {
+        final NeuralNetMessages.NeuralNetOutput output = NeuralNetMessages.NeuralNetOutput.newBuilder()
+                .setSuccess(true)
+                .addMat(NeuralNetMessages.DataVector.newBuilder().addVec(1.0).addVec(2.0).setId("a"))
+                .addMat(NeuralNetMessages.DataVector.newBuilder())
+                .setErrorMessage("none")
+                .build();
+
+        final double [][] decoded = TaimurainHttpClient.decodeOutput(output.toByteArray());
+        assertThat(decoded.length, is(2));
+        assertThat(decoded[0], is(new double[]{1.0, 2.0}));
+        assertThat(decoded[1].length, is(0));
+    }
+
+    @Test
+    public void testDecodePackedOutput() throws Exception {
+        // same layout as the input, which is packed
+        final double [][] decoded = TaimurainHttpClient.decodeOutput(TaimurainHttpClient.encodeInput("", SENSOR_DATA));
+        assertThat(decoded, is(SENSOR_DATA));
+    }
+
+    @Test
+    public void testGetNetOutput() throws Exception {
+        final TaimurainHttpClient client = TaimurainHttpClient.create(httpClient, endpoint);
+        final Optional<NeuralNetAlgorithmOutput> output = client.getNetOutput("SLEEP", SENSOR_DATA);
+
+        assertThat(output.isPresent(), is(true));
+        assertThat(output.get().output, is(new double[][]{{2.0, 5.0, -6.0}, {}, {0.25}}));
+    }
+
+    @Test
+    public void testGetNetOutputAsync() throws Exception {
+        final TaimurainHttpClient client = TaimurainHttpClient.create(httpClient, endpoint, executor);
+
+        final List<ListenableFuture<Optional<NeuralNetAlgorithmOutput>>> futures = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            futures.add(client.getNetOutputAsync("SLEEP", new double[][]{{i}}));
+        }
+
+        final List<Optional<NeuralNetAlgorithmOutput>> outputs = Futures.allAsList(futures).get();
+        for (int i = 0; i < 10; i++) {
+            assertThat(outputs.get(i).get().output, is(new double[][]{{i * 2.0}}));
+        }
+    }
+
+    @Test
+    public void testNoServer() {
+        server.stop(0);
+        final TaimurainHttpClient client = TaimurainHttpClient.create(httpClient, endpoint);
+        assertThat(client.getNetOutput("SLEEP", SENSOR_DATA).isPresent(), is(false));
+    }
+}
@@ -0,0 +1,197 @@
+package com.hello.suripu.coredropwizard.db;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchGetItemResult;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.KeysAndAttributes;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.codahale.metrics.MetricRegistry;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.guava.GuavaModule;
+import com.fasterxml.jackson.datatype.joda.JodaModule;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Resources;
+import com.hello.suripu.core.db.util.Compression;
+import com.hello.suripu.core.models.Timeline;
+import com.hello.suripu.core.models.TimelineResult;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThan;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TimelineDAODynamoDBTest {
+
+    private static final String TABLE_NAME = "timeline";
+    private static final Long ACCOUNT_ID = 1L;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final List<Map<String, AttributeValue>> items = Lists.newArrayList();
+    private final AtomicInteger throttledBatchGets = new AtomicInteger(0);
+
+    private AmazonDynamoDB dynamoDB;
+    private TimelineResult timelineResult;
+    private DateTime targetDate;
+
+    @Before
+    public void setUp() throws IOException {
+        mapper.registerModule(new GuavaModule());
+        mapper.registerModule(new JodaModule());
+
+        final List<Timeline> timelines = mapper.readValue(Resources.getResource("fixtures/timeline/timeline-with-statistics.json"),
+                new TypeReference<List<Timeline>>() {});
+        timelineResult = TimelineResult.create(timelines, "");
+        targetDate = DateTime.now(DateTimeZone.UTC).withTimeAtStartOfDay().minusDays(1);
+
+        dynamoDB = mock(AmazonDynamoDB.class);
+        when(dynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenAnswer(new Answer<BatchWriteItemResult>() {
+            @Override
+            public BatchWriteItemResult answer(final InvocationOnMock invocation) throws Throwable {
+                final BatchWriteItemRequest request = (BatchWriteItemRequest) invocation.getArguments()[0];
+                for (final WriteRequest writeRequest : request.getRequestItems().get(TABLE_NAME)) {
+                    items.add(writeRequest.getPutRequest().getItem());
+                }
+                return new BatchWriteItemResult().withUnprocessedItems(Collections.<String, List<WriteRequest>>emptyMap());
+            }
+        });
+        when(dynamoDB.batchGetItem(any(BatchGetItemRequest.class))).thenAnswer(new Answer<BatchGetItemResult>() {
+            @Override
+            public BatchGetItemResult answer(final InvocationOnMock invocation) throws Throwable {
+                final BatchGetItemRequest request = (BatchGetItemRequest) invocation.getArguments()[0];
+                final List<Map<String, AttributeValue>> keys = request.getRequestItems().get(TABLE_NAME).getKeys();
+
+                // first key of every throttled call is left unprocessed
+                final int processedFrom = throttledBatchGets.getAndDecrement() > 0 ? 1 : 0;
+
+                final List<Map<String, AttributeValue>> responses = Lists.newArrayList();
+                for (final Map<String, AttributeValue> key : keys.subList(processedFrom, keys.size())) {
+                    for (final Map<String, AttributeValue> item : items) {
+                        if (item.get(TimelineDAODynamoDB.TARGET_DATE_OF_NIGHT_ATTRIBUTE_NAME).equals(key.get(TimelineDAODynamoDB.TARGET_DATE_OF_NIGHT_ATTRIBUTE_NAME))) {
+                            responses.add(item);
+                        }
+                    }
+                }
+
+                final Map<String, KeysAndAttributes> unprocessed = Maps.newHashMap();
+                if (processedFrom > 0) {
+                    unprocessed.put(TABLE_NAME, new KeysAndAttributes().withKeys(keys.subList(0, processedFrom)));
+                }
+                return new BatchGetItemResult()
+                        .withResponses(ImmutableMap.of(TABLE_NAME, responses))
+                        .withUnprocessedKeys(unprocessed);
+            }
+        });
+    }
+
+    private TimelineDAODynamoDB timelineDAO(final Compression.CompressionType compressionType, final TimelineDAODynamoDB.Encoding encoding) {
+        return new TimelineDAODynamoDB(dynamoDB, TABLE_NAME, 30, new MetricRegistry(), compressionType, encoding);
+    }
+
+    private int blobSize() {
+        return items.get(0).get(TimelineDAODynamoDB.DATA_BLOB_ATTRIBUTE_NAME).getB().remaining();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final String expected = mapper.writeValueAsString(timelineResult);
+
+        for (final TimelineDAODynamoDB.Encoding encoding : TimelineDAODynamoDB.Encoding.values()) {
+            for (final Compression.CompressionType compressionType : Lists.newArrayList(
+                    Compression.CompressionType.NONE, Compression.CompressionType.SNAPPY, Compression.CompressionType.LZ4)) {
+                items.clear();
+                final TimelineDAODynamoDB timelineDAO = timelineDAO(compressionType, encoding);
+                timelineDAO.saveTimelinesForDate(ACCOUNT_ID, targetDate, timelineResult);
+
+                final Optional<TimelineResult> cached = timelineDAO.getTimelinesForDate(ACCOUNT_ID, targetDate);
+                assertThat(cached.isPresent(), is(true));
+                assertThat(mapper.writeValueAsString(cached.get()), is(expected));
+            }
+        }
+    }
+
+    @Test
+    public void testBinaryEncodingIsSmaller() {
+        timelineDAO(Compression.CompressionType.NONE, TimelineDAODynamoDB.Encoding.JSON).saveTimelinesForDate(ACCOUNT_ID, targetDate, timelineResult);
+        final int jsonSize = blobSize();
+
+        items.clear();
+        timelineDAO(Compression.CompressionType.LZ4, TimelineDAODynamoDB.Encoding.SMILE).saveTimelinesForDate(ACCOUNT_ID, targetDate, timelineResult);
+        assertThat(blobSize(), lessThan(jsonSize));
+    }
+
+    @Test
+    public void testReadsItemsWithoutEncoding() {
+        new TimelineDAODynamoDB(dynamoDB, TABLE_NAME, 30, new MetricRegistry()).saveTimelinesForDate(ACCOUNT_ID, targetDate, timelineResult);
+        items.get(0).remove(TimelineDAODynamoDB.ENCODING_ATTRIBUTE_NAME);
+
+        final Optional<TimelineResult> cached = timelineDAO(Compression.CompressionType.SNAPPY, TimelineDAODynamoDB.Encoding.SMILE)
+                .getTimelinesForDate(ACCOUNT_ID, targetDate);
+        assertThat(cached.isPresent(), is(true));
+        assertThat(cached.get().timelines.size(), is(timelineResult.timelines.size()));
+    }
+
+    @Test
+    public void testMultipleDaysInOneBatch() {
+        final Map<DateTime, TimelineResult> week = Maps.newHashMap();
+        for (int i = 0; i < 7; i++) {
+            week.put(targetDate.minusDays(i), timelineResult);
+        }
+        timelineDAO(Compression.CompressionType.SNAPPY, TimelineDAODynamoDB.Encoding.SMILE).saveTimelinesForDates(ACCOUNT_ID, week);
+
+        final Map<DateTime, TimelineResult> cached = timelineDAO(Compression.CompressionType.SNAPPY, TimelineDAODynamoDB.Encoding.SMILE)
+                .getTimelinesForDates(ACCOUNT_ID, Lists.newArrayList(targetDate.minusDays(8), targetDate.minusDays(6), targetDate));
+
+        assertThat(cached.size(), is(2));
+        assertThat(cached.containsKey(targetDate.minusDays(6)), is(true));
+        verify(dynamoDB, times(1)).batchGetItem(any(BatchGetItemRequest.class));
+    }
+
+    @Test
+    public void testUnprocessedKeysAreRetried() {
+        final TimelineDAODynamoDB timelineDAO = timelineDAO(Compression.CompressionType.LZ4, TimelineDAODynamoDB.Encoding.JSON);
+        timelineDAO.saveTimelinesForDate(ACCOUNT_ID, targetDate, timelineResult);
+        throttledBatchGets.set(2);
+
+        assertThat(timelineDAO.getTimelinesForDate(ACCOUNT_ID, targetDate).isPresent(), is(true));
+        verify(dynamoDB, times(3)).batchGetItem(any(BatchGetItemRequest.class));
+    }
+
+    @Test
+    public void testInterruptStopsRetrying() {
+        final TimelineDAODynamoDB timelineDAO = timelineDAO(Compression.CompressionType.LZ4, TimelineDAODynamoDB.Encoding.JSON);
+        timelineDAO.saveTimelinesForDate(ACCOUNT_ID, targetDate, timelineResult);
+        throttledBatchGets.set(2);
+
+        Thread.currentThread().interrupt();
+        try {
+            assertThat(timelineDAO.getTimelinesForDate(ACCOUNT_ID, targetDate).isPresent(), is(false));
+            assertThat(Thread.currentThread().isInterrupted(), is(true));
+        } finally {
+            Thread.interrupted();
+        }
+        verify(dynamoDB, times(1)).batchGetItem(any(BatchGetItemRequest.class));
+    }
+}
@@ -0,0 +1,173 @@
+package com.hello.suripu.coredropwizard.insights;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.hello.suripu.core.db.AccountReadDAO;
+import com.hello.suripu.core.db.InsightsDAODynamoDB;
+import com.hello.suripu.core.db.dynamo.BatchWritePipeline;
+import com.hello.suripu.core.insights.InsightsLastSeen;
+import com.hello.suripu.core.insights.InsightsLastSeenDAO;
+import com.hello.suripu.core.models.Account;
+import com.hello.suripu.core.models.Insights.InsightCard;
+import com.hello.suripu.coredropwizard.util.AccountCheckpoint;
+import com.hello.suripu.coredropwizard.util.AccountIds;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InsightGenerationSchedulerTest {
+
+    private static final int PARALLELISM = 4;
+    private static final DateTime CREATED = new DateTime(2016, 1, 1, 0, 0, DateTimeZone.UTC);
+
+    private AccountReadDAO accountReadDAO;
+    private InsightsDAODynamoDB insightsDAODynamoDB;
+    private BatchWritePipeline insightsWritePipeline;
+    private InsightsLastSeenDAO insightsLastSeenDAO;
+
+    private final ConcurrentMap<Long, Integer> generatedByAccount = new ConcurrentHashMap<>();
+    private final AtomicInteger running = new AtomicInteger(0);
+    private final AtomicInteger maxRunning = new AtomicInteger(0);
+
+    @Before
+    public void setUp() {
+        accountReadDAO = mock(AccountReadDAO.class);
+        insightsDAODynamoDB = mock(InsightsDAODynamoDB.class);
+        insightsWritePipeline = mock(BatchWritePipeline.class);
+        insightsLastSeenDAO = mock(InsightsLastSeenDAO.class);
+
+        when(accountReadDAO.getById(anyLong())).thenReturn(Optional.of(new Account.Builder().withCreated(CREATED).build()));
+        when(insightsLastSeenDAO.markLastSeen(any(InsightsLastSeen.class))).thenReturn(Boolean.TRUE);
+    }
+
+    private InsightGenerationScheduler scheduler(final AccountCheckpoint checkpoint) {
+        return scheduler(checkpoint, Optional.<Long>absent());
+    }
+
+    /**
+     * Odd accounts get one card, failingAccountId throws
+     */
+    private InsightGenerationScheduler scheduler(final AccountCheckpoint checkpoint, final Optional<Long> failingAccountId) {
+        return new InsightGenerationScheduler(insightsWriter -> (accountId, accountCreated) -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                generatedByAccount.merge(accountId, 1, Integer::sum);
+                if (failingAccountId.isPresent() && accountId.equals(failingAccountId.get())) {
+                    throw new RuntimeException("sense data unavailable");
+                }
+
+                if (accountId % 2 == 1) {
+                    final InsightCard card = InsightCard.createBasicInsightCard(accountId, "title", "message",
+                            InsightCard.Category.LIGHT, InsightCard.TimePeriod.MONTHLY, accountCreated, InsightCard.InsightType.DEFAULT);
+                    insightsWriter.write(card, new InsightsLastSeen(accountId, InsightCard.Category.LIGHT, accountCreated));
+                }
+            } finally {
+                running.decrementAndGet();
+            }
+        }, accountReadDAO, insightsDAODynamoDB, insightsWritePipeline, insightsLastSeenDAO, checkpoint, PARALLELISM, 10000, 10000, 10000, new MetricRegistry());
+    }
+
+    @Test
+    public void testEveryAccountOnceWithBatchedWrites() {
+        final AccountCheckpoint checkpoint = AccountCheckpoint.inMemory();
+
+        final InsightGenerationScheduler.Stats stats = scheduler(checkpoint).run(AccountIds.range(200).iterator());
+
+        assertThat(stats.accountsProcessed, is(200L));
+        assertThat(stats.accountsFailed, is(0L));
+        assertThat(stats.insightsWritten, is(100L));
+        assertThat(checkpoint.numCompleted(), is(200));
+        assertThat(maxRunning.get(), lessThanOrEqualTo(PARALLELISM));
+        for (final Long accountId : AccountIds.range(200)) {
+            assertThat(generatedByAccount.get(accountId), is(1));
+        }
+
+        final ArgumentCaptor<List> batches = ArgumentCaptor.forClass(List.class);
+        verify(insightsDAODynamoDB, atLeastOnce()).insertListOfInsights(batches.capture(), eq(insightsWritePipeline));
+        int numCards = 0;
+        for (final List batch : batches.getAllValues()) {
+            assertThat(batch.size(), lessThanOrEqualTo(InsightGenerationScheduler.MAX_BATCH_WRITE));
+            numCards += batch.size();
+        }
+        assertThat(numCards, is(100));
+        verify(insightsDAODynamoDB, never()).insertInsight(any(InsightCard.class));
+        verify(insightsLastSeenDAO, times(100)).markLastSeen(any(InsightsLastSeen.class));
+    }
+
+    @Test
+    public void testFailedAccountIsNotCheckpointed() {
+        final AccountCheckpoint checkpoint = AccountCheckpoint.inMemory();
+
+        final InsightGenerationScheduler.Stats stats = scheduler(checkpoint, Optional.of(3L)).run(AccountIds.range(10).iterator());
+
+        assertThat(stats.accountsFailed, is(1L));
+        assertThat(checkpoint.isCompleted(3L), is(false));
+        assertThat(checkpoint.numCompleted(), is(9));
+    }
+
+    @Test
+    public void testFailedWriteKeepsAccountsOutOfCheckpoint() {
+        doThrow(new RuntimeException("throughput exceeded")).when(insightsDAODynamoDB).insertListOfInsights(anyListOf(InsightCard.class), eq(insightsWritePipeline));
+        final AccountCheckpoint checkpoint = AccountCheckpoint.inMemory();
+
+        final InsightGenerationScheduler.Stats stats = scheduler(checkpoint).run(AccountIds.range(10).iterator());
+
+        assertThat(stats.insightsWritten, is(0L));
+        verify(insightsLastSeenDAO, never()).markLastSeen(any(InsightsLastSeen.class));
+
+        // only the accounts without a card made it
+        assertThat(checkpoint.numCompleted(), is(5));
+        for (final Long accountId : AccountIds.range(10)) {
+            assertThat(checkpoint.isCompleted(accountId), is(accountId % 2 == 0));
+        }
+    }
+
+    @Test
+    public void testRestartSkipsCheckpointedAccounts() {
+        final AccountCheckpoint checkpoint = AccountCheckpoint.inMemory();
+        checkpoint.markCompleted(1L);
+        checkpoint.markCompleted(2L);
+
+        final InsightGenerationScheduler.Stats stats = scheduler(checkpoint).run(AccountIds.range(5).iterator());
+
+        assertThat(stats.accountsSkipped, is(2L));
+        assertThat(stats.accountsProcessed, is(3L));
+        assertThat(generatedByAccount.containsKey(1L), is(false));
+        assertThat(generatedByAccount.containsKey(2L), is(false));
+        verify(accountReadDAO, never()).getById(eq(1L));
+    }
+
+    @Test
+    public void testMissingAccountIsCompletedWithoutGenerating() {
+        when(accountReadDAO.getById(4L)).thenReturn(Optional.<Account>absent());
+        final AccountCheckpoint checkpoint = AccountCheckpoint.inMemory();
+
+        scheduler(checkpoint).run(ImmutableList.of(4L).iterator());
+
+        assertThat(generatedByAccount.isEmpty(), is(true));
+        assertThat(checkpoint.isCompleted(4L), is(true));
+    }
+}
@@ -0,0 +1,109 @@
+package com.hello.suripu.coredropwizard.metrics;
+
+import com.amazonaws.services.dynamodbv2.AmazonDynamoDB;
+import com.amazonaws.services.dynamodbv2.model.AttributeValue;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemRequest;
+import com.amazonaws.services.dynamodbv2.model.BatchWriteItemResult;
+import com.amazonaws.services.dynamodbv2.model.ConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.GetItemRequest;
+import com.amazonaws.services.dynamodbv2.model.ProvisionedThroughputExceededException;
+import com.amazonaws.services.dynamodbv2.model.PutRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryRequest;
+import com.amazonaws.services.dynamodbv2.model.QueryResult;
+import com.amazonaws.services.dynamodbv2.model.ReturnConsumedCapacity;
+import com.amazonaws.services.dynamodbv2.model.WriteRequest;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstrumentedDynamoDBClientTest {
+
+    private static final Map<String, AttributeValue> ITEM = ImmutableMap.of(
+            "account_id", new AttributeValue().withN("123"),
+            "name", new AttributeValue().withS("abc"));
+
+    private AmazonDynamoDB amazonDynamoDB;
+    private MetricRegistry registry;
+    private InstrumentedDynamoDBClient client;
+
+    @Before
+    public void setUp() {
+        amazonDynamoDB = mock(AmazonDynamoDB.class);
+        registry = new MetricRegistry();
+        client = new InstrumentedDynamoDBClient(amazonDynamoDB, InstrumentedDynamoDBClientTest.class, registry, true);
+    }
+
+    @Test
+    public void testQueryPerTableMetrics() {
+        when(amazonDynamoDB.query(any(QueryRequest.class))).thenReturn(new QueryResult()
+                .withItems(ITEM, ITEM)
+                .withConsumedCapacity(new ConsumedCapacity().withTableName("table_1").withCapacityUnits(1.5)));
+
+        final QueryRequest request = new QueryRequest().withTableName("table_1");
+        client.query(request);
+
+        final ArgumentCaptor<QueryRequest> sent = ArgumentCaptor.forClass(QueryRequest.class);
+        verify(amazonDynamoDB).query(sent.capture());
+        assertThat(sent.getValue().getReturnConsumedCapacity(), is(ReturnConsumedCapacity.TOTAL.toString()));
+        assertThat(request.getReturnConsumedCapacity(), is(nullValue()));
+        assertThat(registry.timer(name("query")).getCount(), is(1L));
+        assertThat(registry.timer(name("query", "table_1")).getCount(), is(1L));
+        assertThat(registry.histogram(name("query", "table_1", "items")).getSnapshot().getMax(), is(2L));
+        assertThat(registry.histogram(name("query", "table_1", "bytes")).getSnapshot().getMax(),
+                is(2 * InstrumentedDynamoDBClient.estimateSize(ITEM)));
+        assertThat(registry.meter(name("query", "table_1", "consumed-capacity-centiunits")).getCount(), is(150L));
+    }
+
+    @Test
+    public void testThrottledCallsAreCounted() {
+        when(amazonDynamoDB.getItem(any(GetItemRequest.class))).thenThrow(new ProvisionedThroughputExceededException("throttled"));
+
+        try {
+            client.getItem("table_1", ITEM);
+        } catch (ProvisionedThroughputExceededException e) {
+            // expected
+        }
+
+        assertThat(registry.meter(name("getItem", "throttled")).getCount(), is(1L));
+        assertThat(registry.meter(name("getItem", "table_1", "throttled")).getCount(), is(1L));
+    }
+
+    @Test
+    public void testBatchWriteUnprocessedItems() {
+        final List<WriteRequest> requests = ImmutableList.of(
+                new WriteRequest().withPutRequest(new PutRequest().withItem(ITEM)),
+                new WriteRequest().withPutRequest(new PutRequest().withItem(ITEM)));
+        when(amazonDynamoDB.batchWriteItem(any(BatchWriteItemRequest.class))).thenReturn(new BatchWriteItemResult()
+                .withUnprocessedItems(ImmutableMap.of("table_1", requests.subList(0, 1))));
+
+        client.batchWriteItem(ImmutableMap.of("table_1", requests));
+
+        assertThat(registry.timer(name("batchWriteItem", "table_1")).getCount(), is(1L));
+        assertThat(registry.histogram(name("batchWriteItem", "table_1", "items")).getSnapshot().getMax(), is(2L));
+        assertThat(registry.meter(name("batchWriteItem", "table_1", "unprocessed")).getCount(), is(1L));
+    }
+
+    @Test
+    public void testEstimateSize() {
+        // "account_id" + "123" + "name" + "abc"
+        assertThat(InstrumentedDynamoDBClient.estimateSize(ITEM), is(20L));
+    }
+
+    private static String name(final String... names) {
+        return MetricRegistry.name(InstrumentedDynamoDBClientTest.class, names);
+    }
+}
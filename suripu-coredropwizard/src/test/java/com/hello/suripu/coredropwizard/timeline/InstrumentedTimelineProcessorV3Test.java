@@ -0,0 +1,299 @@
+package com.hello.suripu.coredropwizard.timeline;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.hello.suripu.core.ObjectGraphRoot;
+import com.hello.suripu.core.db.HistoricalPairingDAO;
+import com.hello.suripu.core.db.MainEventTimesDAO;
+import com.hello.suripu.core.db.PillDataReadDAO;
+import com.hello.suripu.core.db.SenseDataDAODynamoDB;
+import com.hello.suripu.core.db.SleepStatsDAO;
+import com.hello.suripu.core.db.TimeZoneHistoryDAO;
+import com.hello.suripu.core.flipper.FeatureFlipper;
+import com.hello.suripu.core.models.Event;
+import com.hello.suripu.core.models.MainEventTimes;
+import com.hello.suripu.core.models.SleepPeriod;
+import com.hello.suripu.core.models.SleepScore;
+import com.hello.suripu.core.models.SleepStats;
+import com.hello.suripu.core.models.TimeZoneHistory;
+import com.hello.suripu.core.models.Timeline;
+import com.hello.suripu.core.models.TimelineResult;
+import com.hello.suripu.core.models.TrackerMotion;
+import com.hello.suripu.core.util.AlgorithmType;
+import com.hello.suripu.core.util.DateTimeUtil;
+import com.hello.suripu.core.util.TimelineError;
+import com.hello.suripu.coredropwizard.db.TimelineDAODynamoDB;
+import com.hello.suripu.coredropwizard.util.AccountCheckpoint;
+import com.librato.rollout.RolloutAdapter;
+import com.librato.rollout.RolloutClient;
+import dagger.Module;
+import dagger.Provides;
+import org.joda.time.DateTime;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import javax.inject.Singleton;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class InstrumentedTimelineProcessorV3Test {
+
+    private static final long ACCOUNT_ID = 66376L;
+    private static final DateTime TARGET_DATE = DateTimeUtil.ymdStringToDateTime("2016-11-05");
+
+    private final Set<String> features = Sets.newHashSet();
+
+    final public RolloutAdapter rolloutAdapter = new RolloutAdapter() {
+        @Override
+        public boolean userFeatureActive(String feature, long userId, List<String> userGroups) {
+            return features.contains(feature);
+        }
+
+        @Override
+        public boolean deviceFeatureActive(String feature, String deviceId, List<String> userGroups) {
+            return false;
+        }
+    };
+
+    @Module(injects = InstrumentedTimelineProcessorV3.class, library = true)
+    public class RolloutLocalModule {
+        @Provides @Singleton
+        RolloutAdapter providesRolloutAdapter() {
+            return rolloutAdapter;
+        }
+
+        @Provides @Singleton
+        RolloutClient providesRolloutClient(RolloutAdapter adapter) {
+            return new RolloutClient(adapter);
+        }
+    }
+
+    private static InstrumentedTimelineProcessorHelpers helpers = new InstrumentedTimelineProcessorHelpers();
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executor;
+    private ExecutorService evaluationExecutor;
+    private SleepStatsDAO sleepStatsDAO;
+    private MainEventTimesDAO mainEventTimesDAO;
+    private InstrumentedTimelineProcessorV3 timelineProcessor;
+
+    @Before
+    public void setup() {
+        ObjectGraphRoot.getInstance().init(new RolloutLocalModule());
+        executor = TimelineDataFetcher.newReadExecutor(4, 8);
+        evaluationExecutor = TimelineDataFetcher.newEvaluationExecutor(3, 3);
+        sleepStatsDAO = mock(SleepStatsDAO.class);
+        mainEventTimesDAO = mock(MainEventTimesDAO.class);
+        when(mainEventTimesDAO.getEventTimesForSleepPeriod(anyLong(), any(DateTime.class), any(SleepPeriod.Period.class))).thenReturn(Optional.<MainEventTimes>absent());
+        when(mainEventTimesDAO.getEventTimes(anyLong(), any(DateTime.class), any(DateTime.class))).thenReturn(Collections.<MainEventTimes>emptyList());
+
+        // tracker motion never comes back within the read timeout
+        final PillDataReadDAO slowPillDataDAO = mock(PillDataReadDAO.class);
+        when(slowPillDataDAO.getBetweenLocalUTC(anyLong(), any(DateTime.class), any(DateTime.class))).thenAnswer(new Answer<ImmutableList<TrackerMotion>>() {
+            @Override
+            public ImmutableList<TrackerMotion> answer(InvocationOnMock invocation) throws Throwable {
+                release.await();
+                return helpers.pillDataReadDAO.getBetweenLocalUTC(ACCOUNT_ID, TARGET_DATE, TARGET_DATE.plusDays(1));
+            }
+        });
+
+        timelineProcessor = processor(slowPillDataDAO, 50L);
+    }
+
+    private InstrumentedTimelineProcessorV3 processor(final PillDataReadDAO pillDataReadDAO, final long readTimeoutMillis) {
+        return processor(pillDataReadDAO, TimelineDataFetcher.concurrent(executor, readTimeoutMillis), TimelineDataFetcher.serial(), new MetricRegistry());
+    }
+
+    private InstrumentedTimelineProcessorV3 processor(final PillDataReadDAO pillDataReadDAO, final TimelineDataFetcher dataFetcher,
+                                                      final TimelineDataFetcher sleepPeriodEvaluator, final MetricRegistry metrics) {
+        return processor(pillDataReadDAO, helpers.timeZoneHistoryDAO, dataFetcher, sleepPeriodEvaluator, metrics);
+    }
+
+    private InstrumentedTimelineProcessorV3 processor(final PillDataReadDAO pillDataReadDAO, final TimeZoneHistoryDAO timeZoneHistoryDAO, final TimelineDataFetcher dataFetcher,
+                                                      final TimelineDataFetcher sleepPeriodEvaluator, final MetricRegistry metrics) {
+        final HistoricalPairingDAO pairingDAO = new HistoricalPairingDAO(helpers.deviceReadDAO, helpers.deviceDataReadAllSensorsDAO);
+        return InstrumentedTimelineProcessorV3.createTimelineProcessor(
+                pillDataReadDAO, helpers.deviceReadDAO, helpers.deviceDataReadAllSensorsDAO,
+                helpers.ringTimeHistoryDAODynamoDB, helpers.feedbackDAO, helpers.sleepHmmDAO, helpers.accountDAO, sleepStatsDAO, mainEventTimesDAO,
+                new SenseDataDAODynamoDB(pairingDAO, helpers.deviceDataReadAllSensorsDAO, helpers.senseColorDAO, helpers.calibrationDAO), timeZoneHistoryDAO, helpers.priorsDAO, helpers.featureExtractionModelsDAO,
+                helpers.defaultModelEnsembleDAO, helpers.userTimelineTestGroupDAO,
+                helpers.sleepScoreParametersDAO,
+                Maps.newHashMap(), helpers.algorithmConfiguration, metrics,
+                dataFetcher, sleepPeriodEvaluator);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+        evaluationExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testSpeculativeSleepPeriodsMatchSerialEvaluation() {
+        features.add(FeatureFlipper.TIMELINE_SLEEP_PERIOD);
+        features.add(FeatureFlipper.TIMELINE_PARALLEL_SLEEP_PERIODS);
+
+        // stale morning from an earlier run: afternoon and night are speculated with its out of bed time,
+        // but the morning evaluated now has no events, so both get evaluated again
+        final Map<Event.Type, MainEventTimes.EventTime> staleMorningEvents = ImmutableMap.of(
+                Event.Type.IN_BED, new MainEventTimes.EventTime(TARGET_DATE.plusHours(5).getMillis(), 0),
+                Event.Type.SLEEP, new MainEventTimes.EventTime(TARGET_DATE.plusHours(6).getMillis(), 0),
+                Event.Type.WAKE_UP, new MainEventTimes.EventTime(TARGET_DATE.plusHours(9).getMillis(), 0),
+                Event.Type.OUT_OF_BED, new MainEventTimes.EventTime(TARGET_DATE.plusHours(10).getMillis(), 0));
+        final MainEventTimes staleMorning = MainEventTimes.createMainEventTimes(ACCOUNT_ID, SleepPeriod.morning(TARGET_DATE),
+                TARGET_DATE.plusHours(12).getMillis(), 0, staleMorningEvents, AlgorithmType.NEURAL_NET_FOUR_EVENT, TimelineError.NO_ERROR);
+        when(mainEventTimesDAO.getEventTimes(anyLong(), any(DateTime.class), any(DateTime.class))).thenReturn(ImmutableList.of(staleMorning));
+
+        final List<MainEventTimes> saved = Lists.newArrayList();
+        when(mainEventTimesDAO.updateEventTimes(any(MainEventTimes.class))).thenAnswer(new Answer<Boolean>() {
+            @Override
+            public Boolean answer(InvocationOnMock invocation) throws Throwable {
+                saved.add((MainEventTimes) invocation.getArguments()[0]);
+                return true;
+            }
+        });
+
+        final TimelineResult serial = processor(helpers.pillDataReadDAO, TimelineDataFetcher.serial(), TimelineDataFetcher.serial(), new MetricRegistry())
+                .retrieveTimelinesFast(ACCOUNT_ID, TARGET_DATE, Optional.<Integer>absent(), Optional.absent());
+        final List<MainEventTimes> savedBySerial = ImmutableList.copyOf(saved);
+        saved.clear();
+
+        final MetricRegistry metrics = new MetricRegistry();
+        final TimelineResult speculative = processor(helpers.pillDataReadDAO, TimelineDataFetcher.concurrent(executor, 10000L),
+                TimelineDataFetcher.concurrent(evaluationExecutor, 10000L), metrics)
+                .retrieveTimelinesFast(ACCOUNT_ID, TARGET_DATE, Optional.<Integer>absent(), Optional.absent());
+
+        assertThat(metrics.meter(name(InstrumentedTimelineProcessorV3.class, "speculative-sleep-periods-used")).getCount(), is(1L));
+        assertThat(metrics.meter(name(InstrumentedTimelineProcessorV3.class, "speculative-sleep-periods-reevaluated")).getCount(), is(2L));
+
+        assertSameTimelines(speculative, serial);
+        assertThat(saved.size(), is(savedBySerial.size()));
+        for (int i = 0; i < savedBySerial.size(); i++) {
+            assertThat(saved.get(i).sleepPeriod.period, is(savedBySerial.get(i).sleepPeriod.period));
+            for (final Event.Type type : savedBySerial.get(i).eventTimeMap.keySet()) {
+                assertThat(saved.get(i).eventTimeMap.get(type).time, is(savedBySerial.get(i).eventTimeMap.get(type).time));
+            }
+        }
+    }
+
+    private static void assertSameTimelines(final TimelineResult actual, final TimelineResult expected) {
+        assertThat(actual.dataCompleteness, is(expected.dataCompleteness));
+        assertThat(actual.timelines.size(), is(expected.timelines.size()));
+        for (int i = 0; i < expected.timelines.size(); i++) {
+            final Timeline expectedTimeline = expected.timelines.get(i);
+            final Timeline actualTimeline = actual.timelines.get(i);
+            assertThat(actualTimeline.score, is(expectedTimeline.score));
+            assertThat(actualTimeline.message, is(expectedTimeline.message));
+            assertThat(actualTimeline.events.size(), is(expectedTimeline.events.size()));
+            for (int j = 0; j < expectedTimeline.events.size(); j++) {
+                assertThat(actualTimeline.events.get(j).getType(), is(expectedTimeline.events.get(j).getType()));
+                assertThat(actualTimeline.events.get(j).getTimestamp(), is(expectedTimeline.events.get(j).getTimestamp()));
+            }
+        }
+    }
+
+    @Test
+    public void testPrefetchedReadsAreUsedByTheNight() {
+        final AtomicInteger pillDataReads = new AtomicInteger(0);
+        final PillDataReadDAO countingPillDataDAO = mock(PillDataReadDAO.class);
+        when(countingPillDataDAO.getBetweenLocalUTC(anyLong(), any(DateTime.class), any(DateTime.class))).thenAnswer(new Answer<ImmutableList<TrackerMotion>>() {
+            @Override
+            public ImmutableList<TrackerMotion> answer(InvocationOnMock invocation) throws Throwable {
+                pillDataReads.incrementAndGet();
+                return helpers.pillDataReadDAO.getBetweenLocalUTC((Long) invocation.getArguments()[0], (DateTime) invocation.getArguments()[1], (DateTime) invocation.getArguments()[2]);
+            }
+        });
+
+        final TimelineResult expected = processor(countingPillDataDAO, 10000L).retrieveTimelinesFast(ACCOUNT_ID, TARGET_DATE, Optional.<Integer>absent(), Optional.absent());
+        assertThat(pillDataReads.get(), is(1));
+
+        final InstrumentedTimelineProcessorV3 processor = processor(countingPillDataDAO, 10000L);
+        processor.prefetch(ACCOUNT_ID, TARGET_DATE);
+        final TimelineResult prefetched = processor.retrieveTimelinesFast(ACCOUNT_ID, TARGET_DATE, Optional.<Integer>absent(), Optional.absent());
+
+        assertThat(pillDataReads.get(), is(2));
+        assertThat(prefetched.timelines.size(), is(expected.timelines.size()));
+        assertThat(prefetched.timelines.get(0).score, is(expected.timelines.get(0).score));
+        assertThat(prefetched.timelines.get(0).events.size(), is(expected.timelines.get(0).events.size()));
+    }
+
+    @Test
+    public void testBackfillReusesPrefetchedReads() {
+        final AtomicInteger pillDataReads = new AtomicInteger(0);
+        final PillDataReadDAO countingPillDataDAO = mock(PillDataReadDAO.class);
+        when(countingPillDataDAO.getBetweenLocalUTC(anyLong(), any(DateTime.class), any(DateTime.class))).thenAnswer(new Answer<ImmutableList<TrackerMotion>>() {
+            @Override
+            public ImmutableList<TrackerMotion> answer(InvocationOnMock invocation) throws Throwable {
+                pillDataReads.incrementAndGet();
+                return helpers.pillDataReadDAO.getBetweenLocalUTC((Long) invocation.getArguments()[0], (DateTime) invocation.getArguments()[1], (DateTime) invocation.getArguments()[2]);
+            }
+        });
+        final AtomicInteger timeZoneHistoryReads = new AtomicInteger(0);
+        final TimeZoneHistoryDAO countingTimeZoneHistoryDAO = mock(TimeZoneHistoryDAO.class);
+        when(countingTimeZoneHistoryDAO.getMostRecentTimeZoneHistory(anyLong(), any(DateTime.class), anyInt())).thenAnswer(new Answer<List<TimeZoneHistory>>() {
+            @Override
+            public List<TimeZoneHistory> answer(InvocationOnMock invocation) throws Throwable {
+                timeZoneHistoryReads.incrementAndGet();
+                return helpers.timeZoneHistoryDAO.getMostRecentTimeZoneHistory((Long) invocation.getArguments()[0], (DateTime) invocation.getArguments()[1], (Integer) invocation.getArguments()[2]);
+            }
+        });
+
+        final InstrumentedTimelineProcessorV3 processor = processor(countingPillDataDAO, countingTimeZoneHistoryDAO,
+                TimelineDataFetcher.concurrent(executor, 10000L), TimelineDataFetcher.serial(), new MetricRegistry());
+        final TimelineBackfillEngine.Stats stats = TimelineBackfillEngine.create(processor, mock(TimelineDAODynamoDB.class), AccountCheckpoint.inMemory(), 1, new MetricRegistry())
+                .run(ImmutableList.of(ACCOUNT_ID), TARGET_DATE, TARGET_DATE.plusDays(2));
+
+        // every night after the first one is prefetched while the one before it is computed, and read once
+        assertThat(stats.nightsProcessed, is(3L));
+        assertThat(stats.nightsFailed, is(0L));
+        assertThat(timeZoneHistoryReads.get(), is(3));
+        assertThat(pillDataReads.get(), is(3));
+    }
+
+    @Test(expected = TimelineReadException.class)
+    public void testTimedOutReadFailsTheTimeline() {
+        timelineProcessor.retrieveTimelinesFast(ACCOUNT_ID, TARGET_DATE, Optional.<Integer>absent(), Optional.absent());
+    }
+
+    @Test
+    public void testTimedOutReadDoesNotStoreTimeline() {
+        final TimelineDAODynamoDB timelineDAO = mock(TimelineDAODynamoDB.class);
+        final AccountCheckpoint checkpoint = AccountCheckpoint.inMemory();
+
+        final TimelineBackfillEngine.Stats stats = TimelineBackfillEngine.create(timelineProcessor, timelineDAO, checkpoint, 1, new MetricRegistry())
+                .run(ImmutableList.of(ACCOUNT_ID), TARGET_DATE, TARGET_DATE);
+
+        assertThat(stats.nightsFailed, is(1L));
+        assertThat(stats.timelinesSaved, is(0L));
+        assertThat(checkpoint.isCompleted(ACCOUNT_ID), is(false));
+        verify(timelineDAO, never()).saveTimelinesForDates(anyLong(), anyMap());
+        verify(sleepStatsDAO, never()).updateStat(anyLong(), any(DateTime.class), any(Integer.class), any(SleepScore.class), any(SleepStats.class), any(Integer.class));
+        verify(mainEventTimesDAO, never()).updateEventTimes(any(MainEventTimes.class));
+    }
+}
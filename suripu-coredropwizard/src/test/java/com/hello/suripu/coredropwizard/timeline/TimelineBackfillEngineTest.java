@@ -0,0 +1,201 @@
+package com.hello.suripu.coredropwizard.timeline;
+
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.hello.suripu.core.models.DataCompleteness;
+import com.hello.suripu.core.models.Insight;
+import com.hello.suripu.core.models.SleepSegment;
+import com.hello.suripu.core.models.Timeline;
+import com.hello.suripu.core.models.TimelineResult;
+import com.hello.suripu.core.models.timeline.v2.TimelineLog;
+import com.hello.suripu.coredropwizard.db.TimelineDAODynamoDB;
+import com.hello.suripu.coredropwizard.util.AccountCheckpoint;
+import com.hello.suripu.coredropwizard.util.AccountIds;
+import org.joda.time.DateTime;
+import org.joda.time.Days;
+import org.joda.time.DateTimeZone;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+import static org.mockito.Matchers.anyLong;
+import static org.mockito.Matchers.anyMap;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class TimelineBackfillEngineTest {
+
+    private static final DateTime START_DATE = new DateTime(2017, 5, 1, 0, 0, DateTimeZone.UTC);
+    private static final TimelineResult TIMELINE = TimelineResult.create(
+            ImmutableList.of(Timeline.create(80, "message", "2017-05-01", ImmutableList.of(mock(SleepSegment.class)), ImmutableList.<Insight>of(), false)),
+            new TimelineLog(1L, START_DATE.getMillis()));
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ConcurrentMap<Long, List<DateTime>> nightsByAccount = new ConcurrentHashMap<>();
+    private final AtomicInteger processorCopies = new AtomicInteger(0);
+
+    private TimelineBackfillEngine engine(final TimelineDAODynamoDB timelineDAO, final AccountCheckpoint checkpoint) {
+        return engine(timelineDAO, checkpoint, Optional.<Long>absent());
+    }
+
+    /**
+     * The second night of failingAccountId throws
+     */
+    private TimelineBackfillEngine engine(final TimelineDAODynamoDB timelineDAO, final AccountCheckpoint checkpoint, final Optional<Long> failingAccountId) {
+        return new TimelineBackfillEngine(accountId -> {
+            processorCopies.incrementAndGet();
+            return targetDate -> {
+                nightsByAccount.computeIfAbsent(accountId, id -> Lists.newArrayList()).add(targetDate);
+                if (failingAccountId.isPresent() && accountId.equals(failingAccountId.get()) && targetDate.equals(START_DATE.plusDays(1))) {
+                    throw new RuntimeException("no sensor data");
+                }
+                return TIMELINE;
+            };
+        }, timelineDAO, checkpoint, 4, new MetricRegistry());
+    }
+
+    @Test
+    public void testEveryNightOfEveryAccountInOrder() {
+        final TimelineDAODynamoDB timelineDAO = mock(TimelineDAODynamoDB.class);
+        final AccountCheckpoint checkpoint = AccountCheckpoint.inMemory();
+
+        final TimelineBackfillEngine.Stats stats = engine(timelineDAO, checkpoint).run(AccountIds.range(50), START_DATE, START_DATE.plusDays(2));
+
+        assertThat(stats.nightsProcessed, is(150L));
+        assertThat(stats.nightsFailed, is(0L));
+        assertThat(stats.timelinesSaved, is(150L));
+        assertThat(stats.accountsCompleted, is(50L));
+        assertThat(checkpoint.numCompleted(), is(50));
+
+        // one processor copy and one batch write per account
+        assertThat(processorCopies.get(), is(50));
+        for (final Long accountId : AccountIds.range(50)) {
+            assertThat(nightsByAccount.get(accountId), is((List<DateTime>) ImmutableList.of(START_DATE, START_DATE.plusDays(1), START_DATE.plusDays(2))));
+            verify(timelineDAO, times(1)).saveTimelinesForDates(eq(accountId), anyMap());
+        }
+    }
+
+    @Test
+    public void testLongRangesAreSavedInBatchesOfMaxRequestDays() {
+        final TimelineDAODynamoDB timelineDAO = mock(TimelineDAODynamoDB.class);
+
+        final TimelineBackfillEngine.Stats stats = engine(timelineDAO, AccountCheckpoint.inMemory())
+                .run(ImmutableList.of(1L), START_DATE, START_DATE.plusDays(2 * TimelineDAODynamoDB.MAX_REQUEST_DAYS));
+
+        assertThat(stats.timelinesSaved, is(2L * TimelineDAODynamoDB.MAX_REQUEST_DAYS + 1));
+        verify(timelineDAO, times(3)).saveTimelinesForDates(eq(1L), anyMap());
+    }
+
+    @Test
+    public void testFailedNightKeepsAccountOutOfCheckpoint() {
+        final TimelineDAODynamoDB timelineDAO = mock(TimelineDAODynamoDB.class);
+        final AccountCheckpoint checkpoint = AccountCheckpoint.inMemory();
+
+        final TimelineBackfillEngine.Stats stats = engine(timelineDAO, checkpoint, Optional.of(3L)).run(AccountIds.range(5), START_DATE, START_DATE.plusDays(2));
+
+        assertThat(stats.nightsFailed, is(1L));
+        assertThat(stats.nightsProcessed, is(14L));
+
+        // the other nights of the account are still computed and saved
+        assertThat(nightsByAccount.get(3L).size(), is(3));
+        assertThat(stats.timelinesSaved, is(14L));
+        assertThat(checkpoint.isCompleted(3L), is(false));
+        assertThat(checkpoint.numCompleted(), is(4));
+    }
+
+    @Test
+    public void testRestartSkipsCheckpointedAccounts() throws IOException {
+        final File file = new File(folder.getRoot(), "checkpoint.txt");
+
+        final AccountCheckpoint checkpoint = AccountCheckpoint.open(file);
+        engine(mock(TimelineDAODynamoDB.class), checkpoint, Optional.of(3L)).run(AccountIds.range(5), START_DATE, START_DATE.plusDays(2));
+        checkpoint.close();
+
+        nightsByAccount.clear();
+        final AccountCheckpoint reopened = AccountCheckpoint.open(file);
+        final TimelineBackfillEngine.Stats stats = engine(mock(TimelineDAODynamoDB.class), reopened).run(AccountIds.range(5), START_DATE, START_DATE.plusDays(2));
+        reopened.close();
+
+        assertThat(stats.accountsSkipped, is(4L));
+        assertThat(nightsByAccount.keySet().size(), is(1));
+        assertThat(nightsByAccount.containsKey(3L), is(true));
+        assertThat(reopened.numCompleted(), is(5));
+    }
+
+    @Test
+    public void testNoAccounts() {
+        final TimelineBackfillEngine.Stats stats = engine(mock(TimelineDAODynamoDB.class), AccountCheckpoint.inMemory())
+                .run(ImmutableList.<Long>of(), START_DATE, START_DATE.plusDays(2));
+
+        assertThat(stats.nightsProcessed, is(0L));
+    }
+
+    @Test
+    public void testEmptyTimelinesAreNotSaved() {
+        final TimelineDAODynamoDB timelineDAO = mock(TimelineDAODynamoDB.class);
+        final TimelineLog log = new TimelineLog(1L, START_DATE.getMillis());
+        final List<TimelineResult> results = ImmutableList.of(
+                TimelineResult.createEmpty(log, "no data", DataCompleteness.NO_DATA),
+                TimelineResult.createEmpty(log, "not enough data", DataCompleteness.NOT_ENOUGH_DATA),
+                TimelineResult.createEmpty(log, "algorithm failed", DataCompleteness.ENOUGH_DATA),
+                TIMELINE);
+        final AccountCheckpoint checkpoint = AccountCheckpoint.inMemory();
+        final List<Map<DateTime, TimelineResult>> saved = Lists.newArrayList();
+        doAnswer(invocation -> saved.add(ImmutableMap.copyOf((Map<DateTime, TimelineResult>) invocation.getArguments()[1])))
+                .when(timelineDAO).saveTimelinesForDates(anyLong(), anyMap());
+
+        final TimelineBackfillEngine.Stats stats = new TimelineBackfillEngine(accountId -> targetDate -> results.get(Days.daysBetween(START_DATE, targetDate).getDays()),
+                timelineDAO, checkpoint, 1, new MetricRegistry()).run(ImmutableList.of(1L), START_DATE, START_DATE.plusDays(3));
+
+        assertThat(stats.nightsProcessed, is(4L));
+        assertThat(stats.emptyNights, is(3L));
+        assertThat(stats.timelinesSaved, is(1L));
+        assertThat(checkpoint.isCompleted(1L), is(true));
+        assertThat(saved, is((List<Map<DateTime, TimelineResult>>) ImmutableList.<Map<DateTime, TimelineResult>>of(ImmutableMap.of(START_DATE.plusDays(3), TIMELINE))));
+    }
+
+    @Test
+    public void testNextNightIsPrefetchedBeforeTheCurrentOneIsRetrieved() {
+        final List<String> calls = Lists.newArrayList();
+
+        new TimelineBackfillEngine(accountId -> new TimelineBackfillEngine.AccountTimelines() {
+            @Override
+            public TimelineResult retrieve(final DateTime targetDate) {
+                calls.add("retrieve " + targetDate.getDayOfMonth());
+                return TIMELINE;
+            }
+
+            @Override
+            public void prefetch(final DateTime targetDate) {
+                calls.add("prefetch " + targetDate.getDayOfMonth());
+            }
+        }, mock(TimelineDAODynamoDB.class), AccountCheckpoint.inMemory(), 1, new MetricRegistry())
+                .run(ImmutableList.of(1L), START_DATE, START_DATE.plusDays(2));
+
+        assertThat(calls, is((List<String>) ImmutableList.of("prefetch 2", "retrieve 1", "prefetch 3", "retrieve 2", "retrieve 3")));
+    }
+
+    @Test
+    public void testHasTimeline() {
+        assertThat(TimelineBackfillEngine.hasTimeline(TIMELINE), is(true));
+        assertThat(TimelineBackfillEngine.hasTimeline(TimelineResult.createEmpty()), is(false));
+    }
+}
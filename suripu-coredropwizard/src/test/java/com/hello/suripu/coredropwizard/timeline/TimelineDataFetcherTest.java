@@ -0,0 +1,78 @@
+package com.hello.suripu.coredropwizard.timeline;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class TimelineDataFetcherTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        executor = TimelineDataFetcher.newReadExecutor(4, 8);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testSerialReadsAreLazy() {
+        final AtomicInteger calls = new AtomicInteger(0);
+        final TimelineDataFetcher.Read<Integer> read = TimelineDataFetcher.serial().read("test", () -> calls.incrementAndGet());
+
+        assertThat(calls.get(), is(0));
+        assertThat(read.get(), is(1));
+        assertThat(read.get(), is(1));
+        assertThat(calls.get(), is(1));
+    }
+
+    @Test
+    public void testConcurrentReadsOverlap() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(2);
+        final TimelineDataFetcher fetcher = TimelineDataFetcher.concurrent(executor, 5000L);
+
+        // each read only completes once both have started
+        final TimelineDataFetcher.Read<Boolean> first = fetcher.read("first", () -> countDownAndAwait(latch));
+        final TimelineDataFetcher.Read<Boolean> second = fetcher.read("second", () -> countDownAndAwait(latch));
+
+        assertThat(first.get(), is(true));
+        assertThat(second.get(), is(true));
+    }
+
+    @Test(expected = TimelineReadException.class)
+    public void testTimeoutThrows() {
+        final CountDownLatch never = new CountDownLatch(2);
+        final TimelineDataFetcher fetcher = TimelineDataFetcher.concurrent(executor, 50L);
+        final TimelineDataFetcher.Read<Boolean> read = fetcher.read("slow", () -> countDownAndAwait(never));
+        read.get();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testReadExceptionIsRethrown() {
+        final TimelineDataFetcher fetcher = TimelineDataFetcher.concurrent(executor, 5000L);
+        final TimelineDataFetcher.Read<Integer> read = fetcher.read("failing", () -> {
+            throw new IllegalStateException("failed");
+        });
+        read.get();
+    }
+
+    private static boolean countDownAndAwait(final CountDownLatch latch) {
+        latch.countDown();
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+}
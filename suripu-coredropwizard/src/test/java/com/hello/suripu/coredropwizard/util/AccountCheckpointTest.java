@@ -0,0 +1,63 @@
+package com.hello.suripu.coredropwizard.util;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.Is.is;
+
+public class AccountCheckpointTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReopenedCheckpointHasCompletedAccounts() throws IOException {
+        final File file = new File(folder.getRoot(), "checkpoint.txt");
+
+        final AccountCheckpoint checkpoint = AccountCheckpoint.open(file);
+        for (final Long accountId : AccountIds.range(3)) {
+            checkpoint.markCompleted(accountId);
+        }
+        checkpoint.close();
+
+        final AccountCheckpoint reopened = AccountCheckpoint.open(file);
+        reopened.close();
+        assertThat(reopened.numCompleted(), is(3));
+        assertThat(reopened.isCompleted(2L), is(true));
+        assertThat(reopened.isCompleted(4L), is(false));
+    }
+
+    @Test
+    public void testPartialCheckpointLineIsDropped() throws IOException {
+        final File file = new File(folder.getRoot(), "checkpoint.txt");
+        Files.write("1\n2\n12", file, Charsets.UTF_8);
+
+        final AccountCheckpoint checkpoint = AccountCheckpoint.open(file);
+        checkpoint.markCompleted(7L);
+        checkpoint.close();
+
+        assertThat(checkpoint.isCompleted(12L), is(false));
+
+        final AccountCheckpoint reopened = AccountCheckpoint.open(file);
+        reopened.close();
+        assertThat(reopened.numCompleted(), is(3));
+        assertThat(Files.toString(file, Charsets.UTF_8), is("1\n2\n7\n"));
+    }
+
+    @Test
+    public void testInMemoryCheckpoint() {
+        final AccountCheckpoint checkpoint = AccountCheckpoint.inMemory();
+        checkpoint.markCompleted(1L);
+        checkpoint.markCompleted(1L);
+
+        assertThat(checkpoint.numCompleted(), is(1));
+        assertThat(checkpoint.isCompleted(1L), is(true));
+    }
+}
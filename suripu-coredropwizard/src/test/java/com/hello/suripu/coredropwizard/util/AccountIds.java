@@ -0,0 +1,24 @@
+package com.hello.suripu.coredropwizard.util;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Account ids for tests of the fleet-wide jobs
+ */
+public class AccountIds {
+
+    private AccountIds() {}
+
+    /**
+     * Account ids 1 to numAccounts, in order
+     */
+    public static List<Long> range(final int numAccounts) {
+        final List<Long> accountIds = Lists.newArrayListWithCapacity(numAccounts);
+        for (long accountId = 1; accountId <= numAccounts; accountId++) {
+            accountIds.add(accountId);
+        }
+        return accountIds;
+    }
+}